@@ -0,0 +1,83 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import java.util.List;
+
+/**
+ * Wrapper for the responses of GraphHopper.routeBatch. The responses have the same order as the
+ * requests.
+ * <p/>
+ * @author Peter Karich
+ */
+public class GHBatchResponse
+{
+    private final List<GHResponse> responses;
+    private final float took;
+
+    public GHBatchResponse( List<GHResponse> responses, float took )
+    {
+        this.responses = responses;
+        this.took = took;
+    }
+
+    public List<GHResponse> getResponses()
+    {
+        return responses;
+    }
+
+    /**
+     * @return the seconds needed for the whole batch
+     */
+    public float getTook()
+    {
+        return took;
+    }
+
+    /**
+     * @return the number of requests per second for this batch
+     */
+    public float getThroughput()
+    {
+        if (took <= 0)
+            return responses.size();
+
+        return responses.size() / took;
+    }
+
+    /**
+     * @return the number of responses with errors
+     */
+    public int getErrorCount()
+    {
+        int count = 0;
+        for (GHResponse rsp : responses)
+        {
+            if (rsp.hasErrors())
+                count++;
+        }
+        return count;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "requests:" + responses.size() + ", errors:" + getErrorCount() + ", took:" + took
+                + "s, throughput:" + getThroughput() + "/s";
+    }
+}
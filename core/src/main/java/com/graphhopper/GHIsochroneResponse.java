@@ -0,0 +1,113 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import com.graphhopper.util.PointList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wrapper for the area reachable within a time limit, see GraphHopper.isochrone.
+ * <p/>
+ * @author Peter Karich
+ */
+public class GHIsochroneResponse
+{
+    private PointList polygon = PointList.EMPTY;
+    private PointList points = PointList.EMPTY;
+    private long[] millis = new long[0];
+    private String debugInfo = "";
+    private final List<Throwable> errors = new ArrayList<Throwable>(4);
+
+    public GHIsochroneResponse()
+    {
+    }
+
+    public GHIsochroneResponse setPolygon( PointList polygon )
+    {
+        this.polygon = polygon;
+        return this;
+    }
+
+    /**
+     * @return the convex hull of all reachable points, the first point is repeated at the end
+     */
+    public PointList getPolygon()
+    {
+        return polygon;
+    }
+
+    public GHIsochroneResponse setPoints( PointList points, long[] millis )
+    {
+        this.points = points;
+        this.millis = millis;
+        return this;
+    }
+
+    /**
+     * @return the reachable nodes of the road network
+     */
+    public PointList getPoints()
+    {
+        return points;
+    }
+
+    /**
+     * @return the time in milliseconds to every point, same order as in getPoints
+     */
+    public long[] getMillis()
+    {
+        return millis;
+    }
+
+    public String getDebugInfo()
+    {
+        return debugInfo;
+    }
+
+    public GHIsochroneResponse setDebugInfo( String debugInfo )
+    {
+        this.debugInfo = debugInfo;
+        return this;
+    }
+
+    /**
+     * @return true if one or more error found
+     */
+    public boolean hasErrors()
+    {
+        return !errors.isEmpty();
+    }
+
+    public List<Throwable> getErrors()
+    {
+        return errors;
+    }
+
+    public GHIsochroneResponse addError( Throwable error )
+    {
+        errors.add(error);
+        return this;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "points:" + points.getSize() + ", polygon:" + polygon.getSize();
+    }
+}
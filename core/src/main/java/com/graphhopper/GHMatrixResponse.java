@@ -0,0 +1,103 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wrapper for the distances and times between many sources and targets, see GraphHopper.matrix.
+ * The first index is the source and the second the target.
+ * <p/>
+ * @author Peter Karich
+ */
+public class GHMatrixResponse
+{
+    private double[][] distances = new double[0][0];
+    private long[][] millis = new long[0][0];
+    private String debugInfo = "";
+    private final List<Throwable> errors = new ArrayList<Throwable>(4);
+
+    public GHMatrixResponse()
+    {
+    }
+
+    public GHMatrixResponse setDistances( double[][] distances )
+    {
+        this.distances = distances;
+        return this;
+    }
+
+    /**
+     * @return distances in meter, -1 if a target is not reachable from a source
+     */
+    public double[][] getDistances()
+    {
+        return distances;
+    }
+
+    public GHMatrixResponse setMillis( long[][] millis )
+    {
+        this.millis = millis;
+        return this;
+    }
+
+    /**
+     * @return times in millis, -1 if a target is not reachable from a source
+     */
+    public long[][] getMillis()
+    {
+        return millis;
+    }
+
+    public String getDebugInfo()
+    {
+        return debugInfo;
+    }
+
+    public GHMatrixResponse setDebugInfo( String debugInfo )
+    {
+        this.debugInfo = debugInfo;
+        return this;
+    }
+
+    /**
+     * @return true if one or more error found
+     */
+    public boolean hasErrors()
+    {
+        return !errors.isEmpty();
+    }
+
+    public List<Throwable> getErrors()
+    {
+        return errors;
+    }
+
+    public GHMatrixResponse addError( Throwable error )
+    {
+        errors.add(error);
+        return this;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "sources:" + distances.length + ", targets:" + (distances.length == 0 ? 0 : distances[0].length);
+    }
+}
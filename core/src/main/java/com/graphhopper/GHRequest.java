@@ -18,7 +18,9 @@
 package com.graphhopper;
 
 import com.graphhopper.util.shapes.GHPlace;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -29,8 +31,7 @@ import java.util.Map;
 public class GHRequest
 {
     private String algo = "dijkstrabi";
-    private GHPlace from;
-    private GHPlace to;
+    private final List<GHPlace> points;
     private Map<String, Object> hints = new HashMap<String, Object>(5);
     private String vehicle = "CAR";
     private String weighting = "shortest";
@@ -48,32 +49,60 @@ public class GHRequest
      */
     public GHRequest( GHPlace startPoint, GHPlace endPoint )
     {
-        this.from = startPoint;
-        this.to = endPoint;
+        points = new ArrayList<GHPlace>(2);
+        points.add(startPoint);
+        points.add(endPoint);
+    }
+
+    /**
+     * Calculate the path from the first to the last point via all other points in the specified
+     * order.
+     */
+    public GHRequest( List<GHPlace> points )
+    {
+        this.points = new ArrayList<GHPlace>(points);
     }
 
     public void check()
     {
-        if (from == null)
+        if (points.size() < 2)
+            throw new IllegalStateException("at least two points need to be specified but was " + points.size());
+
+        if (points.get(0) == null)
             throw new IllegalStateException("the 'from' point needs to be initialized but was null");
 
-        if (to == null)
+        if (points.get(points.size() - 1) == null)
             throw new IllegalStateException("the 'to' point needs to be initialized but was null");
+
+        for (int i = 1; i < points.size() - 1; i++)
+        {
+            if (points.get(i) == null)
+                throw new IllegalStateException("the via point " + i + " needs to be initialized but was null");
+        }
     }
 
     public GHPlace getFrom()
     {
-        return from;
+        return points.get(0);
     }
 
     public GHPlace getTo()
     {
-        return to;
+        return points.get(points.size() - 1);
+    }
+
+    /**
+     * @return all points of this request, the first is the start and the last the end point
+     */
+    public List<GHPlace> getPoints()
+    {
+        return points;
     }
 
     /**
      * Possible values: astar (A* algorithm, default), astarbi (bidirectional A*) dijkstra
-     * (Dijkstra), dijkstrabi and dijkstraNative (a bit faster bidirectional Dijkstra).
+     * (Dijkstra), dijkstrabi and dijkstraNative (a bit faster bidirectional Dijkstra). Without
+     * contraction hierarchies and with prepared landmarks also alt (A* with landmarks).
      */
     public GHRequest setAlgorithm( String algo )
     {
@@ -108,7 +137,15 @@ public class GHRequest
     @Override
     public String toString()
     {
-        return from + " " + to + " (" + algo + ")";
+        String str = "";
+        for (GHPlace place : points)
+        {
+            if (!str.isEmpty())
+                str += " ";
+
+            str += place;
+        }
+        return str + " (" + algo + ")";
     }
 
     /**
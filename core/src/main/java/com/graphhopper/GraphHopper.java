@@ -17,23 +17,53 @@
  */
 package com.graphhopper;
 
+import com.graphhopper.geohash.SpatialKeyAlgo;
+import com.graphhopper.reader.OSMChangeReader;
 import com.graphhopper.reader.OSMReader;
+import com.graphhopper.reader.OSMWayEdges;
+import com.graphhopper.routing.Isochrone;
 import com.graphhopper.routing.Path;
+import com.graphhopper.routing.QueryGraph;
 import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.SearchStatePool;
+import com.graphhopper.routing.ch.ManyToManyCH;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.lm.PrepareLandmarks;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.*;
 import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.GHPlace;
+import gnu.trove.list.array.TIntArrayList;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Main wrapper of the offline API for a simple and efficient usage.
  * <p/>
+ * Concurrency: the configuration methods, importOrLoad, load and close are not thread safe. Once
+ * the graph is loaded route can be called from multiple threads at the same time with one
+ * instance, as it does not change any state of this object and per request options are only read
+ * from the GHRequest. While applyChanges modifies the graph route, routeBatch, matrix and
+ * isochrone wait for it.
+ * <p/>
  * @see GraphHopperAPI
  * @author Peter Karich
  */
@@ -54,6 +84,7 @@ public class GraphHopper implements GraphHopperAPI
     private String ghLocation = "";
     private DAType dataAccessType = DAType.RAM;
     private boolean sortGraph = false;
+    private boolean freezeGraph = false;
     boolean removeZipped = true;
     // for routing:
     private boolean simplifyRequest = true;
@@ -61,26 +92,57 @@ public class GraphHopper implements GraphHopperAPI
     private LocationIndex locationIndex;
     private int preciseIndexResolution = 500;
     private boolean searchRegion = true;
+    private int indexThreads = 1;
     // for prepare
     private int minNetworkSize = 200;
     // for CH prepare
     private AlgorithmPreparation prepare;
+    // one preparation per vehicle, the first one is also stored in prepare
+    private final Map<FlagEncoder, PrepareContractionHierarchies> chPrepares = new LinkedHashMap<FlagEncoder, PrepareContractionHierarchies>();
+    // the node levels of all but the first vehicle
+    private final List<LevelGraphView> levelViews = new ArrayList<LevelGraphView>();
     private boolean doPrepare = true;
     private boolean chEnabled = true;
     private String chWeighting = "fastest";
     private int periodicUpdates = 3;
     private int lazyUpdates = 10;
     private int neighborUpdates = 20;
+    private int prepareThreads = 1;
+    private int unpackCacheSize = 0;
+    // for landmark prepare, used by the ALT algorithm if CH is disabled
+    private int landmarks = 0;
+    private String landmarkWeighting = "fastest";
+    private final Map<FlagEncoder, PrepareLandmarks> lmPrepares = new LinkedHashMap<FlagEncoder, PrepareLandmarks>();
     // for OSM import:
     private String osmFile;
     private EncodingManager encodingManager;
     private long expectedCapacity = 100;
     private double wayPointMaxDistance = 1;
     private int workerThreads = -1;
+    private int wayThreads = 1;
+    // null means the in-memory B-Tree, otherwise the type of the DataAccess for the OSM node ids
+    private DAType nodeMapType;
+    // the edges of every OSM way, necessary to apply OSM change files
+    private boolean storeWayEdges = false;
+    private OSMWayEdges wayEdges;
     private int defaultSegmentSize = -1;
     private boolean enableInstructions = true;
     private boolean calcPoints = true;
     private boolean fullyLoaded = false;
+    // calculates the legs of routes with via points in parallel, created on demand
+    private ExecutorService legExecutor;
+    // for routeBatch
+    private int batchThreads = Runtime.getRuntime().availableProcessors();
+    private int batchChunkSize = 256;
+    // from this number of places on they are snapped in bulk
+    private static final int BULK_LOOKUP_SIZE = 64;
+    private ExecutorService batchExecutor;
+    // optional cache for route responses, cleared if the graph is (re)loaded
+    private RouteCache routeCache;
+    // the node arrays of the searches on this graph, shared by all threads and cleared on close
+    private final SearchStatePool searchStatePool = new SearchStatePool(2 * Runtime.getRuntime().availableProcessors());
+    // the queries hold the read lock, applyChanges the write lock
+    private final ReadWriteLock changesLock = new ReentrantReadWriteLock();
 
     public GraphHopper()
     {       
@@ -93,6 +155,7 @@ public class GraphHopper implements GraphHopperAPI
     {
         this.graph = g;
         fullyLoaded = true;
+        clearRouteCache();
         initLocationIndex();
         return this;
     }
@@ -209,6 +272,20 @@ public class GraphHopper implements GraphHopperAPI
         return chEnabled;
     }
 
+    /**
+     * Prepares the specified number of landmarks per vehicle if contraction hierarchies are
+     * disabled. Then the algorithm "alt" can be used for requests with the specified weighting.
+     * <p/>
+     * @param landmarks the number of landmarks, 0 disables the preparation
+     */
+    public GraphHopper setLandmarks( int landmarks, String weighting )
+    {
+        ensureNotLoaded();
+        this.landmarks = landmarks;
+        this.landmarkWeighting = weighting;
+        return this;
+    }
+
     /**
      * This method specifies if the import should include way names to be able to return
      * instructions for a route.
@@ -297,11 +374,26 @@ public class GraphHopper implements GraphHopperAPI
         return locationIndex;
     }
 
+    /**
+     * @return the preparation of the first vehicle
+     */
     public AlgorithmPreparation getPreparation()
     {
         return prepare;
     }
 
+    /**
+     * @return the contraction hierarchies preparation of the specified vehicle or null if not
+     * available
+     */
+    public PrepareContractionHierarchies getPreparation( String vehicle )
+    {
+        if (!encodingManager.supports(vehicle))
+            return null;
+
+        return chPrepares.get(encodingManager.getEncoder(vehicle));
+    }
+
     /**
      * @deprecated until #12 is fixed
      */
@@ -312,6 +404,64 @@ public class GraphHopper implements GraphHopperAPI
         return this;
     }
 
+    /**
+     * Stores the edges created for every OSM way in the graph folder, which is necessary to apply
+     * OSM change files later via applyChanges. Sorting the graph is not possible then.
+     */
+    public GraphHopper setStoreWayEdges( boolean storeWayEdges )
+    {
+        ensureNotLoaded();
+        this.storeWayEdges = storeWayEdges;
+        return this;
+    }
+
+    /**
+     * Stores the edges of every node contiguously after the import and preparation, which makes
+     * queries faster but the graph cannot be modified afterwards.
+     */
+    public GraphHopper setFreezeGraph( boolean freezeGraph )
+    {
+        ensureNotLoaded();
+        this.freezeGraph = freezeGraph;
+        return this;
+    }
+
+    /**
+     * Caches up to maxSize responses of route for ttlMillis milliseconds (0 means no time limit).
+     * The responses are shared, so do not modify the points or instructions of them. A size of 0
+     * disables the cache, which is the default.
+     */
+    public GraphHopper setRouteCache( int maxSize, long ttlMillis )
+    {
+        routeCache = maxSize == 0 ? null : new RouteCache(maxSize, ttlMillis);
+        return this;
+    }
+
+    /**
+     * @return the route cache or null if disabled
+     */
+    public RouteCache getRouteCache()
+    {
+        return routeCache;
+    }
+
+    /**
+     * Specifies the number of threads used for routeBatch. Default is the number of processors.
+     */
+    public synchronized GraphHopper setBatchThreads( int batchThreads )
+    {
+        if (batchThreads < 1)
+            throw new IllegalArgumentException("batch threads has to be at least 1 but was " + batchThreads);
+
+        if (batchExecutor != null && batchThreads != this.batchThreads)
+        {
+            batchExecutor.shutdown();
+            batchExecutor = null;
+        }
+        this.batchThreads = batchThreads;
+        return this;
+    }
+
     /*
      * Command line configuration overwrites the ones in the config file
      */
@@ -368,6 +518,7 @@ public class GraphHopper implements GraphHopperAPI
             dataAccessType = new DAType(dataAccessType, true);
 
         sortGraph = args.getBool("graph.doSort", sortGraph);
+        freezeGraph = args.getBool("graph.frozen", freezeGraph);
         removeZipped = args.getBool("graph.removeZipped", removeZipped);
 
         // optimizable prepare
@@ -390,15 +541,42 @@ public class GraphHopper implements GraphHopperAPI
         if (args.has("prepare.updates.neighbor"))
             neighborUpdates = args.getInt("prepare.updates.neighbor", neighborUpdates);
 
+        prepareThreads = args.getInt("prepare.threads", prepareThreads);
+        unpackCacheSize = args.getInt("prepare.unpackCacheSize", unpackCacheSize);
+
+        // routing
+        setBatchThreads(args.getInt("routing.batch.threads", batchThreads));
+        int cacheSize = args.getInt("routing.cache.size", 0);
+        if (cacheSize > 0)
+            setRouteCache(cacheSize, args.getLong("routing.cache.ttl", 0));
+
+        // prepare landmarks
+        landmarks = args.getInt("prepare.landmarks", landmarks);
+        landmarkWeighting = args.get("prepare.landmarks.weighting", landmarkWeighting);
+
         // osm import
         wayPointMaxDistance = args.getDouble("osmreader.wayPointMaxDistance", wayPointMaxDistance);
         String flagEncoders = args.get("osmreader.acceptWay", "CAR");
         encodingManager = new EncodingManager(flagEncoders);
         workerThreads = args.getInt("osmreader.workerThreads", workerThreads);
+        wayThreads = args.getInt("osmreader.wayThreads", wayThreads);
+        storeWayEdges = args.getBool("osmreader.storeWayEdges", storeWayEdges);
+        String nodeMap = args.get("osmreader.nodeMap", "BTREE").toUpperCase();
+        if (nodeMap.contains("MMAP"))
+            nodeMapType = DAType.MMAP;
+        else if (nodeMap.contains("UNSAFE"))
+            nodeMapType = new DAType(DAType.MemRef.UNSAFE, false, false);
+        else if (nodeMap.contains("RAM"))
+            nodeMapType = DAType.RAM;
+        else if (nodeMap.contains("BTREE"))
+            nodeMapType = null;
+        else
+            throw new IllegalArgumentException("Unknown osmreader.nodeMap " + nodeMap + ", use BTREE, RAM, MMAP or UNSAFE");
         enableInstructions = args.getBool("osmreader.instructions", enableInstructions);
 
         // index
         preciseIndexResolution = args.getInt("index.highResolution", preciseIndexResolution);
+        indexThreads = args.getInt("index.threads", indexThreads);
         return this;
     }
 
@@ -422,6 +600,118 @@ public class GraphHopper implements GraphHopperAPI
         return this;
     }
 
+    /**
+     * Applies the tag changes and way deletions of the specified OSM change file to the loaded
+     * graph, which must have been imported with setStoreWayEdges(true). This is no incremental
+     * import: new ways, ways with changed nodes and new or moved nodes are skipped and need a new
+     * import, see OSMChangeReader.getSkippedWays. As the weights of the edges change, the
+     * contraction hierarchies and landmarks are prepared again from scratch, only the import and
+     * the location index are saved. The edges of deleted ways are removed from the existing
+     * location index. Queries wait until the changes are applied.
+     */
+    public OSMChangeReader applyChanges( String changeFile )
+    {
+        changesLock.writeLock().lock();
+        try
+        {
+            return applyChangesLocked(changeFile);
+        } finally
+        {
+            changesLock.writeLock().unlock();
+        }
+    }
+
+    private OSMChangeReader applyChangesLocked( String changeFile )
+    {
+        if (graph == null || !fullyLoaded)
+            throw new IllegalStateException("Load or import the graph before applying changes");
+
+        if (chEnabled)
+            // the change reader needs all edges of the ways
+            ((LevelGraphStorage) graph).removeShortcuts();
+
+        if (wayEdges == null)
+        {
+            OSMWayEdges tmpWayEdges = new OSMWayEdges(graph.getDirectory());
+            if (!tmpWayEdges.loadExisting())
+                throw new IllegalStateException("No edges of the OSM ways found in " + ghLocation
+                        + ", import the graph with osmreader.storeWayEdges=true");
+
+            wayEdges = tmpWayEdges;
+        }
+
+        OSMChangeReader changeReader = new OSMChangeReader(graph, wayEdges).
+                setEnableInstructions(enableInstructions);
+        try
+        {
+            changeReader.applyChanges(new File(changeFile));
+        } catch (IOException ex)
+        {
+            throw new RuntimeException("Cannot apply OSM change file " + changeFile, ex);
+        } finally
+        {
+            removeFromIndex(changeReader.getDeletedEdges());
+            prepareAgain();
+        }
+        flush();
+        return changeReader;
+    }
+
+    /**
+     * Removes the edges of deleted ways from the location index. The edges of a graph with stored
+     * way edges are not disconnected in the contraction, see initCHPrepare, so the index does not
+     * depend on the levels of the nodes and stays valid after the new preparation.
+     */
+    private void removeFromIndex( TIntArrayList deletedEdges )
+    {
+        if (locationIndex instanceof LocationIndexTree)
+        {
+            LocationIndexTree index = (LocationIndexTree) locationIndex;
+            for (int i = 0; i < deletedEdges.size(); i++)
+            {
+                index.removeEdge(deletedEdges.get(i));
+            }
+            index.flush();
+        } else if (!deletedEdges.isEmpty())
+        {
+            Directory dir = graph.getDirectory();
+            dir.remove(dir.find("loc2idIndex"));
+            locationIndex = null;
+            initLocationIndex();
+        }
+    }
+
+    /**
+     * Prepares the contraction hierarchies and landmarks again for the changed graph.
+     */
+    private void prepareAgain()
+    {
+        if (chEnabled)
+        {
+            for (LevelGraphView view : levelViews)
+            {
+                for (int node = 0; node < graph.getNodes(); node++)
+                {
+                    view.setLevel(node, 0);
+                }
+            }
+            graph.getProperties().put("prepare.done", false);
+            chPrepares.clear();
+            initCHPrepare();
+            prepare();
+        }
+
+        if (!lmPrepares.isEmpty())
+        {
+            for (PrepareLandmarks lmPrepare : lmPrepares.values())
+            {
+                lmPrepare.remove();
+            }
+            lmPrepares.clear();
+            initLandmarks();
+        }
+    }
+
     /**
      * Creates the graph from OSM data.
      */
@@ -461,9 +751,22 @@ public class GraphHopper implements GraphHopperAPI
         logger.info("start creating graph from " + osmFile);
         OSMReader reader = new OSMReader(graph, expectedCapacity).
                 setWorkerThreads(workerThreads).
+                setWayThreads(wayThreads).
                 setEncodingManager(encodingManager).
                 setWayPointMaxDistance(wayPointMaxDistance).
                 setEnableInstructions(enableInstructions);
+        if (nodeMapType != null)
+            reader.setNodeMapType(nodeMapType);
+
+        if (storeWayEdges)
+        {
+            if (sortGraph)
+                throw new IllegalStateException("Sorting the graph changes the edge ids, disable it to store the edges of the ways");
+
+            wayEdges = new OSMWayEdges(graph.getDirectory()).create(expectedCapacity);
+            reader.setWayEdges(wayEdges);
+        }
+
         logger.info("using " + graph.toString() + ", memory:" + Helper.getMemInfo());
         reader.doOSM2Graph(osmTmpFile);
         return reader;
@@ -523,6 +826,7 @@ public class GraphHopper implements GraphHopperAPI
 
         postProcessing();
         fullyLoaded = true;
+        clearRouteCache();
         return true;
     }
 
@@ -534,20 +838,87 @@ public class GraphHopper implements GraphHopperAPI
 
         if (!"true".equals(graph.getProperties().get("prepare.done")))
             prepare();
+
+        if (!chEnabled && landmarks > 0)
+            initLandmarks();
+
+        if (freezeGraph && !graph.isFrozen())
+            graph.freeze();
+
         initLocationIndex();
     }
 
+    /**
+     * Creates one preparation per vehicle. All vehicles share the edges of the graph, their
+     * shortcuts are only accessible for their own encoder. The first vehicle uses the levels of
+     * the graph, every other vehicle stores its levels separately via a LevelGraphView.
+     */
     protected void initCHPrepare()
     {
-        FlagEncoder encoder = encodingManager.getSingle();
-        PrepareContractionHierarchies tmpPrepareCH = new PrepareContractionHierarchies(encoder,
-                createWeighting(chWeighting, encoder));
-        tmpPrepareCH.setPeriodicUpdates(periodicUpdates).
-                setLazyUpdates(lazyUpdates).
-                setNeighborUpdates(neighborUpdates);
+        LevelGraphStorage lgs = (LevelGraphStorage) graph;
+        boolean prepareDone = "true".equals(graph.getProperties().get("prepare.done"));
+        int vehicles = encodingManager.getVehicleCount();
+        for (int i = 0; i < vehicles; i++)
+        {
+            FlagEncoder encoder = encodingManager.getEncoder(i);
+            LevelGraph levelGraph = lgs;
+            if (i > 0)
+            {
+                LevelGraphView view;
+                if (i <= levelViews.size())
+                {
+                    // prepared again, see applyChanges
+                    view = levelViews.get(i - 1);
+                } else
+                {
+                    view = new LevelGraphView(lgs, encoder.toString());
+                    if (prepareDone)
+                    {
+                        if (!view.loadExisting())
+                            throw new IllegalStateException("Cannot load levels of " + encoder + " from " + lgs.getDirectory());
+                    } else
+                        view.create(graph.getNodes());
+
+                    levelViews.add(view);
+                }
+                levelGraph = view;
+            }
 
-        prepare = tmpPrepareCH;
-        prepare.setGraph(graph);
+            PrepareContractionHierarchies tmpPrepareCH = new PrepareContractionHierarchies(encoder,
+                    createWeighting(chWeighting, encoder));
+            tmpPrepareCH.setPeriodicUpdates(periodicUpdates).
+                    setLazyUpdates(lazyUpdates).
+                    setNeighborUpdates(neighborUpdates).
+                    setThreads(prepareThreads).
+                    setUnpackCacheSize(unpackCacheSize).
+                    // the edges are shared and must not be disconnected for the other vehicles. Also
+                    // not if OSM changes are applied, as the location index is kept then, see applyChanges
+                    setRemoveHigher2LowerEdges(vehicles == 1 && !storeWayEdges && wayEdges == null);
+            tmpPrepareCH.setGraph(levelGraph);
+            chPrepares.put(encoder, tmpPrepareCH);
+            if (i == 0)
+                prepare = tmpPrepareCH;
+        }
+    }
+
+    /**
+     * Loads or prepares the landmarks of every vehicle.
+     */
+    protected void initLandmarks()
+    {
+        for (int i = 0; i < encodingManager.getVehicleCount(); i++)
+        {
+            FlagEncoder encoder = encodingManager.getEncoder(i);
+            PrepareLandmarks lmPrepare = new PrepareLandmarks(graph.getDirectory(), encoder,
+                    createWeighting(landmarkWeighting, encoder)).setLandmarks(landmarks);
+            lmPrepare.setGraph(graph);
+            if (!lmPrepare.loadExisting())
+            {
+                logger.info("calling landmark prepare.doWork for " + encoder + " ... (" + Helper.getMemInfo() + ")");
+                lmPrepare.doWork();
+            }
+            lmPrepares.put(encoder, lmPrepare);
+        }
     }
 
     protected Weighting createWeighting( String weighting, FlagEncoder encoder )
@@ -561,11 +932,30 @@ public class GraphHopper implements GraphHopperAPI
 
     @Override
     public GHResponse route( GHRequest request )
+    {
+        changesLock.readLock().lock();
+        try
+        {
+            return route(request, null);
+        } finally
+        {
+            changesLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Must only be called while the read lock of changesLock is held, routeBatch holds it for its
+     * threads.
+     * <p/>
+     * @param snapped the snapped points of the request or null if they have to be looked up here
+     */
+    private GHResponse route( GHRequest request, List<QueryResult> snapped )
     {
         request.check();
         if (graph == null || !fullyLoaded)
             throw new IllegalStateException("Call load or importOrLoad before routing");
 
+        long startMillis = System.currentTimeMillis();
         StopWatch sw = new StopWatch().start();
         GHResponse rsp = new GHResponse();
 
@@ -577,77 +967,636 @@ public class GraphHopper implements GraphHopperAPI
 
         FlagEncoder encoder = encodingManager.getEncoder(request.getVehicle());
         EdgeFilter edgeFilter = new DefaultEdgeFilter(encoder);
-        QueryResult fromRes = locationIndex.findClosest(request.getFrom().lat, request.getFrom().lon, edgeFilter);
-        QueryResult toRes = locationIndex.findClosest(request.getTo().lat, request.getTo().lon, edgeFilter);
+        List<GHPlace> places = request.getPoints();
+        final List<QueryResult> results = snapped == null
+                ? new ArrayList<QueryResult>(places.size()) : snapped;
+        for (int i = 0; i < places.size(); i++)
+        {
+            GHPlace place = places.get(i);
+            QueryResult res = snapped == null
+                    ? locationIndex.findClosest(place.lat, place.lon, edgeFilter) : snapped.get(i);
+            if (!res.isValid())
+                rsp.addError(new IllegalArgumentException("Cannot find point " + (i + 1) + ": " + place));
+
+            if (snapped == null)
+                results.add(res);
+        }
 
         String debug = "idLookup:" + sw.stop().getSeconds() + "s";
+        String cacheKey = null;
+        if (routeCache != null && !rsp.hasErrors())
+        {
+            cacheKey = createCacheKey(request, results);
+            GHResponse cached = routeCache.get(cacheKey);
+            if (cached != null)
+                return copy(cached).setDebugInfo(debug + ", cached");
+        }
 
-        if (!fromRes.isValid())
-            rsp.addError(new IllegalArgumentException("Cannot find point 1: " + request.getFrom()));
+        sw = new StopWatch().start();
+        // the budget is per leg, the deadline for the whole request
+        Number maxVisitedNodes = request.getHint("maxVisitedNodes", (Number) Integer.MAX_VALUE);
+        Number timeout = request.getHint("timeout", (Number) Long.MAX_VALUE);
+        long deadline = timeout.longValue() >= Long.MAX_VALUE - startMillis
+                ? Long.MAX_VALUE : startMillis + timeout.longValue();
+        final int legs = results.size() - 1;
+        final RoutingAlgorithm[] algos = new RoutingAlgorithm[legs];
+        for (int i = 0; i < legs; i++)
+        {
+            algos[i] = createAlgo(request, encoder, rsp);
+            if (rsp.hasErrors())
+                return rsp;
 
-        if (!toRes.isValid())
-            rsp.addError(new IllegalArgumentException("Cannot find point 2: " + request.getTo()));
+            algos[i].setMaxVisitedNodes(maxVisitedNodes.intValue()).setDeadline(deadline).
+                    setSearchStatePool(searchStatePool);
+        }
 
+        // all legs share the virtual nodes and edges
+        final QueryGraph queryGraph = new QueryGraph(graph);
+        queryGraph.lookup(results);
+        debug += ", algoInit:" + sw.stop().getSeconds() + "s";
         sw = new StopWatch().start();
-        RoutingAlgorithm algo = null;
+
+        // per request options must not change the defaults of this instance
+        final boolean tmpCalcPoints = request.getHint("calcPoints", calcPoints);
+        final boolean tmpInstructions = tmpCalcPoints && request.getHint("instructions", enableInstructions);
+        final Path[] paths = new Path[legs];
+        boolean parallel = legs > 1 && request.getHint("legs.parallel", false);
+        if (parallel)
+        {
+            List<Callable<Path>> tasks = new ArrayList<Callable<Path>>(legs);
+            for (int i = 0; i < legs; i++)
+            {
+                final int leg = i;
+                tasks.add(new Callable<Path>()
+                {
+                    @Override
+                    public Path call()
+                    {
+                        return calcLeg(algos[leg], queryGraph, results.get(leg), results.get(leg + 1),
+                                tmpCalcPoints, tmpInstructions);
+                    }
+                });
+            }
+            try
+            {
+                List<Future<Path>> futures = getLegExecutor().invokeAll(tasks);
+                for (int i = 0; i < legs; i++)
+                {
+                    paths[i] = futures.get(i).get();
+                }
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                rsp.addError(new IllegalStateException("Interrupted while calculating the legs", ex));
+                return rsp;
+            } catch (ExecutionException ex)
+            {
+                throw new IllegalStateException("Cannot calculate the legs of " + request, ex.getCause());
+            }
+        } else
+        {
+            for (int i = 0; i < legs; i++)
+            {
+                paths[i] = calcLeg(algos[i], queryGraph, results.get(i), results.get(i + 1),
+                        tmpCalcPoints, tmpInstructions);
+            }
+        }
+        debug += ", " + algos[0].getName() + "-routing" + (legs > 1 ? " (" + legs + " legs)" : "")
+                + ":" + sw.stop().getSeconds() + "s";
+
+        for (RoutingAlgorithm algo : algos)
+        {
+            if (algo.isLimitExceeded())
+            {
+                rsp.addError(new IllegalStateException("Route calculation was stopped, the maximum of "
+                        + maxVisitedNodes + " visited nodes or the timeout of " + timeout + "ms was exceeded"));
+                return rsp.setDebugInfo(debug);
+            }
+        }
+
+        double distance = 0;
+        long millis = 0;
+        boolean found = true;
+        boolean tmpSimplify = request.getHint("simplifyRequest", simplifyRequest);
+        double minPathPrecision = request.getHint("douglas.minprecision", 1d);
+        int origPoints = 0;
+        sw = new StopWatch();
+        PointList points = tmpCalcPoints ? new PointList() : PointList.EMPTY;
+        InstructionList instructions = new InstructionList();
+        for (int i = 0; i < legs; i++)
+        {
+            Path path = paths[i];
+            debug += ", " + path.getDebugInfo();
+            distance += path.getDistance();
+            millis += path.getMillis();
+            found = found && path.isFound();
+            if (!tmpCalcPoints)
+                continue;
+
+            PointList legPoints = path.calcPoints();
+            if (tmpSimplify)
+            {
+                // simplify every leg on its own to keep the via points
+                sw.start();
+                origPoints += legPoints.getSize();
+                if (minPathPrecision > 0)
+                    new DouglasPeucker().setMaxDistance(minPathPrecision).simplify(legPoints);
+
+                sw.stop();
+            }
+
+            // the first point of a leg is the last point of the previous leg
+            for (int j = i == 0 ? 0 : 1; j < legPoints.getSize(); j++)
+            {
+                points.add(legPoints.getLatitude(j), legPoints.getLongitude(j));
+            }
+
+            if (tmpInstructions)
+            {
+                for (Instruction instr : path.calcInstructions())
+                {
+                    // only the last leg finishes the route
+                    if (instr instanceof FinishInstruction && i < legs - 1)
+                        continue;
+
+                    instructions.add(instr);
+                }
+            }
+        }
+
+        if (tmpCalcPoints)
+        {
+            rsp.setFound(found && points.getSize() > 1);
+            if (tmpSimplify)
+                debug += ", simplify (" + origPoints + "->" + points.getSize() + "):" + sw.getSeconds() + "s";
+
+            rsp.setPoints(points);
+            if (tmpInstructions)
+                rsp.setInstructions(instructions);
+        } else
+            rsp.setFound(found);
+
+        rsp.setDistance(distance).setMillis(millis).setDebugInfo(debug);
+        if (cacheKey != null)
+            routeCache.put(cacheKey, copy(rsp));
+
+        return rsp;
+    }
+
+    /**
+     * The key contains the snapped positions and all options which change the response.
+     */
+    private String createCacheKey( GHRequest request, List<QueryResult> results )
+    {
+        StringBuilder sb = new StringBuilder();
+        for (QueryResult res : results)
+        {
+            if (res.getSnappedPosition() == QueryResult.Position.TOWER)
+                sb.append("n").append(res.getClosestNode());
+            else
+                sb.append("e").append(res.getClosestEdge().getEdge()).append(",").append(res.getWayIndex()).
+                        append(",").append(res.getSnappedPoint().lat).append(",").append(res.getSnappedPoint().lon);
+
+            sb.append("|");
+        }
+        sb.append(request.getVehicle()).append("|").append(request.getWeighting()).append("|").
+                append(request.getAlgorithm()).append("|").
+                append(request.getHint("calcPoints", calcPoints)).append("|").
+                append(request.getHint("instructions", enableInstructions)).append("|").
+                append(request.getHint("simplifyRequest", simplifyRequest)).append("|").
+                append(request.getHint("douglas.minprecision", 1d));
+        return sb.toString();
+    }
+
+    /**
+     * Creates a shallow copy, e.g. to avoid changing the debug info of a cached response.
+     */
+    private static GHResponse copy( GHResponse rsp )
+    {
+        GHResponse copy = new GHResponse().setPoints(rsp.getPoints()).setDistance(rsp.getDistance()).
+                setMillis(rsp.getMillis()).setFound(rsp.isFound()).setDebugInfo(rsp.getDebugInfo());
+        copy.setInstructions(rsp.getInstructions());
+        return copy;
+    }
+
+    /**
+     * Routes all requests on batchThreads threads and returns the responses in the order of the
+     * requests. The requests are processed in the order of the spatial key of their start point,
+     * and every thread gets a range of them. So consecutive lookups and searches hit similar
+     * parts of the location index and the graph, which is a lot faster than random access for
+     * memory mapped or large graphs. The threads take the node arrays of their searches from
+     * the SearchStatePool of this instance. The points of all requests are snapped before in bulk, see
+     * LocationIndexTree.findClosest. Invalid requests do not stop the batch but their responses
+     * contain the error.
+     */
+    public GHBatchResponse routeBatch( List<GHRequest> requests )
+    {
+        changesLock.readLock().lock();
+        try
+        {
+            return routeBatchLocked(requests);
+        } finally
+        {
+            changesLock.readLock().unlock();
+        }
+    }
+
+    private GHBatchResponse routeBatchLocked( List<GHRequest> requests )
+    {
+        if (graph == null || !fullyLoaded)
+            throw new IllegalStateException("Call load or importOrLoad before routing");
+
+        StopWatch sw = new StopWatch().start();
+        final int size = requests.size();
+        final GHRequest[] sorted = new GHRequest[size];
+        final int[] order = sortSpatially(requests);
+        for (int i = 0; i < size; i++)
+        {
+            sorted[i] = requests.get(order[i]);
+        }
+
+        final List<List<QueryResult>> snapped = findClosestOfBatch(requests);
+        final GHResponse[] responses = new GHResponse[size];
+        int chunkSize = Math.max(1, Math.min(batchChunkSize, size / (batchThreads * 4)));
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(size / chunkSize + 1);
+        for (int start = 0; start < size; start += chunkSize)
+        {
+            final int from = start;
+            final int to = Math.min(size, start + chunkSize);
+            tasks.add(new Callable<Object>()
+            {
+                @Override
+                public Object call()
+                {
+                    for (int i = from; i < to; i++)
+                    {
+                        GHResponse rsp;
+                        try
+                        {
+                            rsp = route(sorted[i], snapped.get(order[i]));
+                        } catch (RuntimeException ex)
+                        {
+                            rsp = new GHResponse().addError(ex);
+                        }
+                        responses[order[i]] = rsp;
+                    }
+                    return null;
+                }
+            });
+        }
+
+        try
+        {
+            for (Future<Object> future : getBatchExecutor().invokeAll(tasks))
+            {
+                future.get();
+            }
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while routing the batch", ex);
+        } catch (ExecutionException ex)
+        {
+            throw new IllegalStateException("Cannot route the batch", ex.getCause());
+        }
+
+        GHBatchResponse rsp = new GHBatchResponse(Arrays.asList(responses), sw.stop().getSeconds());
+        logger.info("batch " + rsp + ", threads:" + batchThreads);
+        return rsp;
+    }
+
+    /**
+     * Snaps the points of all requests in bulk, separately per vehicle as the edge filter depends
+     * on it.
+     * <p/>
+     * @return the snapped points per request or null for an invalid request, its error is
+     * reported while routing
+     */
+    private List<List<QueryResult>> findClosestOfBatch( List<GHRequest> requests )
+    {
+        int size = requests.size();
+        List<List<QueryResult>> snapped = new ArrayList<List<QueryResult>>(size);
+        Map<String, List<Integer>> requestsPerVehicle = new LinkedHashMap<String, List<Integer>>();
+        for (int i = 0; i < size; i++)
+        {
+            snapped.add(null);
+            GHRequest request = requests.get(i);
+            try
+            {
+                request.check();
+            } catch (IllegalStateException ex)
+            {
+                continue;
+            }
+            if (!encodingManager.supports(request.getVehicle()))
+                continue;
+
+            List<Integer> indices = requestsPerVehicle.get(request.getVehicle());
+            if (indices == null)
+            {
+                indices = new ArrayList<Integer>();
+                requestsPerVehicle.put(request.getVehicle(), indices);
+            }
+            indices.add(i);
+        }
+
+        for (Map.Entry<String, List<Integer>> entry : requestsPerVehicle.entrySet())
+        {
+            List<GHPlace> places = new ArrayList<GHPlace>();
+            for (int index : entry.getValue())
+            {
+                places.addAll(requests.get(index).getPoints());
+            }
+
+            FlagEncoder encoder = encodingManager.getEncoder(entry.getKey());
+            List<QueryResult> results = findClosest(places, new DefaultEdgeFilter(encoder));
+            int start = 0;
+            for (int index : entry.getValue())
+            {
+                int end = start + requests.get(index).getPoints().size();
+                snapped.set(index, new ArrayList<QueryResult>(results.subList(start, end)));
+                start = end;
+            }
+        }
+        return snapped;
+    }
+
+    /**
+     * @return the indices of the requests sorted by the spatial key of their start point
+     */
+    private int[] sortSpatially( List<GHRequest> requests )
+    {
+        SpatialKeyAlgo keyAlgo = new SpatialKeyAlgo(48);
+        int size = requests.size();
+        final long[] keys = new long[size];
+        Integer[] indices = new Integer[size];
+        for (int i = 0; i < size; i++)
+        {
+            indices[i] = i;
+            List<GHPlace> points = requests.get(i).getPoints();
+            GHPlace from = points.isEmpty() ? null : points.get(0);
+            // invalid requests are sorted to the end and reported while routing
+            keys[i] = from == null ? Long.MAX_VALUE : keyAlgo.encode(from.lat, from.lon);
+        }
+        Arrays.sort(indices, new Comparator<Integer>()
+        {
+            @Override
+            public int compare( Integer o1, Integer o2 )
+            {
+                long k1 = keys[o1];
+                long k2 = keys[o2];
+                return k1 < k2 ? -1 : (k1 == k2 ? 0 : 1);
+            }
+        });
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            order[i] = indices[i];
+        }
+        return order;
+    }
+
+    private synchronized ExecutorService getBatchExecutor()
+    {
+        if (batchExecutor == null)
+            batchExecutor = Executors.newFixedThreadPool(batchThreads, createDaemonThreadFactory("gh-batch"));
+
+        return batchExecutor;
+    }
+
+    /**
+     * Calculates one leg of a route. The points and instructions are calculated here too, so that
+     * this is done in parallel for the legs if enabled.
+     */
+    private Path calcLeg( RoutingAlgorithm algo, QueryGraph queryGraph, QueryResult fromRes, QueryResult toRes,
+            boolean calcPoints, boolean calcInstructions )
+    {
+        Path path = algo.calcPath(queryGraph, fromRes.getClosestNode(), toRes.getClosestNode());
+        if (calcPoints)
+            path.calcPoints();
+
+        if (calcInstructions)
+            path.calcInstructions();
+
+        return path;
+    }
+
+    private synchronized ExecutorService getLegExecutor()
+    {
+        if (legExecutor == null)
+            legExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    createDaemonThreadFactory("gh-legs"));
+
+        return legExecutor;
+    }
+
+    private static ThreadFactory createDaemonThreadFactory( final String name )
+    {
+        return new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( Runnable r )
+            {
+                Thread thread = new Thread(r, name);
+                // do not prevent the JVM from exiting if close was not called
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Creates a new algorithm for the specified request without changing the state of this
+     * instance. Errors are added to the specified response.
+     */
+    protected RoutingAlgorithm createAlgo( GHRequest request, FlagEncoder encoder, GHResponse rsp )
+    {
         if (chEnabled)
         {
-            if (prepare == null)
+            PrepareContractionHierarchies chPrepare = chPrepares.get(encoder);
+            if (chPrepare == null)
                 throw new IllegalStateException("Preparation object is null. CH-preparation wasn't done or did you forgot to call disableCHShortcuts()?");
 
             if (request.getAlgorithm().equals("dijkstrabi"))
-                algo = prepare.createAlgo();
+                return chPrepare.createAlgo();
             else if (request.getAlgorithm().equals("astarbi"))
-                algo = ((PrepareContractionHierarchies) prepare).createAStar();
-            else
-                rsp.addError(new IllegalStateException("Only dijkstrabi and astarbi is supported for LevelGraph (using contraction hierarchies)!"));
+                return chPrepare.createAStar();
 
-        } else
+            rsp.addError(new IllegalStateException("Only dijkstrabi and astarbi is supported for LevelGraph (using contraction hierarchies)!"));
+            return null;
+        }
+
+        Weighting weighting = createWeighting(request.getWeighting(), encoder);
+        if ("alt".equals(request.getAlgorithm()))
         {
-            Weighting weighting = createWeighting(request.getWeighting(), encoder);
-            prepare = NoOpAlgorithmPreparation.createAlgoPrepare(graph, request.getAlgorithm(),
-                    encoder, weighting);
-            algo = prepare.createAlgo();
+            PrepareLandmarks lmPrepare = lmPrepares.get(encoder);
+            if (lmPrepare == null || !lmPrepare.getWeighting().toString().equals(weighting.toString()))
+            {
+                rsp.addError(new IllegalArgumentException("The algorithm alt needs landmarks prepared for " + weighting
+                        + ", see prepare.landmarks"));
+                return null;
+            }
+            return lmPrepare.createAlgo();
         }
+        return NoOpAlgorithmPreparation.createAlgoPrepare(graph, request.getAlgorithm(),
+                encoder, weighting).createAlgo();
+    }
 
-        if (rsp.hasErrors())
-            return rsp;
+    /**
+     * Calculates the distances and times from every source to every target without creating the
+     * paths. This is only supported for contraction hierarchies and is a lot faster than calling
+     * route for every pair. If sources and targets are the same list the points are snapped only
+     * once.
+     */
+    public GHMatrixResponse matrix( List<GHPlace> sources, List<GHPlace> targets, String vehicle )
+    {
+        changesLock.readLock().lock();
+        try
+        {
+            return matrixLocked(sources, targets, vehicle);
+        } finally
+        {
+            changesLock.readLock().unlock();
+        }
+    }
 
-        debug += ", algoInit:" + sw.stop().getSeconds() + "s";
-        sw = new StopWatch().start();
+    private GHMatrixResponse matrixLocked( List<GHPlace> sources, List<GHPlace> targets, String vehicle )
+    {
+        if (graph == null || !fullyLoaded)
+            throw new IllegalStateException("Call load or importOrLoad before routing");
 
-        Path path = algo.calcPath(fromRes, toRes);
-        debug += ", " + algo.getName() + "-routing:" + sw.stop().getSeconds() + "s, " + path.getDebugInfo();
+        GHMatrixResponse rsp = new GHMatrixResponse();
+        if (!chEnabled)
+        {
+            rsp.addError(new IllegalStateException("The matrix is only supported for contraction hierarchies"));
+            return rsp;
+        }
 
-        calcPoints = request.getHint("calcPoints", calcPoints);
-        if (calcPoints)
+        if (!encodingManager.supports(vehicle))
         {
-            PointList points = path.calcPoints();
-            rsp.setFound(points.getSize() > 1);
-            simplifyRequest = request.getHint("simplifyRequest", simplifyRequest);
-            if (simplifyRequest)
-            {
-                sw = new StopWatch().start();
-                int orig = points.getSize();
-                double minPathPrecision = request.getHint("douglas.minprecision", 1d);
-                if (minPathPrecision > 0)
-                    new DouglasPeucker().setMaxDistance(minPathPrecision).simplify(points);
+            rsp.addError(new IllegalArgumentException("Vehicle " + vehicle + " unsupported. Supported are: " + getEncodingManager()));
+            return rsp;
+        }
 
-                debug += ", simplify (" + orig + "->" + points.getSize() + "):" + sw.stop().getSeconds() + "s";
+        StopWatch sw = new StopWatch().start();
+        FlagEncoder encoder = encodingManager.getEncoder(vehicle);
+        EdgeFilter edgeFilter = new DefaultEdgeFilter(encoder);
+        List<QueryResult> fromResults = findClosest(sources, edgeFilter);
+        for (int i = 0; i < fromResults.size(); i++)
+        {
+            if (!fromResults.get(i).isValid())
+                rsp.addError(new IllegalArgumentException("Cannot find source point: " + sources.get(i)));
+        }
+        List<QueryResult> toResults = fromResults;
+        if (targets != sources)
+        {
+            toResults = findClosest(targets, edgeFilter);
+            for (int i = 0; i < toResults.size(); i++)
+            {
+                if (!toResults.get(i).isValid())
+                    rsp.addError(new IllegalArgumentException("Cannot find target point: " + targets.get(i)));
             }
-            rsp.setPoints(points);
+        }
+        if (rsp.hasErrors())
+            return rsp;
 
-            enableInstructions = request.getHint("instructions", enableInstructions);
-            if (enableInstructions)
+        String debug = "idLookup:" + sw.stop().getSeconds() + "s";
+        sw = new StopWatch().start();
+        ManyToManyCH algo = chPrepares.get(encoder).createManyToMany().
+                setSearchStatePool(searchStatePool).calcMatrix(fromResults, toResults);
+        debug += ", " + algo + ":" + sw.stop().getSeconds() + "s, visited nodes:" + algo.getVisitedNodes();
+        return rsp.setDistances(algo.getDistances()).setMillis(algo.getMillis()).setDebugInfo(debug);
+    }
+
+    /**
+     * Snaps all places. Bigger lists are looked up in bulk and in parallel if the index supports
+     * it.
+     */
+    private List<QueryResult> findClosest( List<GHPlace> places, EdgeFilter edgeFilter )
+    {
+        int size = places.size();
+        if (size >= BULK_LOOKUP_SIZE && locationIndex instanceof LocationIndexTree)
+        {
+            double[] lats = new double[size];
+            double[] lons = new double[size];
+            for (int i = 0; i < size; i++)
             {
-                sw = new StopWatch().start();
-                rsp.setInstructions(path.calcInstructions());
-                debug += ", instructions:" + sw.stop().getSeconds() + "s";
+                lats[i] = places.get(i).lat;
+                lons[i] = places.get(i).lon;
             }
-        } else
-            rsp.setFound(path.isFound());
+            ExecutorService executor = batchThreads > 1 ? getBatchExecutor() : null;
+            return ((LocationIndexTree) locationIndex).findClosest(lats, lons, edgeFilter, executor);
+        }
 
-        return rsp.setDistance(path.getDistance()).setMillis(path.getMillis()).setDebugInfo(debug);
+        List<QueryResult> results = new ArrayList<QueryResult>(size);
+        for (GHPlace place : places)
+        {
+            results.add(locationIndex.findClosest(place.lat, place.lon, edgeFilter));
+        }
+        return results;
+    }
+
+    /**
+     * Calculates the area which is reachable from the specified point within the specified time.
+     * This is a bounded search on the whole road network and so it is only supported if contraction
+     * hierarchies are disabled.
+     */
+    public GHIsochroneResponse isochrone( GHPlace place, String vehicle, long maxMillis )
+    {
+        changesLock.readLock().lock();
+        try
+        {
+            return isochroneLocked(place, vehicle, maxMillis);
+        } finally
+        {
+            changesLock.readLock().unlock();
+        }
+    }
+
+    private GHIsochroneResponse isochroneLocked( GHPlace place, String vehicle, long maxMillis )
+    {
+        if (graph == null || !fullyLoaded)
+            throw new IllegalStateException("Call load or importOrLoad before routing");
+
+        GHIsochroneResponse rsp = new GHIsochroneResponse();
+        if (chEnabled)
+        {
+            rsp.addError(new IllegalStateException("The isochrone is not supported for contraction hierarchies"));
+            return rsp;
+        }
+
+        if (!encodingManager.supports(vehicle))
+        {
+            rsp.addError(new IllegalArgumentException("Vehicle " + vehicle + " unsupported. Supported are: " + getEncodingManager()));
+            return rsp;
+        }
+
+        if (maxMillis < 0)
+        {
+            rsp.addError(new IllegalArgumentException("The time limit must not be negative: " + maxMillis));
+            return rsp;
+        }
+
+        StopWatch sw = new StopWatch().start();
+        FlagEncoder encoder = encodingManager.getEncoder(vehicle);
+        QueryResult res = locationIndex.findClosest(place.lat, place.lon, new DefaultEdgeFilter(encoder));
+        if (!res.isValid())
+        {
+            rsp.addError(new IllegalArgumentException("Cannot find point: " + place));
+            return rsp;
+        }
+
+        QueryGraph queryGraph = new QueryGraph(graph);
+        queryGraph.lookup(Arrays.asList(res));
+        String debug = "idLookup:" + sw.stop().getSeconds() + "s";
+        sw = new StopWatch().start();
+        Isochrone isochrone = new Isochrone(queryGraph, encoder).setTimeLimit(maxMillis).
+                setSearchStatePool(searchStatePool).search(res.getClosestNode());
+        debug += ", isochrone:" + sw.stop().getSeconds() + "s, visited nodes:" + isochrone.getVisitedNodes();
+        return rsp.setPolygon(isochrone.calcPolygon()).
+                setPoints(isochrone.calcPoints(), isochrone.getMillis().toArray()).
+                setDebugInfo(debug);
     }
 
     protected LocationIndex createLocationIndex( Directory dir )
@@ -665,6 +1614,7 @@ public class GraphHopper implements GraphHopperAPI
             }
             tmpNIndex.setResolution(preciseIndexResolution);
             tmpNIndex.setSearchRegion(searchRegion);
+            tmpNIndex.setPrepareThreads(indexThreads);
             tmpIndex = tmpNIndex;
         } else
         {
@@ -712,12 +1662,18 @@ public class GraphHopper implements GraphHopperAPI
         boolean tmpPrepare = doPrepare && prepare != null;
         if (tmpPrepare)
         {
-            if (prepare instanceof PrepareContractionHierarchies && encodingManager.getVehicleCount() > 1)
-                throw new IllegalArgumentException("Contraction hierarchies preparation "
-                        + "requires (at the moment) only one vehicle. But was:" + encodingManager);
-
-            logger.info("calling prepare.doWork ... (" + Helper.getMemInfo() + ")");
-            prepare.doWork();
+            if (chPrepares.isEmpty())
+            {
+                logger.info("calling prepare.doWork ... (" + Helper.getMemInfo() + ")");
+                prepare.doWork();
+            } else
+            {
+                for (Map.Entry<FlagEncoder, PrepareContractionHierarchies> e : chPrepares.entrySet())
+                {
+                    logger.info("calling prepare.doWork for " + e.getKey() + " ... (" + Helper.getMemInfo() + ")");
+                    e.getValue().doWork();
+                }
+            }
         }
         graph.getProperties().put("prepare.done", tmpPrepare);
     }
@@ -743,7 +1699,24 @@ public class GraphHopper implements GraphHopperAPI
         logger.info("flushing graph " + graph.toString() + ", details:" + graph.toDetailsString() + ", "
                 + Helper.getMemInfo() + ")");
         graph.flush();
+        for (LevelGraphView view : levelViews)
+        {
+            view.flush();
+        }
+        for (PrepareLandmarks lmPrepare : lmPrepares.values())
+        {
+            lmPrepare.flush();
+        }
+        if (wayEdges != null)
+            wayEdges.flush();
+
         fullyLoaded = true;
+        clearRouteCache();
+    }
+
+    SearchStatePool getSearchStatePool()
+    {
+        return searchStatePool;
     }
 
     void close()
@@ -751,8 +1724,45 @@ public class GraphHopper implements GraphHopperAPI
         if (graph != null)
             graph.close();
 
+        for (LevelGraphView view : levelViews)
+        {
+            view.close();
+        }
+        for (PrepareLandmarks lmPrepare : lmPrepares.values())
+        {
+            lmPrepare.close();
+        }
+
         if (locationIndex != null)
             locationIndex.close();
+
+        if (wayEdges != null)
+        {
+            wayEdges.close();
+            wayEdges = null;
+        }
+
+        clearRouteCache();
+        searchStatePool.clear();
+        synchronized (this)
+        {
+            if (legExecutor != null)
+            {
+                legExecutor.shutdown();
+                legExecutor = null;
+            }
+            if (batchExecutor != null)
+            {
+                batchExecutor.shutdown();
+                batchExecutor = null;
+            }
+        }
+    }
+
+    private void clearRouteCache()
+    {
+        if (routeCache != null)
+            routeCache.clear();
     }
 
     protected void ensureNotLoaded()
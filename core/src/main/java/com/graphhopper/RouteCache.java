@@ -0,0 +1,125 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded least recently used cache for the responses of GraphHopper.route. The keys are
+ * created from the snapped locations and the request options, so requests which snap to the same
+ * positions share one entry. Entries older than the time to live are ignored. Thread safe.
+ * <p/>
+ * @see GraphHopper#setRouteCache(int, long)
+ * @author Peter Karich
+ */
+public class RouteCache
+{
+    private final Map<String, Entry> map;
+    private final long ttlMillis;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param ttlMillis the maximum age of an entry in milliseconds, 0 means no limit
+     */
+    public RouteCache( final int maxSize, long ttlMillis )
+    {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize has to be positive but was " + maxSize);
+        if (ttlMillis < 0)
+            throw new IllegalArgumentException("ttl cannot be negative but was " + ttlMillis);
+
+        this.ttlMillis = ttlMillis;
+        map = new LinkedHashMap<String, Entry>(Math.min(maxSize, 1000), 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, Entry> eldest )
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cached response or null if not cached or expired
+     */
+    public synchronized GHResponse get( String key )
+    {
+        Entry entry = map.get(key);
+        if (entry != null && ttlMillis > 0 && System.currentTimeMillis() - entry.created > ttlMillis)
+        {
+            map.remove(key);
+            entry = null;
+        }
+
+        if (entry == null)
+        {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.response;
+    }
+
+    public synchronized void put( String key, GHResponse response )
+    {
+        map.put(key, new Entry(response, System.currentTimeMillis()));
+    }
+
+    /**
+     * Removes all entries, e.g. if the graph changed. The counters are not reset.
+     */
+    public synchronized void clear()
+    {
+        map.clear();
+    }
+
+    public synchronized int getSize()
+    {
+        return map.size();
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "size:" + map.size() + ", hits:" + hits + ", misses:" + misses;
+    }
+
+    private static class Entry
+    {
+        final GHResponse response;
+        final long created;
+
+        public Entry( GHResponse response, long created )
+        {
+            this.response = response;
+            this.created = created;
+        }
+    }
+}
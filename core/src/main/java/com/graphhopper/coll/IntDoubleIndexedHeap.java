@@ -0,0 +1,290 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap similar to IntDoubleBinHeap but every element (e.g. a node id) can be contained
+ * only once and its position is tracked in an array indexed by the element. This makes update_
+ * (decrease or increase key) and contains O(log n) and O(1) instead of a linear search. Keys are
+ * stored as double to avoid rounding the weights. Optionally elements with the same key are
+ * ordered by the element itself, so that the poll order is identical to GHTreeMapComposed, e.g.
+ * for the int priorities of the CH preparation.
+ * <p/>
+ * Elements must be none-negative and should be dense as the position array grows to the biggest
+ * element.
+ * <p/>
+ * @author Peter Karich
+ */
+public class IntDoubleIndexedHeap implements BinHeapWrapper<Number, Integer>
+{
+    private static final double GROW_FACTOR = 2.0;
+    private double[] keys;
+    private int[] elem;
+    // position of an element in the heap, 0 if not contained
+    private int[] positions;
+    private int size;
+    private int capacity;
+    private final boolean sameKeysByElement;
+
+    public IntDoubleIndexedHeap()
+    {
+        this(1000);
+    }
+
+    public IntDoubleIndexedHeap( int capacity )
+    {
+        this(capacity, false);
+    }
+
+    /**
+     * @param sameKeysByElement if true elements with the same key are polled in the order of the
+     * elements, otherwise in an undefined order
+     */
+    public IntDoubleIndexedHeap( int capacity, boolean sameKeysByElement )
+    {
+        this.sameKeysByElement = sameKeysByElement;
+        if (capacity < 10)
+            capacity = 10;
+
+        this.capacity = capacity;
+        size = 0;
+        // 1-based indexing
+        elem = new int[capacity + 1];
+        keys = new double[capacity + 1];
+        positions = new int[capacity];
+    }
+
+    @Override
+    public int getSize()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public boolean contains( int element )
+    {
+        return element < positions.length && positions[element] > 0;
+    }
+
+    /**
+     * @return the key of the specified element which has to be contained
+     */
+    public double getKey( int element )
+    {
+        if (!contains(element))
+            throw new IllegalStateException("element " + element + " is not contained");
+
+        return keys[positions[element]];
+    }
+
+    @Override
+    public Double peekKey()
+    {
+        return peek_key();
+    }
+
+    public double peek_key()
+    {
+        if (size <= 0)
+            throw new IllegalStateException("An empty queue does not have a minimum key.");
+
+        return keys[1];
+    }
+
+    @Override
+    public Integer peekElement()
+    {
+        return peek_element();
+    }
+
+    public int peek_element()
+    {
+        if (size <= 0)
+            throw new IllegalStateException("An empty queue does not have a minimum value.");
+
+        return elem[1];
+    }
+
+    @Override
+    public Integer pollElement()
+    {
+        return poll_element();
+    }
+
+    public int poll_element()
+    {
+        if (size <= 0)
+            throw new IllegalStateException("An empty queue does not have a minimum value.");
+
+        int minElem = elem[1];
+        positions[minElem] = 0;
+        int lastElem = elem[size];
+        double lastKey = keys[size];
+        size--;
+        if (size > 0)
+            siftDown(1, lastKey, lastElem);
+
+        return minElem;
+    }
+
+    @Override
+    public void update( Number key, Integer element )
+    {
+        update_(key.doubleValue(), element);
+    }
+
+    /**
+     * Changes the key of the specified element.
+     * <p/>
+     * @return false if the element is not contained
+     */
+    public boolean update_( double key, int element )
+    {
+        if (!contains(element))
+            return false;
+
+        int i = positions[element];
+        if (less(keys[i], element, key, element))
+            siftDown(i, key, element);
+        else
+            siftUp(i, key, element);
+        return true;
+    }
+
+    @Override
+    public void insert( Number key, Integer element )
+    {
+        insert_(key.doubleValue(), element);
+    }
+
+    public void insert_( double key, int element )
+    {
+        if (element < 0)
+            throw new IllegalArgumentException("element must not be negative " + element);
+
+        if (element >= positions.length)
+            positions = Arrays.copyOf(positions, Math.max(element + 1, (int) (positions.length * GROW_FACTOR)));
+        else if (positions[element] > 0)
+            throw new IllegalStateException("element " + element + " is already contained. Use update_ instead");
+
+        size++;
+        if (size > capacity)
+            ensureCapacity((int) (capacity * GROW_FACTOR));
+
+        siftUp(size, key, element);
+    }
+
+    /**
+     * Inserts the element or changes its key if already contained.
+     */
+    public void insertOrUpdate( double key, int element )
+    {
+        if (!update_(key, element))
+            insert_(key, element);
+    }
+
+    private boolean less( double key1, int elem1, double key2, int elem2 )
+    {
+        return key1 < key2 || sameKeysByElement && key1 == key2 && elem1 < elem2;
+    }
+
+    private void siftUp( int i, double key, int element )
+    {
+        while (i > 1)
+        {
+            int parent = i >> 1;
+            if (!less(key, element, keys[parent], elem[parent]))
+                break;
+
+            set(i, keys[parent], elem[parent]);
+            i = parent;
+        }
+        set(i, key, element);
+    }
+
+    private void siftDown( int i, double key, int element )
+    {
+        while (i * 2 <= size)
+        {
+            int child = i * 2;
+            if (child != size && less(keys[child + 1], elem[child + 1], keys[child], elem[child]))
+                child++;
+
+            if (!less(keys[child], elem[child], key, element))
+                break;
+
+            set(i, keys[child], elem[child]);
+            i = child;
+        }
+        set(i, key, element);
+    }
+
+    private void set( int index, double key, int element )
+    {
+        keys[index] = key;
+        elem[index] = element;
+        positions[element] = index;
+    }
+
+    @Override
+    public void ensureCapacity( int capacity )
+    {
+        if (capacity < size)
+            throw new IllegalStateException("BinHeap contains too many elements to fit in new capacity.");
+
+        this.capacity = capacity;
+        keys = Arrays.copyOf(keys, capacity + 1);
+        elem = Arrays.copyOf(elem, capacity + 1);
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    @Override
+    public void clear()
+    {
+        for (int i = 1; i <= size; i++)
+        {
+            positions[elem[i]] = 0;
+        }
+        size = 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= size; i++)
+        {
+            if (i > 1)
+                sb.append(", ");
+
+            sb.append(keys[i]).append(":").append(elem[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Storable;
+import com.graphhopper.util.Helper;
+import java.io.File;
+
+/**
+ * A long->int hash map with open addressing and linear probing which stores its entries in a
+ * DataAccess. Unlike GHLongIntBTree the keys can be inserted in any order and with a MMAP or
+ * UNSAFE DataAccess the entries are not on the Java heap at all, which keeps the heap and the GC
+ * pauses small for big imports like the planet.
+ * <p/>
+ * Every slot uses 12 bytes: the key (xor Long.MIN_VALUE so that an empty, zero filled slot
+ * means no key) and the value. The table is doubled if it is more than 75% full. Delete not
+ * supported. With a storing DataAccess the map can be flushed and loaded again. Reading from
+ * several threads is possible if no thread writes at the same time.
+ * <p/>
+ * @author Peter Karich
+ */
+public class OSMIDHashMap implements LongIntMap, Storable<OSMIDHashMap>
+{
+    private static final int SLOT_BYTES = 12;
+    private static final long NO_KEY = Long.MIN_VALUE;
+    private final Directory dir;
+    private final String name;
+    private final DAType type;
+    private final int noEntryValue;
+    private final DataAccess slots;
+    private long mask;
+    private long size;
+    private long maxSize;
+
+    public OSMIDHashMap( Directory dir, String name, DAType type )
+    {
+        this(dir, name, type, -1);
+    }
+
+    /**
+     * @param noEntryValue is returned from get and put if the key does not exist
+     */
+    public OSMIDHashMap( Directory dir, String name, DAType type, int noEntryValue )
+    {
+        this.dir = dir;
+        this.name = name;
+        this.type = type;
+        this.noEntryValue = noEntryValue;
+        slots = dir.find(name, type);
+    }
+
+    /**
+     * @param initialSlots the number of slots, will be rounded up to the next power of two
+     */
+    @Override
+    public OSMIDHashMap create( long initialSlots )
+    {
+        if (initialSlots < 1)
+            throw new IllegalArgumentException("illegal number of slots " + initialSlots);
+
+        long count = Long.highestOneBit(initialSlots);
+        if (count < initialSlots)
+            count <<= 1;
+
+        count = Math.max(16, count);
+        createEmpty(slots, count * SLOT_BYTES);
+        setSlotCount(count);
+        return this;
+    }
+
+    /**
+     * Creates a DataAccess which is filled with zeros, i.e. only empty slots. A file left over
+     * from an aborted import must not be reused.
+     */
+    private void createEmpty( DataAccess da, long bytes )
+    {
+        if (!type.isInMemory())
+            Helper.removeDir(new File(dir.getLocation() + da.getName()));
+
+        da.create(bytes);
+    }
+
+    private void setSlotCount( long count )
+    {
+        mask = count - 1;
+        maxSize = count / 4 * 3;
+    }
+
+    @Override
+    public boolean loadExisting()
+    {
+        if (!slots.loadExisting())
+            return false;
+
+        setSlotCount(1L << slots.getHeader(0));
+        size = ((long) slots.getHeader(4) << 32) | (slots.getHeader(2 * 4) & 0xFFFFFFFFL);
+        return true;
+    }
+
+    @Override
+    public void flush()
+    {
+        slots.setHeader(0, Long.numberOfTrailingZeros(mask + 1));
+        slots.setHeader(4, (int) (size >>> 32));
+        slots.setHeader(2 * 4, (int) size);
+        slots.flush();
+    }
+
+    @Override
+    public void close()
+    {
+        slots.close();
+    }
+
+    @Override
+    public int put( long key, int value )
+    {
+        if (key == NO_KEY)
+            throw new IllegalArgumentException("Illegal key " + key);
+
+        long slot = findSlot(slots, key);
+        long pointer = slot * SLOT_BYTES;
+        if (getKey(slots, pointer) == key)
+        {
+            int oldValue = slots.getInt(pointer + 8);
+            slots.setInt(pointer + 8, value);
+            return oldValue;
+        }
+
+        setEntry(slots, pointer, key, value);
+        size++;
+        if (size > maxSize)
+            rehash();
+
+        return noEntryValue;
+    }
+
+    @Override
+    public int get( long key )
+    {
+        long pointer = findSlot(slots, key) * SLOT_BYTES;
+        if (getKey(slots, pointer) != key)
+            return noEntryValue;
+
+        return slots.getInt(pointer + 8);
+    }
+
+    /**
+     * @return the slot of the specified key or the empty slot where it should be inserted
+     */
+    private long findSlot( DataAccess da, long key )
+    {
+        long slot = hash(key) & mask;
+        while (true)
+        {
+            long storedKey = getKey(da, slot * SLOT_BYTES);
+            if (storedKey == key || storedKey == NO_KEY)
+                return slot;
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void rehash()
+    {
+        long oldCount = mask + 1;
+        DataAccess oldSlots = dir.find(name + "_tmp", type);
+        createEmpty(oldSlots, slots.getCapacity());
+        slots.copyTo(oldSlots);
+        for (long slot = 0; slot < oldCount; slot++)
+        {
+            setEntry(slots, slot * SLOT_BYTES, NO_KEY, 0);
+        }
+        slots.incCapacity(oldCount * 2 * SLOT_BYTES);
+        setSlotCount(oldCount * 2);
+        for (long slot = 0; slot < oldCount; slot++)
+        {
+            long pointer = slot * SLOT_BYTES;
+            long key = getKey(oldSlots, pointer);
+            if (key != NO_KEY)
+                setEntry(slots, findSlot(slots, key) * SLOT_BYTES, key, oldSlots.getInt(pointer + 8));
+        }
+        dir.remove(oldSlots);
+    }
+
+    private static long getKey( DataAccess da, long pointer )
+    {
+        long low = da.getInt(pointer) & 0xFFFFFFFFL;
+        long high = da.getInt(pointer + 4);
+        return ((high << 32) | low) ^ NO_KEY;
+    }
+
+    private static void setEntry( DataAccess da, long pointer, long key, int value )
+    {
+        long storedKey = key ^ NO_KEY;
+        da.setInt(pointer, (int) storedKey);
+        da.setInt(pointer + 4, (int) (storedKey >>> 32));
+        da.setInt(pointer + 8, value);
+    }
+
+    /**
+     * The OSM ids are mostly consecutive and so they need to be spread over the table.
+     */
+    static long hash( long key )
+    {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Removes the underlying DataAccess, e.g. the file if MMAP is used. The map cannot be used
+     * afterwards.
+     */
+    public void remove()
+    {
+        dir.remove(slots);
+    }
+
+    @Override
+    public long getSize()
+    {
+        return size;
+    }
+
+    @Override
+    public long getCapacity()
+    {
+        return slots.getCapacity();
+    }
+
+    @Override
+    public int getMemoryUsage()
+    {
+        return Math.round(getCapacity() / Helper.MB);
+    }
+
+    @Override
+    public void optimize()
+    {
+    }
+
+    @Override
+    public String toString()
+    {
+        return "hashMap|" + type + "|size:" + size + "|slots:" + (mask + 1);
+    }
+}
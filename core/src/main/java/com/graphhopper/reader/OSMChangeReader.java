@@ -0,0 +1,264 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphStorage;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import gnu.trove.list.array.TIntArrayList;
+import java.io.File;
+import java.io.IOException;
+import javax.xml.stream.XMLStreamException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies an OSM change file (.osc) to a graph which was imported with OSMReader.setWayEdges.
+ * Only changes which do not change the topology are applied: the tags of modified ways are
+ * encoded again and the flags and names of their edges are updated, the edges of deleted ways
+ * are made inaccessible for all vehicles. Such edges can be removed from the location index via
+ * LocationIndexTree.removeEdge, see getDeletedEdges. The shortcuts of a contraction hierarchy have to be removed before,
+ * see LevelGraphStorage.removeShortcuts, and the contraction hierarchies and landmarks have to be
+ * prepared again afterwards, GraphHopper.applyChanges does all this.
+ * <p/>
+ * New ways, ways with a different node list or barriers and moved or new nodes need new nodes
+ * or edges. They are skipped, logged and counted, see getSkippedWays and getSkippedNodes. If
+ * there are such changes a new import is necessary to include them.
+ * <p/>
+ * @author Peter Karich
+ */
+public class OSMChangeReader
+{
+    private static final Logger logger = LoggerFactory.getLogger(OSMChangeReader.class);
+    private final GraphStorage graph;
+    private final EncodingManager encodingManager;
+    private final OSMWayEdges wayEdges;
+    private final DistanceCalc distCalc = new DistanceCalcEarth();
+    private boolean enableInstructions = true;
+    private int modifiedWays;
+    private int deletedWays;
+    private final TIntArrayList deletedEdges = new TIntArrayList();
+    private int skippedWays;
+    private int skippedNodes;
+
+    public OSMChangeReader( GraphStorage graph, OSMWayEdges wayEdges )
+    {
+        this.graph = graph;
+        this.encodingManager = graph.getEncodingManager();
+        this.wayEdges = wayEdges;
+    }
+
+    public OSMChangeReader setEnableInstructions( boolean enableInstructions )
+    {
+        this.enableInstructions = enableInstructions;
+        return this;
+    }
+
+    public void applyChanges( File changeFile ) throws IOException
+    {
+        if (graph.isFrozen())
+            throw new IllegalStateException("Cannot apply changes to a frozen graph " + graph);
+
+        OSMInputFile in = null;
+        try
+        {
+            in = new OSMInputFile(changeFile).setElementTypes(OSMElement.NODE, OSMElement.WAY).open();
+            OSMElement item;
+            while ((item = in.getNext()) != null)
+            {
+                String action = in.getChangeAction();
+                if (action == null)
+                    throw new IllegalArgumentException("Not an OSM change file " + changeFile);
+
+                if (item.isType(OSMElement.WAY))
+                {
+                    processWay((OSMWay) item, action);
+                } else
+                {
+                    // a node change without a way change moves or removes a node of the graph
+                    skippedNodes++;
+                    if (logger.isDebugEnabled())
+                        logger.debug("skipped " + action + " of node " + item.getId());
+                }
+            }
+        } catch (XMLStreamException ex)
+        {
+            throw new RuntimeException("Couldn't process change file " + changeFile, ex);
+        } finally
+        {
+            Helper.close(in);
+        }
+
+        logger.info("applied changes of " + changeFile + ", modified ways: " + modifiedWays
+                + ", deleted ways: " + deletedWays + ", skipped ways: " + skippedWays
+                + ", skipped nodes: " + skippedNodes);
+    }
+
+    void processWay( OSMWay way, String action )
+    {
+        int record = wayEdges.getRecord(way.getId());
+        if (record < 0 || wayEdges.isDeleted(record))
+        {
+            // a deleted way which was not in the graph does not matter
+            if (!"delete".equals(action))
+                skipWay(way, action, "create".equals(action) ? "new way" : "not in the graph");
+            return;
+        }
+
+        if ("delete".equals(action))
+            deleteWay(record);
+        else if (!"modify".equals(action))
+            skipWay(way, action, "already in the graph");
+        else if (wayEdges.hasBarriers(record))
+            skipWay(way, action, "has barriers");
+        else if (wayEdges.getNodesHash(record) != OSMWayEdges.hashNodes(way.getNodes()))
+            skipWay(way, action, "nodes changed");
+        else if (!modifyWay(way, record))
+            skipWay(way, action, "edges changed");
+        else
+            modifiedWays++;
+    }
+
+    private void skipWay( OSMWay way, String action, String reason )
+    {
+        skippedWays++;
+        logger.warn("skipped " + action + " of way " + way.getId() + ", " + reason);
+    }
+
+    private void deleteWay( int record )
+    {
+        int firstEdge = wayEdges.getFirstEdge(record);
+        int edgeCount = wayEdges.getEdgeCount(record);
+        for (int edgeId = firstEdge; edgeId < firstEdge + edgeCount; edgeId++)
+        {
+            if (!graph.isEdgeRemoved(edgeId))
+            {
+                graph.getEdgeProps(edgeId, Integer.MIN_VALUE).setFlags(0);
+                deletedEdges.add(edgeId);
+            }
+        }
+        wayEdges.setDeleted(record);
+        deletedWays++;
+    }
+
+    /**
+     * @return false if the way cannot be modified as some of its edges were removed
+     */
+    private boolean modifyWay( OSMWay way, int record )
+    {
+        int firstEdge = wayEdges.getFirstEdge(record);
+        int edgeCount = wayEdges.getEdgeCount(record);
+        EdgeIteratorState[] edges = new EdgeIteratorState[edgeCount];
+        for (int i = 0; i < edgeCount; i++)
+        {
+            if (graph.isEdgeRemoved(firstEdge + i))
+                return false;
+
+            edges[i] = graph.getEdgeProps(firstEdge + i, Integer.MIN_VALUE);
+        }
+
+        // the graph does not know the direction of the way, so follow the edges from the first node
+        int from = findFirstNode(edges[0], record);
+        for (int i = 0; i < edgeCount; i++)
+        {
+            if (edges[i].getBaseNode() != from)
+            {
+                if (edges[i].getAdjNode() != from)
+                    return false;
+
+                edges[i] = graph.getEdgeProps(edges[i].getEdge(), edges[i].getBaseNode());
+            }
+            from = edges[i].getAdjNode();
+        }
+
+        long flags = 0;
+        int includeWay = way.hasTags() ? encodingManager.accept(way) : 0;
+        if (includeWay != 0)
+        {
+            // estimate length of the track e.g. for ferry speed calculation
+            int first = edges[0].getBaseNode();
+            double estimatedDist = distCalc.calcDist(graph.getLatitude(first), graph.getLongitude(first),
+                    graph.getLatitude(from), graph.getLongitude(from));
+            way.setTag("estimated_distance", estimatedDist + "");
+            flags = encodingManager.handleWayTags(includeWay, way);
+        }
+
+        String name = enableInstructions ? OSMReader.createWayName(way) : null;
+        for (EdgeIteratorState edge : edges)
+        {
+            edge.setFlags(flags);
+            if (name != null)
+                edge.setName(name);
+        }
+        return true;
+    }
+
+    private int findFirstNode( EdgeIteratorState edge, int record )
+    {
+        double lat = wayEdges.getFirstLatitude(record);
+        double lon = wayEdges.getFirstLongitude(record);
+        int base = edge.getBaseNode();
+        int adj = edge.getAdjNode();
+        if (isAt(adj, lat, lon) && !isAt(base, lat, lon))
+            return adj;
+
+        return base;
+    }
+
+    private boolean isAt( int node, double lat, double lon )
+    {
+        return Math.abs(graph.getLatitude(node) - lat) < 1e-6 && Math.abs(graph.getLongitude(node) - lon) < 1e-6;
+    }
+
+    public int getModifiedWays()
+    {
+        return modifiedWays;
+    }
+
+    public int getDeletedWays()
+    {
+        return deletedWays;
+    }
+
+    /**
+     * @return the edges of the deleted ways
+     */
+    public TIntArrayList getDeletedEdges()
+    {
+        return deletedEdges;
+    }
+
+    /**
+     * @return the number of way changes which need a new import
+     */
+    public int getSkippedWays()
+    {
+        return skippedWays;
+    }
+
+    /**
+     * @return the number of node changes which need a new import
+     */
+    public int getSkippedNodes()
+    {
+        return skippedNodes;
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.reader;
 
+import com.graphhopper.reader.pbf.PbfBlock;
 import com.graphhopper.reader.pbf.Sink;
 import com.graphhopper.reader.pbf.PbfReader;
 
@@ -26,6 +27,7 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.*;
 import java.lang.reflect.Constructor;
+import java.util.Arrays;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -43,16 +45,27 @@ public class OSMInputFile implements Sink, Closeable
     private InputStream bis;
     // for xml parsing
     private XMLStreamReader parser;
+    // create, modify or delete for OSM change files
+    private String changeAction;
     // for pbf parsing
     private boolean binary = false;
-    private final BlockingQueue<OSMElement> itemQueue;
-    private boolean hasIncomingData;
+    // the elements of one pbf blob are queued together and created when they are read
+    private final BlockingQueue<PbfBlock> blockQueue;
+    private PbfBlock currentBlock;
+    private int currentIndex;
+    private volatile boolean hasIncomingData;
     private int workerThreads = -1;
+    // per OSMElement type if the elements are returned
+    private final boolean[] acceptedTypes = new boolean[]
+    {
+        true, true, true
+    };
 
     public OSMInputFile( File file ) throws IOException
     {
         bis = decode(file);
-        itemQueue = new LinkedBlockingQueue<OSMElement>(50000);
+        // a blob contains usually 8000 elements
+        blockQueue = new LinkedBlockingQueue<PbfBlock>(8);
     }
 
     public OSMInputFile open() throws XMLStreamException
@@ -76,6 +89,20 @@ public class OSMInputFile implements Sink, Closeable
         return this;
     }
 
+    /**
+     * Only elements of the specified types like OSMElement.WAY are returned, all others are
+     * skipped. For pbf files the skipped elements are not even decoded. Default is all types.
+     */
+    public OSMInputFile setElementTypes( int... types )
+    {
+        Arrays.fill(acceptedTypes, false);
+        for (int type : types)
+        {
+            acceptedTypes[type] = true;
+        }
+        return this;
+    }
+
     @SuppressWarnings("unchecked")
     private InputStream decode( File file ) throws IOException
     {
@@ -119,7 +146,7 @@ public class OSMInputFile implements Sink, Closeable
             zip.getNextEntry();
 
             return zip;
-        } else if (name.endsWith(".osm") || name.endsWith(".xml"))
+        } else if (name.endsWith(".osm") || name.endsWith(".xml") || name.endsWith(".osc"))
         {
             ips.reset();
             return ips;
@@ -149,7 +176,8 @@ public class OSMInputFile implements Sink, Closeable
         parser = factory.createXMLStreamReader(bis, "UTF-8");
 
         int event = parser.next();
-        if (event != XMLStreamConstants.START_ELEMENT || !parser.getLocalName().equalsIgnoreCase("osm"))
+        if (event != XMLStreamConstants.START_ELEMENT
+                || !parser.getLocalName().equalsIgnoreCase("osm") && !parser.getLocalName().equals("osmChange"))
         {
             throw new IllegalArgumentException("File is not a valid OSM stream");
         }
@@ -185,20 +213,31 @@ public class OSMInputFile implements Sink, Closeable
             {
                 String name = parser.getLocalName();
                 long id = 0;
-                switch (name.charAt(0))
+                // the children of skipped elements like 'nd' or 'tag' are ignored too
+                if ("node".equals(name))
                 {
-                    case 'n':
+                    if (acceptedTypes[OSMElement.NODE])
+                    {
                         id = Long.parseLong(parser.getAttributeValue(null, "id"));
                         return new OSMNode(id, parser);
-
-                    case 'w':
+                    }
+                } else if ("way".equals(name))
+                {
+                    if (acceptedTypes[OSMElement.WAY])
                     {
                         id = Long.parseLong(parser.getAttributeValue(null, "id"));
                         return new OSMWay(id, parser);
                     }
-                    case 'r':
+                } else if ("relation".equals(name))
+                {
+                    if (acceptedTypes[OSMElement.RELATION])
+                    {
                         id = Long.parseLong(parser.getAttributeValue(null, "id"));
                         return new OSMRelation(id, parser);
+                    }
+                } else if ("create".equals(name) || "modify".equals(name) || "delete".equals(name))
+                {
+                    changeAction = name;
                 }
             }
             event = parser.next();
@@ -207,6 +246,15 @@ public class OSMInputFile implements Sink, Closeable
         return null;
     }
 
+    /**
+     * @return the action (create, modify or delete) of the element returned last from an OSM
+     * change file or null for a normal OSM file
+     */
+    public String getChangeAction()
+    {
+        return changeAction;
+    }
+
     public boolean isEOF()
     {
         return eof;
@@ -239,25 +287,31 @@ public class OSMInputFile implements Sink, Closeable
         if (workerThreads <= 0)
             workerThreads = 2;
 
-        PbfReader reader = new PbfReader(stream, this, workerThreads);
+        PbfReader reader = new PbfReader(stream, this, workerThreads, acceptedTypes.clone());
         pbfReaderThread = new Thread(reader, "PBF Reader");
         pbfReaderThread.start();
     }
 
     @Override
-    public void process( OSMElement item )
+    public void process( PbfBlock block )
     {
         try
         {
             // blocks if full
-            itemQueue.put(item);
+            blockQueue.put(block);
         } catch (InterruptedException ex)
         {
-            throw new RuntimeException(ex);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("PBF reader was interrupted", ex);
         }
+    }
 
-        // throw exception if full
-        // itemQueue.add(item);
+    /**
+     * @return the number of decoded blocks which were not yet read
+     */
+    int getQueuedBlocks()
+    {
+        return blockQueue.size();
     }
 
     @Override
@@ -268,26 +322,32 @@ public class OSMInputFile implements Sink, Closeable
 
     private OSMElement getNextPBF()
     {
-        OSMElement next = null;
-        while (next == null)
+        while (currentBlock == null || currentIndex >= currentBlock.getSize())
         {
-            if (!hasIncomingData && itemQueue.isEmpty())
+            if (!hasIncomingData && blockQueue.isEmpty())
             {
                 // we are done, stop polling
                 eof = true;
-                break;
+                return null;
             }
 
+            PbfBlock next;
             try
             {
-                // we cannot use "itemQueue.take()" as it blocks and hasIncomingData can change
-                next = itemQueue.poll(10, TimeUnit.MILLISECONDS);
+                // we cannot use "blockQueue.take()" as it blocks and hasIncomingData can change
+                next = blockQueue.poll(10, TimeUnit.MILLISECONDS);
             } catch (InterruptedException ex)
             {
                 eof = true;
-                break;
+                return null;
+            }
+            if (next != null)
+            {
+                currentBlock = next;
+                currentIndex = 0;
             }
         }
-        return next;
+
+        return currentBlock.createElement(currentIndex++);
     }
 }
@@ -19,7 +19,9 @@ package com.graphhopper.reader;
 
 import com.graphhopper.coll.GHLongIntBTree;
 import com.graphhopper.coll.LongIntMap;
+import com.graphhopper.coll.OSMIDHashMap;
 import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.DAType;
 import com.graphhopper.storage.DataAccess;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.GraphStorage;
@@ -33,6 +35,11 @@ import gnu.trove.list.array.TLongArrayList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,7 +58,10 @@ import org.slf4j.LoggerFactory;
  * <p/>
  * 2.b) Reads ways OSM file and creates edges while calculating the speed etc from the OSM tags.
  * When creating an edge the pillar node information from the intermediate datastructure will be
- * stored in the way geometry of that edge.
+ * stored in the way geometry of that edge. With more than one way thread the ways are handled in
+ * blocks: the tags are encoded and the distance and geometry of the new edges are calculated on
+ * worker threads while the node mapping and the insertion of the edges stay sequential, so the
+ * resulting graph is identical to the single threaded one.
  * <p/>
  * @author Peter Karich
  */
@@ -67,7 +77,16 @@ public class OSMReader
     private long skippedLocations;
     private final GraphStorage graphStorage;
     private EncodingManager encodingManager = null;
-    private int workerThreads = -1;    
+    private int workerThreads = -1;
+    private int wayThreads = 1;
+    // number of ways which are collected before they are processed in parallel
+    private static final int WAY_BLOCK_SIZE = 1024;
+    private final List<OSMWay> wayBlock = new ArrayList<OSMWay>(WAY_BLOCK_SIZE);
+    // if not null the distance and geometry of new edges is set later in finishEdges
+    private List<PendingEdge> pendingEdges;
+    private ExecutorService wayExecutor;
+    // if not null the edges of every way are stored to apply OSM changes later
+    private OSMWayEdges wayEdges;
     private boolean enableInstructions = true;
     protected final Directory dir;
     protected long zeroCounter = 0;
@@ -81,6 +100,7 @@ public class OSMReader
     //        nodeOsmIdToIndexMap = new BigLongIntMap(expectedNodes, EMPTY);
     // smaller memory overhead for bigger data sets because of avoiding a "rehash"
     // remember how many times a node was used to identify tower nodes
+    // for big imports see setNodeMapType: OSMIDHashMap stores the entries outside of the heap
     private LongIntMap osmNodeIdToIndexMap;
     private LongIntMap osmNodeIdToBarrierMap;
     private final TLongList barrierNodeIDs = new TLongArrayList();
@@ -135,7 +155,9 @@ public class OSMReader
         OSMInputFile in = null;
         try
         {
-            in = new OSMInputFile(osmFile).setWorkerThreads(workerThreads).open();
+            // only the ways are necessary, so skip decoding nodes and relations
+            in = new OSMInputFile(osmFile).setWorkerThreads(workerThreads).
+                    setElementTypes(OSMElement.WAY).open();
 
             long tmpCounter = 1;
 
@@ -207,9 +229,12 @@ public class OSMReader
         long wayStart = -1;
         long counter = 1;
         OSMInputFile in = null;
+        if (wayThreads > 1)
+            wayExecutor = Executors.newFixedThreadPool(wayThreads);
         try
         {
-            in = new OSMInputFile(osmFile).setWorkerThreads(workerThreads).open();
+            in = new OSMInputFile(osmFile).setWorkerThreads(workerThreads).
+                    setElementTypes(OSMElement.NODE, OSMElement.WAY).open();
             LongIntMap nodeFilter = getNodeMap();
 
             OSMElement item;
@@ -218,6 +243,8 @@ public class OSMReader
                 switch (item.getType())
                 {
                     case OSMElement.NODE:
+                        // the coordinates of the nodes are necessary for the ways read before
+                        processWayBlock();
                         if (nodeFilter.get(item.getId()) != -1)
                         {
                             processNode((OSMNode) item);
@@ -230,7 +257,15 @@ public class OSMReader
                             logger.info(nf(counter) + ", now parsing ways");
                             wayStart = counter;
                         }
-                        processWay((OSMWay) item);
+                        if (wayExecutor == null)
+                        {
+                            processWay((OSMWay) item);
+                        } else
+                        {
+                            wayBlock.add((OSMWay) item);
+                            if (wayBlock.size() >= WAY_BLOCK_SIZE)
+                                processWayBlock();
+                        }
                         break;
                 }
                 if (++counter % 5000000 == 0)
@@ -239,6 +274,7 @@ public class OSMReader
                             + " (" + skippedLocations + ") " + Helper.getMemInfo());
                 }
             }
+            processWayBlock();
 
             // logger.info("storage nodes:" + storage.nodes() + " vs. graph nodes:" + storage.getGraph().nodes());
         } catch (Exception ex)
@@ -247,6 +283,11 @@ public class OSMReader
         } finally
         {
             Helper.close(in);
+            if (wayExecutor != null)
+            {
+                wayExecutor.shutdown();
+                wayExecutor = null;
+            }
         }
 
         finishedReading();
@@ -259,16 +300,116 @@ public class OSMReader
      */
     public void processWay( OSMWay way ) throws XMLStreamException
     {
-        if (way.getNodes().size() < 2)
+        long flags = encodeWay(way);
+        if (flags != 0)
+            addWay(way, flags);
+    }
+
+    /**
+     * Processes the collected ways. The tags are encoded in parallel, then the edges are created
+     * in the order of the ways and afterwards their distance and geometry is calculated in
+     * parallel and stored in the order of the edges.
+     */
+    private void processWayBlock()
+    {
+        if (wayBlock.isEmpty())
             return;
 
+        final int size = wayBlock.size();
+        final long[] wayFlags = new long[size];
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(wayThreads);
+        for (int part = 0; part < wayThreads; part++)
+        {
+            final int from = part * size / wayThreads;
+            final int to = (part + 1) * size / wayThreads;
+            tasks.add(new Callable<Object>()
+            {
+                @Override
+                public Object call()
+                {
+                    for (int i = from; i < to; i++)
+                    {
+                        wayFlags[i] = encodeWay(wayBlock.get(i));
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+
+        pendingEdges = new ArrayList<PendingEdge>(size);
+        for (int i = 0; i < size; i++)
+        {
+            if (wayFlags[i] != 0)
+                addWay(wayBlock.get(i), wayFlags[i]);
+        }
+        wayBlock.clear();
+
+        final List<PendingEdge> edges = pendingEdges;
+        pendingEdges = null;
+        final int edgeCount = edges.size();
+        tasks.clear();
+        for (int part = 0; part < wayThreads; part++)
+        {
+            final int from = part * edgeCount / wayThreads;
+            final int to = (part + 1) * edgeCount / wayThreads;
+            tasks.add(new Callable<Object>()
+            {
+                @Override
+                public Object call()
+                {
+                    for (int i = from; i < to; i++)
+                    {
+                        calcEdge(edges.get(i));
+                    }
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+
+        for (PendingEdge edge : edges)
+        {
+            storeEdge(edge);
+        }
+    }
+
+    private void invokeAll( List<Callable<Object>> tasks )
+    {
+        try
+        {
+            for (Future<Object> future : wayExecutor.invokeAll(tasks))
+            {
+                future.get();
+            }
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Processing ways was interrupted", ex);
+        } catch (ExecutionException ex)
+        {
+            throw new IllegalStateException("Cannot process ways", ex.getCause());
+        }
+    }
+
+    /**
+     * Calculates the flags of the specified way. Only reads the node mapping and the coordinates
+     * and so it can be called from several threads.
+     * <p/>
+     * @return 0 if the way should be skipped
+     */
+    long encodeWay( OSMWay way )
+    {
+        if (way.getNodes().size() < 2)
+            return 0;
+
         // ignore multipolygon geometry
         if (!way.hasTags())
-            return;
+            return 0;
 
         int includeWay = encodingManager.accept(way);
         if (includeWay == 0)
-            return;
+            return 0;
 
         // estimate length of the track e.g. for ferry speed calculation
         TLongList osmNodeIds = way.getNodes();
@@ -286,10 +427,17 @@ public class OSMReader
             }
         }
 
-        long flags = encodingManager.handleWayTags(includeWay, way);
-        if (flags == 0)
-            return;
+        return encodingManager.handleWayTags(includeWay, way);
+    }
 
+    /**
+     * Creates the edges of the specified way, splits it at barriers and sets the name.
+     */
+    private void addWay( OSMWay way, long flags )
+    {
+        TLongList osmNodeIds = way.getNodes();
+        // the first node is replaced if it is a barrier
+        int nodesHash = wayEdges == null ? 0 : OSMWayEdges.hashNodes(osmNodeIds);
         List<EdgeIteratorState> createdEdges = new ArrayList<EdgeIteratorState>();
         // look for barriers along the way
         final int size = osmNodeIds.size();
@@ -351,27 +499,38 @@ public class OSMReader
         }
         if (enableInstructions)
         {
-            // String wayInfo = encodingManager.getWayInfo(way);
-            // http://wiki.openstreetmap.org/wiki/Key:name
-            String name = fixWayName(way.getTag("name"));
-            // http://wiki.openstreetmap.org/wiki/Key:ref
-            String refName = fixWayName(way.getTag("ref"));
-            if (!Helper.isEmpty(refName))
+            String name = createWayName(way);
+            for (EdgeIteratorState iter : createdEdges)
             {
-                if (Helper.isEmpty(name))
-                {
-                    name = refName;
-                } else
-                {
-                    name += ", " + refName;
-                }
+                iter.setName(name);
             }
+        }
+        if (wayEdges != null && !createdEdges.isEmpty())
+        {
+            int firstNode = createdEdges.get(0).getBaseNode();
+            wayEdges.add(way.getId(), createdEdges.get(0).getEdge(), createdEdges.size(), nodesHash,
+                    graphStorage.getLatitude(firstNode), graphStorage.getLongitude(firstNode), lastBarrier >= 0);
+        }
+    }
 
-            for (EdgeIteratorState iter : createdEdges)
+    static String createWayName( OSMWay way )
+    {
+        // String wayInfo = encodingManager.getWayInfo(way);
+        // http://wiki.openstreetmap.org/wiki/Key:name
+        String name = fixWayName(way.getTag("name"));
+        // http://wiki.openstreetmap.org/wiki/Key:ref
+        String refName = fixWayName(way.getTag("ref"));
+        if (!Helper.isEmpty(refName))
+        {
+            if (Helper.isEmpty(name))
             {
-                iter.setName(name);
+                name = refName;
+            } else
+            {
+                name += ", " + refName;
             }
         }
+        return name;
     }
 
     // TODO remove this ugly stuff via better preparsing phase! E.g. putting every tags etc into a helper file!
@@ -586,6 +745,27 @@ public class OSMReader
                     + fromIndex + "->" + toIndex + ", points:" + pointList);
         }
 
+        EdgeIteratorState iter = graphStorage.edge(fromIndex, toIndex).setFlags(flags);
+        if (pendingEdges == null)
+        {
+            PendingEdge edge = new PendingEdge(iter, pointList);
+            calcEdge(edge);
+            storeEdge(edge);
+        } else
+        {
+            // the point list is reused by the caller
+            pendingEdges.add(new PendingEdge(iter, pointList.clone(false)));
+        }
+        return iter;
+    }
+
+    /**
+     * Calculates the distance and the simplified pillar nodes of the edge. Can be called from
+     * several threads.
+     */
+    void calcEdge( PendingEdge edge )
+    {
+        PointList pointList = edge.points;
         double towerNodeDistance = 0;
         double prevLat = pointList.getLatitude(0);
         double prevLon = pointList.getLongitude(0);
@@ -604,6 +784,17 @@ public class OSMReader
             if (nodes > 2 && i < nodes - 1)
                 pillarNodes.add(lat, lon);
         }
+        edge.distance = towerNodeDistance;
+        if (nodes > 2)
+        {
+            simplifyAlgo.simplify(pillarNodes);
+            edge.pillarNodes = pillarNodes;
+        }
+    }
+
+    private void storeEdge( PendingEdge edge )
+    {
+        double towerNodeDistance = edge.distance;
         if (towerNodeDistance == 0)
         {
             // As investigation shows often two paths should have crossed via one identical point 
@@ -612,15 +803,26 @@ public class OSMReader
             towerNodeDistance = 0.0001;
         }
 
-        EdgeIteratorState iter = graphStorage.edge(fromIndex, toIndex).
-                setDistance(towerNodeDistance).
-                setFlags(flags);
-        if (nodes > 2)
+        edge.iter.setDistance(towerNodeDistance);
+        if (edge.pillarNodes != null)
+            edge.iter.setWayGeometry(edge.pillarNodes);
+    }
+
+    /**
+     * An edge which is already in the graph but without distance and geometry.
+     */
+    static class PendingEdge
+    {
+        final EdgeIteratorState iter;
+        final PointList points;
+        double distance;
+        PointList pillarNodes;
+
+        PendingEdge( EdgeIteratorState iter, PointList points )
         {
-            simplifyAlgo.simplify(pillarNodes);
-            iter.setWayGeometry(pillarNodes);
+            this.iter = iter;
+            this.points = points;
         }
-        return iter;
     }
 
     /**
@@ -662,6 +864,9 @@ public class OSMReader
         dir.remove(pillarLons);
         pillarLons = null;
         pillarLats = null;
+        if (osmNodeIdToIndexMap instanceof OSMIDHashMap)
+            ((OSMIDHashMap) osmNodeIdToIndexMap).remove();
+
         osmNodeIdToIndexMap = null;
         osmNodeIdToBarrierMap = null;
     }
@@ -747,12 +952,49 @@ public class OSMReader
         return this;
     }
 
+    /**
+     * Stores the mapping from the OSM node ids to the internal ids in an OSMIDHashMap with the
+     * specified DataAccess type instead of the in-memory B-Tree, e.g. DAType.MMAP keeps the heap
+     * small for a planet import. Call this before doOSM2Graph.
+     */
+    public OSMReader setNodeMapType( DAType type )
+    {
+        if (getNodeMap().getSize() > 0)
+            throw new IllegalStateException("Cannot change the node map after it was filled");
+
+        osmNodeIdToIndexMap = new OSMIDHashMap(dir, "tmpOsmNodeIds", type, EMPTY).create(expectedNodes);
+        return this;
+    }
+
+    /**
+     * Stores the edges of every way into the specified object, which is necessary to apply OSM
+     * change files to the graph later.
+     */
+    public OSMReader setWayEdges( OSMWayEdges wayEdges )
+    {
+        this.wayEdges = wayEdges;
+        return this;
+    }
+
     public OSMReader setWorkerThreads( int numOfWorkers )
     {
         this.workerThreads = numOfWorkers;
         return this;
     }
 
+    /**
+     * Sets the number of threads which encode the ways and calculate the edge geometries when
+     * creating the graph. The default is 1.
+     */
+    public OSMReader setWayThreads( int wayThreads )
+    {
+        if (wayThreads < 1)
+            throw new IllegalArgumentException("At least one way thread is necessary but was " + wayThreads);
+
+        this.wayThreads = wayThreads;
+        return this;
+    }
+
     private void printInfo( String str )
     {
         LoggerFactory.getLogger(getClass()).info("finished " + str + " processing."
@@ -58,10 +58,18 @@ public class OSMWay extends OSMElement
      * @param tags
      */
     public OSMWay( long id, Map<String, String> tags )
+    {
+        this(id, tags, 10);
+    }
+
+    /**
+     * @param nodeCapacity the expected number of nodes
+     */
+    public OSMWay( long id, Map<String, String> tags, int nodeCapacity )
     {
         super(id, WAY, tags);
 
-        nodes = new TLongArrayList();
+        nodes = new TLongArrayList(nodeCapacity);
     }
 
     public OSMWay( long id )
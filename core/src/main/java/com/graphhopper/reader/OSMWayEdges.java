@@ -0,0 +1,183 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader;
+
+import com.graphhopper.coll.OSMIDHashMap;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Storable;
+import com.graphhopper.util.Helper;
+import gnu.trove.list.TLongList;
+
+/**
+ * Stores for every imported OSM way the edges which were created for it, so that an OSM change
+ * file can be applied to the graph later, see OSMChangeReader. The edges of one way are created
+ * one after another and so only the first edge and the number of edges are stored, plus a hash
+ * of the node ids to detect geometry changes and the coordinate of the first node to find out
+ * the direction of the edges.
+ * <p/>
+ * The edge ids must not change after the import, so the graph must not be sorted.
+ * <p/>
+ * @author Peter Karich
+ */
+public class OSMWayEdges implements Storable<OSMWayEdges>
+{
+    private static final int FIRST_EDGE = 0, EDGE_COUNT = 4, NODES_HASH = 8, FIRST_LAT = 12,
+            FIRST_LON = 16, FLAGS = 20, RECORD_BYTES = 24;
+    // the way was split at barriers and so its edges do not have the same flags
+    private static final int BARRIER_FLAG = 1;
+    private static final int DELETED_FLAG = 2;
+    private final OSMIDHashMap wayIds;
+    private final DataAccess records;
+    private int recordCount;
+
+    public OSMWayEdges( Directory dir )
+    {
+        wayIds = new OSMIDHashMap(dir, "osm_way_ids", dir.getDefaultType());
+        records = dir.find("osm_way_edges");
+    }
+
+    /**
+     * @param expectedWays the initial capacity
+     */
+    @Override
+    public OSMWayEdges create( long expectedWays )
+    {
+        wayIds.create(expectedWays);
+        records.create(Math.max(expectedWays, 10) * RECORD_BYTES);
+        return this;
+    }
+
+    @Override
+    public boolean loadExisting()
+    {
+        if (!records.loadExisting() || !wayIds.loadExisting())
+            return false;
+
+        recordCount = records.getHeader(0);
+        return true;
+    }
+
+    /**
+     * Stores the edges created for the specified way, an existing entry is replaced.
+     */
+    public void add( long wayId, int firstEdge, int edgeCount, int nodesHash,
+            double firstLat, double firstLon, boolean barriers )
+    {
+        int record = recordCount++;
+        long pointer = (long) record * RECORD_BYTES;
+        records.incCapacity(pointer + RECORD_BYTES);
+        records.setInt(pointer + FIRST_EDGE, firstEdge);
+        records.setInt(pointer + EDGE_COUNT, edgeCount);
+        records.setInt(pointer + NODES_HASH, nodesHash);
+        records.setInt(pointer + FIRST_LAT, Helper.degreeToInt(firstLat));
+        records.setInt(pointer + FIRST_LON, Helper.degreeToInt(firstLon));
+        records.setInt(pointer + FLAGS, barriers ? BARRIER_FLAG : 0);
+        wayIds.put(wayId, record);
+    }
+
+    /**
+     * @return the record of the specified way or -1 if no edges were created for it
+     */
+    public int getRecord( long wayId )
+    {
+        return wayIds.get(wayId);
+    }
+
+    public int getFirstEdge( int record )
+    {
+        return records.getInt((long) record * RECORD_BYTES + FIRST_EDGE);
+    }
+
+    public int getEdgeCount( int record )
+    {
+        return records.getInt((long) record * RECORD_BYTES + EDGE_COUNT);
+    }
+
+    public int getNodesHash( int record )
+    {
+        return records.getInt((long) record * RECORD_BYTES + NODES_HASH);
+    }
+
+    public double getFirstLatitude( int record )
+    {
+        return Helper.intToDegree(records.getInt((long) record * RECORD_BYTES + FIRST_LAT));
+    }
+
+    public double getFirstLongitude( int record )
+    {
+        return Helper.intToDegree(records.getInt((long) record * RECORD_BYTES + FIRST_LON));
+    }
+
+    public boolean hasBarriers( int record )
+    {
+        return (records.getInt((long) record * RECORD_BYTES + FLAGS) & BARRIER_FLAG) != 0;
+    }
+
+    public boolean isDeleted( int record )
+    {
+        return (records.getInt((long) record * RECORD_BYTES + FLAGS) & DELETED_FLAG) != 0;
+    }
+
+    public void setDeleted( int record )
+    {
+        long pointer = (long) record * RECORD_BYTES + FLAGS;
+        records.setInt(pointer, records.getInt(pointer) | DELETED_FLAG);
+    }
+
+    /**
+     * @return the number of stored ways
+     */
+    public long getSize()
+    {
+        return wayIds.getSize();
+    }
+
+    static int hashNodes( TLongList osmNodeIds )
+    {
+        int hash = 1;
+        int size = osmNodeIds.size();
+        for (int i = 0; i < size; i++)
+        {
+            long id = osmNodeIds.get(i);
+            hash = 31 * hash + (int) (id ^ (id >>> 32));
+        }
+        return hash;
+    }
+
+    @Override
+    public void flush()
+    {
+        records.setHeader(0, recordCount);
+        records.flush();
+        wayIds.flush();
+    }
+
+    @Override
+    public void close()
+    {
+        records.close();
+        wayIds.close();
+    }
+
+    @Override
+    public long getCapacity()
+    {
+        return records.getCapacity() + wayIds.getCapacity();
+    }
+}
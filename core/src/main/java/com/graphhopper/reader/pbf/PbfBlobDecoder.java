@@ -1,15 +1,15 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.pbf;
 
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
 import com.graphhopper.reader.OSMElement;
-import com.graphhopper.reader.OSMNode;
 import com.graphhopper.reader.OSMRelation;
-import com.graphhopper.reader.OSMWay;
 import org.openstreetmap.osmosis.osmbinary.Fileformat;
 import org.openstreetmap.osmosis.osmbinary.Osmformat;
-import gnu.trove.list.TLongList;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.*;
 import java.util.logging.Level;
@@ -31,7 +31,8 @@ public class PbfBlobDecoder implements Runnable
     private String blobType;
     private byte[] rawBlob;
     private PbfBlobDecoderListener listener;
-    private List<OSMElement> decodedEntities;
+    private PbfBlock decodedBlock;
+    private final boolean[] acceptedTypes;
 
     /**
      * Creates a new instance.
@@ -39,12 +40,15 @@ public class PbfBlobDecoder implements Runnable
      * @param blobType The type of blob.
      * @param rawBlob The raw data of the blob.
      * @param listener The listener for receiving decoding results.
+     * @param acceptedTypes Specifies per OSMElement type if the entities should be decoded.
      */
-    public PbfBlobDecoder( String blobType, byte[] rawBlob, PbfBlobDecoderListener listener )
+    public PbfBlobDecoder( String blobType, byte[] rawBlob, PbfBlobDecoderListener listener,
+            boolean[] acceptedTypes )
     {
         this.blobType = blobType;
         this.rawBlob = rawBlob;
         this.listener = listener;
+        this.acceptedTypes = acceptedTypes;
     }
 
     private byte[] readBlobContent() throws IOException
@@ -136,33 +140,32 @@ public class PbfBlobDecoder implements Runnable
             }
         }
 
-        Iterator<Integer> keyIterator = keys.iterator();
-        Iterator<Integer> valueIterator = values.iterator();
-        if (keyIterator.hasNext())
+        int size = keys.size();
+        if (size == 0)
+            return null;
+
+        // the strings are shared via the string table of the block, only the map is created
+        Map<String, String> tags = new HashMap<String, String>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++)
         {
-            Map<String, String> tags = new HashMap<String, String>();
-            while (keyIterator.hasNext())
-            {
-                String key = fieldDecoder.decodeString(keyIterator.next());
-                String value = fieldDecoder.decodeString(valueIterator.next());
-                tags.put(key, value);
-            }
-            return tags;
+            String key = fieldDecoder.decodeString(keys.get(i));
+            String value = fieldDecoder.decodeString(values.get(i));
+            tags.put(key, value);
         }
-        return null;
+        return tags;
     }
 
     private void processNodes( List<Osmformat.Node> nodes, PbfFieldDecoder fieldDecoder )
     {
         for (Osmformat.Node node : nodes)
         {
-            Map<String, String> tags = buildTags(node.getKeysList(), node.getValsList(), fieldDecoder);
-
-            OSMNode osmNode = new OSMNode(node.getId(), tags, fieldDecoder.decodeLatitude(node
-                    .getLat()), fieldDecoder.decodeLatitude(node.getLon()));
-
-            // Add the bound object to the results.
-            decodedEntities.add(osmNode);
+            decodedBlock.addNode(node.getId(), fieldDecoder.decodeLatitude(node.getLat()),
+                    fieldDecoder.decodeLongitude(node.getLon()));
+            int tags = node.getKeysCount();
+            for (int i = 0; i < tags; i++)
+            {
+                decodedBlock.addNodeTag(node.getKeys(i), node.getVals(i));
+            }
         }
     }
 
@@ -199,7 +202,9 @@ public class PbfBlobDecoder implements Runnable
 //		int userSid = 0;
 //		long timestamp = 0;
 //		long changesetId = 0;
-        for (int i = 0; i < idList.size(); i++)
+        int size = idList.size();
+        decodedBlock.ensureNodeCapacity(size);
+        for (int i = 0; i < size; i++)
         {
             // Delta decode node fields.
             nodeId += idList.get(i);
@@ -229,10 +234,11 @@ public class PbfBlobDecoder implements Runnable
              EMPTY_CHANGESET);
              }
              */
+            decodedBlock.addNode(nodeId, ((double) latitude) / 10000000, ((double) longitude) / 10000000);
+
             // Build the tags. The key and value string indexes are sequential
             // in the same PBF array. Each set of tags is delimited by an index
             // with a value of 0.
-            Map<String, String> tags = null;
             while (keysValuesIterator.hasNext())
             {
                 int keyIndex = keysValuesIterator.next();
@@ -249,19 +255,8 @@ public class PbfBlobDecoder implements Runnable
                     }
                 }
                 int valueIndex = keysValuesIterator.next();
-
-                if (tags == null)
-                {
-                    tags = new HashMap<String, String>();
-                }
-
-                tags.put(fieldDecoder.decodeString(keyIndex), fieldDecoder.decodeString(valueIndex));
+                decodedBlock.addNodeTag(keyIndex, valueIndex);
             }
-
-            OSMNode node = new OSMNode(nodeId, tags, ((double) latitude) / 10000000, ((double) longitude) / 10000000);
-
-            // Add the bound object to the results.
-            decodedEntities.add(node);
         }
     }
 
@@ -269,22 +264,24 @@ public class PbfBlobDecoder implements Runnable
     {
         for (Osmformat.Way way : ways)
         {
-            Map<String, String> tags = buildTags(way.getKeysList(), way.getValsList(), fieldDecoder);
-
-            OSMWay osmWay = new OSMWay(way.getId(), tags);
+            decodedBlock.addWay(way.getId());
 
             // Build up the list of way nodes for the way. The node ids are
             // delta encoded meaning that each id is stored as a delta against
             // the previous one.
             long nodeId = 0;
-            TLongList wayNodes = osmWay.getNodes();
-            for (long nodeIdOffset : way.getRefsList())
+            int refs = way.getRefsCount();
+            for (int i = 0; i < refs; i++)
             {
-                nodeId += nodeIdOffset;
-                wayNodes.add(nodeId);
+                nodeId += way.getRefs(i);
+                decodedBlock.addWayNode(nodeId);
             }
 
-            decodedEntities.add(osmWay);
+            int tags = way.getKeysCount();
+            for (int i = 0; i < tags; i++)
+            {
+                decodedBlock.addWayTag(way.getKeys(i), way.getVals(i));
+            }
         }
     }
 
@@ -351,23 +348,111 @@ public class PbfBlobDecoder implements Runnable
             buildRelationMembers(osmRelation, relation.getMemidsList(), relation.getRolesSidList(),
                     relation.getTypesList(), fieldDecoder);
 
-            // Add the bound object to the results.
-            decodedEntities.add(osmRelation);
+            decodedBlock.addRelation(osmRelation);
         }
     }
 
-    private void processOsmPrimitives( byte[] data ) throws InvalidProtocolBufferException
+    private void processOsmPrimitives( byte[] data ) throws IOException
     {
+        data = removeSkippedGroups(data);
+        if (data == null)
+            return;
+
         Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.parseFrom(data);
         PbfFieldDecoder fieldDecoder = new PbfFieldDecoder(block);
+        decodedBlock = new PbfBlock(fieldDecoder.getStrings());
 
         for (Osmformat.PrimitiveGroup primitiveGroup : block.getPrimitivegroupList())
         {
             log.debug("Processing OSM primitive group.");
-            processNodes(primitiveGroup.getDense(), fieldDecoder);
-            processNodes(primitiveGroup.getNodesList(), fieldDecoder);
-            processWays(primitiveGroup.getWaysList(), fieldDecoder);
-            processRelations(primitiveGroup.getRelationsList(), fieldDecoder);
+            if (acceptedTypes[OSMElement.NODE])
+            {
+                processNodes(primitiveGroup.getDense(), fieldDecoder);
+                processNodes(primitiveGroup.getNodesList(), fieldDecoder);
+            }
+            if (acceptedTypes[OSMElement.WAY])
+                processWays(primitiveGroup.getWaysList(), fieldDecoder);
+
+            if (acceptedTypes[OSMElement.RELATION])
+                processRelations(primitiveGroup.getRelationsList(), fieldDecoder);
+        }
+    }
+
+    /**
+     * Removes the primitive groups with elements of not accepted types from the serialized block
+     * so that they are not even parsed. This works as every group contains only one element type.
+     * <p/>
+     * @return the data without the skipped groups, the unchanged data if nothing was skipped or
+     * null if all groups were skipped
+     */
+    private byte[] removeSkippedGroups( byte[] data ) throws IOException
+    {
+        CodedInputStream input = CodedInputStream.newInstance(data);
+        input.setSizeLimit(Integer.MAX_VALUE);
+        ByteArrayOutputStream out = null;
+        int keptGroups = 0;
+        // the start of the bytes which were not yet copied
+        int copyStart = 0;
+        while (true)
+        {
+            int fieldStart = input.getTotalBytesRead();
+            int tag = input.readTag();
+            if (tag == 0)
+                break;
+
+            if (WireFormat.getTagFieldNumber(tag) != Osmformat.PrimitiveBlock.PRIMITIVEGROUP_FIELD_NUMBER)
+            {
+                input.skipField(tag);
+                continue;
+            }
+
+            int length = input.readRawVarint32();
+            int groupStart = input.getTotalBytesRead();
+            input.skipRawBytes(length);
+            if (isAccepted(data, groupStart, length))
+            {
+                keptGroups++;
+                continue;
+            }
+
+            if (out == null)
+                out = new ByteArrayOutputStream(data.length);
+
+            out.write(data, copyStart, fieldStart - copyStart);
+            copyStart = input.getTotalBytesRead();
+        }
+
+        if (keptGroups == 0)
+            return null;
+
+        if (out == null)
+            return data;
+
+        out.write(data, copyStart, data.length - copyStart);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return true if the type of the elements in the specified serialized group is accepted
+     */
+    private boolean isAccepted( byte[] data, int groupStart, int length ) throws IOException
+    {
+        if (length == 0)
+            return false;
+
+        int field = WireFormat.getTagFieldNumber(CodedInputStream.newInstance(data, groupStart, length).readTag());
+        switch (field)
+        {
+            case Osmformat.PrimitiveGroup.NODES_FIELD_NUMBER:
+            case Osmformat.PrimitiveGroup.DENSE_FIELD_NUMBER:
+                return acceptedTypes[OSMElement.NODE];
+            case Osmformat.PrimitiveGroup.WAYS_FIELD_NUMBER:
+                return acceptedTypes[OSMElement.WAY];
+            case Osmformat.PrimitiveGroup.RELATIONS_FIELD_NUMBER:
+                return acceptedTypes[OSMElement.RELATION];
+            default:
+                // e.g. changesets
+                return false;
         }
     }
 
@@ -375,7 +460,6 @@ public class PbfBlobDecoder implements Runnable
     {
         try
         {
-            decodedEntities = new ArrayList<OSMElement>();
             if ("OSMHeader".equals(blobType))
             {
                 processOsmHeader(readBlobContent());
@@ -401,7 +485,11 @@ public class PbfBlobDecoder implements Runnable
         try
         {
             runAndTrapExceptions();
-            listener.complete(decodedEntities);
+            // e.g. for the header blob
+            if (decodedBlock == null)
+                decodedBlock = new PbfBlock(new String[0]);
+
+            listener.complete(decodedBlock);
 
         } catch (RuntimeException e)
         {
@@ -1,10 +1,6 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.pbf;
 
-import com.graphhopper.reader.OSMElement;
-
-import java.util.List;
-
 /**
  * Instances of this interface are used to receive results from PBFBlobDecoder.
  * <p/>
@@ -13,11 +9,11 @@ import java.util.List;
 public interface PbfBlobDecoderListener
 {
     /**
-     * Provides the listener with the list of decoded entities.
+     * Provides the listener with the decoded entities.
      * <p/>
-     * @param decodedEntities The decoded entities.
+     * @param decodedBlock The decoded entities.
      */
-    void complete( List<OSMElement> decodedEntities );
+    void complete( PbfBlock decodedBlock );
 
     /**
      * Notifies the listener that an error occurred during processing.
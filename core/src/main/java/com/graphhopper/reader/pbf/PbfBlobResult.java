@@ -1,10 +1,6 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.pbf;
 
-import java.util.List;
-
-import com.graphhopper.reader.OSMElement;
-
 /**
  * Stores the results for a decoded Blob.
  * <p/>
@@ -12,7 +8,7 @@ import com.graphhopper.reader.OSMElement;
  */
 public class PbfBlobResult
 {
-    private List<OSMElement> entities;
+    private PbfBlock entities;
     private boolean complete;
     private boolean success;
 
@@ -30,7 +26,7 @@ public class PbfBlobResult
      * <p/>
      * @param decodedEntities The entities from the blob.
      */
-    public void storeSuccessResult( List<OSMElement> decodedEntities )
+    public void storeSuccessResult( PbfBlock decodedEntities )
     {
         entities = decodedEntities;
         complete = true;
@@ -70,9 +66,9 @@ public class PbfBlobResult
      * Gets the entities decoded from the blob. This is only valid after complete becomes true, and
      * if success is true.
      * <p/>
-     * @return The list of decoded entities.
+     * @return The decoded entities.
      */
-    public List<OSMElement> getEntities()
+    public PbfBlock getEntities()
     {
         return entities;
     }
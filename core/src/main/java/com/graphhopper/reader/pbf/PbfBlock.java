@@ -0,0 +1,209 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.pbf;
+
+import com.graphhopper.reader.OSMElement;
+import com.graphhopper.reader.OSMNode;
+import com.graphhopper.reader.OSMRelation;
+import com.graphhopper.reader.OSMWay;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The decoded nodes and ways of one PBF blob in primitive arrays. Tags are stored as key and
+ * value indices into the string table of the blob, so decoding creates neither element objects
+ * nor tag maps. The consumer creates the elements one by one via createElement and their tags
+ * are a read only view on the string table until they are changed. Relations are rare and so
+ * they are still decoded into objects.
+ * <p/>
+ * The elements are ordered: first all nodes, then all ways and then all relations.
+ * <p/>
+ * @author Peter Karich
+ */
+public class PbfBlock
+{
+    private final String[] strings;
+    private final TLongArrayList nodeIds = new TLongArrayList();
+    private final TDoubleArrayList nodeLats = new TDoubleArrayList();
+    private final TDoubleArrayList nodeLons = new TDoubleArrayList();
+    // the first tag of every node in nodeTags, the tags end where the tags of the next node start
+    private final TIntArrayList nodeTagStarts = new TIntArrayList();
+    // pairs of key and value indices into the string table
+    private final TIntArrayList nodeTags = new TIntArrayList();
+    private final TLongArrayList wayIds = new TLongArrayList();
+    private final TIntArrayList wayNodeStarts = new TIntArrayList();
+    private final TLongArrayList wayNodes = new TLongArrayList();
+    private final TIntArrayList wayTagStarts = new TIntArrayList();
+    private final TIntArrayList wayTags = new TIntArrayList();
+    private final List<OSMRelation> relations = new ArrayList<OSMRelation>();
+
+    /**
+     * @param strings the string table of the blob
+     */
+    public PbfBlock( String[] strings )
+    {
+        this.strings = strings;
+    }
+
+    /**
+     * Expects that the specified number of nodes will be added.
+     */
+    void ensureNodeCapacity( int nodes )
+    {
+        int capacity = nodeIds.size() + nodes;
+        nodeIds.ensureCapacity(capacity);
+        nodeLats.ensureCapacity(capacity);
+        nodeLons.ensureCapacity(capacity);
+        nodeTagStarts.ensureCapacity(capacity);
+    }
+
+    /**
+     * Adds a node, its tags are added afterwards via addNodeTag.
+     */
+    void addNode( long id, double lat, double lon )
+    {
+        nodeIds.add(id);
+        nodeLats.add(lat);
+        nodeLons.add(lon);
+        nodeTagStarts.add(nodeTags.size());
+    }
+
+    /**
+     * Adds a tag to the last added node.
+     */
+    void addNodeTag( int keyIndex, int valueIndex )
+    {
+        nodeTags.add(keyIndex);
+        nodeTags.add(valueIndex);
+    }
+
+    /**
+     * Adds a way, its nodes and tags are added afterwards via addWayNode and addWayTag.
+     */
+    void addWay( long id )
+    {
+        wayIds.add(id);
+        wayNodeStarts.add(wayNodes.size());
+        wayTagStarts.add(wayTags.size());
+    }
+
+    void addWayNode( long nodeId )
+    {
+        wayNodes.add(nodeId);
+    }
+
+    void addWayTag( int keyIndex, int valueIndex )
+    {
+        wayTags.add(keyIndex);
+        wayTags.add(valueIndex);
+    }
+
+    void addRelation( OSMRelation relation )
+    {
+        relations.add(relation);
+    }
+
+    public int getNodeCount()
+    {
+        return nodeIds.size();
+    }
+
+    public int getWayCount()
+    {
+        return wayIds.size();
+    }
+
+    public int getRelationCount()
+    {
+        return relations.size();
+    }
+
+    /**
+     * @return the number of all elements
+     */
+    public int getSize()
+    {
+        return nodeIds.size() + wayIds.size() + relations.size();
+    }
+
+    public boolean isEmpty()
+    {
+        return getSize() == 0;
+    }
+
+    /**
+     * Creates the element at the specified position, see the order in the class comment.
+     */
+    public OSMElement createElement( int index )
+    {
+        if (index < 0 || index >= getSize())
+            throw new IllegalArgumentException("index " + index + " out of bounds " + getSize());
+
+        if (index < nodeIds.size())
+            return createNode(index);
+
+        index -= nodeIds.size();
+        if (index < wayIds.size())
+            return createWay(index);
+
+        return relations.get(index - wayIds.size());
+    }
+
+    private OSMNode createNode( int node )
+    {
+        Map<String, String> tags = createTags(nodeTags, nodeTagStarts, node);
+        return new OSMNode(nodeIds.get(node), tags, nodeLats.get(node), nodeLons.get(node));
+    }
+
+    private OSMWay createWay( int way )
+    {
+        int start = wayNodeStarts.get(way);
+        int end = way + 1 < wayNodeStarts.size() ? wayNodeStarts.get(way + 1) : wayNodes.size();
+        OSMWay osmWay = new OSMWay(wayIds.get(way), createTags(wayTags, wayTagStarts, way), end - start);
+        TLongList nodes = osmWay.getNodes();
+        for (int i = start; i < end; i++)
+        {
+            nodes.add(wayNodes.get(i));
+        }
+        return osmWay;
+    }
+
+    /**
+     * @return the tags of the specified element or null if it has no tags
+     */
+    private Map<String, String> createTags( TIntArrayList tags, TIntArrayList tagStarts, int element )
+    {
+        int start = tagStarts.get(element);
+        int end = element + 1 < tagStarts.size() ? tagStarts.get(element + 1) : tags.size();
+        if (start == end)
+            return null;
+
+        return new PbfTags(strings, tags, start, end);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "nodes:" + getNodeCount() + ", ways:" + getWayCount() + ", relations:" + getRelationCount();
+    }
+}
@@ -1,11 +1,9 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.pbf;
 
-import com.graphhopper.reader.OSMElement;
 import java.util.Date;
 
 import java.util.LinkedList;
-import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.locks.Condition;
@@ -27,6 +25,7 @@ public class PbfDecoder implements Runnable
     private Lock lock;
     private Condition dataWaitCondition;
     private Queue<PbfBlobResult> blobResults;
+    private final boolean[] acceptedTypes;
 
     /**
      * Creates a new instance.
@@ -35,10 +34,12 @@ public class PbfDecoder implements Runnable
      * @param executorService The executor service managing the thread pool.
      * @param maxPendingBlobs The maximum number of blobs to have in progress at any point in time.
      * @param sink The sink to send all decoded entities to.
+     * @param acceptedTypes Specifies per OSMElement type if the entities should be decoded.
      */
     public PbfDecoder( PbfStreamSplitter streamSplitter, ExecutorService executorService, int maxPendingBlobs,
-            Sink sink )
+            Sink sink, boolean[] acceptedTypes )
     {
+        this.acceptedTypes = acceptedTypes;
         this.streamSplitter = streamSplitter;
         this.executorService = executorService;
         this.maxPendingBlobs = maxPendingBlobs;
@@ -101,10 +102,9 @@ public class PbfDecoder implements Runnable
             lock.unlock();
             try
             {
-                for (OSMElement entity : blobResult.getEntities())
-                {
-                    sink.process(entity);
-                }
+                PbfBlock entities = blobResult.getEntities();
+                if (!entities.isEmpty())
+                    sink.process(entities);
             } finally
             {
                 lock.lock();
@@ -146,7 +146,7 @@ public class PbfDecoder implements Runnable
                 }
 
                 @Override
-                public void complete( List<OSMElement> decodedEntities )
+                public void complete( PbfBlock decodedEntities )
                 {
                     lock.lock();
                     try
@@ -162,7 +162,8 @@ public class PbfDecoder implements Runnable
             };
 
             // Create the blob decoder itself and execute it on a worker thread.
-            PbfBlobDecoder blobDecoder = new PbfBlobDecoder(rawBlob.getType(), rawBlob.getData(), decoderListener);
+            PbfBlobDecoder blobDecoder = new PbfBlobDecoder(rawBlob.getType(), rawBlob.getData(), decoderListener,
+                    acceptedTypes);
             executorService.execute(blobDecoder);
 
             // If the number of pending blobs has reached capacity we must begin
@@ -83,4 +83,12 @@ public class PbfFieldDecoder
     {
         return strings[rawString];
     }
+
+    /**
+     * @return the string table of the block, the raw strings are the indices into it
+     */
+    public String[] getStrings()
+    {
+        return strings;
+    }
 }
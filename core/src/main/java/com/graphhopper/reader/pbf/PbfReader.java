@@ -16,6 +16,7 @@ public class PbfReader implements Runnable
     private InputStream inputStream;
     private Sink sink;
     private int workers;
+    private final boolean[] acceptedTypes;
 
     /**
      * Creates a new instance.
@@ -24,10 +25,23 @@ public class PbfReader implements Runnable
      * @param workers The number of worker threads for decoding PBF blocks.
      */
     public PbfReader( InputStream in, Sink sink, int workers )
+    {
+        this(in, sink, workers, new boolean[]
+        {
+            true, true, true
+        });
+    }
+
+    /**
+     * @param acceptedTypes specifies per OSMElement type if the elements are needed. Elements of
+     * other types are not decoded.
+     */
+    public PbfReader( InputStream in, Sink sink, int workers, boolean[] acceptedTypes )
     {
         this.inputStream = in;
         this.sink = sink;
         this.workers = workers;
+        this.acceptedTypes = acceptedTypes;
     }
 
     @Override
@@ -45,7 +59,8 @@ public class PbfReader implements Runnable
             // immediately ready for processing when a worker thread completes.
             // The main thread is responsible for splitting blobs from the
             // request stream, and sending decoded entities to the sink.
-            PbfDecoder pbfDecoder = new PbfDecoder(streamSplitter, executorService, workers + 1, sink);
+            PbfDecoder pbfDecoder = new PbfDecoder(streamSplitter, executorService, workers + 1, sink,
+                    acceptedTypes);
             pbfDecoder.run();
 
         } catch (Exception e)
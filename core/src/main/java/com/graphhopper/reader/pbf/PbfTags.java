@@ -0,0 +1,164 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.pbf;
+
+import gnu.trove.list.TIntList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The tags of one element of a PbfBlock: pairs of key and value indices into the string table of
+ * the blob. An element has only a few tags and so a lookup is a linear scan. The tags are copied
+ * into a HashMap on the first change, e.g. if the reader adds the estimated distance of a way.
+ * <p/>
+ * @author Peter Karich
+ */
+class PbfTags extends AbstractMap<String, String>
+{
+    private final String[] strings;
+    private final TIntList keyValues;
+    private final int start;
+    private final int end;
+    private Map<String, String> changedTags;
+
+    /**
+     * @param keyValues the key and value indices of the tags from start (inclusive) to end
+     * (exclusive)
+     */
+    PbfTags( String[] strings, TIntList keyValues, int start, int end )
+    {
+        this.strings = strings;
+        this.keyValues = keyValues;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public String get( Object key )
+    {
+        if (changedTags != null)
+            return changedTags.get(key);
+
+        for (int i = start; i < end; i += 2)
+        {
+            if (strings[keyValues.get(i)].equals(key))
+                return strings[keyValues.get(i + 1)];
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey( Object key )
+    {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size()
+    {
+        if (changedTags != null)
+            return changedTags.size();
+
+        return (end - start) / 2;
+    }
+
+    @Override
+    public String put( String key, String value )
+    {
+        return getChangedTags().put(key, value);
+    }
+
+    @Override
+    public String remove( Object key )
+    {
+        return getChangedTags().remove(key);
+    }
+
+    @Override
+    public void clear()
+    {
+        getChangedTags().clear();
+    }
+
+    private Map<String, String> getChangedTags()
+    {
+        if (changedTags == null)
+        {
+            changedTags = new HashMap<String, String>(size() * 2);
+            for (int i = start; i < end; i += 2)
+            {
+                changedTags.put(strings[keyValues.get(i)], strings[keyValues.get(i + 1)]);
+            }
+        }
+        return changedTags;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet()
+    {
+        if (changedTags != null)
+            return changedTags.entrySet();
+
+        return new AbstractSet<Entry<String, String>>()
+        {
+            @Override
+            public Iterator<Entry<String, String>> iterator()
+            {
+                return new Iterator<Entry<String, String>>()
+                {
+                    private int pos = start;
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return pos < end;
+                    }
+
+                    @Override
+                    public Entry<String, String> next()
+                    {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+
+                        Entry<String, String> entry = new SimpleImmutableEntry<String, String>(
+                                strings[keyValues.get(pos)], strings[keyValues.get(pos + 1)]);
+                        pos += 2;
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove()
+                    {
+                        throw new UnsupportedOperationException("Tags are read only, use Map.remove");
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                return (end - start) / 2;
+            }
+        };
+    }
+}
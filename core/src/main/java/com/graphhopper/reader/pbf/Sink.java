@@ -17,14 +17,16 @@
  */
 package com.graphhopper.reader.pbf;
 
-import com.graphhopper.reader.OSMElement;
 
 /**
  * @author Nop
  */
 public interface Sink
 {
-    void process( OSMElement item );
+    /**
+     * Receives all decoded elements of one blob at once.
+     */
+    void process( PbfBlock block );
 
     void complete();
 }
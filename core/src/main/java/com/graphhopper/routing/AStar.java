@@ -17,20 +17,20 @@
  */
 package com.graphhopper.routing;
 
+import com.graphhopper.coll.IntDoubleIndexedHeap;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.Weighting;
 import com.graphhopper.storage.EdgeEntry;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.util.*;
-import gnu.trove.map.TIntObjectMap;
-import gnu.trove.map.hash.TIntObjectHashMap;
-import java.util.PriorityQueue;
 
 /**
  * This class implements the A* algorithm according to
  * http://en.wikipedia.org/wiki/A*_search_algorithm
  * <p/>
- * Different distance calculations can be used via setApproximation.
+ * Different distance calculations can be used via setApproximation. The node arrays and the heap
+ * are taken from the SearchStatePool and released after calcPath, so no per node objects need to
+ * be created.
  * <p/>
  * @author Peter Karich
  */
@@ -38,9 +38,9 @@ public class AStar extends AbstractRoutingAlgorithm
 {
     private DistanceCalc dist;
     private int visitedCount;
-    private TIntObjectMap<AStarEdge> fromMap;
-    private PriorityQueue<AStarEdge> prioQueueOpenSet;
-    private AStarEdge currEdge;
+    private SearchState state;
+    private int from = -1;
+    private int currNode = -1;
     private int to1 = -1;
     private double toLat;
     private double toLon;
@@ -48,7 +48,6 @@ public class AStar extends AbstractRoutingAlgorithm
     public AStar( Graph g, FlagEncoder encoder, Weighting weighting )
     {
         super(g, encoder, weighting);
-        initCollections(1000);
         setApproximation(true);
     }
 
@@ -65,97 +64,107 @@ public class AStar extends AbstractRoutingAlgorithm
         return this;
     }
 
-    protected void initCollections( int size )
-    {
-        fromMap = new TIntObjectHashMap<AStarEdge>();
-        prioQueueOpenSet = new PriorityQueue<AStarEdge>(size);
-    }
-
     @Override
     public Path calcPath( int from, int to )
     {
         checkAlreadyRun();
+        if (isOutside(from) || isOutside(to))
+            return createEmptyPath();
+
         toLat = graph.getLatitude(to);
         toLon = graph.getLongitude(to);
         to1 = to;
-        currEdge = createEdgeEntry(from, 0);
-        fromMap.put(from, currEdge);
-        return runAlgo();
+        this.from = from;
+        state = searchStatePool.acquire(graph.getNodes());
+        try
+        {
+            currNode = from;
+            state.set(from, 0, -1, EdgeIterator.NO_EDGE);
+            return runAlgo();
+        } finally
+        {
+            searchStatePool.release(state);
+            state = null;
+        }
     }
 
     private Path runAlgo()
     {
-        double currWeightToGoal, distEstimation, tmpLat, tmpLon;
         EdgeExplorer explorer = outEdgeExplorer;
+        IntDoubleIndexedHeap prioQueueOpenSet = state.getHeap();
         while (true)
         {
-            int currVertex = currEdge.endNode;
             visitedCount++;
             if (finished())
                 break;
 
-            EdgeIterator iter = explorer.setBaseNode(currVertex);
+            if (checkLimits(visitedCount))
+                return createEmptyPath();
+
+            // the heap is sorted by the full estimation, the state holds the weight from the start
+            double currWeight = state.getWeight(currNode);
+            int currEdge = state.getEdge(currNode);
+            EdgeIterator iter = explorer.setBaseNode(currNode);
             while (iter.next())
             {
                 if (!accept(iter))
                     continue;
-                if (currEdge.edge == iter.getEdge())
+                if (currEdge == iter.getEdge())
                     continue;
 
                 int neighborNode = iter.getAdjNode();
-                double alreadyVisitedWeight = weighting.calcWeight(iter) + currEdge.weightToCompare;
-                AStarEdge nEdge = fromMap.get(neighborNode);
-                if (nEdge == null || nEdge.weightToCompare > alreadyVisitedWeight)
+                double alreadyVisitedWeight = weighting.calcWeight(iter) + currWeight;
+                if (alreadyVisitedWeight < state.getWeight(neighborNode))
                 {
-                    tmpLat = graph.getLatitude(neighborNode);
-                    tmpLon = graph.getLongitude(neighborNode);
-                    currWeightToGoal = dist.calcDist(toLat, toLon, tmpLat, tmpLon);
-                    currWeightToGoal = weighting.getMinWeight(currWeightToGoal);
-                    distEstimation = alreadyVisitedWeight + currWeightToGoal;
-                    if (nEdge == null)
-                    {
-                        nEdge = new AStarEdge(iter.getEdge(), neighborNode, distEstimation, alreadyVisitedWeight);
-                        fromMap.put(neighborNode, nEdge);
-                    } else
-                    {
-                        prioQueueOpenSet.remove(nEdge);
-                        nEdge.edge = iter.getEdge();
-                        nEdge.weight = distEstimation;
-                        nEdge.weightToCompare = alreadyVisitedWeight;
-                    }
-                    nEdge.parent = currEdge;
-                    prioQueueOpenSet.add(nEdge);
-                    updateShortest(nEdge, neighborNode);
+                    state.set(neighborNode, alreadyVisitedWeight, currNode, iter.getEdge());
+                    double distEstimation = alreadyVisitedWeight + estimateWeightToGoal(neighborNode);
+                    prioQueueOpenSet.insertOrUpdate(distEstimation, neighborNode);
+                    updateShortest(neighborNode, alreadyVisitedWeight);
                 }
             }
 
             if (prioQueueOpenSet.isEmpty())
                 return createEmptyPath();
 
-            currEdge = prioQueueOpenSet.poll();
-            if (currEdge == null)
-                throw new AssertionError("Empty edge cannot happen");
+            currNode = prioQueueOpenSet.poll_element();
         }
 
         return extractPath();
     }
 
-    @Override
-    protected Path extractPath()
+    /**
+     * Called if a shorter path to the specified node was found.
+     */
+    protected void updateShortest( int node, double weight )
+    {
+    }
+
+    /**
+     * @return a lower bound of the weight from the specified node to the goal, here calculated from
+     * the beeline distance
+     */
+    protected double estimateWeightToGoal( int node )
     {
-        return new Path(graph, flagEncoder).setEdgeEntry(currEdge).extract();
+        double distToGoal = dist.calcDist(toLat, toLon, graph.getLatitude(node), graph.getLongitude(node));
+        return weighting.getMinWeight(distToGoal);
     }
 
     @Override
-    protected AStarEdge createEdgeEntry( int node, double dist )
+    protected Path extractPath()
     {
-        return new AStarEdge(EdgeIterator.NO_EDGE, node, dist, dist);
+        if (currNode < 0 || !finished())
+            return createEmptyPath();
+
+        PathNative p = new PathNative(graph, flagEncoder, state.getParents(), state.getEdgeIds());
+        p.setFromNode(from);
+        p.setWeight(state.getWeight(currNode));
+        return p.setEndNode(currNode).extract();
     }
 
     @Override
     protected boolean finished()
     {
-        return currEdge.endNode == to1;
+        return currNode == to1;
     }
 
     @Override
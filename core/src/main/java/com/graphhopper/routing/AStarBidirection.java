@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing;
 
+import com.graphhopper.coll.IntDoubleIndexedHeap;
 import com.graphhopper.routing.AStar.AStarEdge;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.Weighting;
@@ -30,7 +31,6 @@ import com.graphhopper.util.shapes.CoordTrig;
 import com.graphhopper.util.shapes.GHPoint;
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
-import java.util.PriorityQueue;
 
 /**
  * This class implements a bidirectional A* algorithm. It is interesting to note that a
@@ -57,14 +57,18 @@ import java.util.PriorityQueue;
  * or could we even use this three phase approach?
  * www.lix.polytechnique.fr/~giacomon/papers/bidirtimedep.pdf
  * <p/>
+ * The heaps are taken from the SearchStatePool and released after calcPath.
+ * <p/>
  * @author Peter Karich
  */
 public class AStarBidirection extends AbstractBidirAlgo
 {
     private DistanceCalc dist;
-    private PriorityQueue<AStarEdge> prioQueueOpenSetFrom;
+    private SearchState stateFrom;
+    private SearchState stateTo;
+    private IntDoubleIndexedHeap prioQueueOpenSetFrom;
     private TIntObjectMap<AStarEdge> bestWeightMapFrom;
-    private PriorityQueue<AStarEdge> prioQueueOpenSetTo;
+    private IntDoubleIndexedHeap prioQueueOpenSetTo;
     private TIntObjectMap<AStarEdge> bestWeightMapTo;
     private TIntObjectMap<AStarEdge> bestWeightMapOther;
     protected AStarEdge currFrom;
@@ -86,10 +90,7 @@ public class AStarBidirection extends AbstractBidirAlgo
 
     protected void initCollections( int size )
     {
-        prioQueueOpenSetFrom = new PriorityQueue<AStarEdge>(size / 10);
         bestWeightMapFrom = new TIntObjectHashMap<AStarEdge>(size / 10);
-
-        prioQueueOpenSetTo = new PriorityQueue<AStarEdge>(size / 10);
         bestWeightMapTo = new TIntObjectHashMap<AStarEdge>(size / 10);
     }
 
@@ -119,6 +120,26 @@ public class AStarBidirection extends AbstractBidirAlgo
         return this;
     }
 
+    @Override
+    public Path calcPath( int from, int to )
+    {
+        int nodes = graph.getNodes();
+        stateFrom = searchStatePool.acquire(nodes);
+        stateTo = searchStatePool.acquire(nodes);
+        prioQueueOpenSetFrom = stateFrom.getHeap();
+        prioQueueOpenSetTo = stateTo.getHeap();
+        try
+        {
+            return super.calcPath(from, to);
+        } finally
+        {
+            searchStatePool.release(stateFrom);
+            searchStatePool.release(stateTo);
+            stateFrom = stateTo = null;
+            prioQueueOpenSetFrom = prioQueueOpenSetTo = null;
+        }
+    }
+
     @Override
     protected AStarEdge createEdgeEntry( int node, double dist )
     {
@@ -130,7 +151,7 @@ public class AStarBidirection extends AbstractBidirAlgo
     {
         currFrom = createEdgeEntry(from, dist);
         bestWeightMapFrom.put(from, currFrom);
-        prioQueueOpenSetFrom.add(currFrom);
+        prioQueueOpenSetFrom.insert_(currFrom.weight, from);
         fromCoord = new GHPoint(graph.getLatitude(from), graph.getLongitude(from));
         if (currTo != null)
         {
@@ -144,7 +165,7 @@ public class AStarBidirection extends AbstractBidirAlgo
     {
         currTo = createEdgeEntry(to, dist);
         bestWeightMapTo.put(to, currTo);
-        prioQueueOpenSetTo.add(currTo);
+        prioQueueOpenSetTo.insert_(currTo.weight, to);
         toCoord = new GHPoint(graph.getLatitude(to), graph.getLongitude(to));
         if (currFrom != null)
         {
@@ -191,7 +212,7 @@ public class AStarBidirection extends AbstractBidirAlgo
         if (prioQueueOpenSetFrom.isEmpty())
             return false;
 
-        currFrom = prioQueueOpenSetFrom.poll();
+        currFrom = bestWeightMapFrom.get(prioQueueOpenSetFrom.poll_element());
         bestWeightMapOther = bestWeightMapTo;
         fillEdges(currFrom, toCoord, prioQueueOpenSetFrom, bestWeightMapFrom, outEdgeExplorer);
         visitedFromCount++;
@@ -204,7 +225,7 @@ public class AStarBidirection extends AbstractBidirAlgo
         if (prioQueueOpenSetTo.isEmpty())
             return false;
 
-        currTo = prioQueueOpenSetTo.poll();
+        currTo = bestWeightMapTo.get(prioQueueOpenSetTo.poll_element());
         bestWeightMapOther = bestWeightMapFrom;
         fillEdges(currTo, fromCoord, prioQueueOpenSetTo, bestWeightMapTo, inEdgeExplorer);
         visitedToCount++;
@@ -212,7 +233,7 @@ public class AStarBidirection extends AbstractBidirAlgo
     }
 
     private void fillEdges( AStarEdge currEdge, CoordTrig goal,
-            PriorityQueue<AStarEdge> prioQueueOpenSet,
+            IntDoubleIndexedHeap prioQueueOpenSet,
             TIntObjectMap<AStarEdge> shortestWeightMap, EdgeExplorer explorer )
     {
 
@@ -243,14 +264,13 @@ public class AStarBidirection extends AbstractBidirAlgo
                     shortestWeightMap.put(neighborNode, de);
                 } else
                 {
-                    prioQueueOpenSet.remove(de);
                     de.edge = iter.getEdge();
                     de.weight = estimationFullDist;
                     de.weightToCompare = alreadyVisitedWeight;
                 }
 
                 de.parent = currEdge;
-                prioQueueOpenSet.add(de);
+                prioQueueOpenSet.insertOrUpdate(de.weight, neighborNode);
                 updateShortest(de, neighborNode);
             }
         }
@@ -54,6 +54,9 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm
     public Path calcPath( int from, int to )
     {
         checkAlreadyRun();
+        if (isOutside(from) || isOutside(to))
+            return createEmptyPath();
+
         initPath();
         initFrom(from, 0);
         initTo(to, 0);
@@ -64,6 +67,9 @@ public abstract class AbstractBidirAlgo extends AbstractRoutingAlgorithm
     {
         while (!finished())
         {
+            if (checkLimits(visitedFromCount + visitedToCount))
+                return createEmptyPath();
+
             if (!finishedFrom)
                 finishedFrom = !fillEdgesFrom();
 
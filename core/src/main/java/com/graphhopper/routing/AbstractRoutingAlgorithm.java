@@ -40,7 +40,13 @@ public abstract class AbstractRoutingAlgorithm implements RoutingAlgorithm
     protected EdgeExplorer outEdgeExplorer;
     protected final Weighting weighting;
     protected final FlagEncoder flagEncoder;
+    protected SearchStatePool searchStatePool = SearchStatePool.NONE;
     private boolean alreadyRun;
+    // the deadline is only checked every 256 visited nodes as currentTimeMillis is not for free
+    private static final int DEADLINE_CHECK_MASK = 0xFF;
+    private int maxVisitedNodes = Integer.MAX_VALUE;
+    private long deadline = Long.MAX_VALUE;
+    private boolean limitExceeded;
 
     /**
      * @param graph specifies the graph where this algorithm will run on
@@ -79,8 +85,14 @@ public abstract class AbstractRoutingAlgorithm implements RoutingAlgorithm
         results.add(fromRes);
         results.add(toRes);
         queryGraph.lookup(results);
+        return calcPath(queryGraph, fromRes.getClosestNode(), toRes.getClosestNode());
+    }
+
+    @Override
+    public Path calcPath( QueryGraph queryGraph, int from, int to )
+    {
         setGraph(queryGraph);
-        return calcPath(fromRes.getClosestNode(), toRes.getClosestNode());
+        return calcPath(from, to);
     }
 
     public RoutingAlgorithm setEdgeFilter( EdgeFilter additionalEdgeFilter )
@@ -89,6 +101,54 @@ public abstract class AbstractRoutingAlgorithm implements RoutingAlgorithm
         return this;
     }
 
+    @Override
+    public RoutingAlgorithm setMaxVisitedNodes( int maxVisitedNodes )
+    {
+        this.maxVisitedNodes = maxVisitedNodes;
+        return this;
+    }
+
+    @Override
+    public RoutingAlgorithm setDeadline( long deadline )
+    {
+        this.deadline = deadline;
+        return this;
+    }
+
+    @Override
+    public RoutingAlgorithm setSearchStatePool( SearchStatePool pool )
+    {
+        if (pool == null)
+            throw new IllegalArgumentException("Use SearchStatePool.NONE instead of null");
+
+        this.searchStatePool = pool;
+        return this;
+    }
+
+    @Override
+    public boolean isLimitExceeded()
+    {
+        return limitExceeded;
+    }
+
+    /**
+     * Called from the search loop for every visited node.
+     * <p/>
+     * @return true if the maximum of visited nodes is reached or the deadline is over. Then the
+     * search should stop and return an empty path.
+     */
+    protected boolean checkLimits( int visitedNodes )
+    {
+        if (visitedNodes >= maxVisitedNodes
+                || (visitedNodes & DEADLINE_CHECK_MASK) == 0 && deadline != Long.MAX_VALUE
+                && System.currentTimeMillis() > deadline)
+        {
+            limitExceeded = true;
+            return true;
+        }
+        return false;
+    }
+
     protected boolean accept( EdgeIterator iter )
     {
         return additionalEdgeFilter == null || additionalEdgeFilter.accept(iter);
@@ -132,6 +192,15 @@ public abstract class AbstractRoutingAlgorithm implements RoutingAlgorithm
         return new Path(graph, flagEncoder);
     }
 
+    /**
+     * @return true if the specified node is not in the graph. The node arrays of a search are only
+     * as big as the graph, and no path can be found from or to such a node anyway.
+     */
+    protected boolean isOutside( int node )
+    {
+        return node < 0 || node >= graph.getNodes();
+    }
+
     @Override
     public String getName()
     {
@@ -17,115 +17,122 @@
  */
 package com.graphhopper.routing;
 
+import com.graphhopper.coll.IntDoubleIndexedHeap;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.Weighting;
-import com.graphhopper.storage.EdgeEntry;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.util.EdgeExplorer;
 import com.graphhopper.util.EdgeIterator;
-import gnu.trove.map.TIntObjectMap;
-import gnu.trove.map.hash.TIntObjectHashMap;
-import java.util.PriorityQueue;
 
 /**
  * Implements a single source shortest path algorithm
  * http://en.wikipedia.org/wiki/Dijkstra's_algorithm
  * <p/>
+ * The node arrays are taken from the SearchStatePool and released after
+ * calcPath so that no per node objects need to be created.
+ * <p/>
  * @author Peter Karich
  */
 public class Dijkstra extends AbstractRoutingAlgorithm
 {
-    private TIntObjectMap<EdgeEntry> fromMap;
-    private PriorityQueue<EdgeEntry> fromHeap;
+    private SearchState state;
     private int visitedNodes;
+    private int from = -1;
     private int to = -1;
-    private EdgeEntry currEdge;
+    private int currNode = -1;
 
     public Dijkstra( Graph g, FlagEncoder encoder, Weighting weighting )
     {
         super(g, encoder, weighting);
-        initCollections(1000);
-    }
-
-    protected void initCollections( int size )
-    {
-        fromHeap = new PriorityQueue<EdgeEntry>(size);
-        fromMap = new TIntObjectHashMap<EdgeEntry>(size);
     }
 
     @Override
     public Path calcPath( int from, int to )
     {
         checkAlreadyRun();
+        if (isOutside(from) || isOutside(to))
+            return createEmptyPath();
+
+        this.from = from;
         this.to = to;
-        currEdge = createEdgeEntry(from, 0);
-        fromMap.put(from, currEdge);
-        return runAlgo();
+        state = searchStatePool.acquire(graph.getNodes());
+        try
+        {
+            currNode = from;
+            state.set(from, 0, -1, EdgeIterator.NO_EDGE);
+            return runAlgo();
+        } finally
+        {
+            searchStatePool.release(state);
+            state = null;
+        }
     }
 
     private Path runAlgo()
     {
         EdgeExplorer explorer = outEdgeExplorer;
+        IntDoubleIndexedHeap heap = state.getHeap();
         while (true)
         {
             visitedNodes++;
             if (finished())
                 break;
 
-            int neighborNode = currEdge.endNode;
-            EdgeIterator iter = explorer.setBaseNode(neighborNode);
+            if (checkLimits(visitedNodes))
+                return createEmptyPath();
+
+            double currWeight = state.getWeight(currNode);
+            int currEdge = state.getEdge(currNode);
+            EdgeIterator iter = explorer.setBaseNode(currNode);
             while (iter.next())
             {
                 if (!accept(iter))
                     continue;
                 // minor speed up
-                if (currEdge.edge == iter.getEdge())
+                if (currEdge == iter.getEdge())
                     continue;
 
                 int tmpNode = iter.getAdjNode();
-                double tmpWeight = weighting.calcWeight(iter) + currEdge.weight;
-
-                EdgeEntry nEdge = fromMap.get(tmpNode);
-                if (nEdge == null)
+                double tmpWeight = weighting.calcWeight(iter) + currWeight;
+                if (tmpWeight < state.getWeight(tmpNode))
                 {
-                    nEdge = new EdgeEntry(iter.getEdge(), tmpNode, tmpWeight);
-                    nEdge.parent = currEdge;
-                    fromMap.put(tmpNode, nEdge);
-                    fromHeap.add(nEdge);
-                } else if (nEdge.weight > tmpWeight)
-                {
-                    fromHeap.remove(nEdge);
-                    nEdge.edge = iter.getEdge();
-                    nEdge.weight = tmpWeight;
-                    nEdge.parent = currEdge;
-                    fromHeap.add(nEdge);
+                    state.set(tmpNode, tmpWeight, currNode, iter.getEdge());
+                    heap.insertOrUpdate(tmpWeight, tmpNode);
+                    updateShortest(tmpNode, tmpWeight);
                 }
-
-                updateShortest(nEdge, neighborNode);
             }
 
-            if (fromHeap.isEmpty())
+            if (heap.isEmpty())
                 return createEmptyPath();
 
-            currEdge = fromHeap.poll();
-            if (currEdge == null)
-                throw new AssertionError("Empty edge cannot happen");
+            currNode = heap.poll_element();
         }
         return extractPath();
     }
 
+    /**
+     * Called if a shorter path to the specified node was found.
+     */
+    protected void updateShortest( int node, double weight )
+    {
+    }
+
     @Override
     protected boolean finished()
     {
-        return currEdge.endNode == to;
+        return currNode == to;
     }
 
     @Override
     protected Path extractPath()
     {
-        if (currEdge == null || !finished())
+        if (currNode < 0 || !finished())
             return createEmptyPath();
-        return new Path(graph, flagEncoder).setEdgeEntry(currEdge).extract();
+
+        PathNative p = new PathNative(graph, flagEncoder, state.getParents(), state.getEdgeIds());
+        p.setFromNode(from);
+        p.setWeight(state.getWeight(currNode));
+        return p.setEndNode(currNode).extract();
     }
 
     @Override
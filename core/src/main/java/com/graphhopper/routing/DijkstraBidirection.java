@@ -17,58 +17,48 @@
  */
 package com.graphhopper.routing;
 
-import com.graphhopper.coll.IntDoubleBinHeap;
+import com.graphhopper.coll.IntDoubleIndexedHeap;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.util.EdgeExplorer;
 import com.graphhopper.util.EdgeIterator;
-import com.graphhopper.util.EdgeWrapper;
 
 /**
  * Calculates shortest path in bidirectional way. Compared to DijkstraBidirectionRef this class is
- * more memory efficient as it does not go the normal Java way via references. In first tests this
- * class saves 30% memory, but as you can see it is more complicated.
- * <p/>
- * Possible improvements
- * <p>
- * 1. use only one EdgeWrapper to save memory. This is not easy if we want it to be as fast as the
- * current solution. But we need to try it out if a forwardSearchBitset.contains(ref) is that
- * expensive
- * <p/>
- * 2. instead of creating references point to the edges itself => we only need an edge+node array
- * and from that can retrieve eg. the distance
+ * more memory efficient as it does not go the normal Java way via references. Instead it uses node
+ * indexed arrays for both directions which are reused between requests via the SearchStatePool.
  * <p/>
  * @author Peter Karich
  */
 public class DijkstraBidirection extends AbstractBidirAlgo
 {
-    private int currFrom;
+    private int currFrom = -1;
     private double currFromWeight;
-    private int currFromRef;
-    private int currTo;
+    private int currTo = -1;
     private double currToWeight;
-    private int currToRef;
-    private EdgeWrapper parentRefOther;
-    private IntDoubleBinHeap openSetFrom;
-    private EdgeWrapper parentRefFrom;
-    private IntDoubleBinHeap openSetTo;
-    private EdgeWrapper parentRefTo;
+    private SearchState stateOther;
+    private SearchState stateFrom;
+    private SearchState stateTo;
     private PathBidir nativeBestPath;
 
     public DijkstraBidirection( Graph graph, FlagEncoder encoder, Weighting weighting )
     {
         super(graph, encoder, weighting);
-        initCollections(1000);
     }
 
-    protected void initCollections( int locs )
+    @Override
+    public Path calcPath( int from, int to )
     {
-        openSetFrom = new IntDoubleBinHeap(locs);
-        parentRefFrom = new EdgeWrapper(locs);
-
-        openSetTo = new IntDoubleBinHeap(locs);
-        parentRefTo = new EdgeWrapper(locs);
+        try
+        {
+            return super.calcPath(from, to);
+        } finally
+        {
+            searchStatePool.release(stateFrom);
+            searchStatePool.release(stateTo);
+            stateFrom = stateTo = stateOther = null;
+        }
     }
 
     @Override
@@ -76,12 +66,12 @@ public class DijkstraBidirection extends AbstractBidirAlgo
     {
         currFrom = from;
         currFromWeight = dist;
-        currFromRef = parentRefFrom.add(from, dist, EdgeIterator.NO_EDGE);
-        openSetFrom.insert_(currFromWeight, currFromRef);
+        stateFrom.set(from, dist, -1, EdgeIterator.NO_EDGE);
+        stateFrom.getHeap().insert_(currFromWeight, from);
         if (currTo >= 0)
         {
-            parentRefOther = parentRefTo;
-            updateShortest(currFrom, currFromRef, currToWeight);
+            stateOther = stateTo;
+            updateShortest(currFrom, currFromWeight);
         }
     }
 
@@ -90,19 +80,22 @@ public class DijkstraBidirection extends AbstractBidirAlgo
     {
         currTo = to;
         currToWeight = dist;
-        currToRef = parentRefTo.add(to, dist, EdgeIterator.NO_EDGE);
-        openSetTo.insert_(currToWeight, currToRef);
+        stateTo.set(to, dist, -1, EdgeIterator.NO_EDGE);
+        stateTo.getHeap().insert_(currToWeight, to);
         if (currFrom >= 0)
         {
-            parentRefOther = parentRefFrom;
-            updateShortest(currTo, currToRef, currFromWeight);
+            stateOther = stateFrom;
+            updateShortest(currTo, currToWeight);
         }
     }
 
     @Override
     protected void initPath()
     {
-        nativeBestPath = new PathBidir(graph, flagEncoder, parentRefFrom, parentRefTo);
+        int nodes = graph.getNodes();
+        stateFrom = searchStatePool.acquire(nodes);
+        stateTo = searchStatePool.acquire(nodes);
+        nativeBestPath = new PathBidir(graph, flagEncoder, stateFrom, stateTo);
     }
 
     @Override
@@ -114,7 +107,7 @@ public class DijkstraBidirection extends AbstractBidirAlgo
     @Override
     void checkState( int fromBase, int fromAdj, int toBase, int toAdj )
     {
-        if (parentRefFrom.isEmpty() || parentRefTo.isEmpty())
+        if (currFrom < 0 || currTo < 0)
             throw new IllegalStateException("Either 'from'-edge or 'to'-edge is inaccessible. From:" + fromBase + ", to:" + toBase);
     }
 
@@ -131,56 +124,46 @@ public class DijkstraBidirection extends AbstractBidirAlgo
         return currFromWeight + currToWeight >= nativeBestPath.getWeight();
     }
 
-    void fillEdges( int currNode, double currWeight, int currRef,
-            IntDoubleBinHeap openSet, EdgeWrapper wrapper, EdgeExplorer explorer )
+    void fillEdges( int currNode, double currWeight, SearchState state, EdgeExplorer explorer )
     {
+        IntDoubleIndexedHeap openSet = state.getHeap();
+        int currEdge = state.getEdge(currNode);
         EdgeIterator iter = explorer.setBaseNode(currNode);
         while (iter.next())
         {
             if (!accept(iter))
                 continue;
 
-            int neighborNode = iter.getAdjNode();
             // minor speed up
-            int newRef = wrapper.getRef(neighborNode);
-            if (newRef >= 0 && wrapper.getEdgeId(newRef) == iter.getEdge())
+            if (currEdge == iter.getEdge())
                 continue;
 
+            int neighborNode = iter.getAdjNode();
             double tmpWeight = weighting.calcWeight(iter) + currWeight;
-            if (newRef < 0)
+            if (!state.isReached(neighborNode))
             {
-                newRef = wrapper.add(neighborNode, tmpWeight, iter.getEdge());
-                wrapper.putParent(newRef, currRef);
-                openSet.insert_(tmpWeight, newRef);
-            } else
+                state.set(neighborNode, tmpWeight, currNode, iter.getEdge());
+                openSet.insert_(tmpWeight, neighborNode);
+            } else if (state.getWeight(neighborNode) > tmpWeight)
             {
-                double weight = wrapper.getWeight(newRef);
-                if (weight > tmpWeight)
-                {
-                    wrapper.putEdgeId(newRef, iter.getEdge());
-                    wrapper.putWeight(newRef, tmpWeight);
-                    wrapper.putParent(newRef, currRef);
-                    openSet.update_(tmpWeight, newRef);
-                }
+                state.set(neighborNode, tmpWeight, currNode, iter.getEdge());
+                openSet.update_(tmpWeight, neighborNode);
             }
 
-            updateShortest(neighborNode, newRef, tmpWeight);
+            updateShortest(neighborNode, state.getWeight(neighborNode));
         }
     }
 
-    void updateShortest( int nodeId, int ref, double weight )
+    void updateShortest( int nodeId, double weight )
     {
-        int otherRef = parentRefOther.getRef(nodeId);
-        if (otherRef < 0)
+        if (!stateOther.isReached(nodeId))
             return;
 
         // update μ
-        double newWeight = weight + parentRefOther.getWeight(otherRef);
+        double newWeight = weight + stateOther.getWeight(nodeId);
         if (newWeight < nativeBestPath.getWeight())
         {
-            nativeBestPath.switchWrapper = parentRefFrom == parentRefOther;
-            nativeBestPath.fromRef = ref;
-            nativeBestPath.toRef = otherRef;
+            nativeBestPath.meetingNode = nodeId;
             nativeBestPath.setWeight(newWeight);
         }
     }
@@ -188,15 +171,15 @@ public class DijkstraBidirection extends AbstractBidirAlgo
     @Override
     boolean fillEdgesFrom()
     {
+        IntDoubleIndexedHeap openSetFrom = stateFrom.getHeap();
         if (openSetFrom.isEmpty())
             return false;
 
-        currFromRef = openSetFrom.poll_element();
-        currFrom = parentRefFrom.getNode(currFromRef);
-        currFromWeight = parentRefFrom.getWeight(currFromRef);
+        currFrom = openSetFrom.poll_element();
+        currFromWeight = stateFrom.getWeight(currFrom);
 
-        parentRefOther = parentRefTo;
-        fillEdges(currFrom, currFromWeight, currFromRef, openSetFrom, parentRefFrom, outEdgeExplorer);
+        stateOther = stateTo;
+        fillEdges(currFrom, currFromWeight, stateFrom, outEdgeExplorer);
         visitedFromCount++;
         return true;
     }
@@ -204,14 +187,15 @@ public class DijkstraBidirection extends AbstractBidirAlgo
     @Override
     boolean fillEdgesTo()
     {
+        IntDoubleIndexedHeap openSetTo = stateTo.getHeap();
         if (openSetTo.isEmpty())
             return false;
-        currToRef = openSetTo.poll_element();
-        currTo = parentRefTo.getNode(currToRef);
-        currToWeight = parentRefTo.getWeight(currToRef);
 
-        parentRefOther = parentRefFrom;
-        fillEdges(currTo, currToWeight, currToRef, openSetTo, parentRefTo, inEdgeExplorer);
+        currTo = openSetTo.poll_element();
+        currToWeight = stateTo.getWeight(currTo);
+
+        stateOther = stateFrom;
+        fillEdges(currTo, currToWeight, stateTo, inEdgeExplorer);
         visitedToCount++;
         return true;
     }
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing;
 
+import com.graphhopper.coll.IntDoubleIndexedHeap;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.Weighting;
 import com.graphhopper.storage.EdgeEntry;
@@ -25,20 +26,22 @@ import com.graphhopper.util.EdgeExplorer;
 import com.graphhopper.util.EdgeIterator;
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
-import java.util.PriorityQueue;
 
 /**
  * Calculates best path in bidirectional way.
  * <p/>
- * 'Ref' stands for reference implementation and is using the normal Java-'reference'-way.
+ * 'Ref' stands for reference implementation and is using the normal Java-'reference'-way. Only
+ * the heaps are taken from the SearchStatePool and released after calcPath.
  * <p/>
  * @see DijkstraBidirection for an array based but more complicated version
  * @author Peter Karich
  */
 public class DijkstraBidirectionRef extends AbstractBidirAlgo
 {
-    private PriorityQueue<EdgeEntry> openSetFrom;
-    private PriorityQueue<EdgeEntry> openSetTo;
+    private SearchState stateFrom;
+    private SearchState stateTo;
+    private IntDoubleIndexedHeap openSetFrom;
+    private IntDoubleIndexedHeap openSetTo;
     private TIntObjectMap<EdgeEntry> bestWeightMapFrom;
     private TIntObjectMap<EdgeEntry> bestWeightMapTo;
     protected TIntObjectMap<EdgeEntry> bestWeightMapOther;
@@ -54,19 +57,36 @@ public class DijkstraBidirectionRef extends AbstractBidirAlgo
 
     protected void initCollections( int nodes )
     {
-        openSetFrom = new PriorityQueue<EdgeEntry>(nodes / 10);
         bestWeightMapFrom = new TIntObjectHashMap<EdgeEntry>(nodes / 10);
-
-        openSetTo = new PriorityQueue<EdgeEntry>(nodes / 10);
         bestWeightMapTo = new TIntObjectHashMap<EdgeEntry>(nodes / 10);
     }
 
+    @Override
+    public Path calcPath( int from, int to )
+    {
+        int nodes = graph.getNodes();
+        stateFrom = searchStatePool.acquire(nodes);
+        stateTo = searchStatePool.acquire(nodes);
+        openSetFrom = stateFrom.getHeap();
+        openSetTo = stateTo.getHeap();
+        try
+        {
+            return super.calcPath(from, to);
+        } finally
+        {
+            searchStatePool.release(stateFrom);
+            searchStatePool.release(stateTo);
+            stateFrom = stateTo = null;
+            openSetFrom = openSetTo = null;
+        }
+    }
+
     @Override
     public void initFrom( int from, double dist )
     {
         currFrom = createEdgeEntry(from, dist);
         bestWeightMapFrom.put(from, currFrom);
-        openSetFrom.add(currFrom);
+        openSetFrom.insert_(dist, from);
         if (currTo != null)
         {
             bestWeightMapOther = bestWeightMapTo;
@@ -79,7 +99,7 @@ public class DijkstraBidirectionRef extends AbstractBidirAlgo
     {
         currTo = createEdgeEntry(to, dist);
         bestWeightMapTo.put(to, currTo);
-        openSetTo.add(currTo);
+        openSetTo.insert_(dist, to);
         if (currFrom != null)
         {
             bestWeightMapOther = bestWeightMapFrom;
@@ -112,7 +132,7 @@ public class DijkstraBidirectionRef extends AbstractBidirAlgo
         if (openSetFrom.isEmpty())
             return false;
 
-        currFrom = openSetFrom.poll();
+        currFrom = bestWeightMapFrom.get(openSetFrom.poll_element());
         bestWeightMapOther = bestWeightMapTo;
         fillEdges(currFrom, openSetFrom, bestWeightMapFrom, outEdgeExplorer);
         visitedFromCount++;
@@ -124,7 +144,7 @@ public class DijkstraBidirectionRef extends AbstractBidirAlgo
     {
         if (openSetTo.isEmpty())
             return false;
-        currTo = openSetTo.poll();
+        currTo = bestWeightMapTo.get(openSetTo.poll_element());
         bestWeightMapOther = bestWeightMapFrom;
         fillEdges(currTo, openSetTo, bestWeightMapTo, inEdgeExplorer);
         visitedToCount++;
@@ -144,7 +164,7 @@ public class DijkstraBidirectionRef extends AbstractBidirAlgo
         return currFrom.weight + currTo.weight >= bestPath.getWeight();
     }
 
-    void fillEdges( EdgeEntry currEdge, PriorityQueue<EdgeEntry> prioQueue,
+    void fillEdges( EdgeEntry currEdge, IntDoubleIndexedHeap prioQueue,
             TIntObjectMap<EdgeEntry> shortestWeightMap, EdgeExplorer explorer )
     {
         int currNode = currEdge.endNode;
@@ -166,14 +186,13 @@ public class DijkstraBidirectionRef extends AbstractBidirAlgo
                 de = new EdgeEntry(iter.getEdge(), neighborNode, tmpWeight);
                 de.parent = currEdge;
                 shortestWeightMap.put(neighborNode, de);
-                prioQueue.add(de);
+                prioQueue.insert_(tmpWeight, neighborNode);
             } else if (de.weight > tmpWeight)
             {
-                prioQueue.remove(de);
                 de.edge = iter.getEdge();
                 de.weight = tmpWeight;
                 de.parent = currEdge;
-                prioQueue.add(de);
+                prioQueue.insertOrUpdate(tmpWeight, neighborNode);
             }
 
             updateShortest(de, neighborNode);
@@ -211,6 +230,6 @@ public class DijkstraBidirectionRef extends AbstractBidirAlgo
     @Override
     public String getName()
     {
-        return "dijkstrabi";
+        return "dijkstrabiRef";
     }
 }
@@ -182,7 +182,7 @@ public class DijkstraOneToMany extends AbstractRoutingAlgorithm
                 }
             }
 
-            if (heap.isEmpty() || visitedNodes >= limitVisitedNodes)
+            if (heap.isEmpty() || visitedNodes >= limitVisitedNodes || checkLimits(visitedNodes))
                 return -1;
 
             // calling just peek and not poll is important if the next query is cached
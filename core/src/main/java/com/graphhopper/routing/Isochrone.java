@@ -0,0 +1,268 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.coll.IntDoubleIndexedHeap;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Calculates all nodes reachable within a time limit from one start node, e.g. for service area
+ * analysis. This is a bounded one to all dijkstra where the weight is the time in milliseconds,
+ * calculated identical to Path.calcMillis. The node arrays are taken from the SearchStatePool, so
+ * with a shared pool a request does not allocate arrays as big as the graph.
+ * <p/>
+ * @author Peter Karich
+ */
+public class Isochrone
+{
+    private final Graph graph;
+    private final Weighting weighting;
+    private final EdgeExplorer outExplorer;
+    private long timeLimit = 15 * 60 * 1000;
+    private SearchStatePool searchStatePool = SearchStatePool.NONE;
+    private final TIntArrayList nodes = new TIntArrayList();
+    private final TLongArrayList millis = new TLongArrayList();
+    private int visitedNodes;
+
+    public Isochrone( Graph graph, FlagEncoder encoder )
+    {
+        this.graph = graph;
+        this.weighting = new TimeWeighting(encoder);
+        this.outExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, false, true));
+    }
+
+    /**
+     * @param millis only nodes which are reachable within this time are returned
+     */
+    public Isochrone setTimeLimit( long millis )
+    {
+        if (millis < 0)
+            throw new IllegalArgumentException("time limit must not be negative but was " + millis);
+
+        this.timeLimit = millis;
+        return this;
+    }
+
+    public Isochrone setSearchStatePool( SearchStatePool pool )
+    {
+        if (pool == null)
+            throw new IllegalArgumentException("Use SearchStatePool.NONE instead of null");
+
+        this.searchStatePool = pool;
+        return this;
+    }
+
+    /**
+     * Searches all nodes reachable from the specified node. Use getNodes and getMillis afterwards.
+     */
+    public Isochrone search( int from )
+    {
+        nodes.clear();
+        millis.clear();
+        visitedNodes = 0;
+        SearchState state = searchStatePool.acquire(graph.getNodes());
+        try
+        {
+            IntDoubleIndexedHeap heap = state.getHeap();
+            state.set(from, 0, -1, EdgeIterator.NO_EDGE);
+            int currNode = from;
+            while (true)
+            {
+                // every node is polled only once as the heap updates the weight of queued nodes
+                double currWeight = state.getWeight(currNode);
+                if (currWeight > timeLimit)
+                    break;
+
+                visitedNodes++;
+                nodes.add(currNode);
+                millis.add((long) currWeight);
+                int currEdge = state.getEdge(currNode);
+                EdgeIterator iter = outExplorer.setBaseNode(currNode);
+                while (iter.next())
+                {
+                    if (currEdge == iter.getEdge())
+                        continue;
+
+                    int adjNode = iter.getAdjNode();
+                    double tmpWeight = weighting.calcWeight(iter) + currWeight;
+                    if (tmpWeight < state.getWeight(adjNode))
+                    {
+                        state.set(adjNode, tmpWeight, currNode, iter.getEdge());
+                        heap.insertOrUpdate(tmpWeight, adjNode);
+                    }
+                }
+
+                if (heap.isEmpty())
+                    break;
+
+                currNode = heap.poll_element();
+            }
+        } finally
+        {
+            searchStatePool.release(state);
+        }
+        return this;
+    }
+
+    /**
+     * @return the reachable nodes, unsorted
+     */
+    public TIntList getNodes()
+    {
+        return nodes;
+    }
+
+    /**
+     * @return the time in milliseconds to every node, same order as in getNodes
+     */
+    public TLongList getMillis()
+    {
+        return millis;
+    }
+
+    /**
+     * @return the coordinates of the reachable nodes, same order as in getNodes
+     */
+    public PointList calcPoints()
+    {
+        PointList points = new PointList(nodes.size());
+        for (int i = 0; i < nodes.size(); i++)
+        {
+            points.add(graph.getLatitude(nodes.get(i)), graph.getLongitude(nodes.get(i)));
+        }
+        return points;
+    }
+
+    /**
+     * Calculates the convex hull of the reachable nodes via the monotone chain algorithm. The first
+     * point is repeated at the end to close the polygon. This is a coarse outline, e.g. water or
+     * unreachable areas between long roads are included.
+     */
+    public PointList calcPolygon()
+    {
+        int size = nodes.size();
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++)
+        {
+            order[i] = nodes.get(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare( Integer o1, Integer o2 )
+            {
+                int res = Double.compare(graph.getLongitude(o1), graph.getLongitude(o2));
+                if (res != 0)
+                    return res;
+
+                return Double.compare(graph.getLatitude(o1), graph.getLatitude(o2));
+            }
+        });
+
+        // lower hull from left to right, then upper hull from right to left
+        int[] hull = new int[2 * size + 1];
+        int k = 0;
+        for (int i = 0; i < size; i++)
+        {
+            while (k >= 2 && cross(hull[k - 2], hull[k - 1], order[i]) <= 0)
+            {
+                k--;
+            }
+            hull[k++] = order[i];
+        }
+        for (int i = size - 2, lower = k + 1; i >= 0; i--)
+        {
+            while (k >= lower && cross(hull[k - 2], hull[k - 1], order[i]) <= 0)
+            {
+                k--;
+            }
+            hull[k++] = order[i];
+        }
+
+        PointList polygon = new PointList(k);
+        for (int i = 0; i < k; i++)
+        {
+            polygon.add(graph.getLatitude(hull[i]), graph.getLongitude(hull[i]));
+        }
+        return polygon;
+    }
+
+    private double cross( int o, int a, int b )
+    {
+        double oLon = graph.getLongitude(o), oLat = graph.getLatitude(o);
+        return (graph.getLongitude(a) - oLon) * (graph.getLatitude(b) - oLat)
+                - (graph.getLatitude(a) - oLat) * (graph.getLongitude(b) - oLon);
+    }
+
+    public int getVisitedNodes()
+    {
+        return visitedNodes;
+    }
+
+    /**
+     * The time in milliseconds to travel along an edge, see Path.calcMillis
+     */
+    static class TimeWeighting implements Weighting
+    {
+        private final FlagEncoder encoder;
+        private final double maxSpeed;
+
+        public TimeWeighting( FlagEncoder encoder )
+        {
+            this.encoder = encoder;
+            this.maxSpeed = encoder.getMaxSpeed();
+        }
+
+        @Override
+        public double getMinWeight( double distance )
+        {
+            return distance * 3600 / maxSpeed;
+        }
+
+        @Override
+        public double calcWeight( EdgeIteratorState edge )
+        {
+            return (long) (edge.getDistance() * 3600 / encoder.getSpeed(edge.getFlags()));
+        }
+
+        @Override
+        public double revertWeight( EdgeIteratorState edge, double weight )
+        {
+            return weight * encoder.getSpeed(edge.getFlags()) / 3600;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "TIME|" + encoder;
+        }
+    }
+}
@@ -19,27 +19,27 @@ package com.graphhopper.routing;
 
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.storage.Graph;
-import com.graphhopper.util.EdgeWrapper;
+import com.graphhopper.util.EdgeIterator;
 
 /**
- * This class creates a Path from two Edge's resulting from a BidirectionalDijkstra
+ * This class creates a Path from the two shortest-path-trees of a DijkstraBidirection
  * <p/>
  * @author Peter Karich
  */
 public class PathBidir extends Path
 {
-    public boolean switchWrapper = false;
-    public int fromRef = -1;
-    public int toRef = -1;
-    private EdgeWrapper edgeWFrom;
-    private EdgeWrapper edgeWTo;
+    /**
+     * The node where the forward and the backward search meet on the best path
+     */
+    public int meetingNode = -1;
+    private final SearchState stateFrom;
+    private final SearchState stateTo;
 
-    public PathBidir( Graph g, FlagEncoder encoder,
-            EdgeWrapper edgesFrom, EdgeWrapper edgesTo )
+    public PathBidir( Graph g, FlagEncoder encoder, SearchState stateFrom, SearchState stateTo )
     {
         super(g, encoder);
-        this.edgeWFrom = edgesFrom;
-        this.edgeWTo = edgesTo;
+        this.stateFrom = stateFrom;
+        this.stateTo = stateTo;
     }
 
     /**
@@ -48,46 +48,31 @@ public class PathBidir extends Path
     @Override
     public Path extract()
     {
-        if (fromRef < 0 || toRef < 0)
+        if (meetingNode < 0)
             return this;
 
-        if (switchWrapper)
-        {
-            int tmp = fromRef;
-            fromRef = toRef;
-            toRef = tmp;
-        }
-
-        int nodeFrom = edgeWFrom.getNode(fromRef);
-        int nodeTo = edgeWTo.getNode(toRef);
-        if (nodeFrom != nodeTo)
-            throw new IllegalStateException("'to' and 'from' have to be the same. " + toString());
-
-        int currRef = fromRef;
-        while (currRef > 0)
+        int nodeFrom = meetingNode;
+        while (true)
         {
-            int edgeId = edgeWFrom.getEdgeId(currRef);
-            if (edgeId < 0)
+            int edgeId = stateFrom.getEdge(nodeFrom);
+            if (!EdgeIterator.Edge.isValid(edgeId))
                 break;
 
             processEdge(edgeId, nodeFrom);
-            currRef = edgeWFrom.getParent(currRef);
-            nodeFrom = edgeWFrom.getNode(currRef);
+            nodeFrom = stateFrom.getParent(nodeFrom);
         }
         reverseOrder();
         setFromNode(nodeFrom);
-        // skip node of toRef (equal to fromRef)
-        currRef = toRef;
-        while (currRef > 0)
+        // skip meeting node as it is already included
+        int nodeTo = meetingNode;
+        while (true)
         {
-            int edgeId = edgeWTo.getEdgeId(currRef);
-            if (edgeId < 0)
+            int edgeId = stateTo.getEdge(nodeTo);
+            if (!EdgeIterator.Edge.isValid(edgeId))
                 break;
 
             processEdge(edgeId, nodeTo);
-            int tmpRef = edgeWTo.getParent(currRef);
-            nodeTo = edgeWTo.getNode(tmpRef);
-            currRef = tmpRef;
+            nodeTo = stateTo.getParent(nodeTo);
         }
         setEndNode(nodeTo);
         return setFound(true);
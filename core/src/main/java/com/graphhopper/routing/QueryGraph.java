@@ -476,7 +476,7 @@ public class QueryGraph implements Graph
         return new UnsupportedOperationException("QueryGraph cannot be modified.");
     }
 
-    static class VirtualEdgeIterator implements EdgeIterator
+    static class VirtualEdgeIterator implements EdgeIterator, EdgeSkipIterator
     {
         private final List<EdgeIteratorState> edges;
         private int current;
@@ -587,6 +587,44 @@ public class QueryGraph implements Graph
         {
             return edges.toString();
         }
+
+        // the edges of the main graph could be shortcuts
+        @Override
+        public int getSkippedEdge1()
+        {
+            EdgeIteratorState edge = edges.get(current);
+            if (edge instanceof EdgeSkipIterator)
+                return ((EdgeSkipIterator) edge).getSkippedEdge1();
+
+            return EdgeIterator.NO_EDGE;
+        }
+
+        @Override
+        public int getSkippedEdge2()
+        {
+            EdgeIteratorState edge = edges.get(current);
+            if (edge instanceof EdgeSkipIterator)
+                return ((EdgeSkipIterator) edge).getSkippedEdge2();
+
+            return EdgeIterator.NO_EDGE;
+        }
+
+        @Override
+        public void setSkippedEdges( int edge1, int edge2 )
+        {
+            EdgeIteratorState edge = edges.get(current);
+            if (!(edge instanceof EdgeSkipIterator))
+                throw new UnsupportedOperationException("Edge " + edge + " of the main graph cannot skip edges");
+
+            ((EdgeSkipIterator) edge).setSkippedEdges(edge1, edge2);
+        }
+
+        @Override
+        public boolean isShortcut()
+        {
+            EdgeIteratorState edge = edges.get(current);
+            return edge instanceof EdgeSkipIterator && ((EdgeSkipIterator) edge).isShortcut();
+        }
     }
 
     /**
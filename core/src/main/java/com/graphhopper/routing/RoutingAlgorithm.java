@@ -46,6 +46,38 @@ public interface RoutingAlgorithm
      */
     Path calcPath( QueryResult from, QueryResult to );
 
+    /**
+     * Calculates the best path between the specified nodes of a QueryGraph which already contains
+     * the virtual nodes of the query results. This way several paths, e.g. the legs of a route
+     * with via points, can share the lookup and the virtual edges.
+     * <p/>
+     * @return the path. Call the method found() to make sure that the path is valid.
+     */
+    Path calcPath( QueryGraph queryGraph, int from, int to );
+
+    /**
+     * Stops the search after the specified number of visited nodes, then an empty path is
+     * returned. Default is no limit.
+     */
+    RoutingAlgorithm setMaxVisitedNodes( int maxVisitedNodes );
+
+    /**
+     * Stops the search if the specified time in milliseconds (see System.currentTimeMillis) is
+     * over, then an empty path is returned. Default is no deadline.
+     */
+    RoutingAlgorithm setDeadline( long deadline );
+
+    /**
+     * Specifies the pool where the node arrays of the search are taken from and given back after
+     * calcPath. Default is SearchStatePool.NONE which allocates them for every search.
+     */
+    RoutingAlgorithm setSearchStatePool( SearchStatePool pool );
+
+    /**
+     * @return true if the search was stopped because of the maximum visited nodes or the deadline
+     */
+    boolean isLimitExceeded();
+
     /**
      * @return name of this algorithm
      */
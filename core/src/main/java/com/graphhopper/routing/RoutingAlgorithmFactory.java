@@ -32,7 +32,8 @@ public class RoutingAlgorithmFactory
 
     /**
      * @param algo possible values are astar (A* algorithm), astarbi (bidirectional A*) dijkstra
-     * (Dijkstra), dijkstrabi and dijkstraNative (a bit faster bidirectional Dijkstra).
+     * (Dijkstra), dijkstrabi and dijkstraNative (bidirectional Dijkstra on the pooled node arrays)
+     * and dijkstrabiRef (bidirectional Dijkstra creating an object per visited node).
      */
     public RoutingAlgorithmFactory( String algo, boolean approx )
     {
@@ -42,10 +43,10 @@ public class RoutingAlgorithmFactory
 
     public RoutingAlgorithm createAlgo( Graph g, FlagEncoder encoder, Weighting weighting )
     {
-        if ("dijkstrabi".equalsIgnoreCase(algoStr))
+        if ("dijkstrabiRef".equalsIgnoreCase(algoStr))
         {
             return new DijkstraBidirectionRef(g, encoder, weighting);
-        } else if ("dijkstraNative".equalsIgnoreCase(algoStr))
+        } else if ("dijkstrabi".equalsIgnoreCase(algoStr) || "dijkstraNative".equalsIgnoreCase(algoStr))
         {
             return new DijkstraBidirection(g, encoder, weighting);
         } else if ("dijkstra".equalsIgnoreCase(algoStr))
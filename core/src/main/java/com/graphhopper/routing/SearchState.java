@@ -0,0 +1,147 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.coll.IntDoubleIndexedHeap;
+import com.graphhopper.util.EdgeIterator;
+import java.util.Arrays;
+
+/**
+ * Node indexed arrays (weight, parent, edge) and a heap for one search direction. Instead of
+ * clearing the arrays for every query a version is stored per node, so a node is only 'reached'
+ * if its version equals the current one and init is O(1) in most cases. Instances are reused via
+ * SearchStatePool.
+ * <p/>
+ * @see SearchStatePool
+ * @author Peter Karich
+ */
+public class SearchState
+{
+    private int version;
+    private int[] versions;
+    private double[] weights;
+    private int[] parents;
+    private int[] edgeIds;
+    private final IntDoubleIndexedHeap heap;
+
+    public SearchState()
+    {
+        this(1000);
+    }
+
+    public SearchState( int nodes )
+    {
+        versions = new int[nodes];
+        weights = new double[nodes];
+        parents = new int[nodes];
+        edgeIds = new int[nodes];
+        heap = new IntDoubleIndexedHeap(Math.max(10, nodes / 10));
+    }
+
+    /**
+     * Invalidates all nodes from the previous search and makes sure the specified number of nodes
+     * can be stored.
+     */
+    public SearchState init( int nodes )
+    {
+        if (nodes > versions.length)
+        {
+            int newSize = Math.max(nodes, (int) (versions.length * 1.5));
+            versions = Arrays.copyOf(versions, newSize);
+            weights = Arrays.copyOf(weights, newSize);
+            parents = Arrays.copyOf(parents, newSize);
+            edgeIds = Arrays.copyOf(edgeIds, newSize);
+        }
+
+        version++;
+        if (version == Integer.MAX_VALUE)
+        {
+            // overflow is extremely rare, then we need a real reset
+            Arrays.fill(versions, 0);
+            version = 1;
+        }
+        heap.clear();
+        return this;
+    }
+
+    public final boolean isReached( int node )
+    {
+        return versions[node] == version;
+    }
+
+    /**
+     * @return the weight from the start or Double.MAX_VALUE if the node was not reached
+     */
+    public final double getWeight( int node )
+    {
+        if (versions[node] != version)
+            return Double.MAX_VALUE;
+
+        return weights[node];
+    }
+
+    public final int getParent( int node )
+    {
+        if (versions[node] != version)
+            return -1;
+
+        return parents[node];
+    }
+
+    public final int getEdge( int node )
+    {
+        if (versions[node] != version)
+            return EdgeIterator.NO_EDGE;
+
+        return edgeIds[node];
+    }
+
+    public final void set( int node, double weight, int parent, int edgeId )
+    {
+        versions[node] = version;
+        weights[node] = weight;
+        parents[node] = parent;
+        edgeIds[node] = edgeId;
+    }
+
+    public final IntDoubleIndexedHeap getHeap()
+    {
+        return heap;
+    }
+
+    /**
+     * The raw parent array. Entries are only valid for reached nodes.
+     */
+    int[] getParents()
+    {
+        return parents;
+    }
+
+    /**
+     * The raw edge array. Entries are only valid for reached nodes.
+     */
+    int[] getEdgeIds()
+    {
+        return edgeIds;
+    }
+
+    public int getCapacity()
+    {
+        return versions.length;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps search states so that the node arrays of an algorithm do not need to be allocated for
+ * every request. Every acquired state has to be released after the search, afterwards it must not
+ * be used anymore. The states are shared by all threads and at most maxStates are kept, so the
+ * memory is bounded independent of the number of threads. GraphHopper keeps one pool for its
+ * graph and clears it on close, see RoutingAlgorithm.setSearchStatePool.
+ * <p/>
+ * @author Peter Karich
+ */
+public class SearchStatePool
+{
+    /**
+     * Keeps no state, i.e. every search allocates its own arrays. Used if no pool is specified.
+     */
+    public static final SearchStatePool NONE = new SearchStatePool(0);
+    private final int maxStates;
+    private final List<SearchState> states;
+
+    /**
+     * @param maxStates the maximum number of kept states. Every state holds arrays as big as the
+     * graph (about 20 bytes per node) and a bidirectional search needs two states.
+     */
+    public SearchStatePool( int maxStates )
+    {
+        if (maxStates < 0)
+            throw new IllegalArgumentException("maxStates must not be negative " + maxStates);
+
+        this.maxStates = maxStates;
+        this.states = new ArrayList<SearchState>(maxStates);
+    }
+
+    /**
+     * @return an initialized state which can hold the specified number of nodes
+     */
+    public SearchState acquire( int nodes )
+    {
+        SearchState state = null;
+        synchronized (this)
+        {
+            if (!states.isEmpty())
+                state = states.remove(states.size() - 1);
+        }
+        if (state == null)
+            return new SearchState(nodes).init(nodes);
+
+        return state.init(nodes);
+    }
+
+    public synchronized void release( SearchState state )
+    {
+        if (state == null)
+            return;
+
+        if (states.size() < maxStates && !states.contains(state))
+            states.add(state);
+    }
+
+    /**
+     * Frees all kept states, e.g. after the graph was closed.
+     */
+    public synchronized void clear()
+    {
+        states.clear();
+    }
+
+    /**
+     * @return the number of kept states
+     */
+    public synchronized int getSize()
+    {
+        return states.size();
+    }
+
+    public int getMaxStates()
+    {
+        return maxStates;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.coll.IntDoubleIndexedHeap;
+import com.graphhopper.routing.AbstractRoutingAlgorithm;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.SearchState;
+import com.graphhopper.routing.SearchStatePool;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.EdgeEntry;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+/**
+ * The bidirectional dijkstra for a graph prepared with contraction hierarchies. Both searches only
+ * go 'upwards' and work on the node indexed arrays of the SearchStatePool instead of EdgeEntry
+ * objects.
+ * <p/>
+ * Compared to a normal bidirectional dijkstra the search of one direction cannot stop if the
+ * other one meets it. Instead every direction stops if its smallest weight in the queue is not
+ * smaller than the best path found so far.
+ * <p/>
+ * Stall-on-demand: before a node is expanded the edges coming from higher nodes are checked. If
+ * one of those nodes was reached with a smaller weight plus the edge weight, then the node was
+ * reached suboptimal in the upward search. It cannot be part of the shortest path and is not
+ * expanded, which makes the search space a lot smaller.
+ * <p/>
+ * @see PrepareContractionHierarchies#createAlgo()
+ * @author Peter Karich
+ */
+public class DijkstraBidirectionCH extends AbstractRoutingAlgorithm
+{
+    private SearchState stateFrom;
+    private SearchState stateTo;
+    private double bestWeight = Double.MAX_VALUE;
+    private int meetingNode = -1;
+    private boolean stallOnDemand = true;
+    private UnpackedShortcutCache unpackCache;
+    private int visitedFromCount;
+    private int visitedToCount;
+    private int stalledCount;
+
+    public DijkstraBidirectionCH( Graph graph, FlagEncoder encoder, Weighting weighting )
+    {
+        super(graph, encoder, weighting);
+    }
+
+    /**
+     * Enabled by default. Disabling is only useful for comparisons.
+     */
+    public DijkstraBidirectionCH setStallOnDemand( boolean stallOnDemand )
+    {
+        this.stallOnDemand = stallOnDemand;
+        return this;
+    }
+
+    public DijkstraBidirectionCH setUnpackCache( UnpackedShortcutCache unpackCache )
+    {
+        this.unpackCache = unpackCache;
+        return this;
+    }
+
+    @Override
+    public Path calcPath( int from, int to )
+    {
+        checkAlreadyRun();
+        if (isOutside(from) || isOutside(to))
+            return createEmptyPath();
+
+        int nodes = graph.getNodes();
+        stateFrom = searchStatePool.acquire(nodes);
+        stateTo = searchStatePool.acquire(nodes);
+        try
+        {
+            stateFrom.set(from, 0, -1, EdgeIterator.NO_EDGE);
+            stateFrom.getHeap().insert_(0, from);
+            stateTo.set(to, 0, -1, EdgeIterator.NO_EDGE);
+            stateTo.getHeap().insert_(0, to);
+            updateShortest(from, 0, stateTo);
+
+            boolean finishedFrom = false, finishedTo = false;
+            while (!finishedFrom || !finishedTo)
+            {
+                if (checkLimits(visitedFromCount + visitedToCount))
+                    return createEmptyPath();
+
+                if (!finishedFrom)
+                    finishedFrom = !fillEdges(stateFrom, stateTo, outEdgeExplorer, inEdgeExplorer);
+
+                if (!finishedTo)
+                    finishedTo = !fillEdges(stateTo, stateFrom, inEdgeExplorer, outEdgeExplorer);
+            }
+            return extractPath();
+        } finally
+        {
+            searchStatePool.release(stateFrom);
+            searchStatePool.release(stateTo);
+            stateFrom = stateTo = null;
+        }
+    }
+
+    /**
+     * Settles the next node of one direction.
+     * <p/>
+     * @return false if this direction is finished
+     */
+    private boolean fillEdges( SearchState state, SearchState stateOther, EdgeExplorer explorer,
+            EdgeExplorer stallExplorer )
+    {
+        IntDoubleIndexedHeap heap = state.getHeap();
+        if (heap.isEmpty() || heap.peek_key() >= bestWeight)
+            return false;
+
+        int currNode = heap.poll_element();
+        double currWeight = state.getWeight(currNode);
+        if (state == stateFrom)
+            visitedFromCount++;
+        else
+            visitedToCount++;
+
+        if (stallOnDemand && isStalled(currNode, currWeight, state, stallExplorer))
+        {
+            stalledCount++;
+            return true;
+        }
+
+        int currEdge = state.getEdge(currNode);
+        EdgeIterator iter = explorer.setBaseNode(currNode);
+        while (iter.next())
+        {
+            if (!accept(iter) || currEdge == iter.getEdge())
+                continue;
+
+            int adjNode = iter.getAdjNode();
+            double tmpWeight = weighting.calcWeight(iter) + currWeight;
+            if (!state.isReached(adjNode))
+            {
+                state.set(adjNode, tmpWeight, currNode, iter.getEdge());
+                heap.insert_(tmpWeight, adjNode);
+            } else if (state.getWeight(adjNode) > tmpWeight)
+            {
+                state.set(adjNode, tmpWeight, currNode, iter.getEdge());
+                heap.update_(tmpWeight, adjNode);
+            } else
+                continue;
+
+            updateShortest(adjNode, tmpWeight, stateOther);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the specified node can be reached with a smaller weight via a higher node
+     */
+    private boolean isStalled( int node, double weight, SearchState state, EdgeExplorer stallExplorer )
+    {
+        EdgeIterator iter = stallExplorer.setBaseNode(node);
+        while (iter.next())
+        {
+            if (!accept(iter))
+                continue;
+
+            int adjNode = iter.getAdjNode();
+            if (state.isReached(adjNode) && state.getWeight(adjNode) + weighting.calcWeight(iter) < weight)
+                return true;
+        }
+        return false;
+    }
+
+    private void updateShortest( int node, double weight, SearchState stateOther )
+    {
+        if (!stateOther.isReached(node))
+            return;
+
+        double newWeight = weight + stateOther.getWeight(node);
+        if (newWeight < bestWeight)
+        {
+            bestWeight = newWeight;
+            meetingNode = node;
+        }
+    }
+
+    @Override
+    protected boolean finished()
+    {
+        // the searches are stopped per direction in fillEdges
+        return false;
+    }
+
+    /**
+     * Creates the Path4CH from the arrays. Only the few entries of the (still packed) path are
+     * converted into EdgeEntry objects to reuse the shortcut unpacking.
+     */
+    @Override
+    protected Path extractPath()
+    {
+        Path4CH path = new Path4CH(graph, flagEncoder).setUnpackCache(unpackCache);
+        if (meetingNode < 0)
+            return path;
+
+        path.setEdgeEntry(createEntries(stateFrom, meetingNode));
+        path.setEdgeEntryTo(createEntries(stateTo, meetingNode));
+        path.setWeight(bestWeight);
+        return path.extract();
+    }
+
+    private EdgeEntry createEntries( SearchState state, int node )
+    {
+        EdgeEntry first = new EdgeEntry(state.getEdge(node), node, state.getWeight(node));
+        EdgeEntry curr = first;
+        while (EdgeIterator.Edge.isValid(curr.edge))
+        {
+            int parent = state.getParent(curr.endNode);
+            curr.parent = new EdgeEntry(state.getEdge(parent), parent, state.getWeight(parent));
+            curr = curr.parent;
+        }
+        return first;
+    }
+
+    /**
+     * @return the number of settled nodes which were not expanded because of stall-on-demand
+     */
+    public int getStalledNodes()
+    {
+        return stalledCount;
+    }
+
+    @Override
+    public int getVisitedNodes()
+    {
+        return visitedFromCount + visitedToCount;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "dijkstrabiCH";
+    }
+}
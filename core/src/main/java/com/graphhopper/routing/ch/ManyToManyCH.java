@@ -0,0 +1,355 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.coll.IntDoubleIndexedHeap;
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.routing.SearchState;
+import com.graphhopper.routing.SearchStatePool;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.LevelGraph;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeSkipIterator;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TIntDoubleHashMap;
+import gnu.trove.map.hash.TIntLongHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Calculates the weight, distance and time between all sources and all targets on a prepared
+ * LevelGraph without extracting the paths. For every target one backward search is done which
+ * only goes 'upwards' in the hierarchy and stores the weight of every settled node in a bucket of
+ * that node. Then for every source one forward upward search scans the buckets of the settled
+ * nodes. So only N+M small searches are necessary instead of N*M point to point queries.
+ * <p/>
+ * The distance and time of the shortcuts is calculated once per settled node by expanding the
+ * skipped edges, no point list is created.
+ * <p/>
+ * @see PrepareContractionHierarchies#createManyToMany()
+ * @author Peter Karich
+ */
+public class ManyToManyCH
+{
+    private final LevelGraph levelGraph;
+    private final FlagEncoder encoder;
+    private final Weighting weighting;
+    private EdgeFilter additionalEdgeFilter;
+    private Graph graph;
+    private EdgeExplorer outEdgeExplorer;
+    private EdgeExplorer inEdgeExplorer;
+    // the buckets per node point to the entries stored in the following lists
+    private final TIntObjectHashMap<TIntArrayList> buckets = new TIntObjectHashMap<TIntArrayList>();
+    private final TIntArrayList entryTargets = new TIntArrayList();
+    private final TDoubleArrayList entryWeights = new TDoubleArrayList();
+    private final TDoubleArrayList entryDistances = new TDoubleArrayList();
+    private final TLongArrayList entryMillis = new TLongArrayList();
+    // distance and time of already expanded edges
+    private final TIntDoubleHashMap edgeDistances = new TIntDoubleHashMap();
+    private final TIntLongHashMap edgeMillis = new TIntLongHashMap();
+    // distance and time from the start of the current search to the settled nodes
+    private final TIntDoubleHashMap nodeDistances = new TIntDoubleHashMap();
+    private final TIntLongHashMap nodeMillis = new TIntLongHashMap();
+    private double expandedDistance;
+    private long expandedMillis;
+    private double[][] weights;
+    private double[][] distances;
+    private long[][] millis;
+    private int visitedNodes;
+    private boolean alreadyRun;
+    private SearchStatePool searchStatePool = SearchStatePool.NONE;
+
+    /**
+     * @param weighting the weighting used for the preparation, see PreparationWeighting
+     */
+    public ManyToManyCH( LevelGraph graph, FlagEncoder encoder, Weighting weighting )
+    {
+        this.levelGraph = graph;
+        this.encoder = encoder;
+        this.weighting = weighting;
+        setGraph(graph);
+    }
+
+    public ManyToManyCH setEdgeFilter( EdgeFilter additionalEdgeFilter )
+    {
+        this.additionalEdgeFilter = additionalEdgeFilter;
+        return this;
+    }
+
+    public ManyToManyCH setSearchStatePool( SearchStatePool pool )
+    {
+        if (pool == null)
+            throw new IllegalArgumentException("Use SearchStatePool.NONE instead of null");
+
+        this.searchStatePool = pool;
+        return this;
+    }
+
+    private void setGraph( Graph graph )
+    {
+        this.graph = graph;
+        outEdgeExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, false, true));
+        inEdgeExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, true, false));
+    }
+
+    /**
+     * Calculates the matrix for the specified locations. Virtual nodes are introduced for all
+     * results which are not directly on a tower node. A result which is contained in the sources
+     * and in the targets gets only one virtual node, so pass the same instances for the same point.
+     */
+    public ManyToManyCH calcMatrix( List<QueryResult> sources, List<QueryResult> targets )
+    {
+        QueryGraph queryGraph = new QueryGraph(levelGraph);
+        // QueryResult has no equals, the same point is only detected via the same instance
+        Set<QueryResult> added = Collections.newSetFromMap(new IdentityHashMap<QueryResult, Boolean>());
+        List<QueryResult> results = new ArrayList<QueryResult>(sources.size() + targets.size());
+        for (QueryResult res : sources)
+        {
+            if (added.add(res))
+                results.add(res);
+        }
+        for (QueryResult res : targets)
+        {
+            if (added.add(res))
+                results.add(res);
+        }
+        queryGraph.lookup(results);
+        setGraph(queryGraph);
+
+        int[] fromNodes = new int[sources.size()];
+        for (int i = 0; i < fromNodes.length; i++)
+        {
+            fromNodes[i] = sources.get(i).getClosestNode();
+        }
+        int[] toNodes = new int[targets.size()];
+        for (int i = 0; i < toNodes.length; i++)
+        {
+            toNodes[i] = targets.get(i).getClosestNode();
+        }
+        return calcMatrix(fromNodes, toNodes);
+    }
+
+    /**
+     * Calculates the matrix between the specified nodes. Use getDistances and getMillis
+     * afterwards. Create a new instance per call.
+     */
+    public ManyToManyCH calcMatrix( int[] fromNodes, int[] toNodes )
+    {
+        if (alreadyRun)
+            throw new IllegalStateException("Create a new instance per call");
+
+        alreadyRun = true;
+        weights = new double[fromNodes.length][toNodes.length];
+        distances = new double[fromNodes.length][toNodes.length];
+        millis = new long[fromNodes.length][toNodes.length];
+        for (int i = 0; i < fromNodes.length; i++)
+        {
+            Arrays.fill(weights[i], Double.MAX_VALUE);
+            Arrays.fill(distances[i], -1);
+            Arrays.fill(millis[i], -1);
+        }
+
+        SearchState state = searchStatePool.acquire(graph.getNodes());
+        try
+        {
+            for (int i = 0; i < toNodes.length; i++)
+            {
+                search(state, toNodes[i], i, true);
+            }
+            for (int i = 0; i < fromNodes.length; i++)
+            {
+                search(state, fromNodes[i], i, false);
+            }
+        } finally
+        {
+            searchStatePool.release(state);
+        }
+        return this;
+    }
+
+    private void search( SearchState state, int start, int index, boolean backward )
+    {
+        state.init(graph.getNodes());
+        nodeDistances.clear();
+        nodeMillis.clear();
+        IntDoubleIndexedHeap heap = state.getHeap();
+        EdgeExplorer explorer = backward ? inEdgeExplorer : outEdgeExplorer;
+        state.set(start, 0, -1, EdgeIterator.NO_EDGE);
+        heap.insert_(0, start);
+        while (!heap.isEmpty())
+        {
+            int node = heap.poll_element();
+            double weight = state.getWeight(node);
+            visitedNodes++;
+
+            // the parent is already settled
+            double distance = 0;
+            long time = 0;
+            int parent = state.getParent(node);
+            if (parent >= 0)
+            {
+                expandEdge(state.getEdge(node), node);
+                distance = nodeDistances.get(parent) + expandedDistance;
+                time = nodeMillis.get(parent) + expandedMillis;
+            }
+            nodeDistances.put(node, distance);
+            nodeMillis.put(node, time);
+
+            if (backward)
+                addToBucket(node, index, weight, distance, time);
+            else
+                scanBucket(node, index, weight, distance, time);
+
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next())
+            {
+                if (additionalEdgeFilter != null && !additionalEdgeFilter.accept(iter))
+                    continue;
+
+                int adjNode = iter.getAdjNode();
+                double tmpWeight = weighting.calcWeight(iter) + weight;
+                if (tmpWeight < state.getWeight(adjNode))
+                {
+                    state.set(adjNode, tmpWeight, node, iter.getEdge());
+                    heap.insertOrUpdate(tmpWeight, adjNode);
+                }
+            }
+        }
+    }
+
+    private void addToBucket( int node, int target, double weight, double distance, long time )
+    {
+        TIntArrayList bucket = buckets.get(node);
+        if (bucket == null)
+        {
+            bucket = new TIntArrayList(4);
+            buckets.put(node, bucket);
+        }
+        bucket.add(entryTargets.size());
+        entryTargets.add(target);
+        entryWeights.add(weight);
+        entryDistances.add(distance);
+        entryMillis.add(time);
+    }
+
+    private void scanBucket( int node, int source, double weight, double distance, long time )
+    {
+        TIntArrayList bucket = buckets.get(node);
+        if (bucket == null)
+            return;
+
+        double[] weightRow = weights[source];
+        int size = bucket.size();
+        for (int i = 0; i < size; i++)
+        {
+            int entry = bucket.get(i);
+            int target = entryTargets.get(entry);
+            double tmpWeight = weight + entryWeights.get(entry);
+            if (tmpWeight < weightRow[target])
+            {
+                weightRow[target] = tmpWeight;
+                distances[source][target] = distance + entryDistances.get(entry);
+                millis[source][target] = time + entryMillis.get(entry);
+            }
+        }
+    }
+
+    /**
+     * Sets expandedDistance and expandedMillis to the values of the specified (shortcut) edge.
+     */
+    private void expandEdge( int edgeId, int adjNode )
+    {
+        if (edgeDistances.containsKey(edgeId))
+        {
+            expandedDistance = edgeDistances.get(edgeId);
+            expandedMillis = edgeMillis.get(edgeId);
+            return;
+        }
+
+        expandedDistance = 0;
+        expandedMillis = 0;
+        sumEdge((EdgeSkipIterator) graph.getEdgeProps(edgeId, adjNode));
+        edgeDistances.put(edgeId, expandedDistance);
+        edgeMillis.put(edgeId, expandedMillis);
+    }
+
+    private void sumEdge( EdgeSkipIterator edge )
+    {
+        if (!edge.isShortcut())
+        {
+            double dist = edge.getDistance();
+            expandedDistance += dist;
+            // identical to Path.calcMillis
+            expandedMillis += (long) (dist * 3600 / encoder.getSpeed(edge.getFlags()));
+            return;
+        }
+
+        // only the sum is necessary so the direction of the skipped edges does not matter
+        sumEdge((EdgeSkipIterator) levelGraph.getEdgeProps(edge.getSkippedEdge1(), Integer.MIN_VALUE));
+        sumEdge((EdgeSkipIterator) levelGraph.getEdgeProps(edge.getSkippedEdge2(), Integer.MIN_VALUE));
+    }
+
+    /**
+     * @return the distances in meter where the first index is the source and the second the
+     * target. The distance is -1 if the target is not reachable from the source.
+     */
+    public double[][] getDistances()
+    {
+        return distances;
+    }
+
+    /**
+     * @return the times in milliseconds, -1 if not reachable
+     */
+    public long[][] getMillis()
+    {
+        return millis;
+    }
+
+    /**
+     * @return the weights, Double.MAX_VALUE if not reachable
+     */
+    public double[][] getWeights()
+    {
+        return weights;
+    }
+
+    public int getVisitedNodes()
+    {
+        return visitedNodes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "manyToManyCH|" + weighting;
+    }
+}
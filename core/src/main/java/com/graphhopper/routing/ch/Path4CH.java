@@ -19,97 +19,140 @@ package com.graphhopper.routing.ch;
 
 import com.graphhopper.routing.PathBidirRef;
 import com.graphhopper.routing.util.FlagEncoder;
-import com.graphhopper.routing.util.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.util.EdgeIteratorState;
-import com.graphhopper.util.EdgeSkipExplorer;
 import com.graphhopper.util.EdgeSkipIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.stack.array.TIntArrayStack;
 
 /**
- * Recursivly unpack shortcuts.
+ * Unpacks the shortcuts of a path. Every skipped edge is fetched via its edge id and the known
+ * adjacent node, no adjacency list is scanned. The unpacking is done iterative via a stack so the
+ * effort is linear in the number of original edges. Optionally already unpacked shortcuts are
+ * taken from an UnpackedShortcutCache.
  * <p/>
  * @see PrepareContractionHierarchies
  * @author Peter Karich
  */
 public class Path4CH extends PathBidirRef
 {
-    private final Weighting calc;
+    private UnpackedShortcutCache unpackCache;
+    private TIntArrayStack stack;
+    private TIntArrayList unpackedEdges;
+    private double unpackedDistance;
+    private long unpackedMillis;
 
-    public Path4CH( Graph g, FlagEncoder encoder, Weighting calc )
+    public Path4CH( Graph g, FlagEncoder encoder )
     {
         super(g, encoder);
-        this.calc = calc;
     }
 
-    @Override
-    protected void processEdge( int tmpEdge, int endNode )
+    public Path4CH setUnpackCache( UnpackedShortcutCache unpackCache )
     {
-        EdgeIteratorState mainIter = graph.getEdgeProps(tmpEdge, endNode);
-
-        // Shortcuts do only contain valid weight so first expand before adding
-        // to distance and time
-        expandEdge((EdgeSkipIterator) mainIter, false);
+        this.unpackCache = unpackCache;
+        return this;
     }
 
     @Override
-    public double calcDistance( EdgeIteratorState mainIter )
-    {
-        return calc.revertWeight(mainIter, mainIter.getDistance());
-    }
-
-    private void expandEdge( EdgeSkipIterator mainIter, boolean revert )
+    protected void processEdge( int tmpEdge, int endNode )
     {
+        EdgeSkipIterator mainIter = (EdgeSkipIterator) graph.getEdgeProps(tmpEdge, endNode);
         if (!mainIter.isShortcut())
         {
             double dist = calcDistance(mainIter);
             distance += dist;
-            long flags = mainIter.getFlags();
-            millis += calcMillis(dist, flags);
-            addEdge(mainIter.getEdge());
+            millis += calcMillis(dist, mainIter.getFlags());
+            addEdge(tmpEdge);
             return;
         }
 
-        int skippedEdge1 = mainIter.getSkippedEdge1();
-        int skippedEdge2 = mainIter.getSkippedEdge2();
-        int from = mainIter.getBaseNode(), to = mainIter.getAdjNode();
-        if (revert)
+        // Shortcuts do only contain valid weight so first expand before adding
+        // to distance and time
+        int baseNode = mainIter.getBaseNode();
+        UnpackedShortcutCache.Entry entry = null;
+        if (unpackCache != null)
+            entry = unpackCache.get(tmpEdge, baseNode, endNode);
+
+        if (entry == null)
         {
-            int tmp = from;
-            from = to;
-            to = tmp;
+            entry = unpack(tmpEdge, baseNode, endNode);
+            if (unpackCache != null)
+                unpackCache.put(tmpEdge, baseNode, endNode, entry);
         }
 
-        // getEdgeProps could possibly return an empty edge if the shortcut is available for both directions
+        distance += entry.distance;
+        millis += entry.millis;
+        int[] edges = entry.edges;
+        // the edges of the 'from'-side are added in reverse order, see reverseOrder
         if (reverseOrder)
         {
-            EdgeSkipExplorer iter = (EdgeSkipExplorer) graph.getEdgeProps(skippedEdge1, to);
-            boolean empty = iter == null;
-            if (empty)
-                iter = (EdgeSkipExplorer) graph.getEdgeProps(skippedEdge2, to);
-
-            expandEdge(iter, false);
-
-            if (empty)
-                iter = (EdgeSkipExplorer) graph.getEdgeProps(skippedEdge1, from);
-            else
-                iter = (EdgeSkipExplorer) graph.getEdgeProps(skippedEdge2, from);
-
-            expandEdge(iter, true);
+            for (int i = edges.length - 1; i >= 0; i--)
+            {
+                addEdge(edges[i]);
+            }
         } else
         {
-            EdgeSkipExplorer iter = (EdgeSkipExplorer) graph.getEdgeProps(skippedEdge1, from);
-            boolean empty = iter == null;
-            if (empty)
-                iter = (EdgeSkipExplorer) graph.getEdgeProps(skippedEdge2, from);
+            for (int i = 0; i < edges.length; i++)
+            {
+                addEdge(edges[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the original edges of the specified shortcut going from baseNode to adjNode
+     */
+    private UnpackedShortcutCache.Entry unpack( int shortcut, int baseNode, int adjNode )
+    {
+        if (stack == null)
+        {
+            stack = new TIntArrayStack();
+            unpackedEdges = new TIntArrayList();
+        }
+        unpackedEdges.resetQuick();
+        unpackedDistance = 0;
+        unpackedMillis = 0;
 
-            expandEdge(iter, true);
+        push(shortcut, baseNode, adjNode);
+        while (stack.size() > 0)
+        {
+            int to = stack.pop();
+            int from = stack.pop();
+            int edge = stack.pop();
+            EdgeSkipIterator iter = (EdgeSkipIterator) graph.getEdgeProps(edge, to);
+            if (!iter.isShortcut())
+            {
+                double dist = calcDistance(iter);
+                unpackedDistance += dist;
+                unpackedMillis += calcMillis(dist, iter.getFlags());
+                unpackedEdges.add(edge);
+                continue;
+            }
 
-            if (empty)
-                iter = (EdgeSkipExplorer) graph.getEdgeProps(skippedEdge1, to);
-            else
-                iter = (EdgeSkipExplorer) graph.getEdgeProps(skippedEdge2, to);
+            // find the skipped edge adjacent to 'from'. getEdgeProps returns null if the node does
+            // not match, then it has to be the other skipped edge
+            int fromEdge = iter.getSkippedEdge1();
+            int toEdge = iter.getSkippedEdge2();
+            EdgeIteratorState fromIter = graph.getEdgeProps(fromEdge, from);
+            if (fromIter == null)
+            {
+                fromEdge = toEdge;
+                toEdge = iter.getSkippedEdge1();
+                fromIter = graph.getEdgeProps(fromEdge, from);
+            }
 
-            expandEdge(iter, false);
+            // the contracted node in the middle
+            int via = fromIter.getBaseNode();
+            push(toEdge, via, to);
+            push(fromEdge, from, via);
         }
+        return new UnpackedShortcutCache.Entry(unpackedEdges.toArray(), unpackedDistance, unpackedMillis);
+    }
+
+    private void push( int edge, int from, int to )
+    {
+        stack.push(edge);
+        stack.push(from);
+        stack.push(to);
     }
 }
@@ -17,16 +17,16 @@
  */
 package com.graphhopper.routing.ch;
 
-import com.graphhopper.coll.GHTreeMapComposed;
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHBitSetImpl;
+import com.graphhopper.coll.IntDoubleIndexedHeap;
 import com.graphhopper.routing.*;
 import com.graphhopper.routing.util.AbstractAlgoPreparation;
 import com.graphhopper.routing.util.DefaultEdgeFilter;
 import com.graphhopper.routing.util.LevelEdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
-import com.graphhopper.routing.util.ShortestWeighting;
 import com.graphhopper.routing.util.Weighting;
 import com.graphhopper.routing.AStarBidirection;
-import com.graphhopper.routing.DijkstraBidirectionRef;
 import com.graphhopper.routing.DijkstraOneToMany;
 import com.graphhopper.routing.RoutingAlgorithm;
 import com.graphhopper.routing.util.*;
@@ -37,7 +37,13 @@ import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.LevelGraph;
 import com.graphhopper.storage.LevelGraphStorage;
 import com.graphhopper.util.*;
+import gnu.trove.list.array.TIntArrayList;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,38 +62,44 @@ import org.slf4j.LoggerFactory;
 public class PrepareContractionHierarchies extends AbstractAlgoPreparation<PrepareContractionHierarchies>
 {
     private final Logger logger = LoggerFactory.getLogger(getClass());
-    // preparation dijkstra uses always shortest path as edges are rewritten - see doWork
-    private final Weighting shortestWeighting = new ShortestWeighting();
+    // shortcuts store their weight, the weight of all other edges is calculated via prepareWeighting
+    private final PreparationWeighting shortcutWeighting;
     private final Weighting prepareWeighting;
     private final FlagEncoder prepareEncoder;
-    private EdgeSkipExplorer vehicleInExplorer;
     private EdgeSkipExplorer vehicleOutExplorer;
     private EdgeSkipExplorer vehicleAllExplorer;
     private EdgeSkipExplorer vehicleAllTmpExplorer;
-    private EdgeSkipExplorer calcPrioAllExplorer;
     private LevelGraph g;
     // the most important nodes comes last
-    private GHTreeMapComposed sortedNodes;
+    private IntDoubleIndexedHeap sortedNodes;
     private PriorityNode refs[];
     private final DataAccess originalEdges;
     // shortcut is one direction, speed is only involved while recalculating the endNode weights - see prepareEdges
     private final long scOneDir;
     private final long scBothDir;
-    private final Map<Shortcut, Shortcut> shortcuts = new HashMap<Shortcut, Shortcut>();
-    private IgnoreNodeFilter levelEdgeFilter;
-    private DijkstraOneToMany algo;
+    // witness searches and priority calculation of the preparing thread
+    private ContractionWorker worker;
+    // one worker per thread for the parallel contraction, the first one is worker
+    private ContractionWorker[] workers;
+    private ExecutorService executor;
+    private int threads = 1;
     private boolean removesHigher2LowerEdges = true;
     private long counter;
     private int newShortcuts;
-    private long dijkstraCount;
     private double meanDegree;
     private final Random rand = new Random(123);
-    private StopWatch dijkstraSW = new StopWatch();
     private int periodicUpdatesCount = 3;
     private int lastNodesLazyUpdatePercentage = 10;
     private StopWatch allSW = new StopWatch();
     private int neighborUpdatePercentage = 10;
     private int initialCollectionSize = 10000;
+    private UnpackedShortcutCache unpackCache;
+    private StopWatch periodSW = new StopWatch();
+    private StopWatch lazySW = new StopWatch();
+    private StopWatch neighborSW = new StopWatch();
+    // the nodes of the current independent set and the nodes which cannot be added to it
+    private GHBitSet independentNodes;
+    private GHBitSet blockedNodes;
 
     public PrepareContractionHierarchies( FlagEncoder encoder, Weighting weighting )
     {
@@ -95,6 +107,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
         scOneDir = encoder.setAccess(0, true, false);
         scBothDir = encoder.setAccess(0, true, true);
         prepareWeighting = weighting;
+        shortcutWeighting = new PreparationWeighting(weighting);
         originalEdges = new GHDirectory("", DAType.RAM_INT).find("originalEdges");
         originalEdges.create(1000);
     }
@@ -161,7 +174,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
      * Disconnect is very important to improve query time and preparation if enabled. It will remove
      * the edge going from the higher level node to the currently contracted one. But the original
      * graph is no longer available, so it is only useful for bidirectional CH algorithms. Default
-     * is true.
+     * is true. Disable it if the graph is shared with the preparations of other vehicles.
      */
     public PrepareContractionHierarchies setRemoveHigher2LowerEdges( boolean removeHigher2LowerEdges )
     {
@@ -169,6 +182,34 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
         return this;
     }
 
+    /**
+     * Caches the specified number of unpacked shortcuts for the path extraction of all queries.
+     * Default is 0 which disables the cache.
+     */
+    public PrepareContractionHierarchies setUnpackCacheSize( int size )
+    {
+        if (size < 0)
+            throw new IllegalArgumentException("unpack cache size cannot be negative but was " + size);
+
+        unpackCache = size == 0 ? null : new UnpackedShortcutCache(size);
+        return this;
+    }
+
+    /**
+     * Specifies the number of threads used to contract the nodes. If more than one thread is used
+     * independent sets of nodes are contracted: no two of them share a neighbor, so the witness
+     * searches can run concurrently and the resulting shortcuts are added afterwards. This needs
+     * one DijkstraOneToMany per thread and creates slightly more shortcuts. Default is 1.
+     */
+    public PrepareContractionHierarchies setThreads( int threads )
+    {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads has to be at least 1 but was " + threads);
+
+        this.threads = threads;
+        return this;
+    }
+
     /**
      * While creating an algorithm out of this preparation class 10 000 nodes are assumed which can
      * be too high for your mobile application. E.g. A 500km query only traverses roughly 2000
@@ -193,27 +234,33 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
         super.doWork();
 
         initFromGraph();
-        if (!prepareEdges())
-            return this;
+        try
+        {
+            if (!prepareEdges())
+                return this;
 
-        if (!prepareNodes())
-            return this;
+            if (!prepareNodes())
+                return this;
 
-        contractNodes();
+            contractNodes();
+        } finally
+        {
+            // the threads must not be kept if the contraction fails or if close is not called
+            shutdownExecutor();
+        }
         return this;
     }
 
     boolean prepareEdges()
     {
         // In CH the setProperties (speed) are ignored as calculating the new setProperties for a shortcut is often not possible.
-        // Also several shortcuts would be necessary with the different modes (e.g. fastest and shortest)
-        // So calculate the weight and store this as weight, then use only weight instead of calcWeight
+        // So a shortcut stores its weight instead of the distance. The edges itself are not changed
+        // and weighted via shortcutWeighting which makes it possible to share them with other vehicles
         EdgeIterator iter = g.getAllEdges();
         int c = 0;
         while (iter.next())
         {
             c++;
-            iter.setDistance(prepareWeighting.calcWeight(iter));
             setOrigEdgeCount(iter.getEdge(), 1);
         }
         return c > 0;
@@ -226,16 +273,18 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
     boolean prepareNodes()
     {
         int len = g.getNodes();
+        TIntArrayList nodes = new TIntArrayList(len);
         for (int node = 0; node < len; node++)
         {
             refs[node] = new PriorityNode(node, 0);
+            nodes.add(node);
         }
 
+        calculatePriorities(nodes);
         for (int node = 0; node < len; node++)
         {
             PriorityNode wn = refs[node];
-            wn.priority = calculatePriority(node);
-            sortedNodes.insert(wn.node, wn.priority);
+            sortedNodes.insert_(wn.priority, wn.node);
         }
 
         if (sortedNodes.isEmpty())
@@ -249,6 +298,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
         meanDegree = g.getAllEdges().getMaxId() / g.getNodes();
         int level = 1;
         counter = 0;
+        long nextLogCounter = 0;
         int logSize = Math.max(10, sortedNodes.getSize() / 15);
 
         // preparation takes longer but queries are slightly faster with preparation
@@ -259,13 +309,11 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
             periodicUpdate = false;
         }
         int updateCounter = 0;
-        StopWatch periodSW = new StopWatch();
 
         // disable as preparation is slower and query time does not benefit
         int lastNodesLazyUpdates = lastNodesLazyUpdatePercentage == 0
                 ? 0
                 : sortedNodes.getSize() / (100 / lastNodesLazyUpdatePercentage);
-        StopWatch lazySW = new StopWatch();
 
         // Recompute priority of uncontracted neighbors.
         // Without neighborupdates preparation is faster but we need them
@@ -274,12 +322,12 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
         if (neighborUpdatePercentage == 0)
             neighborUpdate = false;
 
-        StopWatch neighborSW = new StopWatch();
-        LevelGraphStorage lg = ((LevelGraphStorage) g);
+        LevelGraphStorage lg = removesHigher2LowerEdges ? (LevelGraphStorage) g : null;
         while (!sortedNodes.isEmpty())
         {
-            if (counter % logSize == 0)
+            if (counter >= nextLogCounter)
             {
+                nextLogCounter = counter + logSize;
                 // periodically update priorities of ALL nodes            
                 if (periodicUpdate && updateCounter > 0
                         && updateCounter % periodicUpdatesCount == 0)
@@ -287,44 +335,58 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
                     periodSW.start();
                     sortedNodes.clear();
                     int len = g.getNodes();
+                    TIntArrayList nodes = new TIntArrayList();
                     for (int node = 0; node < len; node++)
                     {
-                        PriorityNode pNode = refs[node];
                         if (g.getLevel(node) != 0)
                         {
                             continue;
                         }
-                        pNode.priority = calculatePriority(node);
-                        sortedNodes.insert(node, pNode.priority);
+                        nodes.add(node);
+                    }
+                    calculatePriorities(nodes);
+                    for (int i = 0; i < nodes.size(); i++)
+                    {
+                        PriorityNode pNode = refs[nodes.get(i)];
+                        sortedNodes.insert_(pNode.priority, pNode.node);
                     }
                     periodSW.stop();
                 }
                 updateCounter++;
                 logger.info(updateCounter + ", nodes: " + Helper.nf(sortedNodes.getSize())
                         + ", shortcuts:" + Helper.nf(newShortcuts)
-                        + ", dijkstras:" + Helper.nf(dijkstraCount)
-                        + ", t(dijk):" + (int) dijkstraSW.getSeconds()
+                        + ", dijkstras:" + Helper.nf(getDijkstraCount())
+                        + ", t(dijk):" + (int) getDijkstraSeconds()
                         + ", t(period):" + (int) periodSW.getSeconds()
                         + ", t(lazy):" + (int) lazySW.getSeconds()
                         + ", t(neighbor):" + (int) neighborSW.getSeconds()
                         + ", meanDegree:" + (long) meanDegree
                         + ", " + Helper.getMemInfo());
-                dijkstraSW = new StopWatch();
+                for (ContractionWorker w : workers)
+                {
+                    w.dijkstraSW = new StopWatch();
+                }
                 periodSW = new StopWatch();
                 lazySW = new StopWatch();
                 neighborSW = new StopWatch();
             }
 
+            if (threads > 1)
+            {
+                level = contractIndependentSet(level, lastNodesLazyUpdates, neighborUpdate, lg);
+                continue;
+            }
+
             counter++;
-            PriorityNode wn = refs[sortedNodes.pollKey()];
+            PriorityNode wn = refs[sortedNodes.poll_element()];
             if (sortedNodes.getSize() < lastNodesLazyUpdates)
             {
                 lazySW.start();
-                wn.priority = calculatePriority(wn.node);
-                if (!sortedNodes.isEmpty() && wn.priority > sortedNodes.peekValue())
+                wn.priority = worker.calculatePriority(wn.node);
+                if (!sortedNodes.isEmpty() && wn.priority > sortedNodes.peek_key())
                 {
                     // current node got more important => insert as new value and contract it later
-                    sortedNodes.insert(wn.node, wn.priority);
+                    sortedNodes.insert_(wn.priority, wn.node);
                     lazySW.stop();
                     continue;
                 }
@@ -351,10 +413,10 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
                     neighborSW.start();
                     PriorityNode neighborWn = refs[nn];
                     int oldPrio = neighborWn.priority;
-                    neighborWn.priority = calculatePriority(nn);
+                    neighborWn.priority = worker.calculatePriority(nn);
                     if (neighborWn.priority != oldPrio)
                     {
-                        sortedNodes.update(nn, oldPrio, neighborWn.priority);
+                        sortedNodes.update_(neighborWn.priority, nn);
                     }
                     neighborSW.stop();
                 }
@@ -370,8 +432,9 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
         logger.info("new shortcuts " + newShortcuts + ", " + prepareWeighting
                 + ", " + prepareEncoder
                 + ", removeHigher2LowerEdges:" + removesHigher2LowerEdges
-                + ", dijkstras:" + dijkstraCount
-                + ", t(dijk):" + (int) dijkstraSW.getSeconds()
+                + ", threads:" + threads
+                + ", dijkstras:" + getDijkstraCount()
+                + ", t(dijk):" + (int) getDijkstraSeconds()
                 + ", t(period):" + (int) periodSW.getSeconds()
                 + ", t(lazy):" + (int) lazySW.getSeconds()
                 + ", t(neighbor):" + (int) neighborSW.getSeconds()
@@ -382,15 +445,263 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
                 + ", neighbor:" + neighborUpdatePercentage);
     }
 
+    /**
+     * Contracts an independent set of the nodes with the lowest priority: no two of them are
+     * neighbors or share a neighbor. The witness searches of all nodes run in parallel and ignore
+     * the whole set, then the shortcuts are added in the order of the priorities.
+     * <p/>
+     * @return the level of the next contracted node
+     */
+    private int contractIndependentSet( int level, int lastNodesLazyUpdates, boolean neighborUpdate,
+            LevelGraphStorage lg )
+    {
+        // independent of the number of threads, so the result is the same for every thread count
+        int candidateCount = Math.max(10, sortedNodes.getSize() / 20);
+        TIntArrayList candidates = new TIntArrayList(candidateCount);
+        while (!sortedNodes.isEmpty() && candidates.size() < candidateCount)
+        {
+            candidates.add(sortedNodes.poll_element());
+        }
+        counter += candidates.size();
+
+        if (sortedNodes.getSize() < lastNodesLazyUpdates)
+        {
+            lazySW.start();
+            calculatePriorities(candidates);
+            lazySW.stop();
+        }
+
+        PriorityNode[] sorted = new PriorityNode[candidates.size()];
+        for (int i = 0; i < sorted.length; i++)
+        {
+            sorted[i] = refs[candidates.get(i)];
+        }
+        // stable, so equal priorities are still ordered by node
+        Arrays.sort(sorted);
+
+        // nodes which got more important than the remaining ones are contracted later
+        int maxPriority = sortedNodes.isEmpty() ? Integer.MAX_VALUE : (int) sortedNodes.peek_key();
+        TIntArrayList selected = new TIntArrayList(sorted.length);
+        independentNodes.clear();
+        blockedNodes.clear();
+        for (PriorityNode wn : sorted)
+        {
+            if (blockedNodes.contains(wn.node) || wn.priority > maxPriority && !selected.isEmpty())
+            {
+                sortedNodes.insert_(wn.priority, wn.node);
+                continue;
+            }
+
+            selected.add(wn.node);
+            independentNodes.add(wn.node);
+            blockedNodes.add(wn.node);
+            EdgeIterator iter = vehicleAllExplorer.setBaseNode(wn.node);
+            while (iter.next())
+            {
+                int nn = iter.getAdjNode();
+                if (g.getLevel(nn) != 0)
+                    continue;
+
+                blockedNodes.add(nn);
+                EdgeIterator iter2 = vehicleAllTmpExplorer.setBaseNode(nn);
+                while (iter2.next())
+                {
+                    if (g.getLevel(iter2.getAdjNode()) == 0)
+                        blockedNodes.add(iter2.getAdjNode());
+                }
+            }
+        }
+
+        // witness searches must not use another node of the set as it could be contracted, 
+        // relying on a witness through this node
+        final int size = selected.size();
+        final int[] nodes = selected.toArray();
+        final Shortcut[][] found = new Shortcut[size][];
+        final int[] degrees = new int[size];
+        for (ContractionWorker w : workers)
+        {
+            w.ignoreNodeFilter.setIgnoredNodes(independentNodes);
+        }
+        forEachWorker(size, new WorkerTask()
+        {
+            @Override
+            public void run( ContractionWorker w, int index )
+            {
+                AddShortcutHandler handler = w.addScHandler.setNode(nodes[index]);
+                w.findShortcuts(handler);
+                found[index] = handler.shortcuts.keySet().toArray(new Shortcut[handler.shortcuts.size()]);
+                degrees[index] = w.degreeCounter;
+            }
+        });
+        for (ContractionWorker w : workers)
+        {
+            w.ignoreNodeFilter.setIgnoredNodes(null);
+        }
+
+        // merge the results, the shortcuts of different nodes do not touch the same edges
+        TIntArrayList neighbors = new TIntArrayList();
+        blockedNodes.clear();
+        for (int i = 0; i < size; i++)
+        {
+            int node = nodes[i];
+            newShortcuts += addShortcuts(Arrays.asList(found[i]));
+            meanDegree = (meanDegree * 2 + degrees[i]) / 3;
+            g.setLevel(node, level);
+            level++;
+
+            EdgeSkipIterator iter = (EdgeSkipIterator) vehicleAllExplorer.setBaseNode(node);
+            while (iter.next())
+            {
+                int nn = iter.getAdjNode();
+                if (g.getLevel(nn) != 0)
+                    continue;
+
+                if (neighborUpdate && rand.nextInt(100) < neighborUpdatePercentage
+                        && !blockedNodes.contains(nn))
+                {
+                    blockedNodes.add(nn);
+                    neighbors.add(nn);
+                }
+
+                if (removesHigher2LowerEdges)
+                    lg.disconnect(vehicleAllTmpExplorer, iter);
+            }
+        }
+
+        neighborSW.start();
+        int[] oldPrios = new int[neighbors.size()];
+        for (int i = 0; i < oldPrios.length; i++)
+        {
+            oldPrios[i] = refs[neighbors.get(i)].priority;
+        }
+        calculatePriorities(neighbors);
+        for (int i = 0; i < oldPrios.length; i++)
+        {
+            PriorityNode neighborWn = refs[neighbors.get(i)];
+            if (neighborWn.priority != oldPrios[i])
+                sortedNodes.update_(neighborWn.priority, neighborWn.node);
+        }
+        neighborSW.stop();
+        return level;
+    }
+
+    /**
+     * Calculates the priorities of the specified nodes and stores them in refs, in parallel if more
+     * than one thread is used.
+     */
+    void calculatePriorities( final TIntArrayList nodes )
+    {
+        forEachWorker(nodes.size(), new WorkerTask()
+        {
+            @Override
+            public void run( ContractionWorker w, int index )
+            {
+                int node = nodes.get(index);
+                refs[node].priority = w.calculatePriority(node);
+            }
+        });
+    }
+
+    interface WorkerTask
+    {
+        void run( ContractionWorker w, int index );
+    }
+
+    /**
+     * Runs the task for all indices from 0 to size-1. The graph must not be changed meanwhile.
+     */
+    private void forEachWorker( int size, final WorkerTask task )
+    {
+        if (workers.length == 1 || size < 2)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                task.run(worker, i);
+            }
+            return;
+        }
+
+        if (executor == null)
+            executor = Executors.newFixedThreadPool(workers.length);
+
+        final int size_ = size;
+        final int step = workers.length;
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(step);
+        for (int w = 0; w < step && w < size; w++)
+        {
+            final ContractionWorker tmpWorker = workers[w];
+            final int start = w;
+            tasks.add(new Callable<Object>()
+            {
+                @Override
+                public Object call()
+                {
+                    // interleaved as the costs of the nodes are often similar for neighboring indices
+                    for (int i = start; i < size_; i += step)
+                    {
+                        task.run(tmpWorker, i);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        try
+        {
+            for (Future<Object> f : executor.invokeAll(tasks))
+            {
+                f.get();
+            }
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Contraction was interrupted", ex);
+        } catch (ExecutionException ex)
+        {
+            throw new RuntimeException("Contraction failed", ex.getCause());
+        }
+    }
+
+    private long getDijkstraCount()
+    {
+        long sum = 0;
+        for (ContractionWorker w : workers)
+        {
+            sum += w.dijkstraCount;
+        }
+        return sum;
+    }
+
+    private float getDijkstraSeconds()
+    {
+        float sum = 0;
+        for (ContractionWorker w : workers)
+        {
+            sum += w.dijkstraSW.getSeconds();
+        }
+        return sum;
+    }
+
     public void close()
     {
-        algo.close();
+        for (ContractionWorker w : workers)
+        {
+            w.close();
+        }
+        shutdownExecutor();
         originalEdges.close();
         sortedNodes = null;
         refs = null;
     }
-    AddShortcutHandler addScHandler = new AddShortcutHandler();
-    CalcShortcutHandler calcScHandler = new CalcShortcutHandler();
+
+    private void shutdownExecutor()
+    {
+        if (executor != null)
+        {
+            executor.shutdown();
+            executor = null;
+        }
+    }
 
     interface ShortcutHandler
     {
@@ -433,6 +744,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
 
     class AddShortcutHandler implements ShortcutHandler
     {
+        final Map<Shortcut, Shortcut> shortcuts = new HashMap<Shortcut, Shortcut>();
         int node;
 
         public AddShortcutHandler()
@@ -488,119 +800,147 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
 
     Set<Shortcut> testFindShortcuts( int node )
     {
-        findShortcuts(addScHandler.setNode(node));
-        return shortcuts.keySet();
-    }
-
-    /**
-     * Calculates the priority of endNode v without changing the graph. Warning: the calculated
-     * priority must NOT depend on priority(v) and therefor findShortcuts should also not depend on
-     * the priority(v). Otherwise updating the priority before contracting in contractNodes() could
-     * lead to a slowishor even endless loop.
-     */
-    int calculatePriority( int v )
-    {
-        // set of shortcuts that would be added if endNode v would be contracted next.
-        findShortcuts(calcScHandler.setNode(v));
-
-//        System.out.println(v + "\t " + tmpShortcuts);
-        // # huge influence: the bigger the less shortcuts gets created and the faster is the preparation
-        //
-        // every endNode has an 'original edge' number associated. initially it is r=1
-        // when a new shortcut is introduced then r of the associated edges is summed up:
-        // r(u,w)=r(u,v)+r(v,w) now we can define
-        // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
-        int originalEdgesCount = calcScHandler.originalEdgesCount;
-//        for (Shortcut sc : tmpShortcuts) {
-//            originalEdgesCount += sc.originalEdges;
-//        }
-
-        // # lowest influence on preparation speed or shortcut creation count 
-        // (but according to paper should speed up queries)
-        //
-        // number of already contracted neighbors of v
-        int contractedNeighbors = 0;
-        int degree = 0;
-        calcPrioAllExplorer.setBaseNode(v);
-        while (calcPrioAllExplorer.next())
-        {
-            degree++;
-            if (calcPrioAllExplorer.isShortcut())
-                contractedNeighbors++;
-        }
-
-        // from shortcuts we can compute the edgeDifference
-        // # low influence: with it the shortcut creation is slightly faster
-        //
-        // |shortcuts(v)| − |{(u, v) | v uncontracted}| − |{(v, w) | v uncontracted}|        
-        // meanDegree is used instead of outDegree+inDegree as if one endNode is in both directions
-        // only one bucket memory is used. Additionally one shortcut could also stand for two directions.
-        int edgeDifference = calcScHandler.shortcuts - degree;
-
-        // according to the paper do a simple linear combination of the properties to get the priority.
-        // this is the current optimum for unterfranken:
-        return 10 * edgeDifference + originalEdgesCount + contractedNeighbors;
+        worker.findShortcuts(worker.addScHandler.setNode(node));
+        return worker.addScHandler.shortcuts.keySet();
     }
 
     /**
-     * Finds shortcuts, does not change the underlying graph.
+     * Calculates priorities and finds shortcuts without changing the graph. The explorers and the
+     * witness search keep state, so every thread needs its own instance.
      */
-    void findShortcuts( ShortcutHandler sch )
+    class ContractionWorker
     {
-        long tmpDegreeCounter = 0;
-        EdgeIterator incomingEdges = vehicleInExplorer.setBaseNode(sch.getNode());
-        // collect outgoing nodes (goal-nodes) only once
-        while (incomingEdges.next())
+        private final EdgeSkipExplorer inExplorer;
+        private final EdgeSkipExplorer outExplorer;
+        private final EdgeSkipExplorer allExplorer;
+        final IgnoreNodeFilter ignoreNodeFilter;
+        private final DijkstraOneToMany algo;
+        final AddShortcutHandler addScHandler = new AddShortcutHandler();
+        final CalcShortcutHandler calcScHandler = new CalcShortcutHandler();
+        // the number of witness search starts of the last findShortcuts call
+        int degreeCounter;
+        long dijkstraCount;
+        StopWatch dijkstraSW = new StopWatch();
+
+        ContractionWorker()
         {
-            int u_fromNode = incomingEdges.getAdjNode();
-            // accept only uncontracted nodes
-            if (g.getLevel(u_fromNode) != 0)
-                continue;
+            inExplorer = g.createEdgeExplorer(new DefaultEdgeFilter(prepareEncoder, true, false));
+            outExplorer = g.createEdgeExplorer(new DefaultEdgeFilter(prepareEncoder, false, true));
+            allExplorer = g.createEdgeExplorer(new DefaultEdgeFilter(prepareEncoder, true, true));
+            ignoreNodeFilter = new IgnoreNodeFilter(g);
+            algo = new DijkstraOneToMany(g, prepareEncoder, shortcutWeighting);
+        }
 
-            double v_u_weight = incomingEdges.getDistance();
-            int skippedEdge1 = incomingEdges.getEdge();
-            int incomingEdgeOrigCount = getOrigEdgeCount(skippedEdge1);
+        /**
+         * Calculates the priority of endNode v without changing the graph. Warning: the calculated
+         * priority must NOT depend on priority(v) and therefor findShortcuts should also not depend on
+         * the priority(v). Otherwise updating the priority before contracting in contractNodes() could
+         * lead to a slowishor even endless loop.
+         */
+        int calculatePriority( int v )
+        {
+            // set of shortcuts that would be added if endNode v would be contracted next.
+            findShortcuts(calcScHandler.setNode(v));
+
+    //        System.out.println(v + "\t " + tmpShortcuts);
+            // # huge influence: the bigger the less shortcuts gets created and the faster is the preparation
+            //
+            // every endNode has an 'original edge' number associated. initially it is r=1
+            // when a new shortcut is introduced then r of the associated edges is summed up:
+            // r(u,w)=r(u,v)+r(v,w) now we can define
+            // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
+            int originalEdgesCount = calcScHandler.originalEdgesCount;
+    //        for (Shortcut sc : tmpShortcuts) {
+    //            originalEdgesCount += sc.originalEdges;
+    //        }
+
+            // # lowest influence on preparation speed or shortcut creation count 
+            // (but according to paper should speed up queries)
+            //
+            // number of already contracted neighbors of v
+            int contractedNeighbors = 0;
+            int degree = 0;
+            allExplorer.setBaseNode(v);
+            while (allExplorer.next())
+            {
+                degree++;
+                if (allExplorer.isShortcut())
+                    contractedNeighbors++;
+            }
+
+            // from shortcuts we can compute the edgeDifference
+            // # low influence: with it the shortcut creation is slightly faster
+            //
+            // |shortcuts(v)| − |{(u, v) | v uncontracted}| − |{(v, w) | v uncontracted}|        
+            // meanDegree is used instead of outDegree+inDegree as if one endNode is in both directions
+            // only one bucket memory is used. Additionally one shortcut could also stand for two directions.
+            int edgeDifference = calcScHandler.shortcuts - degree;
+
+            // according to the paper do a simple linear combination of the properties to get the priority.
+            // this is the current optimum for unterfranken:
+            return 10 * edgeDifference + originalEdgesCount + contractedNeighbors;
+        }
+
+        /**
+         * Finds shortcuts, does not change the underlying graph.
+         */
+        void findShortcuts( ShortcutHandler sch )
+        {
+            int tmpDegreeCounter = 0;
+            EdgeIterator incomingEdges = inExplorer.setBaseNode(sch.getNode());
             // collect outgoing nodes (goal-nodes) only once
-            EdgeIterator outgoingEdges = vehicleOutExplorer.setBaseNode(sch.getNode());
-            // force fresh maps etc as this cannot be determined by from node alone (e.g. same from node but different avoidNode)
-            algo.clear();
-            tmpDegreeCounter++;
-            while (outgoingEdges.next())
+            while (incomingEdges.next())
             {
-                int w_toNode = outgoingEdges.getAdjNode();
-                // add only uncontracted nodes
-                if (g.getLevel(w_toNode) != 0 || u_fromNode == w_toNode)
-                {
+                int u_fromNode = incomingEdges.getAdjNode();
+                // accept only uncontracted nodes
+                if (g.getLevel(u_fromNode) != 0)
                     continue;
-                }
 
-                // Limit weight as ferries or forbidden edges can increase local search too much.
-                // If we decrease the correct weight we only explore less and introduce more shortcuts.
-                // I.e. no change to accuracy is made.
-                double existingDirectWeight = v_u_weight + outgoingEdges.getDistance();
-                algo.setLimitWeight(existingDirectWeight)
-                        .setLimitVisitedNodes((int) meanDegree * 100)
-                        .setEdgeFilter(levelEdgeFilter.setAvoidNode(sch.getNode()));
-
-                dijkstraSW.start();
-                dijkstraCount++;
-                int endNode = algo.findEndNode(u_fromNode, w_toNode);
-                dijkstraSW.stop();
-
-                // compare end node as the limit could force dijkstra to finish earlier
-                if (endNode == w_toNode && algo.getWeight(endNode) <= existingDirectWeight)
-                    // FOUND witness path, so do not add shortcut                
-                    continue;
+                double v_u_weight = shortcutWeighting.calcWeight(incomingEdges);
+                int skippedEdge1 = incomingEdges.getEdge();
+                int incomingEdgeOrigCount = getOrigEdgeCount(skippedEdge1);
+                // collect outgoing nodes (goal-nodes) only once
+                EdgeIterator outgoingEdges = outExplorer.setBaseNode(sch.getNode());
+                // force fresh maps etc as this cannot be determined by from node alone (e.g. same from node but different avoidNode)
+                algo.clear();
+                tmpDegreeCounter++;
+                while (outgoingEdges.next())
+                {
+                    int w_toNode = outgoingEdges.getAdjNode();
+                    // add only uncontracted nodes
+                    if (g.getLevel(w_toNode) != 0 || u_fromNode == w_toNode)
+                    {
+                        continue;
+                    }
 
-                sch.foundShortcut(u_fromNode, w_toNode, existingDirectWeight,
-                        outgoingEdges, skippedEdge1, incomingEdgeOrigCount);
+                    // Limit weight as ferries or forbidden edges can increase local search too much.
+                    // If we decrease the correct weight we only explore less and introduce more shortcuts.
+                    // I.e. no change to accuracy is made.
+                    double existingDirectWeight = v_u_weight + shortcutWeighting.calcWeight(outgoingEdges);
+                    algo.setLimitWeight(existingDirectWeight)
+                            .setLimitVisitedNodes((int) meanDegree * 100)
+                            .setEdgeFilter(ignoreNodeFilter.setAvoidNode(sch.getNode()));
+
+                    dijkstraSW.start();
+                    dijkstraCount++;
+                    int endNode = algo.findEndNode(u_fromNode, w_toNode);
+                    dijkstraSW.stop();
+
+                    // compare end node as the limit could force dijkstra to finish earlier
+                    if (endNode == w_toNode && algo.getWeight(endNode) <= existingDirectWeight)
+                        // FOUND witness path, so do not add shortcut                
+                        continue;
+
+                    sch.foundShortcut(u_fromNode, w_toNode, existingDirectWeight,
+                            outgoingEdges, skippedEdge1, incomingEdgeOrigCount);
+                }
             }
+            degreeCounter = tmpDegreeCounter;
         }
-        if (sch instanceof AddShortcutHandler)
+
+        void close()
         {
-            // sliding mean value when using "*2" => slower changes
-            meanDegree = (meanDegree * 2 + tmpDegreeCounter) / 3;
-            // meanDegree = (meanDegree + tmpDegreeCounter) / 2;
+            algo.close();
         }
     }
 
@@ -609,10 +949,21 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
      */
     int addShortcuts( int v )
     {
-        shortcuts.clear();
-        findShortcuts(addScHandler.setNode(v));
+        worker.findShortcuts(worker.addScHandler.setNode(v));
+        // sliding mean value when using "*2" => slower changes
+        meanDegree = (meanDegree * 2 + worker.degreeCounter) / 3;
+        return addShortcuts(worker.addScHandler.shortcuts.keySet());
+    }
+
+    /**
+     * Adds the specified shortcuts to the graph or updates an existing shortcut if it is longer.
+     * <p/>
+     * @return the number of new shortcuts
+     */
+    private int addShortcuts( Collection<Shortcut> shortcuts )
+    {
         int tmpNewShortcuts = 0;
-        for (Shortcut sc : shortcuts.keySet())
+        for (Shortcut sc : shortcuts)
         {
             boolean updatedInGraph = false;
             // check if we need to update some existing shortcut in the graph
@@ -648,15 +999,22 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
     PrepareContractionHierarchies initFromGraph()
     {
         checkGraph();
-        vehicleInExplorer = g.createEdgeExplorer(new DefaultEdgeFilter(prepareEncoder, true, false));
         vehicleOutExplorer = g.createEdgeExplorer(new DefaultEdgeFilter(prepareEncoder, false, true));
         vehicleAllExplorer = g.createEdgeExplorer(new DefaultEdgeFilter(prepareEncoder, true, true));
         vehicleAllTmpExplorer = g.createEdgeExplorer(new DefaultEdgeFilter(prepareEncoder, true, true));
-        calcPrioAllExplorer = g.createEdgeExplorer(new DefaultEdgeFilter(prepareEncoder, true, true));
-        levelEdgeFilter = new IgnoreNodeFilter(g);
-        sortedNodes = new GHTreeMapComposed();
+        sortedNodes = new IntDoubleIndexedHeap(g.getNodes(), true);
         refs = new PriorityNode[g.getNodes()];
-        algo = new DijkstraOneToMany(g, prepareEncoder, shortestWeighting);
+        workers = new ContractionWorker[threads];
+        for (int i = 0; i < threads; i++)
+        {
+            workers[i] = new ContractionWorker();
+        }
+        worker = workers[0];
+        if (threads > 1)
+        {
+            independentNodes = new GHBitSetImpl(g.getNodes());
+            blockedNodes = new GHBitSetImpl(g.getNodes());
+        }
         return this;
     }
 
@@ -669,6 +1027,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
     {
         int avoidNode;
         LevelGraph graph;
+        GHBitSet ignoredNodes;
 
         public IgnoreNodeFilter( LevelGraph g )
         {
@@ -681,12 +1040,22 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
             return this;
         }
 
+        /**
+         * @param nodes which are currently contracted by other threads or null
+         */
+        public IgnoreNodeFilter setIgnoredNodes( GHBitSet nodes )
+        {
+            this.ignoredNodes = nodes;
+            return this;
+        }
+
         @Override
         public final boolean accept( EdgeIteratorState iter )
         {
             // ignore if it is skipNode or a endNode already contracted
             int node = iter.getAdjNode();
-            return avoidNode != node && graph.getLevel(node) == 0;
+            return avoidNode != node && graph.getLevel(node) == 0
+                    && (ignoredNodes == null || !ignoredNodes.contains(node));
         }
     }
 
@@ -699,8 +1068,11 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
 
     private int getOrigEdgeCount( int index )
     {
+        // no incCapacity as this is called concurrently from the workers
         long tmp = (long) index * 4;
-        originalEdges.incCapacity(tmp + 4);
+        if (tmp + 4 > originalEdges.getCapacity())
+            return 0;
+
         return originalEdges.getInt(tmp);
     }
 
@@ -708,62 +1080,8 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
     public RoutingAlgorithm createAlgo()
     {
         checkGraph();
-        // do not change weight within DijkstraBidirectionRef => so use ShortestWeighting
-        DijkstraBidirectionRef dijkstrabi = new DijkstraBidirectionRef(g, prepareEncoder, shortestWeighting)
-        {
-            @Override
-            protected void initCollections( int nodes )
-            {
-                // algorithm with CH does not need that much memory pre allocated
-                super.initCollections(Math.min(initialCollectionSize, nodes));
-            }
-
-            @Override
-            protected QueryGraph createQueryGraph()
-            {
-                return new QueryGraph(graph)
-                {
-                    @Override
-                    protected void updateDistance( EdgeIteratorState edge )
-                    {
-                        edge.setDistance(prepareWeighting.calcWeight(edge));
-                    }
-                };
-            }
-
-            @Override
-            public boolean finished()
-            {
-                // we need to finish BOTH searches for CH!
-                if (finishedFrom && finishedTo)
-                    return true;
-
-                // changed also the final finish condition for CH                
-                return currFrom.weight >= bestPath.getWeight() && currTo.weight >= bestPath.getWeight();
-            }
-
-            @Override
-            public void initPath()
-            {
-                // CH changes the weight in prepareEdges to the weight
-                // now we need to transform it back to the real weight
-                Weighting w = createWeighting();
-                bestPath = new Path4CH(graph, flagEncoder, w);
-            }
-
-            @Override
-            public String getName()
-            {
-                return "dijkstrabiCH";
-            }
-
-            @Override
-            public String toString()
-            {
-                return getName() + "|" + prepareWeighting;
-            }
-        };
-
+        DijkstraBidirectionCH dijkstrabi = new DijkstraBidirectionCH(g, prepareEncoder, shortcutWeighting).
+                setUnpackCache(unpackCache);
         if (!removesHigher2LowerEdges)
             dijkstrabi.setEdgeFilter(new LevelEdgeFilter(g));
 
@@ -773,7 +1091,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
     public AStarBidirection createAStar()
     {
         checkGraph();
-        AStarBidirection astar = new AStarBidirection(g, prepareEncoder, shortestWeighting)
+        AStarBidirection astar = new AStarBidirection(g, prepareEncoder, shortcutWeighting)
         {
             @Override
             protected void initCollections( int nodes )
@@ -782,19 +1100,6 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
                 super.initCollections(Math.min(initialCollectionSize, nodes));
             }
 
-            @Override
-            protected QueryGraph createQueryGraph()
-            {
-                return new QueryGraph(graph)
-                {
-                    @Override
-                    protected void updateDistance( EdgeIteratorState edge )
-                    {
-                        edge.setDistance(prepareWeighting.calcWeight(edge));
-                    }
-                };
-            }
-
             @Override
             protected boolean finished()
             {
@@ -810,10 +1115,7 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
             @Override
             protected void initPath()
             {
-                // CH changes the weight in prepareEdges to the weight
-                // now we need to transform it back to the real weight
-                Weighting wc = createWeighting();
-                bestPath = new Path4CH(graph, flagEncoder, wc);
+                bestPath = new Path4CH(graph, flagEncoder).setUnpackCache(unpackCache);
             }
 
             @Override
@@ -835,34 +1137,17 @@ public class PrepareContractionHierarchies extends AbstractAlgoPreparation<Prepa
         return astar;
     }
 
-    Weighting createWeighting()
+    /**
+     * @return a new instance to calculate the distances and times between many sources and targets
+     */
+    public ManyToManyCH createManyToMany()
     {
-        return new Weighting()
-        {
-            @Override
-            public String toString()
-            {
-                return "CH_DIST_ONLY";
-            }
-
-            @Override
-            public double getMinWeight( double distance )
-            {
-                throw new IllegalStateException("getMinWeight not supported yet");
-            }
-
-            @Override
-            public double calcWeight( EdgeIteratorState edge )
-            {
-                return edge.getDistance();
-            }
+        checkGraph();
+        ManyToManyCH matrix = new ManyToManyCH(g, prepareEncoder, shortcutWeighting);
+        if (!removesHigher2LowerEdges)
+            matrix.setEdgeFilter(new LevelEdgeFilter(g));
 
-            @Override
-            public double revertWeight( EdgeIteratorState iter, double weight )
-            {
-                return prepareWeighting.revertWeight(iter, weight);
-            }
-        };
+        return matrix;
     }
 
     private void checkGraph()
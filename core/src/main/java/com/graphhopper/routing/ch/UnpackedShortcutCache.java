@@ -0,0 +1,114 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded least recently used cache of fully unpacked shortcuts. Long routes mostly use the
+ * same high level shortcuts (e.g. motorways) and unpacking them again for every request is a
+ * waste. The cache is shared between the queries of one preparation and thread safe.
+ * <p/>
+ * @see Path4CH#setUnpackCache(UnpackedShortcutCache)
+ * @author Peter Karich
+ */
+public class UnpackedShortcutCache
+{
+    private final Map<Long, Entry> map;
+
+    public UnpackedShortcutCache( final int maxSize )
+    {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize has to be positive but was " + maxSize);
+
+        map = new LinkedHashMap<Long, Entry>(Math.min(maxSize, 1000), 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Long, Entry> eldest )
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the unpacked shortcut going from baseNode to adjNode or null if not cached
+     */
+    public Entry get( int shortcut, int baseNode, int adjNode )
+    {
+        synchronized (map)
+        {
+            return map.get(createKey(shortcut, baseNode, adjNode));
+        }
+    }
+
+    public void put( int shortcut, int baseNode, int adjNode, Entry entry )
+    {
+        synchronized (map)
+        {
+            map.put(createKey(shortcut, baseNode, adjNode), entry);
+        }
+    }
+
+    public int getSize()
+    {
+        synchronized (map)
+        {
+            return map.size();
+        }
+    }
+
+    private static long createKey( int shortcut, int baseNode, int adjNode )
+    {
+        // the time can differ per direction
+        return ((long) shortcut << 1) | (baseNode < adjNode ? 0 : 1);
+    }
+
+    /**
+     * The original edges of a shortcut in travel order and their sum of distance and time.
+     */
+    public static class Entry
+    {
+        final int[] edges;
+        final double distance;
+        final long millis;
+
+        public Entry( int[] edges, double distance, long millis )
+        {
+            this.edges = edges;
+            this.distance = distance;
+            this.millis = millis;
+        }
+
+        public int[] getEdges()
+        {
+            return edges;
+        }
+
+        public double getDistance()
+        {
+            return distance;
+        }
+
+        public long getMillis()
+        {
+            return millis;
+        }
+    }
+}
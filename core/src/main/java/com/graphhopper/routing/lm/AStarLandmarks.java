@@ -0,0 +1,159 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.lm;
+
+import com.graphhopper.routing.AStar;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * The ALT algorithm: A* where the lower bound of the weight to the goal is calculated from the
+ * landmark weights via the triangle inequality:
+ * <p/>
+ * weight(v, t) >= weight(L, t) - weight(L, v) and weight(v, t) >= weight(v, L) - weight(t, L)
+ * <p/>
+ * The maximum over all landmarks and the beeline estimation is used.
+ * <p/>
+ * If the goal is a virtual node of a QueryGraph every path to it passes one of the surrounding
+ * tower nodes, so the minimum of the bounds to those tower nodes is used. Virtual nodes itself
+ * have no landmark weights and use only the beeline.
+ * <p/>
+ * @see PrepareLandmarks
+ * @author Peter Karich
+ */
+public class AStarLandmarks extends AStar
+{
+    private final PrepareLandmarks lms;
+    private final int landmarks;
+    private final int baseNodes;
+    private final double factor;
+    // the landmark weights of the goal or of the tower nodes around a virtual goal
+    private int goals;
+    private int[] goalFromWeights;
+    private int[] goalToWeights;
+
+    public AStarLandmarks( Graph g, FlagEncoder encoder, Weighting weighting, PrepareLandmarks lms )
+    {
+        super(g, encoder, weighting);
+        this.lms = lms;
+        this.landmarks = lms.getLandmarks();
+        this.baseNodes = g.getNodes();
+        this.factor = lms.getFactor();
+    }
+
+    @Override
+    public Path calcPath( int from, int to )
+    {
+        TIntArrayList towers = findTowerNodes(to);
+        goals = towers.size();
+        goalFromWeights = new int[goals * landmarks];
+        goalToWeights = new int[goals * landmarks];
+        for (int i = 0; i < goals; i++)
+        {
+            for (int lm = 0; lm < landmarks; lm++)
+            {
+                goalFromWeights[i * landmarks + lm] = lms.getFromWeight(lm, towers.get(i));
+                goalToWeights[i * landmarks + lm] = lms.getToWeight(lm, towers.get(i));
+            }
+        }
+        return super.calcPath(from, to);
+    }
+
+    /**
+     * @return the specified node if it is a tower node, otherwise the tower nodes reachable via
+     * virtual nodes
+     */
+    private TIntArrayList findTowerNodes( int node )
+    {
+        TIntArrayList towers = new TIntArrayList(2);
+        if (node < baseNodes)
+        {
+            towers.add(node);
+            return towers;
+        }
+
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        TIntHashSet visited = new TIntHashSet();
+        TIntArrayList stack = new TIntArrayList();
+        stack.add(node);
+        visited.add(node);
+        while (!stack.isEmpty())
+        {
+            int curr = stack.removeAt(stack.size() - 1);
+            EdgeIterator iter = explorer.setBaseNode(curr);
+            while (iter.next())
+            {
+                int adj = iter.getAdjNode();
+                if (!visited.add(adj))
+                    continue;
+
+                if (adj < baseNodes)
+                    towers.add(adj);
+                else
+                    stack.add(adj);
+            }
+        }
+        return towers;
+    }
+
+    @Override
+    protected double estimateWeightToGoal( int node )
+    {
+        double beeline = super.estimateWeightToGoal(node);
+        if (node >= baseNodes || goals == 0)
+            return beeline;
+
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < goals; i++)
+        {
+            min = Math.min(min, calcLowerBound(node, i * landmarks));
+        }
+        // the stored weights are rounded
+        return Math.max(beeline, (min - 1) / factor);
+    }
+
+    private int calcLowerBound( int node, int goalOffset )
+    {
+        int bound = 0;
+        for (int lm = 0; lm < landmarks; lm++)
+        {
+            int fromGoal = goalFromWeights[goalOffset + lm];
+            int fromNode = lms.getFromWeight(lm, node);
+            if (fromGoal != PrepareLandmarks.INFINITY && fromNode != PrepareLandmarks.INFINITY)
+                bound = Math.max(bound, fromGoal - fromNode);
+
+            int toGoal = goalToWeights[goalOffset + lm];
+            int toNode = lms.getToWeight(lm, node);
+            if (toGoal != PrepareLandmarks.INFINITY && toNode != PrepareLandmarks.INFINITY)
+                bound = Math.max(bound, toNode - toGoal);
+        }
+        return bound;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "alt";
+    }
+}
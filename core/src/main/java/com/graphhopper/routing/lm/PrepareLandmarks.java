@@ -0,0 +1,352 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.lm;
+
+import com.graphhopper.coll.IntDoubleIndexedHeap;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.util.AbstractAlgoPreparation;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.Weighting;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import java.util.Arrays;
+import java.util.Random;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Prepares the landmarks for the ALT algorithm (A*, landmarks and triangle inequality). Some nodes
+ * at the border of the graph are selected as landmarks and the weights from every landmark to all
+ * nodes and from all nodes to every landmark are stored. Because of the triangle inequality these
+ * weights give a lower bound of the weight between two arbitrary nodes which is a lot better than
+ * the beeline, especially for the fastest weighting.
+ * <p/>
+ * The landmarks are selected via the 'farthest' heuristic: the next landmark is the node with the
+ * biggest weight to its closest already selected landmark. All landmarks are in the subnetwork of
+ * a random start node, nodes which are not reachable from there use only the beeline as lower
+ * bound and are logged.
+ * <p/>
+ * Goldberg and Harrelson, Computing the Shortest Path: A* Search Meets Graph Theory
+ * http://research.microsoft.com/apps/pubs/default.aspx?id=64511
+ * <p/>
+ * @see AStarLandmarks
+ * @author Peter Karich
+ */
+public class PrepareLandmarks extends AbstractAlgoPreparation<PrepareLandmarks>
+{
+    // stored for unreachable nodes or weights which are too big
+    static final int INFINITY = Integer.MAX_VALUE;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final FlagEncoder encoder;
+    private final Weighting weighting;
+    private final Directory dir;
+    private final DataAccess landmarkWeights;
+    private Graph graph;
+    private int landmarks = 16;
+    private int[] landmarkNodes;
+    private double factor;
+    private long seed = 123;
+    // the bytes of one node: the weight from and the weight to every landmark
+    private int nodeBytes;
+
+    /**
+     * @param dir is used to store the landmark weights, the file name is unique per vehicle
+     */
+    public PrepareLandmarks( Directory dir, FlagEncoder encoder, Weighting weighting )
+    {
+        this.encoder = encoder;
+        this.weighting = weighting;
+        this.dir = dir;
+        this.landmarkWeights = dir.find("landmarks_" + encoder.toString().toLowerCase());
+    }
+
+    @Override
+    public PrepareLandmarks setGraph( Graph g )
+    {
+        this.graph = g;
+        return this;
+    }
+
+    /**
+     * Sets the number of landmarks. More landmarks mean better lower bounds but a slower
+     * preparation, more memory (8 bytes per node and landmark) and more work per visited node.
+     */
+    public PrepareLandmarks setLandmarks( int landmarks )
+    {
+        if (landmarks < 1)
+            throw new IllegalArgumentException("At least one landmark is necessary but was " + landmarks);
+
+        this.landmarks = landmarks;
+        return this;
+    }
+
+    public int getLandmarks()
+    {
+        return landmarks;
+    }
+
+    /**
+     * @return the selected landmark nodes or null if the weights were loaded from disc
+     */
+    public int[] getLandmarkNodes()
+    {
+        return landmarkNodes;
+    }
+
+    public PrepareLandmarks setSeed( long seed )
+    {
+        this.seed = seed;
+        return this;
+    }
+
+    public FlagEncoder getEncoder()
+    {
+        return encoder;
+    }
+
+    public Weighting getWeighting()
+    {
+        return weighting;
+    }
+
+    void checkGraph()
+    {
+        if (graph == null)
+            throw new NullPointerException("setGraph before usage");
+    }
+
+    @Override
+    public PrepareLandmarks doWork()
+    {
+        checkGraph();
+        super.doWork();
+        StopWatch sw = new StopWatch().start();
+        int nodes = graph.getNodes();
+        nodeBytes = landmarks * 8;
+        landmarkWeights.create(Math.max(10, (long) nodes * nodeBytes));
+        landmarkNodes = new int[landmarks];
+        if (nodes == 0)
+        {
+            factor = 1;
+            storeHeader(nodes);
+            return this;
+        }
+
+        EdgeExplorer outExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, false, true));
+        EdgeExplorer inExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, true, false));
+        double[] weights = new double[nodes];
+        // the weight of every node to its closest landmark
+        double[] minWeights = new double[nodes];
+        Arrays.fill(minWeights, Double.MAX_VALUE);
+
+        // the first landmark is the farthest node from a random start node
+        int start = new Random(seed).nextInt(nodes);
+        search(start, outExplorer, weights);
+        int next = findFarthest(weights, start);
+        // the weights could be bigger than the radius of the first search => keep some space
+        factor = Math.min(1000, INFINITY / (4 * Math.max(1, weights[next])));
+        for (int lm = 0; lm < landmarks; lm++)
+        {
+            landmarkNodes[lm] = next;
+            search(next, outExplorer, weights);
+            for (int node = 0; node < nodes; node++)
+            {
+                setWeight(node, lm, false, weights[node]);
+                if (weights[node] < minWeights[node])
+                    minWeights[node] = weights[node];
+            }
+
+            search(next, inExplorer, weights);
+            for (int node = 0; node < nodes; node++)
+            {
+                setWeight(node, lm, true, weights[node]);
+            }
+
+            next = findFarthest(minWeights, start);
+        }
+        storeHeader(nodes);
+
+        int unreachable = 0;
+        for (int node = 0; node < nodes; node++)
+        {
+            if (minWeights[node] == Double.MAX_VALUE)
+                unreachable++;
+        }
+        if (unreachable > 0)
+            logger.warn(unreachable + " of " + nodes + " nodes are not reachable from the landmarks of "
+                    + encoder + " which are in the subnetwork of node " + start
+                    + ". Routes to them use only the beeline as lower bound");
+
+        logger.info("prepared " + landmarks + " landmarks for " + encoder + " in " + sw.stop().getSeconds()
+                + "s, " + Helper.getMemInfo());
+        return this;
+    }
+
+    private void storeHeader( int nodes )
+    {
+        landmarkWeights.setHeader(0, landmarks);
+        landmarkWeights.setHeader(1 * 4, Float.floatToIntBits((float) factor));
+        landmarkWeights.setHeader(2 * 4, nodes);
+    }
+
+    /**
+     * @return true if the landmark weights were successfully loaded
+     */
+    public boolean loadExisting()
+    {
+        checkGraph();
+        if (!landmarkWeights.loadExisting())
+            return false;
+
+        if (landmarkWeights.getHeader(0) != landmarks || landmarkWeights.getHeader(2 * 4) != graph.getNodes())
+            throw new IllegalStateException("Landmarks of " + landmarkWeights.getName() + " do not match the graph. Landmarks:"
+                    + landmarkWeights.getHeader(0) + ", nodes:" + landmarkWeights.getHeader(2 * 4)
+                    + ". Expected: " + landmarks + ", " + graph.getNodes());
+
+        factor = Float.intBitsToFloat(landmarkWeights.getHeader(1 * 4));
+        nodeBytes = landmarks * 8;
+        // do not prepare again
+        super.doWork();
+        return true;
+    }
+
+    public void flush()
+    {
+        landmarkWeights.flush();
+    }
+
+    public void close()
+    {
+        landmarkWeights.close();
+    }
+
+    /**
+     * Removes the stored landmark weights, e.g. to prepare the landmarks again after the weights
+     * of the graph changed. This object cannot be used afterwards.
+     */
+    public void remove()
+    {
+        dir.remove(landmarkWeights);
+    }
+
+    /**
+     * @return the node with the biggest finite weight or the fallback node if no weight is finite
+     */
+    private int findFarthest( double[] weights, int fallback )
+    {
+        int farthest = fallback;
+        double max = -1;
+        for (int node = 0; node < weights.length; node++)
+        {
+            if (weights[node] != Double.MAX_VALUE && weights[node] > max)
+            {
+                max = weights[node];
+                farthest = node;
+            }
+        }
+        return farthest;
+    }
+
+    /**
+     * Calculates the weights from the specified node to all other nodes (or to the specified node
+     * if explorer is an incoming explorer).
+     */
+    private void search( int from, EdgeExplorer explorer, double[] weights )
+    {
+        Arrays.fill(weights, Double.MAX_VALUE);
+        IntDoubleIndexedHeap heap = new IntDoubleIndexedHeap(1000);
+        weights[from] = 0;
+        heap.insert_(0, from);
+        while (!heap.isEmpty())
+        {
+            int node = heap.poll_element();
+            double weight = weights[node];
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next())
+            {
+                int adjNode = iter.getAdjNode();
+                double tmpWeight = weighting.calcWeight(iter) + weight;
+                if (tmpWeight < weights[adjNode])
+                {
+                    weights[adjNode] = tmpWeight;
+                    heap.insertOrUpdate(tmpWeight, adjNode);
+                }
+            }
+        }
+    }
+
+    private void setWeight( int node, int landmark, boolean toLandmark, double weight )
+    {
+        int val = INFINITY;
+        if (weight != Double.MAX_VALUE && weight * factor < INFINITY - 1)
+            val = (int) Math.round(weight * factor);
+
+        landmarkWeights.setInt(getPointer(node, landmark, toLandmark), val);
+    }
+
+    private long getPointer( int node, int landmark, boolean toLandmark )
+    {
+        return (long) node * nodeBytes + landmark * 8 + (toLandmark ? 4 : 0);
+    }
+
+    /**
+     * @return the weight from the landmark to the node multiplied by getFactor or INFINITY
+     */
+    final int getFromWeight( int landmark, int node )
+    {
+        return landmarkWeights.getInt(getPointer(node, landmark, false));
+    }
+
+    /**
+     * @return the weight from the node to the landmark multiplied by getFactor or INFINITY
+     */
+    final int getToWeight( int landmark, int node )
+    {
+        return landmarkWeights.getInt(getPointer(node, landmark, true));
+    }
+
+    final double getFactor()
+    {
+        return factor;
+    }
+
+    /**
+     * Creates the ALT algorithm which uses the landmark weights as lower bounds.
+     */
+    @Override
+    public RoutingAlgorithm createAlgo()
+    {
+        checkGraph();
+        if (!isPrepared())
+            throw new IllegalStateException("Call doWork or loadExisting before creating the algorithm");
+
+        return new AStarLandmarks(graph, encoder, weighting, this);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "landmarks|" + landmarks + "|" + weighting;
+    }
+}
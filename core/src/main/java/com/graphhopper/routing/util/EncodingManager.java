@@ -225,6 +225,17 @@ public class EncodingManager
         return getFirst();
     }
 
+    /**
+     * @return the encoder at the specified position in the order of registration
+     */
+    public FlagEncoder getEncoder( int index )
+    {
+        if (index < 0 || index >= encoderCount)
+            throw new IllegalArgumentException("No encoder at " + index + ", encoders:" + toString());
+
+        return encoders.get(index);
+    }
+
     private FlagEncoder getFirst()
     {
         if (getVehicleCount() == 0)
@@ -122,7 +122,7 @@ public class RoutingAlgorithmSpecialAreaTests
         // prepare.add(new ME(createAlgoPrepare(g, "dijkstraOneToMany", encoder, weighting), idx));
         prepare.add(new ME(createAlgoPrepare(g, "astarbi", encoder, weighting), idx));
         prepare.add(new ME(createAlgoPrepare(g, "dijkstraNative", encoder, weighting), idx));
-        prepare.add(new ME(createAlgoPrepare(g, "dijkstrabi", encoder, weighting), idx));
+        prepare.add(new ME(createAlgoPrepare(g, "dijkstrabiRef", encoder, weighting), idx));
         prepare.add(new ME(createAlgoPrepare(g, "dijkstra", encoder, weighting), idx));
 
         if (withCh)
@@ -60,11 +60,15 @@ public class GHDirectory implements Directory
                 put("locationIndex", DAType.RAM_INT_STORE);
                 put("edges", DAType.RAM_INT_STORE);
                 put("nodes", DAType.RAM_INT_STORE);
+                put("adj_offsets", DAType.RAM_INT_STORE);
+                put("adj_entries", DAType.RAM_INT_STORE);
             } else
             {
                 put("locationIndex", DAType.RAM_INT);
                 put("edges", DAType.RAM_INT);
                 put("nodes", DAType.RAM_INT);
+                put("adj_offsets", DAType.RAM_INT);
+                put("adj_entries", DAType.RAM_INT);
             }
         }
         mkdirs();
@@ -87,6 +87,12 @@ public class GraphHopperStorage implements GraphStorage
     protected final EdgeFilter allEdgesFilter;
     private final StorableProperties properties;
     private final BitUtil bitUtil;
+    // frozen layout: the edges of every node are stored contiguously. adjOffsets holds nodeCount+1
+    // entry indices into adjEntries where every entry is: edgeId,adjNode,flags,dist
+    private final DataAccess adjOffsets;
+    private final DataAccess adjEntries;
+    private static final int A_EDGE = 0, A_ADJ = 4, A_FLAGS = 8, A_DIST = 12, ADJ_ENTRY_BYTES = 16;
+    private boolean frozen = false;
 
     public GraphHopperStorage( Directory dir, EncodingManager encodingManager )
     {
@@ -98,6 +104,8 @@ public class GraphHopperStorage implements GraphStorage
         this.nodes = dir.find("nodes");
         this.edges = dir.find("edges");
         this.wayGeometry = dir.find("geometry");
+        this.adjOffsets = dir.find("adj_offsets");
+        this.adjEntries = dir.find("adj_entries");
         this.nameIndex = new NameIndex(dir);
         this.properties = new StorableProperties(dir);
         this.bounds = BBox.INVERSE.clone();
@@ -256,6 +264,7 @@ public class GraphHopperStorage implements GraphStorage
         if (nodeIndex < nodeCount)
             return;
 
+        ensureNotFrozen();
         long oldNodes = nodeCount;
         nodeCount = nodeIndex + 1;
         if (!nodes.incCapacity((long) nodeCount * nodeEntryBytes))
@@ -319,6 +328,7 @@ public class GraphHopperStorage implements GraphStorage
      */
     int internalEdgeAdd( int fromNodeId, int toNodeId )
     {
+        ensureNotFrozen();
         int newOrExistingEdge = nextEdge();
         writeEdge(newOrExistingEdge, fromNodeId, toNodeId, EdgeIterator.NO_EDGE, EdgeIterator.NO_EDGE);
         connectNewEdge(fromNodeId, newOrExistingEdge);
@@ -513,6 +523,7 @@ public class GraphHopperStorage implements GraphStorage
         @Override
         public EdgeIteratorState setDistance( double dist )
         {
+            ensureNotFrozen();
             edges.setInt(edgePointer + E_DIST, distToInt(dist));
             return this;
         }
@@ -662,6 +673,12 @@ public class GraphHopperStorage implements GraphStorage
         int edgeId;
         long edgePointer;
         int nextEdge;
+        // frozen layout: current and end pointer into adjEntries and the cached properties
+        private long adjPointer;
+        private long adjEndPointer;
+        private boolean packed;
+        private int packedFlags;
+        private int packedDist;
 
         // used for SingleEdge and as return value of edge()        
         public EdgeIterable( EdgeFilter filter )
@@ -676,11 +693,24 @@ public class GraphHopperStorage implements GraphStorage
         {
             this.nextEdge = this.edgeId = edgeId;
             this.edgePointer = (long) nextEdge * edgeEntryBytes;
+            this.packed = false;
+            this.adjPointer = adjEndPointer;
         }
 
         @Override
         public EdgeIterator setBaseNode( int baseNode )
         {
+            if (frozen)
+            {
+                long offsetPointer = (long) baseNode * 4;
+                adjPointer = (long) adjOffsets.getInt(offsetPointer) * ADJ_ENTRY_BYTES;
+                adjEndPointer = (long) adjOffsets.getInt(offsetPointer + 4) * ADJ_ENTRY_BYTES;
+                nextEdge = edgeId = EdgeIterator.NO_EDGE;
+                packed = false;
+                this.baseNode = baseNode;
+                return this;
+            }
+
             int edge = nodes.getInt((long) baseNode * nodeEntryBytes + N_EDGE_REF);
             setEdgeId(edge);
             this.baseNode = baseNode;
@@ -690,6 +720,9 @@ public class GraphHopperStorage implements GraphStorage
         @Override
         public final boolean next()
         {
+            if (frozen)
+                return nextPacked();
+
             int i = 0;
             boolean foundNext = false;
             for (; i < MAX_EDGES; i++)
@@ -718,6 +751,49 @@ public class GraphHopperStorage implements GraphStorage
             return foundNext;
         }
 
+        private boolean nextPacked()
+        {
+            while (adjPointer < adjEndPointer)
+            {
+                edgeId = adjEntries.getInt(adjPointer + A_EDGE);
+                node = adjEntries.getInt(adjPointer + A_ADJ);
+                packedFlags = adjEntries.getInt(adjPointer + A_FLAGS);
+                packedDist = adjEntries.getInt(adjPointer + A_DIST);
+                adjPointer += ADJ_ENTRY_BYTES;
+                edgePointer = (long) edgeId * edgeEntryBytes;
+                packed = true;
+                if (filter.accept(this))
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Makes the specified iterator point to the same edge as this iterator.
+         */
+        void copyStateTo( EdgeIterable iter )
+        {
+            if (edgeId == nextEdge)
+                throw new IllegalStateException("call next before detaching");
+
+            if (frozen)
+            {
+                iter.baseNode = baseNode;
+                iter.setEdgeId(edgeId);
+                // like SingleEdge, so that the copy can be detached again
+                iter.nextEdge = EdgeIterator.NO_EDGE;
+                iter.node = node;
+                iter.packed = packed;
+                iter.packedFlags = packedFlags;
+                iter.packedDist = packedDist;
+                return;
+            }
+
+            iter.setBaseNode(baseNode);
+            iter.setEdgeId(edgeId);
+            iter.next();
+        }
+
         private long getEdgePointer()
         {
             return edgePointer;
@@ -732,12 +808,16 @@ public class GraphHopperStorage implements GraphStorage
         @Override
         public final double getDistance()
         {
+            if (packed)
+                return (double) packedDist / INT_DIST_FACTOR;
+
             return getDist(edgePointer);
         }
 
         @Override
         public final EdgeIteratorState setDistance( double dist )
         {
+            ensureNotFrozen();
             edges.setInt(edgePointer + E_DIST, distToInt(dist));
             return this;
         }
@@ -745,6 +825,9 @@ public class GraphHopperStorage implements GraphStorage
         @Override
         public long getFlags()
         {
+            if (packed)
+                return packedFlags;
+
             long flags = edges.getInt(edgePointer + E_FLAGS);
 
             // switch direction flags if necessary
@@ -757,6 +840,7 @@ public class GraphHopperStorage implements GraphStorage
         @Override
         public final EdgeIteratorState setFlags( long fl )
         {
+            ensureNotFrozen();
             int nep = edges.getInt(getLinkPosInEdgeArea(baseNode, node, edgePointer));
             int neop = edges.getInt(getLinkPosInEdgeArea(node, baseNode, edgePointer));
             writeEdge(getEdge(), baseNode, node, nep, neop);
@@ -807,13 +891,8 @@ public class GraphHopperStorage implements GraphStorage
         @Override
         public EdgeIterator detach()
         {
-            if (edgeId == nextEdge)
-                throw new IllegalStateException("call next before detaching");
-
             EdgeIterable iter = new EdgeIterable(filter);
-            iter.setBaseNode(baseNode);
-            iter.setEdgeId(edgeId);
-            iter.next();
+            copyStateTo(iter);
             return iter;
         }
 
@@ -955,6 +1034,14 @@ public class GraphHopperStorage implements GraphStorage
 
         properties.copyTo(clonedG.properties);
 
+        // frozen layout
+        if (frozen)
+        {
+            adjOffsets.copyTo(clonedG.adjOffsets);
+            adjEntries.copyTo(clonedG.adjEntries);
+        }
+        clonedG.frozen = frozen;
+
         if (removedNodes == null)
             clonedG.removedNodes = null;
         else
@@ -976,6 +1063,7 @@ public class GraphHopperStorage implements GraphStorage
     @Override
     public void markNodeRemoved( int index )
     {
+        ensureNotFrozen();
         getRemovedNodes().add(index);
     }
 
@@ -985,6 +1073,63 @@ public class GraphHopperStorage implements GraphStorage
         return getRemovedNodes().contains(index);
     }
 
+    @Override
+    public boolean isEdgeRemoved( int edgeId )
+    {
+        if (edgeId < 0 || edgeId >= edgeCount)
+            throw new IllegalStateException("edgeId " + edgeId + " out of bounds [0," + nf(edgeCount) + "]");
+
+        return edges.getInt((long) edgeId * edgeEntryBytes + E_NODEA) == NO_NODE;
+    }
+
+    @Override
+    public void freeze()
+    {
+        if (frozen)
+            return;
+
+        if (removedNodes != null && removedNodes.getCardinality() > 0)
+            throw new IllegalStateException("Call optimize before freezing the graph to remove "
+                    + removedNodes.getCardinality() + " nodes");
+
+        adjOffsets.create((long) (nodeCount + 1) * 4);
+        adjEntries.create(Math.max(ADJ_ENTRY_BYTES, (long) edgeCount * 2 * ADJ_ENTRY_BYTES));
+        // walk the linked edge list to keep the iteration order
+        EdgeIterable iter = new EdgeIterable(allEdgesFilter);
+        int entry = 0;
+        for (int node = 0; node < nodeCount; node++)
+        {
+            adjOffsets.setInt((long) node * 4, entry);
+            iter.setBaseNode(node);
+            while (iter.next())
+            {
+                long pointer = (long) entry * ADJ_ENTRY_BYTES;
+                adjEntries.incCapacity(pointer + ADJ_ENTRY_BYTES);
+                adjEntries.setInt(pointer + A_EDGE, iter.getEdge());
+                adjEntries.setInt(pointer + A_ADJ, iter.getAdjNode());
+                adjEntries.setInt(pointer + A_FLAGS, (int) iter.getFlags());
+                adjEntries.setInt(pointer + A_DIST, edges.getInt(iter.getEdgePointer() + E_DIST));
+                entry++;
+            }
+        }
+        adjOffsets.setInt((long) nodeCount * 4, entry);
+        adjEntries.trimTo((long) entry * ADJ_ENTRY_BYTES);
+        frozen = true;
+        properties.put("graph.frozen", true);
+    }
+
+    @Override
+    public boolean isFrozen()
+    {
+        return frozen;
+    }
+
+    private void ensureNotFrozen()
+    {
+        if (frozen)
+            throw new IllegalStateException("Cannot modify a frozen graph " + toString());
+    }
+
     @Override
     public void optimize()
     {
@@ -1017,6 +1162,7 @@ public class GraphHopperStorage implements GraphStorage
      */
     long internalEdgeDisconnect( int edgeToRemove, long edgeToUpdatePointer, int baseNode, int adjNode )
     {
+        ensureNotFrozen();
         long edgeToRemovePointer = (long) edgeToRemove * edgeEntryBytes;
         // an edge is shared across the two nodes even if the edge is not in both directions
         // so we need to know two edge-pointers pointing to the edge before edgeToRemovePointer
@@ -1034,6 +1180,40 @@ public class GraphHopperStorage implements GraphStorage
         return edgeToRemovePointer;
     }
 
+    /**
+     * Removes all edges with an id of at least newEdgeCount and creates the edge lists of all
+     * nodes again from the remaining edges. Edges which were only disconnected from a node are
+     * available again. The edge ids do not change.
+     */
+    void reconnectEdges( int newEdgeCount )
+    {
+        ensureNotFrozen();
+        if (newEdgeCount < 0 || newEdgeCount > edgeCount)
+            throw new IllegalArgumentException("edge count " + newEdgeCount + " out of bounds [0," + nf(edgeCount) + "]");
+
+        for (int node = 0; node < nodeCount; node++)
+        {
+            nodes.setInt((long) node * nodeEntryBytes + N_EDGE_REF, EdgeIterator.NO_EDGE);
+        }
+
+        edgeCount = newEdgeCount;
+        for (int edge = 0; edge < edgeCount; edge++)
+        {
+            long edgePointer = (long) edge * edgeEntryBytes;
+            int nodeA = edges.getInt(edgePointer + E_NODEA);
+            if (nodeA == NO_NODE)
+                continue;
+
+            int nodeB = edges.getInt(edgePointer + E_NODEB);
+            edges.setInt(edgePointer + E_LINKA, EdgeIterator.NO_EDGE);
+            edges.setInt(edgePointer + E_LINKB, EdgeIterator.NO_EDGE);
+            // the same order as in internalEdgeAdd keeps the original order of the edge lists
+            connectNewEdge(nodeA, edge);
+            if (nodeA != nodeB)
+                connectNewEdge(nodeB, edge);
+        }
+    }
+
     private void invalidateEdge( long edgePointer )
     {
         edges.setInt(edgePointer + E_NODEA, NO_NODE);
@@ -1280,6 +1460,14 @@ public class GraphHopperStorage implements GraphStorage
 
             // geometry
             maxGeoRef = wayGeometry.getHeader(0);
+
+            if ("true".equals(properties.get("graph.frozen")))
+            {
+                if (!adjOffsets.loadExisting() || !adjEntries.loadExisting())
+                    throw new IllegalStateException("cannot load frozen adjacency. corrupt file or directory? " + dir);
+
+                frozen = true;
+            }
             initialized = true;
             return true;
         }
@@ -1311,6 +1499,11 @@ public class GraphHopperStorage implements GraphStorage
         nameIndex.flush();
         edges.flush();
         nodes.flush();
+        if (frozen)
+        {
+            adjOffsets.flush();
+            adjEntries.flush();
+        }
     }
 
     @Override
@@ -1321,13 +1514,22 @@ public class GraphHopperStorage implements GraphStorage
         nameIndex.close();
         edges.close();
         nodes.close();
+        if (frozen)
+        {
+            adjOffsets.close();
+            adjEntries.close();
+        }
     }
 
     @Override
     public long getCapacity()
     {
-        return edges.getCapacity() + nodes.getCapacity() + nameIndex.getCapacity()
+        long cap = edges.getCapacity() + nodes.getCapacity() + nameIndex.getCapacity()
                 + wayGeometry.getCapacity() + properties.getCapacity();
+        if (frozen)
+            cap += adjOffsets.getCapacity() + adjEntries.getCapacity();
+
+        return cap;
     }
 
     public String toDetailsString()
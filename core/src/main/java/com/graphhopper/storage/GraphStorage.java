@@ -41,8 +41,26 @@ public interface GraphStorage extends Graph, Storable<GraphStorage>
      */
     boolean isNodeRemoved( int index );
 
+    /**
+     * Checks if the specified edge was removed e.g. while removing the nodes of a subnetwork.
+     */
+    boolean isEdgeRemoved( int edgeId );
+
     /**
      * Performs optimization routines like deletion or node rearrangements.
      */
     void optimize();
+
+    /**
+     * Converts this storage into a read-only graph where the edges of every node are stored
+     * contiguously. Afterwards an EdgeExplorer does not follow the linked edge list which makes the
+     * iteration over the neighbors of a node cache friendly. Call this after all modifications like
+     * import, optimize and preparation are done. The state is persisted via flush.
+     */
+    void freeze();
+
+    /**
+     * @return true if freeze was called and the graph cannot be modified anymore
+     */
+    boolean isFrozen();
 }
@@ -146,12 +146,8 @@ public class LevelGraphStorage extends GraphHopperStorage implements LevelGraph
         @Override
         public EdgeIterator detach()
         {
-            if (edgeId == nextEdge)
-                throw new IllegalStateException("call next before detaching");
             EdgeSkipIteratorImpl iter = new EdgeSkipIteratorImpl(filter);
-            iter.setBaseNode(baseNode);
-            iter.setEdgeId(edgeId);
-            iter.next();
+            copyStateTo(iter);
             return iter;
         }
     }
@@ -185,6 +181,38 @@ public class LevelGraphStorage extends GraphHopperStorage implements LevelGraph
             internalEdgeDisconnect(edgeState.getEdge(), (long) tmpPrevEdge * edgeEntryBytes, edgeState.getAdjNode(), edgeState.getBaseNode());
     }
 
+    /**
+     * Removes all shortcuts, connects the disconnected edges again and sets the level of all nodes
+     * to 0, so that contraction hierarchies can be prepared again, e.g. after the weights of edges
+     * changed. The shortcuts have to be the last edges, which is the case after a preparation.
+     */
+    public void removeShortcuts()
+    {
+        int firstShortcut = edgeCount;
+        for (int edge = 0; edge < edgeCount; edge++)
+        {
+            if (isShortcut(edge))
+            {
+                if (firstShortcut == edgeCount)
+                    firstShortcut = edge;
+            } else if (firstShortcut < edge && !isEdgeRemoved(edge))
+                throw new IllegalStateException("Edge " + edge + " was created after the shortcut " + firstShortcut);
+        }
+
+        reconnectEdges(firstShortcut);
+        int nodes = getNodes();
+        for (int node = 0; node < nodes; node++)
+        {
+            setLevel(node, 0);
+        }
+    }
+
+    private boolean isShortcut( int edge )
+    {
+        return !isEdgeRemoved(edge)
+                && EdgeIterator.Edge.isValid(edges.getInt((long) edge * edgeEntryBytes + I_SKIP_EDGE1));
+    }
+
     @Override
     public AllEdgesSkipIterator getAllEdges()
     {
@@ -0,0 +1,198 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.routing.util.AllEdgesSkipIterator;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.EdgeSkipExplorer;
+import com.graphhopper.util.shapes.BBox;
+
+/**
+ * A LevelGraph which shares the nodes, edges and shortcuts of a LevelGraphStorage but stores its
+ * own node levels. This makes it possible to prepare contraction hierarchies for several vehicles
+ * in one graph: every vehicle gets its own levels and its shortcuts are only accessible for its
+ * encoder. The levels of the underlying storage itself are not touched.
+ * <p/>
+ * @author Peter Karich
+ */
+public class LevelGraphView implements LevelGraph, Storable<LevelGraphView>
+{
+    private final LevelGraphStorage graph;
+    private final DataAccess levels;
+
+    /**
+     * @param name is used for the file name of the levels and should be unique e.g. the vehicle
+     */
+    public LevelGraphView( LevelGraphStorage graph, String name )
+    {
+        this.graph = graph;
+        this.levels = graph.getDirectory().find("levels_" + name.toLowerCase());
+    }
+
+    public LevelGraphStorage getBaseGraph()
+    {
+        return graph;
+    }
+
+    @Override
+    public final void setLevel( int index, int level )
+    {
+        long pointer = (long) index * 4;
+        levels.incCapacity(pointer + 4);
+        levels.setInt(pointer, level);
+    }
+
+    @Override
+    public final int getLevel( int index )
+    {
+        long pointer = (long) index * 4;
+        if (pointer + 4 > levels.getCapacity())
+            return 0;
+
+        return levels.getInt(pointer);
+    }
+
+    @Override
+    public EdgeSkipExplorer shortcut( int a, int b )
+    {
+        return graph.shortcut(a, b);
+    }
+
+    @Override
+    public int getNodes()
+    {
+        return graph.getNodes();
+    }
+
+    @Override
+    public void setNode( int node, double lat, double lon )
+    {
+        graph.setNode(node, lat, lon);
+    }
+
+    @Override
+    public double getLatitude( int nodeId )
+    {
+        return graph.getLatitude(nodeId);
+    }
+
+    @Override
+    public double getLongitude( int nodeId )
+    {
+        return graph.getLongitude(nodeId);
+    }
+
+    @Override
+    public BBox getBounds()
+    {
+        return graph.getBounds();
+    }
+
+    @Override
+    public EdgeIteratorState edge( int a, int b )
+    {
+        return graph.edge(a, b);
+    }
+
+    @Override
+    public EdgeIteratorState edge( int a, int b, double distance, boolean bothDirections )
+    {
+        return graph.edge(a, b, distance, bothDirections);
+    }
+
+    @Override
+    public EdgeIteratorState getEdgeProps( int edgeId, int endNode )
+    {
+        return graph.getEdgeProps(edgeId, endNode);
+    }
+
+    @Override
+    public AllEdgesSkipIterator getAllEdges()
+    {
+        return graph.getAllEdges();
+    }
+
+    @Override
+    public EdgeSkipExplorer createEdgeExplorer()
+    {
+        return graph.createEdgeExplorer();
+    }
+
+    @Override
+    public EdgeSkipExplorer createEdgeExplorer( EdgeFilter filter )
+    {
+        return graph.createEdgeExplorer(filter);
+    }
+
+    /**
+     * Copies the underlying graph, a LevelGraph gets the levels of this view.
+     */
+    @Override
+    public Graph copyTo( Graph g )
+    {
+        graph.copyTo(g);
+        if (g instanceof LevelGraph)
+        {
+            LevelGraph lg = (LevelGraph) g;
+            int nodes = getNodes();
+            for (int node = 0; node < nodes; node++)
+            {
+                lg.setLevel(node, getLevel(node));
+            }
+        }
+        return g;
+    }
+
+    @Override
+    public LevelGraphView create( long nodeCount )
+    {
+        levels.create(Math.max(nodeCount, 10) * 4);
+        return this;
+    }
+
+    @Override
+    public boolean loadExisting()
+    {
+        return levels.loadExisting();
+    }
+
+    @Override
+    public void flush()
+    {
+        levels.flush();
+    }
+
+    @Override
+    public void close()
+    {
+        levels.close();
+    }
+
+    @Override
+    public long getCapacity()
+    {
+        return levels.getCapacity();
+    }
+
+    @Override
+    public String toString()
+    {
+        return levels.getName() + "|" + graph.toString();
+    }
+}
@@ -333,19 +333,27 @@ public class MMapDataAccess extends AbstractDataAccess
         assert length <= segmentSizeInBytes : "the length has to be smaller or equal to the segment size: " + length + " vs. " + segmentSizeInBytes;
         int bufferIndex = (int) (bytePos >>> segmentSizePower);
         int index = (int) (bytePos & indexDivisor);
+        // use absolute reads only as changing the position is not thread safe for concurrent queries
         ByteBuffer bb = segments.get(bufferIndex);
-        bb.position(index);
         int delta = index + length - segmentSizeInBytes;
         if (delta > 0)
         {
             length -= delta;
-            bb.get(values, 0, length);
+            for (int i = 0; i < length; i++)
+            {
+                values[i] = bb.get(index + i);
+            }
             bb = segments.get(bufferIndex + 1);
-            bb.position(0);
-            bb.get(values, length, delta);
+            for (int i = 0; i < delta; i++)
+            {
+                values[length + i] = bb.get(i);
+            }
         } else
         {
-            bb.get(values, 0, length);
+            for (int i = 0; i < length; i++)
+            {
+                values[i] = bb.get(index + i);
+            }
         }
     }
 
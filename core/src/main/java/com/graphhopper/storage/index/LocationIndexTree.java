@@ -18,8 +18,6 @@
  */
 package com.graphhopper.storage.index;
 
-import com.graphhopper.coll.GHBitSet;
-import com.graphhopper.coll.GHTBitSet;
 import com.graphhopper.geohash.SpatialKeyAlgo;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EdgeFilter;
@@ -28,13 +26,23 @@ import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
+import gnu.trove.TIntCollection;
+import gnu.trove.iterator.TLongIterator;
 import gnu.trove.list.array.TIntArrayList;
-import gnu.trove.procedure.TIntProcedure;
+import gnu.trove.set.TLongSet;
 import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.set.hash.TLongHashSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,12 +77,29 @@ public class LocationIndexTree implements LocationIndex
     private boolean initialized = false;
     // do not start with 0 as a positive value means leaf and a negative means "entry with subentries"
     static final int START_POINTER = 1;
+    // a node of a leaf which was marked as removed, see removeEdge
+    private static final int REMOVED_NODE = -1;
+    // at most 3x3 tiles are searched per lookup
+    private static final int MAX_KEYS = 9;
+    private int bulkPartitionSize = 1024;
+    private static final int PREPARE_BLOCK_SIZE = 1024;
+    private int prepareThreads = 1;
     private boolean regionSearch = true;
     /**
      * If normed distance is smaller than this value the node or edge is 'identical' and the
      * algorithm can stop search.
      */
     private double equalNormedDelta;
+    // static and without a reference to the graph as otherwise every index would be kept in memory
+    // by the threads which used it. The state is only as big as the entries of one lookup
+    private static final ThreadLocal<LookupState> lookupStates = new ThreadLocal<LookupState>()
+    {
+        @Override
+        protected LookupState initialValue()
+        {
+            return new LookupState();
+        }
+    };
 
     public LocationIndexTree( Graph g, Directory dir )
     {
@@ -108,6 +133,31 @@ public class LocationIndexTree implements LocationIndex
         return this;
     }
 
+    /**
+     * The number of threads used to rasterize the edges in prepareIndex. The stored index is
+     * identical for every number of threads. Default is 1.
+     */
+    public LocationIndexTree setPrepareThreads( int prepareThreads )
+    {
+        if (prepareThreads < 1)
+            throw new IllegalArgumentException("prepareThreads has to be at least 1 but was " + prepareThreads);
+
+        this.prepareThreads = prepareThreads;
+        return this;
+    }
+
+    /**
+     * The number of points which are looked up in one task if a bulk lookup runs in parallel.
+     */
+    public LocationIndexTree setBulkPartitionSize( int bulkPartitionSize )
+    {
+        if (bulkPartitionSize < 1)
+            throw new IllegalArgumentException("bulkPartitionSize has to be positive but was " + bulkPartitionSize);
+
+        this.bulkPartitionSize = bulkPartitionSize;
+        return this;
+    }
+
     void prepareAlgo()
     {
         // 0.1 meter should count as 'equal'
@@ -308,6 +358,7 @@ public class LocationIndexTree implements LocationIndex
                 + ", leafs:" + Helper.nf(inMem.leafs)
                 + ", precision:" + minResolutionInMeter
                 + ", depth:" + entries.length
+                + ", threads:" + prepareThreads
                 + ", entries:" + Arrays.toString(entries)
                 + ", entriesPerLeaf:" + entriesPerLeaf);
 
@@ -351,31 +402,81 @@ public class LocationIndexTree implements LocationIndex
         }
 
         void prepare()
+        {
+            if (prepareThreads == 1)
+            {
+                addEdges(0, 1);
+                return;
+            }
+
+            // every thread rasterizes its edges into its own tree, the trees are merged afterwards.
+            // The leafs are sorted sets so the merged tree is identical to the single threaded one
+            ExecutorService executor = Executors.newFixedThreadPool(prepareThreads);
+            try
+            {
+                List<Callable<InMemConstructionIndex>> tasks = new ArrayList<Callable<InMemConstructionIndex>>(prepareThreads);
+                for (int t = 0; t < prepareThreads; t++)
+                {
+                    final int part = t;
+                    tasks.add(new Callable<InMemConstructionIndex>()
+                    {
+                        @Override
+                        public InMemConstructionIndex call()
+                        {
+                            InMemConstructionIndex partIndex = new InMemConstructionIndex(entries[0]);
+                            partIndex.addEdges(part, prepareThreads);
+                            return partIndex;
+                        }
+                    });
+                }
+
+                for (Future<InMemConstructionIndex> future : executor.invokeAll(tasks))
+                {
+                    merge(root, future.get().root);
+                }
+            } catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Preparing the index was interrupted", ex);
+            } catch (ExecutionException ex)
+            {
+                throw new IllegalStateException("Preparing the index failed", ex.getCause());
+            } finally
+            {
+                executor.shutdown();
+            }
+        }
+
+        /**
+         * Adds the edges of the specified part. The edges are split into blocks of
+         * PREPARE_BLOCK_SIZE which are distributed round robin to the parts, as neighboring edges
+         * are often in the same area and so similarly expensive.
+         */
+        void addEdges( int part, int parts )
         {
             final EdgeIterator allIter = getAllEdges();
             try
             {
                 while (allIter.next())
                 {
-                    int nodeA = allIter.getBaseNode();
-                    int nodeB = allIter.getAdjNode();
-                    double lat1 = graph.getLatitude(nodeA);
-                    double lon1 = graph.getLongitude(nodeA);
-                    double lat2;
-                    double lon2;
-                    PointList points = allIter.fetchWayGeometry(0);
-                    int len = points.getSize();
-                    for (int i = 0; i < len; i++)
+                    if (parts > 1 && allIter.getEdge() / PREPARE_BLOCK_SIZE % parts != part)
+                        continue;
+
+                    // not accessible for any vehicle, e.g. the edges of ways deleted via an OSM change file
+                    if (allIter.getFlags() == 0)
+                        continue;
+
+                    // no need to feed both nodes as we search neighbors in fillIDs
+                    final int node = pickBestNode(allIter.getBaseNode(), allIter.getAdjNode());
+                    emitTiles(allIter, new PointEmitter()
                     {
-                        lat2 = points.getLatitude(i);
-                        lon2 = points.getLongitude(i);
-                        addNode(nodeA, nodeB, lat1, lon1, lat2, lon2);
-                        lat1 = lat2;
-                        lon1 = lon2;
-                    }
-                    lat2 = graph.getLatitude(nodeB);
-                    lon2 = graph.getLongitude(nodeB);
-                    addNode(nodeA, nodeB, lat1, lon1, lat2, lon2);
+                        @Override
+                        public void set( double lat, double lon )
+                        {
+                            long key = keyAlgo.encode(lat, lon);
+                            addNode(root, node, 0, createReverseKey(key), key);
+                        }
+                    });
                 }
             } catch (Exception ex)
             {
@@ -385,24 +486,38 @@ public class LocationIndexTree implements LocationIndex
             }
         }
 
-        void addNode( final int nodeA, final int nodeB,
-                final double lat1, final double lon1,
-                final double lat2, final double lon2 )
+        /**
+         * Adds all nodes of the source tree to the target tree. Subtrees which only exist in the
+         * source are taken over without copying.
+         */
+        void merge( InMemEntry target, InMemEntry source )
         {
-            PointEmitter pointEmitter = new PointEmitter()
+            if (target.isLeaf())
             {
-                @Override
-                public void set( double lat, double lon )
+                InMemLeafEntry leaf = (InMemLeafEntry) target;
+                TIntArrayList sourceNodes = ((InMemLeafEntry) source).getResults();
+                int len = sourceNodes.size();
+                for (int i = 0; i < len; i++)
                 {
-                    long key = keyAlgo.encode(lat, lon);
-                    long keyPart = createReverseKey(key);
-                    // no need to feed both nodes as we search neighbors in fillIDs
-                    addNode(root, pickBestNode(nodeA, nodeB), 0, keyPart, key);
+                    leaf.addNode(sourceNodes.get(i));
                 }
-            };
-            BresenhamLine.calcPoints(lat1, lon1, lat2, lon2, pointEmitter,
-                    graph.getBounds().minLat, graph.getBounds().minLon,
-                    deltaLat, deltaLon);
+                return;
+            }
+
+            InMemTreeEntry targetTree = (InMemTreeEntry) target;
+            InMemTreeEntry sourceTree = (InMemTreeEntry) source;
+            for (int i = 0; i < sourceTree.subEntries.length; i++)
+            {
+                InMemEntry sourceSub = sourceTree.getSubEntry(i);
+                if (sourceSub == null)
+                    continue;
+
+                InMemEntry targetSub = targetTree.getSubEntry(i);
+                if (targetSub == null)
+                    targetTree.setSubEntry(i, sourceSub);
+                else
+                    merge(targetSub, sourceSub);
+            }
         }
 
         void addNode( InMemEntry entry, int nodeId, int depth, long keyPart, long key )
@@ -548,13 +663,139 @@ public class LocationIndexTree implements LocationIndex
         }
     }
 
+    /**
+     * Emits the tiles of the specified edge including its way geometry. The tiles depend on the
+     * direction of the edge, so it has to be the stored one.
+     */
+    private void emitTiles( EdgeIteratorState edge, PointEmitter pointEmitter )
+    {
+        double minLat = graph.getBounds().minLat;
+        double minLon = graph.getBounds().minLon;
+        int nodeA = edge.getBaseNode();
+        int nodeB = edge.getAdjNode();
+        double lat1 = graph.getLatitude(nodeA);
+        double lon1 = graph.getLongitude(nodeA);
+        double lat2;
+        double lon2;
+        PointList points = edge.fetchWayGeometry(0);
+        int len = points.getSize();
+        for (int i = 0; i < len; i++)
+        {
+            lat2 = points.getLatitude(i);
+            lon2 = points.getLongitude(i);
+            BresenhamLine.calcPoints(lat1, lon1, lat2, lon2, pointEmitter, minLat, minLon, deltaLat, deltaLon);
+            lat1 = lat2;
+            lon1 = lon2;
+        }
+        lat2 = graph.getLatitude(nodeB);
+        lon2 = graph.getLongitude(nodeB);
+        BresenhamLine.calcPoints(lat1, lon1, lat2, lon2, pointEmitter, minLat, minLon, deltaLat, deltaLon);
+    }
+
+    /**
+     * Removes the specified edge from the index without creating it again, e.g. if its way was
+     * deleted via an OSM change file. The edge must not be accessible anymore, i.e. its flags are
+     * 0. Both nodes of the edge are marked as removed in the leaves of the edge which none of
+     * their remaining accessible edges passes. Call flush to store the change.
+     */
+    public void removeEdge( int edgeId )
+    {
+        if (!initialized)
+            throw new IllegalStateException("Call prepareIndex or loadExisting before removing edges");
+
+        EdgeIteratorState edge = graph.getEdgeProps(edgeId, Integer.MIN_VALUE);
+        if (edge.getFlags() != 0)
+            throw new IllegalArgumentException("Edge " + edgeId + " is still accessible, set its flags to 0 before");
+
+        TLongSet edgeLeafs = new TLongHashSet();
+        fillLeafs(edge, edgeLeafs);
+        EdgeExplorer explorer = graph.createEdgeExplorer(getEdgeFilter());
+        removeNode(explorer, edge.getBaseNode(), edgeLeafs);
+        removeNode(explorer, edge.getAdjNode(), edgeLeafs);
+    }
+
+    private void removeNode( EdgeExplorer explorer, int node, TLongSet edgeLeafs )
+    {
+        TLongSet nodeLeafs = new TLongHashSet();
+        EdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next())
+        {
+            if (iter.getFlags() != 0)
+                fillLeafs(graph.getEdgeProps(iter.getEdge(), Integer.MIN_VALUE), nodeLeafs);
+        }
+
+        TLongIterator leafIter = edgeLeafs.iterator();
+        while (leafIter.hasNext())
+        {
+            long leafPointer = leafIter.next();
+            if (!nodeLeafs.contains(leafPointer))
+                removeFromLeaf(leafPointer, node);
+        }
+    }
+
+    /**
+     * Adds the pointers of the leafs which the specified edge passes.
+     */
+    private void fillLeafs( EdgeIteratorState edge, final TLongSet leafs )
+    {
+        emitTiles(edge, new PointEmitter()
+        {
+            @Override
+            public void set( double lat, double lon )
+            {
+                long leafPointer = findLeaf(createReverseKey(keyAlgo.encode(lat, lon)));
+                if (leafPointer >= 0)
+                    leafs.add(leafPointer);
+            }
+        });
+    }
+
+    /**
+     * @return the pointer of the leaf for the specified key or -1 if there is none. Traverses the
+     * tree like fillIDs.
+     */
+    private long findLeaf( long keyPart )
+    {
+        int intIndex = START_POINTER;
+        for (int depth = 0; depth < entries.length; depth++)
+        {
+            int offset = (int) (bitmasks[depth] & keyPart) << 2;
+            int value = dataAccess.getInt(((long) intIndex << 2) + offset);
+            if (value <= 0)
+                return -1;
+
+            intIndex = value;
+            keyPart = keyPart >>> shifts[depth];
+        }
+        return (long) intIndex << 2;
+    }
+
+    private void removeFromLeaf( long pointer, int node )
+    {
+        int value = dataAccess.getInt(pointer);
+        if (value < 0)
+        {
+            // a single entry, without any entry the leaf stays empty
+            if (-(value + 1) == node)
+                dataAccess.setInt(pointer, 0);
+            return;
+        }
+
+        long max = (long) value * 4;
+        for (long leafIndex = pointer + 4; leafIndex < max; leafIndex += 4)
+        {
+            if (dataAccess.getInt(leafIndex) == node)
+                dataAccess.setInt(leafIndex, REMOVED_NODE);
+        }
+    }
+
     TIntArrayList getEntries()
     {
         return new TIntArrayList(entries);
     }
 
     // fillIDs according to how they are stored    
-    void fillIDs( long keyPart, int intIndex, TIntHashSet set, int depth )
+    void fillIDs( long keyPart, int intIndex, TIntCollection set, int depth )
     {
         long pointer = (long) intIndex << 2;
         if (depth == entries.length)
@@ -570,7 +811,9 @@ public class LocationIndexTree implements LocationIndex
                 // leaf entry => value is maxPointer
                 for (long leafIndex = pointer + 4; leafIndex < max; leafIndex += 4)
                 {
-                    set.add(dataAccess.getInt(leafIndex));
+                    int node = dataAccess.getInt(leafIndex);
+                    if (node != REMOVED_NODE)
+                        set.add(node);
                 }
             }
             return;
@@ -598,159 +841,358 @@ public class LocationIndexTree implements LocationIndex
     TIntHashSet findNetworkEntries( double queryLat, double queryLon )
     {
         TIntHashSet storedNetworkEntryIds = new TIntHashSet();
-        if (regionSearch)
+        fillNetworkEntries(queryLat, queryLon, storedNetworkEntryIds);
+        return storedNetworkEntryIds;
+    }
+
+    /**
+     * Adds the ids of the nodes stored for the area around the specified point. The same id can be
+     * added several times.
+     */
+    void fillNetworkEntries( double queryLat, double queryLon, TIntCollection storedNetworkEntryIds )
+    {
+        long[] keys = new long[MAX_KEYS];
+        int count = fillKeys(queryLat, queryLon, keys);
+        for (int i = 0; i < count; i++)
+        {
+            fillIDs(keys[i], START_POINTER, storedNetworkEntryIds, 0);
+        }
+    }
+
+    /**
+     * Stores the reversed keys of the tiles which have to be searched for the specified point.
+     * <p/>
+     * @return the number of keys
+     */
+    private int fillKeys( double queryLat, double queryLon, long[] keys )
+    {
+        if (!regionSearch)
+        {
+            keys[0] = createReverseKey(queryLat, queryLon);
+            return 1;
+        }
+
+        // search all rasters around minResolutionInMeter as we did not fill empty entries
+        int count = 0;
+        double maxLat = queryLat + deltaLat;
+        double maxLon = queryLon + deltaLon;
+        for (double tmpLat = queryLat - deltaLat; tmpLat <= maxLat; tmpLat += deltaLat)
         {
-            // search all rasters around minResolutionInMeter as we did not fill empty entries
-            double maxLat = queryLat + deltaLat;
-            double maxLon = queryLon + deltaLon;
-            for (double tmpLat = queryLat - deltaLat; tmpLat <= maxLat; tmpLat += deltaLat)
+            for (double tmpLon = queryLon - deltaLon; tmpLon <= maxLon; tmpLon += deltaLon)
             {
-                for (double tmpLon = queryLon - deltaLon; tmpLon <= maxLon; tmpLon += deltaLon)
-                {
-                    long keyPart = createReverseKey(tmpLat, tmpLon);
-                    // System.out.println(BitUtilLittle.toBitString(key, keyAlgo.bits()));
-                    fillIDs(keyPart, START_POINTER, storedNetworkEntryIds, 0);
-                }
+                keys[count++] = createReverseKey(tmpLat, tmpLon);
             }
-        } else
-        {
-            long keyPart = createReverseKey(queryLat, queryLon);
-            fillIDs(keyPart, START_POINTER, storedNetworkEntryIds, 0);
         }
-        return storedNetworkEntryIds;
+        return count;
     }
 
+    /**
+     * Finds the closest node or edge. The temporary data of a lookup is kept per thread, so apart
+     * from the way geometries only the explorer, the QueryResult and the closest edge are created
+     * for every call.
+     */
     @Override
     public QueryResult findClosest( final double queryLat, final double queryLon,
             final EdgeFilter edgeFilter )
     {
-        final TIntHashSet storedNetworkEntryIds = findNetworkEntries(queryLat, queryLon);
-        final QueryResult closestMatch = new QueryResult(queryLat, queryLon);
-        if (storedNetworkEntryIds.isEmpty())
-            return closestMatch;
+        LookupState state = lookupStates.get();
+        // the entries of the state could belong to another index
+        state.clearEntries();
+        return findClosest(state, graph.createEdgeExplorer(getEdgeFilter()), queryLat, queryLon, edgeFilter);
+    }
 
-        // clone storedIds to avoid interference with forEach
-        final GHBitSet checkBitset = new GHTBitSet(new TIntHashSet(storedNetworkEntryIds));
-        // find nodes from the network entries which are close to 'point'
-        final EdgeExplorer explorer = graph.createEdgeExplorer(getEdgeFilter());
-        storedNetworkEntryIds.forEach(new TIntProcedure()
+    /**
+     * Finds the closest node or edge for all specified points. The points are processed in the
+     * order of their spatial key so that points in the same tiles are looked up one after another
+     * and the network entries of these tiles are collected only once.
+     * <p/>
+     * @param executor if not null the points are split into partitions of bulkPartitionSize which
+     * are looked up in parallel
+     * @return the results in the order of the specified points
+     */
+    public List<QueryResult> findClosest( final double[] lats, final double[] lons,
+            final EdgeFilter edgeFilter, ExecutorService executor )
+    {
+        if (lats.length != lons.length)
+            throw new IllegalArgumentException("Number of latitudes " + lats.length
+                    + " and longitudes " + lons.length + " differ");
+
+        final int size = lats.length;
+        final int[] order = sortSpatially(lats, lons);
+        final QueryResult[] results = new QueryResult[size];
+        if (executor == null)
         {
-            @Override
-            public boolean execute( final int networkEntryNodeId )
+            findClosest(lats, lons, edgeFilter, order, 0, size, results);
+            return Arrays.asList(results);
+        }
+
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(size / bulkPartitionSize + 1);
+        for (int start = 0; start < size; start += bulkPartitionSize)
+        {
+            final int from = start;
+            final int to = Math.min(size, start + bulkPartitionSize);
+            tasks.add(new Callable<Object>()
             {
-                new XFirstSearch()
+                @Override
+                public Object call()
                 {
-                    boolean goFurther = true;
-                    double currNormedDist;
-                    double currLat;
-                    double currLon;
-                    int currNode;
-
-                    @Override
-                    protected GHBitSet createBitSet()
-                    {
-                        return checkBitset;
-                    }
+                    findClosest(lats, lons, edgeFilter, order, from, to, results);
+                    return null;
+                }
+            });
+        }
 
-                    @Override
-                    protected boolean goFurther( int baseNode )
-                    {
-                        currNode = baseNode;
-                        currLat = graph.getLatitude(baseNode);
-                        currLon = graph.getLongitude(baseNode);
-                        currNormedDist = distCalc.calcNormalizedDist(queryLat, queryLon, currLat, currLon);
-                        return goFurther;
-                    }
+        try
+        {
+            for (Future<Object> future : executor.invokeAll(tasks))
+            {
+                future.get();
+            }
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while looking up the points", ex);
+        } catch (ExecutionException ex)
+        {
+            throw new IllegalStateException("Cannot look up the points", ex.getCause());
+        }
+        return Arrays.asList(results);
+    }
 
-                    @Override
-                    protected boolean checkAdjacent( EdgeIterator currEdge )
-                    {
-                        goFurther = false;
-                        if (!edgeFilter.accept(currEdge))
-                        {
-                            // only limit the adjNode to a certain radius as currNode could be the wrong side of a valid edge
-                            // goFurther = currDist < minResolution2InMeterNormed;
-                            return true;
-                        }
+    private void findClosest( double[] lats, double[] lons, EdgeFilter edgeFilter,
+            int[] order, int from, int to, QueryResult[] results )
+    {
+        LookupState state = lookupStates.get();
+        state.clearEntries();
+        EdgeExplorer explorer = graph.createEdgeExplorer(getEdgeFilter());
+        for (int i = from; i < to; i++)
+        {
+            int index = order[i];
+            results[index] = findClosest(state, explorer, lats[index], lons[index], edgeFilter);
+        }
+    }
 
-                        int tmpClosestNode = currNode;
-                        if (check(tmpClosestNode, currNormedDist, 0, currEdge, QueryResult.Position.TOWER))
-                        {
-                            if (currNormedDist <= equalNormedDelta)
-                                return false;
-                        }
+    /**
+     * @return the indices of the points sorted by their spatial key
+     */
+    private int[] sortSpatially( double[] lats, double[] lons )
+    {
+        int size = lats.length;
+        final long[] keys = new long[size];
+        Integer[] indices = new Integer[size];
+        for (int i = 0; i < size; i++)
+        {
+            indices[i] = i;
+            keys[i] = keyAlgo.encode(lats[i], lons[i]);
+        }
+        Arrays.sort(indices, new Comparator<Integer>()
+        {
+            @Override
+            public int compare( Integer o1, Integer o2 )
+            {
+                long k1 = keys[o1];
+                long k2 = keys[o2];
+                return k1 < k2 ? -1 : (k1 == k2 ? 0 : 1);
+            }
+        });
 
-                        int adjNode = currEdge.getAdjNode();
-                        double adjLat = graph.getLatitude(adjNode);
-                        double adjLon = graph.getLongitude(adjNode);
-                        double adjDist = distCalc.calcNormalizedDist(adjLat, adjLon, queryLat, queryLon);
-                        // if there are wayPoints this is only an approximation
-                        if (adjDist < currNormedDist)
-                            tmpClosestNode = adjNode;
-
-                        double tmpLat = currLat;
-                        double tmpLon = currLon;
-                        double tmpNormedDist;
-                        PointList pointList = currEdge.fetchWayGeometry(2);
-                        int len = pointList.getSize();
-                        for (int pointIndex = 0; pointIndex < len; pointIndex++)
-                        {
-                            double wayLat = pointList.getLatitude(pointIndex);
-                            double wayLon = pointList.getLongitude(pointIndex);
-                            QueryResult.Position pos = QueryResult.Position.EDGE;
-                            if (distCalc.validEdgeDistance(queryLat, queryLon, tmpLat, tmpLon, wayLat, wayLon))
-                            {
-                                tmpNormedDist = distCalc.calcNormalizedEdgeDistance(queryLat, queryLon,
-                                        tmpLat, tmpLon, wayLat, wayLon);
-                                check(tmpClosestNode, tmpNormedDist, pointIndex, currEdge, pos);
-                            } else if (pointIndex + 1 == len)
-                            {
-                                tmpNormedDist = adjDist;
-                                pos = QueryResult.Position.TOWER;
-                            } else
-                            {
-                                tmpNormedDist = distCalc.calcNormalizedDist(queryLat, queryLon, wayLat, wayLon);
-                                pos = QueryResult.Position.PILLAR;
-                            }
-                            check(tmpClosestNode, tmpNormedDist, pointIndex + 1, currEdge, pos);
-
-                            if (tmpNormedDist <= equalNormedDelta)
-                                return false;
-
-                            tmpLat = wayLat;
-                            tmpLon = wayLon;
-                        }
-                        return closestMatch.getQueryDistance() > equalNormedDelta;
-                    }
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            order[i] = indices[i];
+        }
+        return order;
+    }
 
-                    boolean check( int node, double normedDist, int wayIndex, EdgeIterator iter, QueryResult.Position pos )
-                    {
-                        if (normedDist < closestMatch.getQueryDistance())
-                        {
-                            closestMatch.setQueryDistance(normedDist);
-                            closestMatch.setClosestNode(node);
-                            closestMatch.setClosestEdge(iter.detach());
-                            closestMatch.setWayIndex(wayIndex);
-                            closestMatch.setSnappedPosition(pos);
-                            return true;
-                        }
-                        return false;
-                    }
-                }.start(explorer, networkEntryNodeId, false);
-                return true;
+    private QueryResult findClosest( LookupState state, EdgeExplorer explorer,
+            double queryLat, double queryLon, EdgeFilter edgeFilter )
+    {
+        fillEntries(state, queryLat, queryLon);
+        int size = state.entries.size();
+        for (int i = 0; i < size; i++)
+        {
+            // the same node can be stored in several neighbouring tiles
+            int networkEntryNodeId = state.entries.get(i);
+            if (!state.visit(networkEntryNodeId))
+                continue;
+
+            checkEntry(state, explorer, networkEntryNodeId, queryLat, queryLon, edgeFilter);
+        }
+        return createQueryResult(state, queryLat, queryLon);
+    }
+
+    /**
+     * Finds the closest position on every edge near the specified point, e.g. to get alternative
+     * candidates for map matching. Only the tiles around the point are searched as for
+     * findClosest, so edges further away than about the resolution of this index are not found
+     * even for a bigger radius.
+     * <p/>
+     * @param maxCandidates the maximum number of edges returned
+     * @param radiusInMeter only edges within this distance are returned
+     * @return one result per edge, sorted by the distance to the query point
+     */
+    public List<QueryResult> findClosestEdges( double queryLat, double queryLon, EdgeFilter edgeFilter,
+            int maxCandidates, double radiusInMeter )
+    {
+        if (maxCandidates < 1)
+            throw new IllegalArgumentException("maxCandidates has to be positive but was " + maxCandidates);
+
+        LookupState state = lookupStates.get();
+        state.clearEntries();
+        fillEntries(state, queryLat, queryLon);
+        double normedRadius = distCalc.calcNormalizedDist(radiusInMeter);
+        EdgeExplorer explorer = graph.createEdgeExplorer(getEdgeFilter());
+        // every edge is reachable from both of its nodes
+        TIntHashSet checkedEdges = new TIntHashSet();
+        List<QueryResult> candidates = new ArrayList<QueryResult>();
+        int size = state.entries.size();
+        for (int i = 0; i < size; i++)
+        {
+            int currNode = state.entries.get(i);
+            if (!state.visit(currNode))
+                continue;
+
+            double currLat = graph.getLatitude(currNode);
+            double currLon = graph.getLongitude(currNode);
+            double currNormedDist = distCalc.calcNormalizedDist(queryLat, queryLon, currLat, currLon);
+            EdgeIterator currEdge = explorer.setBaseNode(currNode);
+            while (currEdge.next())
+            {
+                if (!edgeFilter.accept(currEdge) || !checkedEdges.add(currEdge.getEdge()))
+                    continue;
+
+                state.resetClosest();
+                checkEdge(state, currEdge, currNode, currLat, currLon, currNormedDist, queryLat, queryLon);
+                if (state.closestEdge >= 0 && state.closestNormedDist <= normedRadius)
+                    candidates.add(createQueryResult(state, queryLat, queryLon));
+            }
+        }
+
+        Collections.sort(candidates, new Comparator<QueryResult>()
+        {
+            @Override
+            public int compare( QueryResult o1, QueryResult o2 )
+            {
+                return Double.compare(o1.getQueryDistance(), o2.getQueryDistance());
             }
         });
+        if (candidates.size() > maxCandidates)
+            return new ArrayList<QueryResult>(candidates.subList(0, maxCandidates));
 
+        return candidates;
+    }
+
+    /**
+     * Initializes the state for a new lookup and collects the network entries of the tiles around
+     * the specified point into it.
+     */
+    private void fillEntries( LookupState state, double queryLat, double queryLon )
+    {
+        // the entries of the previous lookup can be reused if it searched the same tiles
+        if (!state.hasKeys(fillKeys(queryLat, queryLon, state.nextKeys)))
+        {
+            state.entries.resetQuick();
+            for (int i = 0; i < state.keyCount; i++)
+            {
+                fillIDs(state.keys[i], START_POINTER, state.entries, 0);
+            }
+        }
+        state.init();
+    }
+
+    private QueryResult createQueryResult( LookupState state, double queryLat, double queryLon )
+    {
+        QueryResult closestMatch = new QueryResult(queryLat, queryLon);
+        if (state.closestEdge < 0)
+            return closestMatch;
+
+        closestMatch.setQueryDistance(state.closestNormedDist);
+        closestMatch.setClosestNode(state.closestNode);
+        closestMatch.setClosestEdge(graph.getEdgeProps(state.closestEdge, state.closestAdjNode));
+        closestMatch.setWayIndex(state.closestWayIndex);
+        closestMatch.setSnappedPosition(state.closestPosition);
         if (closestMatch.isValid())
         {
             // denormalize distance            
             closestMatch.setQueryDistance(distCalc.calcDenormalizedDist(closestMatch.getQueryDistance()));
             closestMatch.calcSnappedPoint(distCalc);
         }
-
         return closestMatch;
     }
 
+    /**
+     * Checks all edges of the specified network entry and their way geometry.
+     */
+    private void checkEntry( LookupState state, EdgeExplorer explorer, int currNode,
+            double queryLat, double queryLon, EdgeFilter edgeFilter )
+    {
+        double currLat = graph.getLatitude(currNode);
+        double currLon = graph.getLongitude(currNode);
+        double currNormedDist = distCalc.calcNormalizedDist(queryLat, queryLon, currLat, currLon);
+        EdgeIterator currEdge = explorer.setBaseNode(currNode);
+        while (currEdge.next())
+        {
+            if (!edgeFilter.accept(currEdge))
+                continue;
+
+            checkEdge(state, currEdge, currNode, currLat, currLon, currNormedDist, queryLat, queryLon);
+        }
+    }
+
+    /**
+     * Updates the closest position of the state if a position on the specified edge, including its
+     * way geometry and its nodes, is closer.
+     */
+    private void checkEdge( LookupState state, EdgeIterator currEdge, int currNode,
+            double currLat, double currLon, double currNormedDist, double queryLat, double queryLon )
+    {
+        int tmpClosestNode = currNode;
+        if (state.check(tmpClosestNode, currNormedDist, 0, currEdge, QueryResult.Position.TOWER)
+                && currNormedDist <= equalNormedDelta)
+            return;
+
+        int adjNode = currEdge.getAdjNode();
+        double adjLat = graph.getLatitude(adjNode);
+        double adjLon = graph.getLongitude(adjNode);
+        double adjDist = distCalc.calcNormalizedDist(adjLat, adjLon, queryLat, queryLon);
+        // if there are wayPoints this is only an approximation
+        if (adjDist < currNormedDist)
+            tmpClosestNode = adjNode;
+
+        double tmpLat = currLat;
+        double tmpLon = currLon;
+        double tmpNormedDist;
+        PointList pointList = currEdge.fetchWayGeometry(2);
+        int len = pointList.getSize();
+        for (int pointIndex = 0; pointIndex < len; pointIndex++)
+        {
+            double wayLat = pointList.getLatitude(pointIndex);
+            double wayLon = pointList.getLongitude(pointIndex);
+            QueryResult.Position pos = QueryResult.Position.EDGE;
+            if (distCalc.validEdgeDistance(queryLat, queryLon, tmpLat, tmpLon, wayLat, wayLon))
+            {
+                tmpNormedDist = distCalc.calcNormalizedEdgeDistance(queryLat, queryLon,
+                        tmpLat, tmpLon, wayLat, wayLon);
+                state.check(tmpClosestNode, tmpNormedDist, pointIndex, currEdge, pos);
+            } else if (pointIndex + 1 == len)
+            {
+                tmpNormedDist = adjDist;
+                pos = QueryResult.Position.TOWER;
+            } else
+            {
+                tmpNormedDist = distCalc.calcNormalizedDist(queryLat, queryLon, wayLat, wayLon);
+                pos = QueryResult.Position.PILLAR;
+            }
+            state.check(tmpClosestNode, tmpNormedDist, pointIndex + 1, currEdge, pos);
+
+            if (tmpNormedDist <= equalNormedDelta)
+                return;
+
+            tmpLat = wayLat;
+            tmpLon = wayLon;
+        }
+    }
+
     protected int pickBestNode( int nodeA, int nodeB )
     {
         // For normal graph the node does not matter because if nodeA is conntected to nodeB
@@ -768,6 +1210,134 @@ public class LocationIndexTree implements LocationIndex
         return graph.getAllEdges();
     }
 
+    /**
+     * The reusable data of findClosest for one thread. Only the entries are visited and so they are
+     * stored in a small open addressing set which is sized to the number of entries and not to the
+     * graph. A slot is empty if it was not used in the current generation, so the set does not need
+     * to be cleared for every lookup. The closest position is stored as primitives and only
+     * converted into a QueryResult at the end.
+     */
+    static class LookupState
+    {
+        final TIntArrayList entries = new TIntArrayList();
+        // the keys of the tiles from which the entries were collected
+        final long[] keys = new long[MAX_KEYS];
+        final long[] nextKeys = new long[MAX_KEYS];
+        int keyCount = -1;
+        private int[] visitedNodes = new int[16];
+        private int[] visitedGenerations = new int[16];
+        private int generation;
+        double closestNormedDist;
+        int closestNode;
+        int closestEdge;
+        int closestAdjNode;
+        int closestWayIndex;
+        QueryResult.Position closestPosition;
+
+        void clearEntries()
+        {
+            entries.resetQuick();
+            keyCount = -1;
+        }
+
+        /**
+         * @return true if the specified nextKeys are identical to the keys of the entries.
+         * Otherwise they are copied into keys and the entries have to be collected again.
+         */
+        boolean hasKeys( int count )
+        {
+            if (count == keyCount)
+            {
+                boolean same = true;
+                for (int i = 0; i < count; i++)
+                {
+                    if (keys[i] != nextKeys[i])
+                    {
+                        same = false;
+                        break;
+                    }
+                }
+                if (same)
+                    return true;
+            }
+
+            System.arraycopy(nextKeys, 0, keys, 0, count);
+            keyCount = count;
+            return false;
+        }
+
+        void resetClosest()
+        {
+            closestNormedDist = Double.MAX_VALUE;
+            closestNode = -1;
+            closestEdge = -1;
+            closestAdjNode = -1;
+            closestWayIndex = -1;
+            closestPosition = null;
+        }
+
+        /**
+         * Prepares a new lookup of the current entries.
+         */
+        void init()
+        {
+            // at most half of the slots are used
+            int capacity = visitedNodes.length;
+            while (capacity < 2 * entries.size())
+            {
+                capacity <<= 1;
+            }
+            if (capacity > visitedNodes.length)
+            {
+                visitedNodes = new int[capacity];
+                visitedGenerations = new int[capacity];
+                generation = 0;
+            }
+            generation++;
+            if (generation == Integer.MAX_VALUE)
+            {
+                Arrays.fill(visitedGenerations, 0);
+                generation = 1;
+            }
+            resetClosest();
+        }
+
+        /**
+         * @return false if the node was already visited in the current lookup
+         */
+        boolean visit( int node )
+        {
+            int mask = visitedNodes.length - 1;
+            int hash = node * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (visitedGenerations[slot] == generation)
+            {
+                if (visitedNodes[slot] == node)
+                    return false;
+
+                slot = (slot + 1) & mask;
+            }
+            visitedNodes[slot] = node;
+            visitedGenerations[slot] = generation;
+            return true;
+        }
+
+        boolean check( int node, double normedDist, int wayIndex, EdgeIterator iter, QueryResult.Position pos )
+        {
+            if (normedDist < closestNormedDist)
+            {
+                closestNormedDist = normedDist;
+                closestNode = node;
+                closestEdge = iter.getEdge();
+                closestAdjNode = iter.getAdjNode();
+                closestWayIndex = wayIndex;
+                closestPosition = pos;
+                return true;
+            }
+            return false;
+        }
+    }
+
     // make entries static as otherwise we get an additional reference to this class (memory waste)
     static interface InMemEntry
     {
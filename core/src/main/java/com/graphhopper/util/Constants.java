@@ -51,7 +51,7 @@ public class Constants
     public static final String OS_VERSION = System.getProperty("os.version");
     public static final String JAVA_VENDOR = System.getProperty("java.vendor");
     public static final int VERSION_NODE = 2;
-    public static final int VERSION_EDGE = 3;
+    public static final int VERSION_EDGE = 4;
     public static final int VERSION_GEOMETRY = 2;
     public static final int VERSION_LOCATION_IDX = 2;
     public static final int VERSION_NAME_IDX = 2;
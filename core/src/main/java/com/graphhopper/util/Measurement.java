@@ -21,6 +21,8 @@ package com.graphhopper.util;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.coll.GHTreeMapComposed;
+import com.graphhopper.coll.IntDoubleIndexedHeap;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.Graph;
@@ -112,6 +114,7 @@ public class Measurement
         {
             maxNode = g.getNodes();
             printGraphDetails(g);
+            printNodeOrderingQueue(g.getNodes());
             printLocation2IDQuery(g, hopper.getLocationIndex(), count);
 
             // Route via dijkstrabi. Normal routing takes a lot of time => smaller query number than CH
@@ -159,6 +162,73 @@ public class Measurement
         put("graph.encoder", g.getEncodingManager().getSingle().toString());
     }
 
+    /**
+     * Compares the priority queues for the node ordering of the CH preparation with a simulated
+     * contraction: all nodes are inserted, and for every polled node some random neighbors get a new
+     * priority.
+     */
+    private void printNodeOrderingQueue( final int nodes )
+    {
+        MiniPerfTest miniPerf = new MiniPerfTest()
+        {
+            @Override
+            public int doCalc( boolean warmup, int run )
+            {
+                return simulateNodeOrdering(nodes, run, false);
+            }
+        }.setIterations(5).start();
+        print("prepare.queue.treemap", miniPerf);
+
+        miniPerf = new MiniPerfTest()
+        {
+            @Override
+            public int doCalc( boolean warmup, int run )
+            {
+                return simulateNodeOrdering(nodes, run, true);
+            }
+        }.setIterations(5).start();
+        print("prepare.queue.heap", miniPerf);
+    }
+
+    private int simulateNodeOrdering( int nodes, int run, boolean useHeap )
+    {
+        Random rand = new Random(seed + run);
+        GHTreeMapComposed treeMap = useHeap ? null : new GHTreeMapComposed();
+        IntDoubleIndexedHeap heap = useHeap ? new IntDoubleIndexedHeap(nodes, true) : null;
+        int[] prios = new int[nodes];
+        boolean[] polled = new boolean[nodes];
+        for (int node = 0; node < nodes; node++)
+        {
+            prios[node] = rand.nextInt(1000);
+            if (useHeap)
+                heap.insert_(prios[node], node);
+            else
+                treeMap.insert(node, prios[node]);
+        }
+
+        int sum = 0;
+        for (int i = 0; i < nodes; i++)
+        {
+            int node = useHeap ? heap.poll_element() : treeMap.pollKey();
+            polled[node] = true;
+            sum += node;
+            for (int j = 0; j < 3; j++)
+            {
+                int neighbor = rand.nextInt(nodes);
+                if (polled[neighbor])
+                    continue;
+
+                int oldPrio = prios[neighbor];
+                prios[neighbor] = oldPrio + rand.nextInt(10);
+                if (useHeap)
+                    heap.update_(prios[neighbor], neighbor);
+                else
+                    treeMap.update(neighbor, oldPrio, prios[neighbor]);
+            }
+        }
+        return sum;
+    }
+
     private void printLocation2IDQuery( Graph g, final LocationIndex idx, int count )
     {
         count *= 2;
@@ -264,6 +334,7 @@ public class Measurement
         put(prefix + ".min", perf.getMin());
         put(prefix + ".mean", perf.getMean());
         put(prefix + ".max", perf.getMax());
+        put(prefix + ".allocatedBytes", perf.getAllocatedBytesPerCall());
     }
 
     void put( String key, Object val )
@@ -17,6 +17,8 @@
  */
 package com.graphhopper.util;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.text.DecimalFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +34,7 @@ public abstract class MiniPerfTest
     private double max;
     private double min = Double.MAX_VALUE;
     private int dummySum;
+    private long allocatedBytes = -1;
 
     public MiniPerfTest start()
     {
@@ -40,6 +43,7 @@ public abstract class MiniPerfTest
         {
             dummySum += doCalc(true, i);
         }
+        long startBytes = getAllocatedBytes();
         long startFull = System.nanoTime();
         for (int i = 0; i < counts; i++)
         {
@@ -53,6 +57,8 @@ public abstract class MiniPerfTest
                 max = time;
         }
         fullTime = System.nanoTime() - startFull;
+        if (startBytes >= 0)
+            allocatedBytes = getAllocatedBytes() - startBytes;
         logger.info("dummySum:" + dummySum);
         return this;
     }
@@ -87,9 +93,39 @@ public abstract class MiniPerfTest
         return getSum() / counts;
     }
 
+    /**
+     * @return the bytes allocated by the current thread per call or -1 if the JVM cannot measure
+     * it. Includes the allocations of doCalc itself.
+     */
+    public double getAllocatedBytesPerCall()
+    {
+        if (allocatedBytes < 0)
+            return -1;
+
+        return (double) allocatedBytes / counts;
+    }
+
     public String getReport()
     {
-        return "sum:" + nf(getSum() / 1000f) + "s, time/call:" + nf(getMean() / 1000f) + "s";
+        String str = "sum:" + nf(getSum() / 1000f) + "s, time/call:" + nf(getMean() / 1000f) + "s";
+        if (allocatedBytes >= 0)
+            str += ", bytes/call:" + nf(getAllocatedBytesPerCall());
+
+        return str;
+    }
+
+    private static long getAllocatedBytes()
+    {
+        // only available for HotSpot based JVMs
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled())
+            return -1;
+
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
     }
 
     public String nf( Number num )
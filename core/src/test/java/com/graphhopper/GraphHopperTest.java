@@ -18,11 +18,24 @@
  */
 package com.graphhopper;
 
+import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.AbstractGraphStorageTester;
+import com.graphhopper.storage.GraphStorage;
+import com.graphhopper.storage.LevelGraph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.CmdArgs;
+import com.graphhopper.util.GHUtility;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.shapes.GHPlace;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -37,6 +50,7 @@ public class GraphHopperTest
     private static final String ghLoc = "./target/tmp/ghosm";
     private static final String testOsm = "./src/test/resources/com/graphhopper/reader/test-osm.xml";
     private static final String testOsm3 = "./src/test/resources/com/graphhopper/reader/test-osm3.xml";
+    private static final String testOsmChange = "./src/test/resources/com/graphhopper/reader/test-osm-change.xml";
     private GraphHopper instance;
 
     @Before
@@ -70,6 +84,60 @@ public class GraphHopperTest
         assertEquals(3, ph.getPoints().getSize());
     }
 
+    @Test
+    public void testLoadFrozenOSM() throws IOException
+    {
+        instance = new GraphHopper().setInMemory(true, true).setEncodingManager(new EncodingManager("CAR")).
+                setFreezeGraph(true).
+                setGraphHopperLocation(ghLoc).setOSMFile(testOsm);
+        instance.importOrLoad();
+        assertTrue(((GraphStorage) instance.getGraph()).isFrozen());
+        GHResponse ph = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertTrue(ph.isFound());
+        assertEquals(3, ph.getPoints().getSize());
+
+        instance.close();
+        instance = new GraphHopper().setInMemory(true, true);
+        assertTrue(instance.load(ghLoc));
+        assertTrue(((GraphStorage) instance.getGraph()).isFrozen());
+        ph = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertTrue(ph.isFound());
+        assertEquals(3, ph.getPoints().getSize());
+    }
+
+    @Test
+    public void testRequestHintsDoNotChangeDefaults() throws IOException
+    {
+        instance = new GraphHopper().setInMemory(true, false).setEncodingManager(new EncodingManager("CAR")).
+                setGraphHopperLocation(ghLoc).setOSMFile(testOsm);
+        instance.importOrLoad();
+        GHRequest req = new GHRequest(51.2492152, 9.4317166, 51.2, 9.4);
+        req.putHint("calcPoints", false);
+        req.putHint("instructions", false);
+        GHResponse ph = instance.route(req);
+        assertTrue(ph.isFound());
+        assertEquals(0, ph.getPoints().getSize());
+
+        ph = instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4));
+        assertTrue(ph.isFound());
+        assertEquals(3, ph.getPoints().getSize());
+        assertTrue(ph.getInstructions().size() > 0);
+    }
+
+    @Test
+    public void testSearchStatesClearedOnClose() throws IOException
+    {
+        instance = new GraphHopper().setInMemory(true, false).setEncodingManager(new EncodingManager("CAR")).
+                disableCHShortcuts().
+                setGraphHopperLocation(ghLoc).setOSMFile(testOsm);
+        instance.importOrLoad();
+        assertTrue(instance.route(new GHRequest(51.2492152, 9.4317166, 51.2, 9.4)).isFound());
+        assertTrue(instance.getSearchStatePool().getSize() > 0);
+
+        instance.close();
+        assertEquals(0, instance.getSearchStatePool().getSize());
+    }
+
     @Test
     public void testPrepare() throws IOException
     {
@@ -124,6 +192,228 @@ public class GraphHopperTest
         assertEquals(3, res.getPoints().getSize());
     }
 
+    @Test
+    public void testViaPoints() throws IOException
+    {
+        instance = new GraphHopper().setInMemory(true, false).setEncodingManager(new EncodingManager("CAR")).
+                disableCHShortcuts().
+                setGraphHopperLocation(ghLoc).setOSMFile(testOsm3);
+        instance.importOrLoad();
+
+        // A to D and D to E
+        GHResponse first = instance.route(new GHRequest(11.1, 50, 11.3, 51));
+        GHResponse second = instance.route(new GHRequest(11.3, 51, 10, 51));
+        assertTrue(first.isFound());
+        assertTrue(second.isFound());
+
+        List<GHPlace> places = Arrays.asList(new GHPlace(11.1, 50), new GHPlace(11.3, 51), new GHPlace(10, 51));
+        for (boolean parallel : new boolean[]
+        {
+            false, true
+        })
+        {
+            GHResponse res = instance.route(new GHRequest(places).putHint("legs.parallel", parallel));
+            assertFalse(res.hasErrors());
+            assertTrue(res.isFound());
+            assertEquals(first.getDistance() + second.getDistance(), res.getDistance(), 1e-3);
+            assertEquals(first.getMillis() + second.getMillis(), res.getMillis());
+            // the via point is not duplicated
+            assertEquals(first.getPoints().getSize() + second.getPoints().getSize() - 1, res.getPoints().getSize());
+            assertEquals(11.3, res.getPoints().getLatitude(first.getPoints().getSize() - 1), 1e-3);
+            // only one finish instruction
+            assertEquals(first.getInstructions().size() + second.getInstructions().size() - 1, res.getInstructions().size());
+        }
+    }
+
+    @Test
+    public void testMaxVisitedNodesHint() throws IOException
+    {
+        instance = new GraphHopper().setInMemory(true, false).setEncodingManager(new EncodingManager("CAR")).
+                disableCHShortcuts().
+                setGraphHopperLocation(ghLoc).setOSMFile(testOsm3);
+        instance.importOrLoad();
+
+        GHResponse rsp = instance.route(new GHRequest(11.1, 50, 10, 51).putHint("maxVisitedNodes", 1));
+        assertTrue(rsp.hasErrors());
+        assertFalse(rsp.isFound());
+
+        rsp = instance.route(new GHRequest(11.1, 50, 10, 51).putHint("maxVisitedNodes", 100).putHint("timeout", 10000L));
+        assertFalse(rsp.hasErrors());
+        assertTrue(rsp.isFound());
+    }
+
+    @Test
+    public void testRouteCache() throws IOException
+    {
+        instance = new GraphHopper().setInMemory(true, false).setEncodingManager(new EncodingManager("CAR")).
+                disableCHShortcuts().setRouteCache(10, 0).
+                setGraphHopperLocation(ghLoc).setOSMFile(testOsm3);
+        instance.importOrLoad();
+
+        GHResponse rsp = instance.route(new GHRequest(11.1, 50, 11.3, 51));
+        assertTrue(rsp.isFound());
+        assertEquals(0, instance.getRouteCache().getHits());
+        assertEquals(1, instance.getRouteCache().getSize());
+
+        GHResponse cached = instance.route(new GHRequest(11.1, 50, 11.3, 51));
+        assertEquals(1, instance.getRouteCache().getHits());
+        assertTrue(cached.getDebugInfo().contains("cached"));
+        assertEquals(rsp.getDistance(), cached.getDistance(), 1e-5);
+        assertEquals(rsp.getPoints().getSize(), cached.getPoints().getSize());
+
+        // other options result in a different entry
+        instance.route(new GHRequest(11.1, 50, 11.3, 51).setWeighting("fastest"));
+        assertEquals(1, instance.getRouteCache().getHits());
+        assertEquals(2, instance.getRouteCache().getSize());
+
+        // errors are not cached
+        instance.route(new GHRequest(11.1, 50, 10, 51).putHint("maxVisitedNodes", 1));
+        assertEquals(2, instance.getRouteCache().getSize());
+
+        instance.close();
+        assertEquals(0, instance.getRouteCache().getSize());
+    }
+
+    @Test
+    public void testRouteBatch() throws IOException
+    {
+        instance = new GraphHopper().setInMemory(true, false).setEncodingManager(new EncodingManager("CAR")).
+                disableCHShortcuts().setBatchThreads(3).
+                setGraphHopperLocation(ghLoc).setOSMFile(testOsm3);
+        instance.importOrLoad();
+
+        List<GHRequest> requests = new ArrayList<GHRequest>();
+        for (int i = 0; i < 50; i++)
+        {
+            // A to D, D to A and A to E with some noise so that the spatial order differs
+            double noise = i * 1e-4;
+            requests.add(new GHRequest(11.1 + noise, 50, 11.3, 51));
+            requests.add(new GHRequest(11.3 + noise, 51, 11.1, 50));
+            requests.add(new GHRequest(11.1, 50 + noise, 10, 51));
+        }
+        // the points of all requests are snapped together
+        requests.add(new GHRequest(Arrays.asList(new GHPlace(11.1, 50), new GHPlace(11.3, 51), new GHPlace(10, 51))));
+        requests.add(new GHRequest(11.1, 50, 11.3, 51).setVehicle("UNKNOWN"));
+        requests.add(new GHRequest(null, new GHPlace(11.3, 51)));
+        requests.add(new GHRequest(new ArrayList<GHPlace>()));
+
+        GHBatchResponse batch = instance.routeBatch(requests);
+        assertEquals(requests.size(), batch.getResponses().size());
+        assertEquals(3, batch.getErrorCount());
+        assertTrue(batch.getThroughput() > 0);
+        for (int i = 0; i < requests.size() - 3; i++)
+        {
+            GHResponse expected = instance.route(requests.get(i));
+            GHResponse rsp = batch.getResponses().get(i);
+            assertFalse(rsp.hasErrors());
+            assertEquals("request " + i, expected.getDistance(), rsp.getDistance(), 1e-3);
+            assertEquals("request " + i, expected.getPoints().getSize(), rsp.getPoints().getSize());
+        }
+        assertTrue(batch.getResponses().get(requests.size() - 3).hasErrors());
+        assertTrue(batch.getResponses().get(requests.size() - 2).hasErrors());
+        assertTrue(batch.getResponses().get(requests.size() - 1).hasErrors());
+    }
+
+    @Test
+    public void testApplyChangesCH() throws IOException
+    {
+        instance = new GraphHopper().setInMemory(true, true).setEncodingManager(new EncodingManager("CAR")).
+                setStoreWayEdges(true).setGraphHopperLocation(ghLoc).setOSMFile(testOsmChange);
+        instance.importOrLoad();
+        assertTrue(instance.getGraph() instanceof LevelGraph);
+        GHResponse rsp = instance.route(new GHRequest(51.02, 9.0, 51.0, 8.99));
+        assertTrue(rsp.isFound());
+        GHResponse rspDeleted = instance.route(new GHRequest(51.02, 9.0, 51.04, 9.0));
+        assertEquals(2224, rspDeleted.getDistance(), 1);
+
+        LocationIndex index = instance.getLocationIndex();
+        instance.applyChanges(testOsmChange.replace(".xml", ".osc"));
+        // the location index does not find the edges of the deleted way anymore
+        assertSame(index, instance.getLocationIndex());
+        assertFalse(instance.getLocationIndex().findClosest(51.04, 9.0, EdgeFilter.ALL_EDGES).isValid());
+        assertTrue(instance.route(new GHRequest(51.02, 9.0, 51.04, 9.0)).hasErrors());
+        QueryResult qr = instance.getLocationIndex().findClosest(51.04, 9.006, EdgeFilter.ALL_EDGES);
+        assertTrue(qr.isValid());
+        assertEquals(GHUtility.asSet(qr.getClosestEdge().getBaseNode(), qr.getClosestEdge().getAdjNode()),
+                GHUtility.asSet(AbstractGraphStorageTester.getIdOf(instance.getGraph(), 51.01),
+                        AbstractGraphStorageTester.getIdOf(instance.getGraph(), 51.05)));
+
+        // the modified way is slower
+        GHResponse changed = instance.route(new GHRequest(51.02, 9.0, 51.0, 8.99));
+        assertTrue(changed.isFound());
+        assertEquals(rsp.getDistance(), changed.getDistance(), 1e-1);
+        assertTrue(changed.getMillis() > rsp.getMillis());
+        assertFalse(instance.route(new GHRequest(51.0, 8.99, 51.02, 9.0)).isFound());
+
+        // the new preparation is stored
+        instance.close();
+        instance = new GraphHopper().setInMemory(true, true).setEncodingManager(new EncodingManager("CAR"));
+        assertTrue(instance.load(ghLoc));
+        assertEquals(changed.getMillis(), instance.route(new GHRequest(51.02, 9.0, 51.0, 8.99)).getMillis());
+    }
+
+    @Test
+    public void testRouteWhileApplyingChanges() throws Exception
+    {
+        final GraphHopper hopper = new GraphHopper().setInMemory(true, true).
+                setEncodingManager(new EncodingManager("CAR")).
+                setStoreWayEdges(true).setGraphHopperLocation(ghLoc).setOSMFile(testOsmChange);
+        instance = hopper;
+        hopper.importOrLoad();
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    while (!stop.get())
+                    {
+                        GHResponse rsp = hopper.route(new GHRequest(51.02, 9.0, 51.0, 8.99));
+                        if (!rsp.isFound())
+                            throw new AssertionError("no route found " + rsp.getErrors());
+                    }
+                } catch (Throwable ex)
+                {
+                    error.set(ex);
+                }
+            }
+        };
+        thread.start();
+        try
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                hopper.applyChanges(testOsmChange.replace(".xml", ".osc"));
+            }
+        } finally
+        {
+            stop.set(true);
+            thread.join();
+        }
+        assertNull(error.get());
+    }
+
+    @Test
+    public void testApplyChangesLandmarks() throws IOException
+    {
+        instance = new GraphHopper().setInMemory(true, true).setEncodingManager(new EncodingManager("CAR")).
+                disableCHShortcuts().setLandmarks(2, "fastest").
+                setStoreWayEdges(true).setGraphHopperLocation(ghLoc).setOSMFile(testOsmChange);
+        instance.importOrLoad();
+        GHRequest request = new GHRequest(51.02, 9.0, 51.0, 8.99).setAlgorithm("alt").setWeighting("fastest");
+        GHResponse rsp = instance.route(request);
+        assertTrue(rsp.isFound());
+
+        instance.applyChanges(testOsmChange.replace(".xml", ".osc"));
+        GHResponse changed = instance.route(request);
+        assertTrue(changed.isFound());
+        assertEquals(rsp.getDistance(), changed.getDistance(), 1e-1);
+        assertTrue(changed.getMillis() > rsp.getMillis());
+    }
+
     @Test
     public void testFailsForWrongConfig() throws IOException
     {
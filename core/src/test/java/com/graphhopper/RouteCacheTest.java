@@ -0,0 +1,73 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Peter Karich
+ */
+public class RouteCacheTest
+{
+    @Test
+    public void testLeastRecentlyUsed()
+    {
+        RouteCache cache = new RouteCache(2, 0);
+        GHResponse a = new GHResponse().setDistance(1);
+        GHResponse b = new GHResponse().setDistance(2);
+        cache.put("a", a);
+        cache.put("b", b);
+        assertSame(a, cache.get("a"));
+
+        // b is the least recently used entry
+        cache.put("c", new GHResponse());
+        assertEquals(2, cache.getSize());
+        assertNull(cache.get("b"));
+        assertSame(a, cache.get("a"));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void testTimeToLive() throws InterruptedException
+    {
+        RouteCache cache = new RouteCache(10, 20);
+        cache.put("a", new GHResponse());
+        assertNotNull(cache.get("a"));
+        Thread.sleep(50);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testIllegalSize()
+    {
+        try
+        {
+            new RouteCache(0, 0);
+            assertTrue(false);
+        } catch (IllegalArgumentException ex)
+        {
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class IntDoubleIndexedHeapTest extends AbstractBinHeapTest
+{
+    @Override
+    public BinHeapWrapper<Number, Integer> createHeap( int capacity )
+    {
+        return new IntDoubleIndexedHeap(capacity);
+    }
+
+    @Test
+    public void testDecreaseKey()
+    {
+        IntDoubleIndexedHeap heap = new IntDoubleIndexedHeap(10);
+        for (int i = 0; i < 50; i++)
+        {
+            heap.insert_(100 + i, i);
+        }
+        assertTrue(heap.contains(42));
+        assertFalse(heap.contains(50));
+        assertFalse(heap.update_(1, 50));
+
+        assertTrue(heap.update_(1.5, 42));
+        assertTrue(heap.update_(300, 0));
+        assertEquals(1.5, heap.getKey(42), 1e-10);
+        assertEquals(42, heap.poll_element());
+        assertFalse(heap.contains(42));
+        assertEquals(1, heap.poll_element());
+
+        heap.insertOrUpdate(0.5, 42);
+        heap.insertOrUpdate(0.25, 49);
+        assertEquals(49, heap.poll_element());
+        assertEquals(42, heap.poll_element());
+        assertEquals(47, heap.getSize());
+
+        heap.clear();
+        assertFalse(heap.contains(0));
+        heap.insert_(3, 0);
+        assertEquals(0, heap.poll_element());
+
+        try
+        {
+            heap.insert_(3, 5);
+            heap.insert_(4, 5);
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testSameKeyOrderedByElement()
+    {
+        IntDoubleIndexedHeap heap = new IntDoubleIndexedHeap(10, true);
+        heap.insert_(5, 7);
+        heap.insert_(5, 3);
+        heap.insert_(4, 9);
+        heap.insert_(5, 1);
+        heap.insert_(6, 0);
+        heap.update_(5, 9);
+        assertEquals(1, heap.poll_element());
+        assertEquals(3, heap.poll_element());
+        assertEquals(7, heap.poll_element());
+        assertEquals(9, heap.poll_element());
+        assertEquals(0, heap.poll_element());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testSameOrderAsTreeMapComposed()
+    {
+        IntDoubleIndexedHeap heap = new IntDoubleIndexedHeap(10, true);
+        GHTreeMapComposed map = new GHTreeMapComposed();
+        Random rand = new Random(0);
+        int N = 1000;
+        int[] keys = new int[N];
+        for (int i = 0; i < N; i++)
+        {
+            keys[i] = rand.nextInt(50);
+            heap.insert_(keys[i], i);
+            map.insert(i, keys[i]);
+        }
+        for (int i = 0; i < 3 * N; i++)
+        {
+            int e = rand.nextInt(N);
+            int old = keys[e];
+            keys[e] = rand.nextInt(50);
+            assertTrue(heap.update_(keys[e], e));
+            map.update(e, old, keys[e]);
+        }
+
+        while (!heap.isEmpty())
+        {
+            assertEquals(map.peekValue(), (int) heap.peek_key());
+            assertEquals(map.pollKey(), heap.poll_element());
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testRandomUpdates()
+    {
+        IntDoubleIndexedHeap heap = new IntDoubleIndexedHeap(10);
+        Random rand = new Random(0);
+        int N = 1000;
+        double[] keys = new double[N];
+        for (int i = 0; i < N; i++)
+        {
+            keys[i] = rand.nextDouble();
+            heap.insert_(keys[i], i);
+        }
+        for (int i = 0; i < 3 * N; i++)
+        {
+            int e = rand.nextInt(N);
+            keys[e] = rand.nextDouble();
+            assertTrue(heap.update_(keys[e], e));
+        }
+
+        double last = Double.NEGATIVE_INFINITY;
+        while (!heap.isEmpty())
+        {
+            double key = heap.peek_key();
+            int e = heap.poll_element();
+            assertEquals(keys[e], key, 1e-10);
+            assertTrue(last <= key);
+            last = key;
+        }
+    }
+}
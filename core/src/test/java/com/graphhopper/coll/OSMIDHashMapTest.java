@@ -0,0 +1,117 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.Helper;
+import gnu.trove.map.hash.TLongIntHashMap;
+import java.io.File;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class OSMIDHashMapTest
+{
+    @Test
+    public void testGet()
+    {
+        OSMIDHashMap map = new OSMIDHashMap(new RAMDirectory(), "test", DAType.RAM).create(100);
+        map.put(9, 0);
+        map.put(-10, -50);
+        map.put(11, 2);
+        map.put(Long.MAX_VALUE, 3);
+        map.put(-Long.MAX_VALUE, 4);
+
+        assertEquals(5, map.getSize());
+        assertEquals(-1, map.get(8));
+        assertEquals(0, map.get(9));
+        assertEquals(-50, map.get(-10));
+        assertEquals(2, map.get(11));
+        assertEquals(3, map.get(Long.MAX_VALUE));
+        assertEquals(4, map.get(-Long.MAX_VALUE));
+        assertEquals(-1, map.get(0));
+
+        assertEquals(2, map.put(11, 7));
+        assertEquals(7, map.get(11));
+        assertEquals(5, map.getSize());
+
+        try
+        {
+            map.put(Long.MIN_VALUE, 1);
+            assertTrue(false);
+        } catch (IllegalArgumentException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testRandomWithRehash()
+    {
+        OSMIDHashMap map = new OSMIDHashMap(new RAMDirectory(), "test", DAType.RAM).create(16);
+        TLongIntHashMap expected = new TLongIntHashMap();
+        Random rand = new Random(0);
+        for (int i = 0; i < 50000; i++)
+        {
+            long key = rand.nextInt(100000) - 1000;
+            int value = rand.nextInt(1000);
+            assertEquals(expected.containsKey(key) ? expected.get(key) : -1, map.put(key, value));
+            expected.put(key, value);
+        }
+        assertEquals(expected.size(), map.getSize());
+        for (long key = -1000; key < 99000; key++)
+        {
+            assertEquals(expected.containsKey(key) ? expected.get(key) : -1, map.get(key));
+        }
+    }
+
+    @Test
+    public void testMMap()
+    {
+        String location = "./target/tmp/osmidhashmap";
+        Helper.removeDir(new File(location));
+        try
+        {
+            OSMIDHashMap map = new OSMIDHashMap(new GHDirectory(location, DAType.MMAP), "test", DAType.MMAP).create(16);
+            for (int i = 0; i < 1000; i++)
+            {
+                map.put(i * 3L, i);
+            }
+            map.flush();
+            map.close();
+
+            map = new OSMIDHashMap(new GHDirectory(location, DAType.MMAP), "test", DAType.MMAP);
+            assertTrue(map.loadExisting());
+            assertEquals(1000, map.getSize());
+            for (int i = 0; i < 1000; i++)
+            {
+                assertEquals(i, map.get(i * 3L));
+                assertEquals(-1, map.get(i * 3L + 1));
+            }
+            map.remove();
+            assertEquals(0, new File(location).list().length);
+        } finally
+        {
+            Helper.removeDir(new File(location));
+        }
+    }
+}
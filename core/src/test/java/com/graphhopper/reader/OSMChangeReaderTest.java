@@ -0,0 +1,109 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader;
+
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.AbstractGraphStorageTester;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.GraphStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class OSMChangeReaderTest
+{
+    private final String dir = "./target/tmp/test-change";
+    private final EncodingManager encodingManager = new EncodingManager("CAR");
+    private final CarFlagEncoder carEncoder = (CarFlagEncoder) encodingManager.getEncoder("CAR");
+
+    @Before
+    public void setUp()
+    {
+        Helper.removeDir(new File(dir));
+        new File(dir).mkdirs();
+    }
+
+    @After
+    public void tearDown()
+    {
+        Helper.removeDir(new File(dir));
+    }
+
+    File getFile( String name )
+    {
+        return new File(getClass().getResource(name).getFile());
+    }
+
+    @Test
+    public void testApplyChanges() throws IOException
+    {
+        GraphStorage graph = new GraphHopperStorage(new RAMDirectory(dir, true), encodingManager);
+        OSMWayEdges wayEdges = new OSMWayEdges(graph.getDirectory()).create(10);
+        new OSMReader(graph, 100).setEncodingManager(encodingManager).setWayEdges(wayEdges).
+                doOSM2Graph(getFile("test-osm-change.xml"));
+        assertEquals(3, wayEdges.getSize());
+        wayEdges.flush();
+
+        int n1 = AbstractGraphStorageTester.getIdOf(graph, 51.0);
+        int n2 = AbstractGraphStorageTester.getIdOf(graph, 51.01);
+        int n3 = AbstractGraphStorageTester.getIdOf(graph, 51.02);
+        int n5 = AbstractGraphStorageTester.getIdOf(graph, 51.04);
+        int n6 = AbstractGraphStorageTester.getIdOf(graph, 51.05);
+        EdgeExplorer carOutExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(carEncoder, false, true));
+        assertEquals(GHUtility.asSet(n2, n5), GHUtility.getNeighbors(carOutExplorer.setBaseNode(n3)));
+        EdgeIteratorState iter = GHUtility.getEdge(graph, n3, n2);
+        assertEquals(65, carEncoder.getSpeed(iter.getFlags()), 1e-1);
+        assertEquals("A", iter.getName());
+
+        OSMWayEdges loadedWayEdges = new OSMWayEdges(new RAMDirectory(dir, true));
+        assertTrue(loadedWayEdges.loadExisting());
+        OSMChangeReader changeReader = new OSMChangeReader(graph, loadedWayEdges);
+        changeReader.applyChanges(getFile("test-osm-change.osc"));
+        assertEquals(1, changeReader.getModifiedWays());
+        assertEquals(1, changeReader.getDeletedWays());
+        assertEquals(1, changeReader.getDeletedEdges().size());
+        // the way with a new node and the created way
+        assertEquals(2, changeReader.getSkippedWays());
+        assertEquals(1, changeReader.getSkippedNodes());
+
+        // the direction of the oneway is kept although the node ids of the edges are the other way around
+        assertEquals(GHUtility.asSet(n2), GHUtility.getNeighbors(carOutExplorer.setBaseNode(n3)));
+        assertEquals(GHUtility.asSet(n1, n6), GHUtility.getNeighbors(carOutExplorer.setBaseNode(n2)));
+        assertEquals(0, GHUtility.count(carOutExplorer.setBaseNode(n1)));
+        iter = GHUtility.getEdge(graph, n3, n2);
+        assertEquals(50, carEncoder.getSpeed(iter.getFlags()), 1e-1);
+        assertEquals("C", iter.getName());
+
+        // the edges of the deleted way are not accessible anymore
+        assertEquals(0, GHUtility.count(carOutExplorer.setBaseNode(n5)));
+        assertTrue(loadedWayEdges.isDeleted(loadedWayEdges.getRecord(11)));
+    }
+}
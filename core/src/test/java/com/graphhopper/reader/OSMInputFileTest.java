@@ -0,0 +1,148 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader;
+
+import com.graphhopper.util.Helper;
+import java.io.File;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Peter Karich
+ */
+public class OSMInputFileTest
+{
+    @Test
+    public void testSkipTypesXML() throws Exception
+    {
+        File file = new File(getClass().getResource("test-osm.xml").toURI());
+        int[] all = count(new OSMInputFile(file));
+        assertTrue(all[OSMElement.NODE] > 0);
+        assertTrue(all[OSMElement.WAY] > 0);
+
+        int[] ways = count(new OSMInputFile(file).setElementTypes(OSMElement.WAY));
+        assertEquals(0, ways[OSMElement.NODE]);
+        assertEquals(all[OSMElement.WAY], ways[OSMElement.WAY]);
+        assertEquals(0, ways[OSMElement.RELATION]);
+
+        int[] nodes = count(new OSMInputFile(file).setElementTypes(OSMElement.NODE));
+        assertEquals(all[OSMElement.NODE], nodes[OSMElement.NODE]);
+        assertEquals(0, nodes[OSMElement.WAY]);
+    }
+
+    @Test
+    public void testSkipTypesPBF() throws Exception
+    {
+        File file = new File("files/andorra.osm.pbf");
+        int[] all = count(new OSMInputFile(file).setWorkerThreads(2));
+        assertTrue(all[OSMElement.NODE] > 0);
+        assertTrue(all[OSMElement.WAY] > 0);
+        assertTrue(all[OSMElement.RELATION] > 0);
+
+        int[] ways = count(new OSMInputFile(file).setWorkerThreads(2).setElementTypes(OSMElement.WAY));
+        assertEquals(0, ways[OSMElement.NODE]);
+        assertEquals(all[OSMElement.WAY], ways[OSMElement.WAY]);
+        assertEquals(0, ways[OSMElement.RELATION]);
+
+        int[] nodesAndRelations = count(new OSMInputFile(file).setWorkerThreads(2).
+                setElementTypes(OSMElement.NODE, OSMElement.RELATION));
+        assertEquals(all[OSMElement.NODE], nodesAndRelations[OSMElement.NODE]);
+        assertEquals(0, nodesAndRelations[OSMElement.WAY]);
+        assertEquals(all[OSMElement.RELATION], nodesAndRelations[OSMElement.RELATION]);
+    }
+
+    @Test
+    public void testReadPBFBlocks() throws Exception
+    {
+        OSMInputFile in = new OSMInputFile(new File("files/andorra.osm.pbf")).setWorkerThreads(2);
+        try
+        {
+            in.open();
+            int lastType = OSMElement.NODE;
+            long lastId = Long.MIN_VALUE;
+            boolean taggedWay = false;
+            OSMElement item;
+            while ((item = in.getNext()) != null)
+            {
+                // the blocks are delivered in the order of the file
+                assertTrue(item.getType() >= lastType);
+                if (item.getType() == lastType)
+                    assertTrue(item.getId() > lastId);
+
+                lastType = item.getType();
+                lastId = item.getId();
+                if (item.isType(OSMElement.WAY) && item.hasTag("highway"))
+                {
+                    assertTrue(((OSMWay) item).getNodes().size() > 1);
+                    // the tags of the block can be changed
+                    item.setTag("estimated_distance", "10");
+                    assertEquals("10", item.getTag("estimated_distance"));
+                    taggedWay = true;
+                }
+            }
+            assertEquals(OSMElement.RELATION, lastType);
+            assertTrue(taggedWay);
+            assertTrue(in.isEOF());
+            in.pbfReaderThread.join(5000);
+            assertFalse(in.pbfReaderThread.isAlive());
+        } finally
+        {
+            Helper.close(in);
+        }
+    }
+
+    @Test
+    public void testPBFQueueIsBoundedAndClosed() throws Exception
+    {
+        OSMInputFile in = new OSMInputFile(new File("files/andorra.osm.pbf")).setWorkerThreads(1);
+        in.open();
+        // the file has more blocks than the queue and so the reader waits as nothing is read
+        long end = System.currentTimeMillis() + 10000;
+        while ((in.getQueuedBlocks() < 8 || in.pbfReaderThread.getState() != Thread.State.WAITING)
+                && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, in.pbfReaderThread.getState());
+        assertEquals(8, in.getQueuedBlocks());
+        assertEquals(OSMElement.NODE, in.getNext().getType());
+
+        // the waiting reader is stopped
+        in.close();
+        in.pbfReaderThread.join(5000);
+        assertFalse(in.pbfReaderThread.isAlive());
+    }
+
+    int[] count( OSMInputFile in ) throws Exception
+    {
+        int[] counts = new int[3];
+        try
+        {
+            in.open();
+            OSMElement item;
+            while ((item = in.getNext()) != null)
+            {
+                counts[item.getType()]++;
+            }
+        } finally
+        {
+            Helper.close(in);
+        }
+        return counts;
+    }
+}
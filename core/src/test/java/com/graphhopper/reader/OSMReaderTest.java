@@ -449,4 +449,72 @@ public class OSMReaderTest
         assertEquals("B8, B12", OSMReader.fixWayName("B8;B12"));
         assertEquals("B8, B12", OSMReader.fixWayName("B8; B12"));
     }
+
+    @Test
+    public void testParallelWays() throws IOException
+    {
+        File file = new File("files/andorra.osm.pbf");
+        GraphStorage expected = createGraph(file, 1);
+        GraphStorage actual = createGraph(file, 3);
+        assertGraphEquals(expected, actual);
+
+        File barriers = new File(getClass().getResource(fileBarriers).getFile());
+        assertGraphEquals(createGraph(barriers, 1), createGraph(barriers, 2));
+    }
+
+    @Test
+    public void testNodeMapType() throws IOException
+    {
+        File file = new File("files/andorra.osm.pbf");
+        GraphStorage expected = createGraph(file, 1);
+        assertGraphEquals(expected, createGraph(file, 1, DAType.RAM));
+        assertGraphEquals(expected, createGraph(file, 2, DAType.MMAP));
+        // the temporary node map is removed after the import
+        assertFalse(new File(dir + "/tmpOsmNodeIds").exists());
+    }
+
+    GraphStorage createGraph( File file, int wayThreads ) throws IOException
+    {
+        return createGraph(file, wayThreads, null);
+    }
+
+    GraphStorage createGraph( File file, int wayThreads, DAType nodeMapType ) throws IOException
+    {
+        EncodingManager em = new EncodingManager("CAR,FOOT");
+        GraphStorage graph = new GraphHopperStorage(new RAMDirectory(dir), em);
+        OSMReader reader = new OSMReader(graph, 1000).setEncodingManager(em).setWayThreads(wayThreads);
+        if (nodeMapType != null)
+            reader.setNodeMapType(nodeMapType);
+
+        reader.doOSM2Graph(file);
+        return graph;
+    }
+
+    void assertGraphEquals( GraphStorage expected, GraphStorage actual )
+    {
+        assertTrue(expected.getAllEdges().getMaxId() > 0);
+        assertEquals(expected.getNodes(), actual.getNodes());
+        for (int node = 0; node < expected.getNodes(); node++)
+        {
+            assertEquals(expected.getLatitude(node), actual.getLatitude(node), 1e-7);
+            assertEquals(expected.getLongitude(node), actual.getLongitude(node), 1e-7);
+        }
+
+        AllEdgesIterator expectedIter = expected.getAllEdges();
+        AllEdgesIterator actualIter = actual.getAllEdges();
+        assertEquals(expectedIter.getMaxId(), actualIter.getMaxId());
+        while (expectedIter.next())
+        {
+            assertTrue(actualIter.next());
+            String str = "edge " + expectedIter.getEdge();
+            assertEquals(str, expectedIter.getEdge(), actualIter.getEdge());
+            assertEquals(str, expectedIter.getBaseNode(), actualIter.getBaseNode());
+            assertEquals(str, expectedIter.getAdjNode(), actualIter.getAdjNode());
+            assertEquals(str, expectedIter.getDistance(), actualIter.getDistance(), 1e-9);
+            assertEquals(str, expectedIter.getFlags(), actualIter.getFlags());
+            assertEquals(str, expectedIter.getName(), actualIter.getName());
+            assertEquals(str, expectedIter.fetchWayGeometry(0), actualIter.fetchWayGeometry(0));
+        }
+        assertFalse(actualIter.next());
+    }
 }
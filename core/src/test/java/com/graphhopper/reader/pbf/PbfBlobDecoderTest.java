@@ -0,0 +1,165 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.pbf;
+
+import com.google.protobuf.ByteString;
+import com.graphhopper.reader.OSMElement;
+import com.graphhopper.reader.OSMNode;
+import com.graphhopper.reader.OSMWay;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.openstreetmap.osmosis.osmbinary.Fileformat;
+import org.openstreetmap.osmosis.osmbinary.Osmformat;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class PbfBlobDecoderTest
+{
+    private PbfBlock decode( Osmformat.PrimitiveBlock block, boolean[] acceptedTypes )
+    {
+        byte[] rawBlob = Fileformat.Blob.newBuilder().setRaw(block.toByteString()).build().toByteArray();
+        final PbfBlock[] result = new PbfBlock[1];
+        new PbfBlobDecoder("OSMData", rawBlob, new PbfBlobDecoderListener()
+        {
+            @Override
+            public void complete( PbfBlock decodedBlock )
+            {
+                result[0] = decodedBlock;
+            }
+
+            @Override
+            public void error()
+            {
+                throw new IllegalStateException("decoding failed");
+            }
+        }, acceptedTypes).run();
+        return result[0];
+    }
+
+    private Osmformat.PrimitiveBlock createBlock()
+    {
+        Osmformat.StringTable.Builder strings = Osmformat.StringTable.newBuilder();
+        for (String str : new String[]
+        {
+            "", "highway", "primary", "name", "A", "barrier", "gate"
+        })
+        {
+            strings.addS(ByteString.copyFromUtf8(str));
+        }
+
+        // delta encoded, the tags of the nodes are delimited by 0
+        Osmformat.DenseNodes dense = Osmformat.DenseNodes.newBuilder().
+                addId(1).addLat(510000000).addLon(90000000).
+                addId(1).addLat(100000).addLon(100000).
+                addKeysVals(0).addKeysVals(5).addKeysVals(6).addKeysVals(0).build();
+        Osmformat.Node node = Osmformat.Node.newBuilder().setId(3).setLat(510200000).setLon(90200000).
+                addKeys(3).addVals(4).build();
+        Osmformat.Way way = Osmformat.Way.newBuilder().setId(10).
+                addRefs(1).addRefs(1).addRefs(1).
+                addKeys(1).addVals(2).addKeys(3).addVals(4).build();
+        return Osmformat.PrimitiveBlock.newBuilder().setStringtable(strings).
+                addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().setDense(dense)).
+                addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().addNodes(node)).
+                addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().addWays(way)).build();
+    }
+
+    @Test
+    public void testDecode()
+    {
+        PbfBlock block = decode(createBlock(), new boolean[]
+        {
+            true, true, true
+        });
+        assertEquals(3, block.getNodeCount());
+        assertEquals(1, block.getWayCount());
+        assertEquals(0, block.getRelationCount());
+        assertEquals(4, block.getSize());
+
+        OSMNode node = (OSMNode) block.createElement(0);
+        assertEquals(1, node.getId());
+        assertEquals(51.0, node.getLat(), 1e-7);
+        assertEquals(9.0, node.getLon(), 1e-7);
+        assertFalse(node.hasTags());
+
+        node = (OSMNode) block.createElement(1);
+        assertEquals(2, node.getId());
+        assertEquals(51.01, node.getLat(), 1e-7);
+        assertEquals(9.01, node.getLon(), 1e-7);
+        assertEquals("gate", node.getTag("barrier"));
+
+        node = (OSMNode) block.createElement(2);
+        assertEquals(3, node.getId());
+        assertEquals(51.02, node.getLat(), 1e-7);
+        assertEquals(9.02, node.getLon(), 1e-7);
+        assertEquals("A", node.getTag("name"));
+
+        OSMWay way = (OSMWay) block.createElement(3);
+        assertEquals(10, way.getId());
+        assertEquals(3, way.getNodes().size());
+        assertEquals(3, way.getNodes().get(2));
+        assertTrue(way.hasTag("highway", "primary"));
+        assertEquals("A", way.getTag("name"));
+        assertNull(way.getTag("barrier"));
+
+        try
+        {
+            block.createElement(4);
+            assertTrue(false);
+        } catch (IllegalArgumentException ex)
+        {
+        }
+    }
+
+    @Test
+    public void testSkipTypes()
+    {
+        PbfBlock block = decode(createBlock(), new boolean[]
+        {
+            false, true, false
+        });
+        assertEquals(0, block.getNodeCount());
+        assertEquals(1, block.getWayCount());
+        assertEquals(OSMElement.WAY, block.createElement(0).getType());
+    }
+
+    @Test
+    public void testChangeTags()
+    {
+        PbfBlock block = decode(createBlock(), new boolean[]
+        {
+            true, true, true
+        });
+        OSMWay way = (OSMWay) block.createElement(3);
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("highway", "primary");
+        expected.put("name", "A");
+        assertEquals(expected, way.getTags());
+
+        way.setTag("estimated_distance", "100");
+        way.removeTag("name");
+        assertEquals("100", way.getTag("estimated_distance"));
+        assertNull(way.getTag("name"));
+        assertEquals(2, way.getTags().size());
+
+        // the tags are created again from the string table
+        assertEquals(expected, block.createElement(3).getTags());
+    }
+}
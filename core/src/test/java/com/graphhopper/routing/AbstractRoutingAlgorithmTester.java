@@ -65,6 +65,36 @@ public abstract class AbstractRoutingAlgorithmTester
         assertEquals(p.toString(), 5, p.calcNodes().size());
     }
 
+    @Test
+    public void testMaxVisitedNodes()
+    {
+        RoutingAlgorithm algo = prepareGraph(createTestGraph()).createAlgo().setMaxVisitedNodes(2);
+        assertFalse(algo.calcPath(0, 7).isFound());
+        assertTrue(algo.isLimitExceeded());
+
+        algo = prepareGraph(createTestGraph()).createAlgo().setMaxVisitedNodes(100);
+        assertTrue(algo.calcPath(0, 7).isFound());
+        assertFalse(algo.isLimitExceeded());
+    }
+
+    @Test
+    public void testSearchStatesReleased()
+    {
+        SearchStatePool pool = new SearchStatePool(2);
+        RoutingAlgorithm algo = prepareGraph(createTestGraph()).createAlgo().setSearchStatePool(pool);
+        SearchState state1 = pool.acquire(10);
+        SearchState state2 = pool.acquire(10);
+        pool.release(state1);
+        pool.release(state2);
+        assertTrue(algo.calcPath(0, 7).isFound());
+
+        // the pooled states were reused and given back
+        assertEquals(2, pool.getSize());
+        SearchState state3 = pool.acquire(10);
+        SearchState state4 = pool.acquire(10);
+        assertTrue(state3 == state1 && state4 == state2 || state3 == state2 && state4 == state1);
+    }
+
     // see calc-fastest-graph.svg
     @Test
     public void testCalcFastestPath()
@@ -278,6 +308,29 @@ public abstract class AbstractRoutingAlgorithmTester
         updateDistancesFor(graph, 5, 0, 0.004);
     }
 
+    /**
+     * Creates a grid of size x size nodes with random distances from minDistance (inclusive) to
+     * maxDistance (exclusive) and about 20% oneways. The nodes are 0.0001 degree apart.
+     */
+    public static void initRandomGrid( Graph g, int size, int minDistance, int maxDistance )
+    {
+        Random rand = new Random(size);
+        for (int y = 0; y < size; y++)
+        {
+            for (int x = 0; x < size; x++)
+            {
+                int node = y * size + x;
+                g.setNode(node, y * 0.0001, x * 0.0001);
+                if (x + 1 < size)
+                    g.edge(node, node + 1, minDistance + rand.nextInt(maxDistance - minDistance),
+                            rand.nextInt(5) > 0);
+                if (y + 1 < size)
+                    g.edge(node, node + size, minDistance + rand.nextInt(maxDistance - minDistance),
+                            rand.nextInt(5) > 0);
+            }
+        }
+    }
+
     private static final DistanceCalc distCalc = new DistanceCalcEarth();
 
     private static void updateDistancesFor( Graph g, int node, double lat, double lon )
@@ -22,6 +22,8 @@ import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.NoOpAlgorithmPreparation;
 import com.graphhopper.routing.util.Weighting;
 import com.graphhopper.storage.Graph;
+import static org.junit.Assert.*;
+import org.junit.Test;
 
 /**
  *
@@ -41,4 +43,30 @@ public class DijkstraTest extends AbstractRoutingAlgorithmTester
             }
         }.setGraph(defaultGraph);
     }
+
+    @Test
+    public void testDeadline()
+    {
+        Graph graph = createGraph();
+        int size = 30;
+        for (int y = 0; y < size; y++)
+        {
+            for (int x = 0; x < size; x++)
+            {
+                int node = y * size + x;
+                if (x + 1 < size)
+                    graph.edge(node, node + 1, 100, true);
+                if (y + 1 < size)
+                    graph.edge(node, node + size, 100, true);
+            }
+        }
+        // the deadline is only checked every 256 visited nodes
+        RoutingAlgorithm algo = prepareGraph(graph).createAlgo().setDeadline(System.currentTimeMillis() - 1);
+        assertFalse(algo.calcPath(0, size * size - 1).isFound());
+        assertTrue(algo.isLimitExceeded());
+
+        algo = prepareGraph(graph).createAlgo().setDeadline(System.currentTimeMillis() + 60 * 1000);
+        assertTrue(algo.calcPath(0, size * size - 1).isFound());
+        assertFalse(algo.isLimitExceeded());
+    }
 }
@@ -17,16 +17,26 @@
  */
 package com.graphhopper.routing;
 
+import com.graphhopper.GHIsochroneResponse;
+import com.graphhopper.GHMatrixResponse;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.GHPlace;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -79,4 +89,317 @@ public class GraphHopperIT
             Helper.removeDir(new File(graphFile));
         }
     }
+
+    @Test
+    public void testMonacoConcurrentRoute() throws Exception
+    {
+        String osmFile = "files/monaco.osm.gz";
+        String graphFile = "target/graph-monaco";
+        Helper.removeDir(new File(graphFile));
+        try
+        {
+            // one instance for all threads, similar to the workers of QueryTorture but in-process
+            final GraphHopper hopper = new GraphHopper().setInMemory(true, true).setOSMFile(osmFile).
+                    setGraphHopperLocation(graphFile).setEncodingManager(new EncodingManager("CAR")).
+                    importOrLoad();
+            final List<GHRequest> requests = new ArrayList<GHRequest>();
+            requests.add(new GHRequest(43.730729, 7.42135, 43.727697, 7.419199));
+            requests.add(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setAlgorithm("astarbi"));
+            requests.add(new GHRequest(43.728677, 7.41016, 43.739213, 7.4277).putHint("calcPoints", false));
+            requests.add(new GHRequest(43.733802, 7.413433, 43.739662, 7.424355).putHint("instructions", false));
+            requests.add(new GHRequest(43.730949, 7.412338, 43.739643, 7.424542).putHint("simplifyRequest", false));
+
+            final List<GHResponse> expected = new ArrayList<GHResponse>();
+            for (GHRequest req : requests)
+            {
+                GHResponse rsp = hopper.route(req);
+                assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+                expected.add(rsp);
+            }
+
+            int workers = 8;
+            final int queriesPerWorker = 200;
+            final AtomicInteger successfulQueries = new AtomicInteger(0);
+            Collection<Callable<Object>> workerCollection = new ArrayList<Callable<Object>>(workers);
+            for (int i = 0; i < workers; i++)
+            {
+                final int workerNo = i;
+                workerCollection.add(new Callable<Object>()
+                {
+                    @Override
+                    public Object call() throws Exception
+                    {
+                        for (int q = 0; q < queriesPerWorker; q++)
+                        {
+                            int index = (workerNo + q) % requests.size();
+                            GHResponse rsp = hopper.route(requests.get(index));
+                            GHResponse exp = expected.get(index);
+                            assertFalse(rsp.hasErrors());
+                            assertEquals(exp.getDistance(), rsp.getDistance(), 1e-3);
+                            assertEquals(exp.getPoints().getSize(), rsp.getPoints().getSize());
+                            assertEquals(exp.getInstructions().size(), rsp.getInstructions().size());
+                            successfulQueries.incrementAndGet();
+                        }
+                        return null;
+                    }
+                });
+            }
+
+            ExecutorService service = Executors.newFixedThreadPool(workers);
+            try
+            {
+                for (Future<Object> f : service.invokeAll(workerCollection))
+                {
+                    // rethrows assertion errors of the workers
+                    f.get();
+                }
+            } finally
+            {
+                service.shutdown();
+            }
+            assertEquals(workers * queriesPerWorker, successfulQueries.get());
+        } finally
+        {
+            Helper.removeDir(new File(graphFile));
+        }
+    }
+
+    @Test
+    public void testMonacoALT()
+    {
+        String osmFile = "files/monaco.osm.gz";
+        String graphFile = "target/graph-monaco";
+        Helper.removeDir(new File(graphFile));
+        try
+        {
+            GraphHopper hopper = new GraphHopper().setInMemory(true, true).setOSMFile(osmFile).
+                    disableCHShortcuts().setLandmarks(16, "fastest").
+                    setGraphHopperLocation(graphFile).setEncodingManager(new EncodingManager("CAR")).
+                    importOrLoad();
+            assertALT(hopper);
+
+            GHResponse rsp = hopper.route(new GHRequest(43.730729, 7.42135, 43.727697, 7.419199).
+                    setAlgorithm("alt").setWeighting("shortest"));
+            assertTrue(rsp.hasErrors());
+
+            // load the stored landmarks
+            hopper = new GraphHopper().setInMemory(true, true).
+                    disableCHShortcuts().setLandmarks(16, "fastest").
+                    setEncodingManager(new EncodingManager("CAR"));
+            assertTrue(hopper.load(graphFile));
+            assertALT(hopper);
+        } finally
+        {
+            Helper.removeDir(new File(graphFile));
+        }
+    }
+
+    void assertALT( GraphHopper hopper )
+    {
+        List<GHRequest> requests = new ArrayList<GHRequest>();
+        requests.add(new GHRequest(43.730729, 7.42135, 43.727697, 7.419199));
+        requests.add(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566));
+        requests.add(new GHRequest(43.728677, 7.41016, 43.739213, 7.4277));
+        requests.add(new GHRequest(43.733802, 7.413433, 43.739662, 7.424355));
+        for (GHRequest req : requests)
+        {
+            req.setWeighting("fastest").putHint("calcPoints", false);
+            GHResponse expected = hopper.route(req.setAlgorithm("dijkstra"));
+            GHResponse rsp = hopper.route(req.setAlgorithm("alt"));
+            assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+            assertEquals(req.toString(), expected.getDistance(), rsp.getDistance(), 1e-3);
+            assertEquals(req.toString(), expected.getMillis(), rsp.getMillis());
+        }
+    }
+
+    @Test
+    public void testMonacoIsochrone()
+    {
+        String osmFile = "files/monaco.osm.gz";
+        String graphFile = "target/graph-monaco";
+        Helper.removeDir(new File(graphFile));
+        try
+        {
+            GraphHopper hopper = new GraphHopper().setInMemory(true, true).setOSMFile(osmFile).
+                    disableCHShortcuts().
+                    setGraphHopperLocation(graphFile).setEncodingManager(new EncodingManager("CAR")).
+                    importOrLoad();
+            GHPlace start = new GHPlace(43.730729, 7.42135);
+            GHIsochroneResponse rsp = hopper.isochrone(start, "CAR", 2 * 60 * 1000);
+            assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+            PointList points = rsp.getPoints();
+            assertTrue(points.getSize() > 10);
+            assertTrue(points.getSize() < hopper.getGraph().getNodes());
+            assertTrue(rsp.getPolygon().getSize() > 3);
+            for (int i = 0; i < points.getSize(); i += 10)
+            {
+                assertTrue(rsp.getMillis()[i] <= 2 * 60 * 1000);
+                GHResponse route = hopper.route(new GHRequest(start,
+                        new GHPlace(points.getLatitude(i), points.getLongitude(i))).
+                        setWeighting("fastest").putHint("calcPoints", false));
+                assertFalse(route.hasErrors());
+                // the route is calculated with double precision weights
+                assertEquals(route.getMillis(), rsp.getMillis()[i], 1000);
+            }
+
+            assertTrue(hopper.isochrone(start, "CAR", 5 * 60 * 1000).getPoints().getSize() > points.getSize());
+            assertTrue(hopper.isochrone(start, "FOOT", 5 * 60 * 1000).hasErrors());
+        } finally
+        {
+            Helper.removeDir(new File(graphFile));
+        }
+    }
+
+    @Test
+    public void testMonacoViaPointsCH()
+    {
+        String osmFile = "files/monaco.osm.gz";
+        String graphFile = "target/graph-monaco";
+        Helper.removeDir(new File(graphFile));
+        try
+        {
+            GraphHopper hopper = new GraphHopper().setInMemory(true, true).setOSMFile(osmFile).
+                    setGraphHopperLocation(graphFile).setEncodingManager(new EncodingManager("CAR")).
+                    importOrLoad();
+            List<GHPlace> places = new ArrayList<GHPlace>();
+            places.add(new GHPlace(43.730729, 7.42135));
+            places.add(new GHPlace(43.727687, 7.418737));
+            places.add(new GHPlace(43.74958, 7.436566));
+            places.add(new GHPlace(43.728677, 7.41016));
+
+            double distance = 0;
+            long millis = 0;
+            for (int i = 0; i < places.size() - 1; i++)
+            {
+                GHResponse leg = hopper.route(new GHRequest(places.get(i), places.get(i + 1)));
+                assertTrue(leg.isFound());
+                distance += leg.getDistance();
+                millis += leg.getMillis();
+            }
+
+            GHResponse rsp = hopper.route(new GHRequest(places).putHint("legs.parallel", true));
+            assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+            assertTrue(rsp.isFound());
+            assertEquals(distance, rsp.getDistance(), 1e-3);
+            assertEquals(millis, rsp.getMillis());
+            assertTrue(rsp.getInstructions().size() > 0);
+        } catch (Exception ex)
+        {
+            throw new RuntimeException("cannot handle osm file " + osmFile, ex);
+        } finally
+        {
+            Helper.removeDir(new File(graphFile));
+        }
+    }
+
+    @Test
+    public void testMonacoMatrix()
+    {
+        String osmFile = "files/monaco.osm.gz";
+        String graphFile = "target/graph-monaco";
+        Helper.removeDir(new File(graphFile));
+        try
+        {
+            GraphHopper hopper = new GraphHopper().setInMemory(true, true).setOSMFile(osmFile).
+                    setGraphHopperLocation(graphFile).setEncodingManager(new EncodingManager("CAR")).
+                    importOrLoad();
+            List<GHPlace> sources = new ArrayList<GHPlace>();
+            sources.add(new GHPlace(43.730729, 7.42135));
+            sources.add(new GHPlace(43.727687, 7.418737));
+            sources.add(new GHPlace(43.728677, 7.41016));
+            List<GHPlace> targets = new ArrayList<GHPlace>();
+            targets.add(new GHPlace(43.727697, 7.419199));
+            targets.add(new GHPlace(43.74958, 7.436566));
+            targets.add(new GHPlace(43.739213, 7.4277));
+            targets.add(new GHPlace(43.730729, 7.42135));
+
+            GHMatrixResponse rsp = hopper.matrix(sources, targets, "CAR");
+            assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+            assertEquals(3, rsp.getDistances().length);
+            assertEquals(4, rsp.getDistances()[0].length);
+            for (int i = 0; i < sources.size(); i++)
+            {
+                for (int j = 0; j < targets.size(); j++)
+                {
+                    GHResponse route = hopper.route(new GHRequest(sources.get(i), targets.get(j)).
+                            putHint("calcPoints", false));
+                    assertFalse(route.hasErrors());
+                    String str = sources.get(i) + "->" + targets.get(j);
+                    if (!route.isFound())
+                    {
+                        assertEquals(str, -1, rsp.getDistances()[i][j], 1e-3);
+                        continue;
+                    }
+                    assertEquals(str, route.getDistance(), rsp.getDistances()[i][j], 1e-3);
+                    assertEquals(str, route.getMillis(), rsp.getMillis()[i][j]);
+                }
+            }
+            assertEquals(0, rsp.getDistances()[0][3], 1e-3);
+        } catch (Exception ex)
+        {
+            throw new RuntimeException("cannot handle osm file " + osmFile, ex);
+        } finally
+        {
+            Helper.removeDir(new File(graphFile));
+        }
+    }
+
+    @Test
+    public void testMonacoMultipleVehiclesCH()
+    {
+        String osmFile = "files/monaco.osm.gz";
+        String graphFile = "target/graph-monaco";
+        String graphFileNoCH = "target/graph-monaco-noch";
+        Helper.removeDir(new File(graphFile));
+        Helper.removeDir(new File(graphFileNoCH));
+        try
+        {
+            GraphHopper hopper = new GraphHopper().setInMemory(true, true).setOSMFile(osmFile).
+                    setGraphHopperLocation(graphFile).setEncodingManager(new EncodingManager("CAR,FOOT")).
+                    importOrLoad();
+            GraphHopper noCH = new GraphHopper().setInMemory(true, false).setOSMFile(osmFile).
+                    disableCHShortcuts().
+                    setGraphHopperLocation(graphFileNoCH).setEncodingManager(new EncodingManager("CAR,FOOT")).
+                    importOrLoad();
+            assertMultipleVehicles(hopper, noCH);
+
+            // the levels of the second vehicle are stored separately and need to be loaded too
+            hopper = new GraphHopper().setInMemory(true, true).
+                    setEncodingManager(new EncodingManager("CAR,FOOT"));
+            assertTrue(hopper.load(graphFile));
+            assertMultipleVehicles(hopper, noCH);
+        } finally
+        {
+            Helper.removeDir(new File(graphFile));
+            Helper.removeDir(new File(graphFileNoCH));
+        }
+    }
+
+    void assertMultipleVehicles( GraphHopper hopper, GraphHopper noCH )
+    {
+        List<GHRequest> requests = new ArrayList<GHRequest>();
+        requests.add(new GHRequest(43.730729, 7.42135, 43.727697, 7.419199).putHint("calcPoints", false));
+        requests.add(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).putHint("calcPoints", false));
+        requests.add(new GHRequest(43.728677, 7.41016, 43.739213, 7.4277).putHint("calcPoints", false));
+        requests.add(new GHRequest(43.733802, 7.413433, 43.739662, 7.424355).putHint("calcPoints", false));
+        for (String vehicle : new String[]
+        {
+            "CAR", "FOOT"
+        })
+        {
+            for (GHRequest req : requests)
+            {
+                // the preparation uses fastest
+                req.setVehicle(vehicle).setWeighting("fastest");
+                GHResponse rsp = hopper.route(req.setAlgorithm("dijkstrabi"));
+                assertFalse(rsp.getErrors().toString(), rsp.hasErrors());
+                GHResponse expected = noCH.route(req.setAlgorithm("dijkstra"));
+                assertFalse(expected.getErrors().toString(), expected.hasErrors());
+                String str = vehicle + " " + req;
+                assertEquals(str, expected.isFound(), rsp.isFound());
+                assertEquals(str, expected.getDistance(), rsp.getDistance(), 1e-3);
+                assertEquals(str, expected.getMillis(), rsp.getMillis());
+            }
+        }
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FastestWeighting;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.util.PointList;
+import gnu.trove.list.TIntList;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Peter Karich
+ */
+public class IsochroneTest
+{
+    private final EncodingManager encodingManager = new EncodingManager("CAR");
+    private final FlagEncoder carEncoder = encodingManager.getEncoder("CAR");
+
+    Graph createGraph()
+    {
+        return new GraphBuilder(encodingManager).create();
+    }
+
+    @Test
+    public void testCompareWithDijkstra()
+    {
+        Graph g = createGraph();
+        AbstractRoutingAlgorithmTester.initRandomGrid(g, 15, 100, 200);
+
+        long limit = 60 * 1000;
+        Isochrone isochrone = new Isochrone(g, carEncoder).setTimeLimit(limit).search(112);
+        TIntList nodes = isochrone.getNodes();
+        assertTrue(nodes.size() > 10);
+        assertTrue(nodes.size() < g.getNodes());
+        int reachable = 0;
+        for (int node = 0; node < g.getNodes(); node++)
+        {
+            Path p = new Dijkstra(g, carEncoder, new FastestWeighting(carEncoder)).calcPath(112, node);
+            int index = nodes.indexOf(node);
+            if (p.isFound() && p.getMillis() <= limit)
+            {
+                reachable++;
+                assertTrue("node " + node + " not found", index >= 0);
+                assertEquals(p.getMillis(), isochrone.getMillis().get(index));
+            } else
+                assertEquals("node " + node + " should not be reachable", -1, index);
+        }
+        assertEquals(reachable, nodes.size());
+
+        // reuse the instance
+        assertEquals(1, isochrone.setTimeLimit(0).search(112).getNodes().size());
+        assertEquals(reachable, isochrone.setTimeLimit(limit).search(112).getNodes().size());
+
+        // the node arrays are taken from the pool and released after the search
+        SearchStatePool pool = new SearchStatePool(1);
+        SearchState state = pool.acquire(g.getNodes());
+        pool.release(state);
+        new Isochrone(g, carEncoder).setTimeLimit(limit).setSearchStatePool(pool).search(0);
+        assertSame(state, pool.acquire(g.getNodes()));
+    }
+
+    @Test
+    public void testPolygon()
+    {
+        // 4-3
+        // |2|
+        // 0-1
+        Graph g = createGraph();
+        g.setNode(0, 0, 0);
+        g.setNode(1, 0, 0.001);
+        g.setNode(2, 0.0005, 0.0005);
+        g.setNode(3, 0.001, 0.001);
+        g.setNode(4, 0.001, 0);
+        g.edge(0, 1, 100, true);
+        g.edge(1, 2, 100, true);
+        g.edge(1, 3, 100, true);
+        g.edge(3, 4, 100, true);
+        g.edge(4, 0, 100, true);
+
+        Isochrone isochrone = new Isochrone(g, carEncoder).setTimeLimit(3600 * 1000).search(0);
+        assertEquals(5, isochrone.getNodes().size());
+        PointList polygon = isochrone.calcPolygon();
+        // the inner point 2 is not part of the hull and the first point is repeated
+        assertEquals(5, polygon.getSize());
+        assertEquals(polygon.getLatitude(0), polygon.getLatitude(4), 1e-8);
+        assertEquals(polygon.getLongitude(0), polygon.getLongitude(4), 1e-8);
+        for (int i = 0; i < polygon.getSize(); i++)
+        {
+            assertFalse(polygon.getLatitude(i) == 0.0005);
+        }
+
+        // only the start
+        isochrone.setTimeLimit(0).search(0);
+        assertEquals(1, isochrone.calcPolygon().getSize());
+    }
+}
@@ -19,6 +19,8 @@ package com.graphhopper.routing;
 
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.LevelGraphStorage;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.GraphStorage;
 import com.graphhopper.storage.RAMDirectory;
@@ -50,6 +52,36 @@ public class QueryGraphTest
         g.edge(0, 1, 10, true).setWayGeometry(Helper.createPointList(1.5, 1, 1.5, 1.5));
     }
 
+    @Test
+    public void testSetSkippedEdgesOfMainGraph()
+    {
+        // 0-1-2 and the shortcut 0-2
+        EncodingManager encodingManager = new EncodingManager("CAR");
+        LevelGraphStorage g = new GraphBuilder(encodingManager).levelGraphCreate();
+        g.setNode(0, 0, 0);
+        g.setNode(1, 0, 1);
+        g.setNode(2, 0, 2);
+        EdgeIteratorState edge01 = g.edge(0, 1, 10, true);
+        EdgeIteratorState edge12 = g.edge(1, 2, 10, true);
+        EdgeSkipIterator shortcut = g.shortcut(0, 2);
+        shortcut.setSkippedEdges(edge01.getEdge(), edge01.getEdge());
+
+        // node 2 is next to the virtual node and so its edges are virtual iterators
+        QueryGraph queryGraph = new QueryGraph(g);
+        QueryResult res = createLocationResult(0.1, 1.5, edge12, 0, EDGE);
+        queryGraph.lookup(Arrays.asList(res));
+        EdgeSkipIterator iter = (EdgeSkipIterator) queryGraph.createEdgeExplorer().setBaseNode(2);
+        while (iter.next())
+        {
+            if (iter.isShortcut())
+                iter.setSkippedEdges(edge01.getEdge(), edge12.getEdge());
+        }
+
+        EdgeSkipIterator stored = (EdgeSkipIterator) g.getEdgeProps(shortcut.getEdge(), 2);
+        assertEquals(edge01.getEdge(), stored.getSkippedEdge1());
+        assertEquals(edge12.getEdge(), stored.getSkippedEdge2());
+    }
+
     @Test
     public void testOneVirtualNode()
     {
@@ -0,0 +1,88 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.util.EdgeIterator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Karich
+ */
+public class SearchStateTest
+{
+    @Test
+    public void testInitInvalidatesNodes()
+    {
+        SearchState state = new SearchState(5).init(5);
+        assertFalse(state.isReached(3));
+        assertEquals(Double.MAX_VALUE, state.getWeight(3), 1e-5);
+        state.set(3, 1.5, 2, 7);
+        state.getHeap().insert_(1.5, 3);
+        assertTrue(state.isReached(3));
+        assertEquals(1.5, state.getWeight(3), 1e-5);
+        assertEquals(2, state.getParent(3));
+        assertEquals(7, state.getEdge(3));
+
+        state.init(10);
+        assertTrue(state.getCapacity() >= 10);
+        assertFalse(state.isReached(3));
+        assertEquals(-1, state.getParent(3));
+        assertEquals(EdgeIterator.NO_EDGE, state.getEdge(3));
+        assertTrue(state.getHeap().isEmpty());
+        state.set(9, 2, 3, 4);
+        assertEquals(2, state.getWeight(9), 1e-5);
+    }
+
+    @Test
+    public void testPool()
+    {
+        SearchStatePool pool = new SearchStatePool(2);
+        SearchState s1 = pool.acquire(10);
+        SearchState s2 = pool.acquire(10);
+        assertNotSame(s1, s2);
+        s1.set(1, 1, -1, EdgeIterator.NO_EDGE);
+        pool.release(s1);
+        pool.release(s2);
+        // only maxStates are kept
+        pool.release(new SearchState(10));
+        assertEquals(2, pool.getSize());
+
+        SearchState s3 = pool.acquire(20);
+        assertSame(s2, s3);
+        SearchState s4 = pool.acquire(20);
+        assertSame(s1, s4);
+        assertFalse(s4.isReached(1));
+        assertTrue(s4.getCapacity() >= 20);
+
+        pool.release(s3);
+        pool.clear();
+        assertEquals(0, pool.getSize());
+        assertNotSame(s3, pool.acquire(10));
+    }
+
+    @Test
+    public void testNoPool()
+    {
+        SearchState s1 = SearchStatePool.NONE.acquire(10);
+        SearchStatePool.NONE.release(s1);
+        assertEquals(0, SearchStatePool.NONE.getSize());
+        assertNotSame(s1, SearchStatePool.NONE.acquire(10));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.*;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.LevelGraph;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * @author Peter Karich
+ */
+public class ManyToManyCHTest
+{
+    private final EncodingManager encodingManager = new EncodingManager("CAR");
+    private final FlagEncoder carEncoder = encodingManager.getEncoder("CAR");
+
+    @Test
+    public void testCompareWithDijkstra()
+    {
+        Weighting weighting = new ShortestWeighting();
+        LevelGraph g = PrepareContractionHierarchiesTest.initShortcutsGraph(new GraphBuilder(encodingManager).levelGraphCreate());
+        Graph orig = PrepareContractionHierarchiesTest.initShortcutsGraph(new GraphBuilder(encodingManager).levelGraphCreate());
+        assertMatrix(orig, g, weighting);
+    }
+
+    @Test
+    public void testDirectedFastest()
+    {
+        Weighting weighting = new FastestWeighting(carEncoder);
+        LevelGraph g = new GraphBuilder(encodingManager).levelGraphCreate();
+        PrepareContractionHierarchiesTest.initDirected2(g);
+        Graph orig = new GraphBuilder(encodingManager).create();
+        PrepareContractionHierarchiesTest.initDirected2(orig);
+        assertMatrix(orig, g, weighting);
+    }
+
+    @Test
+    public void testNotReachable()
+    {
+        LevelGraph g = new GraphBuilder(encodingManager).levelGraphCreate();
+        g.edge(0, 1, 1, false);
+        g.edge(1, 2, 1, true);
+        g.edge(3, 4, 1, true);
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(carEncoder, new ShortestWeighting()).setGraph(g);
+        prepare.doWork();
+
+        ManyToManyCH matrix = prepare.createManyToMany().calcMatrix(new int[]
+        {
+            0, 2
+        }, new int[]
+        {
+            0, 2, 4
+        });
+        assertEquals(0, matrix.getDistances()[0][0], 1e-5);
+        assertEquals(2, matrix.getDistances()[0][1], 1e-5);
+        assertEquals(-1, matrix.getDistances()[0][2], 1e-5);
+        assertEquals(-1, matrix.getDistances()[1][0], 1e-5);
+        assertEquals(-1, matrix.getMillis()[1][0]);
+        assertEquals(Double.MAX_VALUE, matrix.getWeights()[1][0], 1e-5);
+        assertEquals(0, matrix.getDistances()[1][1], 1e-5);
+
+        try
+        {
+            matrix.calcMatrix(new int[]
+            {
+                0
+            }, new int[]
+            {
+                1
+            });
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+    }
+
+    void assertMatrix( Graph orig, LevelGraph g, Weighting weighting )
+    {
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(carEncoder, weighting).setGraph(g);
+        prepare.doWork();
+
+        int nodes = g.getNodes();
+        int[] all = new int[nodes];
+        for (int i = 0; i < nodes; i++)
+        {
+            all[i] = i;
+        }
+        ManyToManyCH matrix = prepare.createManyToMany().calcMatrix(all, all);
+        for (int from = 0; from < nodes; from++)
+        {
+            for (int to = 0; to < nodes; to++)
+            {
+                String str = from + "->" + to;
+                Path p = prepare.createAlgo().calcPath(from, to);
+                assertTrue(str, p.isFound());
+                assertEquals(str, p.getDistance(), matrix.getDistances()[from][to], 1e-5);
+                assertEquals(str, p.getMillis(), matrix.getMillis()[from][to]);
+
+                p = new Dijkstra(orig, carEncoder, weighting).calcPath(from, to);
+                assertEquals(str, p.getDistance(), matrix.getDistances()[from][to], 1e-5);
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.graphhopper.routing.AbstractRoutingAlgorithmTester;
 import com.graphhopper.routing.Dijkstra;
 import com.graphhopper.routing.DijkstraOneToMany;
 import com.graphhopper.routing.Path;
@@ -334,35 +335,37 @@ public class PrepareContractionHierarchiesTest
                 return flags;
             }
         };
-        g.edge(10, 0).setDistance(w.calcWeight(edge)).setFlags(flags);
+        // only shortcuts store the weight, normal edges keep the distance
+        double weight = w.calcWeight(edge);
+        g.edge(10, 0).setDistance(1).setFlags(flags);
         EdgeIteratorState iterTmp1 = g.edge(0, 1);
-        iterTmp1.setDistance(w.calcWeight(edge)).setFlags(flags);
-        EdgeIteratorState iter2 = g.edge(1, 2).setDistance(w.calcWeight(edge)).setFlags(flags);
-        EdgeIteratorState iter3 = g.edge(2, 3).setDistance(w.calcWeight(edge)).setFlags(flags);
-        EdgeIteratorState iter4 = g.edge(3, 4).setDistance(w.calcWeight(edge)).setFlags(flags);
-        EdgeIteratorState iter5 = g.edge(4, 5).setDistance(w.calcWeight(edge)).setFlags(flags);
-        EdgeIteratorState iter6 = g.edge(5, 6).setDistance(w.calcWeight(edge)).setFlags(flags);
+        iterTmp1.setDistance(1).setFlags(flags);
+        EdgeIteratorState iter2 = g.edge(1, 2).setDistance(1).setFlags(flags);
+        EdgeIteratorState iter3 = g.edge(2, 3).setDistance(1).setFlags(flags);
+        EdgeIteratorState iter4 = g.edge(3, 4).setDistance(1).setFlags(flags);
+        EdgeIteratorState iter5 = g.edge(4, 5).setDistance(1).setFlags(flags);
+        EdgeIteratorState iter6 = g.edge(5, 6).setDistance(1).setFlags(flags);
         long oneDirFlags = new PrepareContractionHierarchies(carEncoder, w).getScOneDir();
 
         int tmp = iterTmp1.getEdge();
         EdgeSkipExplorer iter1 = g.shortcut(0, 2);
-        iter1.setDistance(2).setFlags(oneDirFlags);
+        iter1.setDistance(2 * weight).setFlags(oneDirFlags);
         iter1.setSkippedEdges(tmp, iter2.getEdge());
         tmp = iter1.getEdge();
         iter1 = g.shortcut(0, 3);
-        iter1.setDistance(3).setFlags(oneDirFlags);
+        iter1.setDistance(3 * weight).setFlags(oneDirFlags);
         iter1.setSkippedEdges(tmp, iter3.getEdge());
         tmp = iter1.getEdge();
         iter1 = g.shortcut(0, 4);
-        iter1.setDistance(4).setFlags(oneDirFlags);
+        iter1.setDistance(4 * weight).setFlags(oneDirFlags);
         iter1.setSkippedEdges(tmp, iter4.getEdge());
         tmp = iter1.getEdge();
         iter1 = g.shortcut(0, 5);
-        iter1.setDistance(5).setFlags(oneDirFlags);
+        iter1.setDistance(5 * weight).setFlags(oneDirFlags);
         iter1.setSkippedEdges(tmp, iter5.getEdge());
         tmp = iter1.getEdge();
         iter1 = g.shortcut(0, 6);
-        iter1.setDistance(6).setFlags(oneDirFlags);
+        iter1.setDistance(6 * weight).setFlags(oneDirFlags);
         iter1.setSkippedEdges(tmp, iter6.getEdge());
         g.setLevel(0, 10);
         g.setLevel(6, 9);
@@ -416,6 +419,103 @@ public class PrepareContractionHierarchiesTest
         assertEquals(0, prepare.getShortcuts());
     }
 
+    @Test
+    public void testParallelContraction()
+    {
+        Graph orig = createGraph();
+        AbstractRoutingAlgorithmTester.initRandomGrid(orig, 12, 1, 11);
+        int shortcuts = -1;
+        for (int threads : new int[]
+        {
+            2, 4
+        })
+        {
+            LevelGraph g = createGraph();
+            AbstractRoutingAlgorithmTester.initRandomGrid(g, 12, 1, 11);
+            PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(carEncoder, weighting).
+                    setGraph(g).setThreads(threads);
+            prepare.doWork();
+            // the contraction order does not depend on the number of threads
+            if (shortcuts >= 0)
+                assertEquals(shortcuts, prepare.getShortcuts());
+            shortcuts = prepare.getShortcuts();
+
+            for (int from = 0; from < g.getNodes(); from += 3)
+            {
+                for (int to = 0; to < g.getNodes(); to++)
+                {
+                    Path expected = new Dijkstra(orig, carEncoder, weighting).calcPath(from, to);
+                    Path p = prepare.createAlgo().calcPath(from, to);
+                    String str = threads + " threads " + from + "->" + to;
+                    assertEquals(str, expected.isFound(), p.isFound());
+                    assertEquals(str, expected.getDistance(), p.getDistance(), 1e-5);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStallOnDemand()
+    {
+        Graph orig = createGraph();
+        AbstractRoutingAlgorithmTester.initRandomGrid(orig, 15, 1, 11);
+        LevelGraph g = createGraph();
+        AbstractRoutingAlgorithmTester.initRandomGrid(g, 15, 1, 11);
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(carEncoder, weighting).setGraph(g);
+        prepare.doWork();
+
+        int visitedStalled = 0, visitedNormal = 0;
+        for (int from = 0; from < g.getNodes(); from += 7)
+        {
+            for (int to = 0; to < g.getNodes(); to += 3)
+            {
+                String str = from + "->" + to;
+                Path expected = new Dijkstra(orig, carEncoder, weighting).calcPath(from, to);
+                DijkstraBidirectionCH algo = (DijkstraBidirectionCH) prepare.createAlgo();
+                Path p = algo.calcPath(from, to);
+                assertEquals(str, expected.isFound(), p.isFound());
+                assertEquals(str, expected.getDistance(), p.getDistance(), 1e-5);
+                visitedStalled += algo.getVisitedNodes();
+
+                algo = ((DijkstraBidirectionCH) prepare.createAlgo()).setStallOnDemand(false);
+                p = algo.calcPath(from, to);
+                assertEquals(str, expected.getDistance(), p.getDistance(), 1e-5);
+                visitedNormal += algo.getVisitedNodes();
+            }
+        }
+        assertTrue(visitedStalled + " vs. " + visitedNormal, visitedStalled < visitedNormal);
+    }
+
+    @Test
+    public void testUnpackCache()
+    {
+        LevelGraph g = createGraph();
+        AbstractRoutingAlgorithmTester.initRandomGrid(g, 15, 1, 11);
+        PrepareContractionHierarchies prepare = new PrepareContractionHierarchies(carEncoder, weighting).
+                setGraph(g).setUnpackCacheSize(50);
+        prepare.doWork();
+        PrepareContractionHierarchies noCache = new PrepareContractionHierarchies(carEncoder, weighting).setGraph(g);
+
+        // twice to use the cached shortcuts in both directions
+        for (int i = 0; i < 2; i++)
+        {
+            for (int from = 0; from < g.getNodes(); from += 5)
+            {
+                for (int to = 0; to < g.getNodes(); to += 4)
+                {
+                    String str = from + "->" + to;
+                    Path expected = noCache.createAlgo().calcPath(from, to);
+                    Path p = prepare.createAlgo().calcPath(from, to);
+                    assertEquals(str, expected.isFound(), p.isFound());
+                    assertEquals(str, expected.calcNodes(), p.calcNodes());
+                    assertEquals(str, expected.getDistance(), p.getDistance(), 1e-5);
+                    assertEquals(str, expected.getMillis(), p.getMillis());
+                }
+            }
+        }
+    }
+
+    // a size x size grid with random distances and some one-way edges
     // 0-1-2-3-4
     // |     / |
     // |    8  |
@@ -0,0 +1,185 @@
+/*
+ *  Licensed to GraphHopper and Peter Karich under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for 
+ *  additional information regarding copyright ownership.
+ * 
+ *  GraphHopper licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in 
+ *  compliance with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.lm;
+
+import com.graphhopper.routing.AStar;
+import com.graphhopper.routing.AbstractRoutingAlgorithmTester;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.util.*;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.Helper;
+import java.io.File;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Karich
+ */
+public class AStarLandmarksTest extends AbstractRoutingAlgorithmTester
+{
+    private final String location = "./target/tmp-landmarks";
+
+    @After
+    public void tearDown()
+    {
+        Helper.removeDir(new File(location));
+    }
+
+    @Override
+    public AlgorithmPreparation prepareGraph( Graph g, FlagEncoder encoder, Weighting w )
+    {
+        return new PrepareLandmarks(new RAMDirectory(), encoder, w).setLandmarks(4).setGraph(g).doWork();
+    }
+
+    @Test
+    public void testCompareWithDijkstra()
+    {
+        for (Weighting weighting : new Weighting[]
+        {
+            new ShortestWeighting(), new FastestWeighting(carEncoder)
+        })
+        {
+            Graph g = createGraph();
+            // 0.0001 degree is about 11m, so the edges are longer than the beeline between the nodes
+            initRandomGrid(g, 20, 12, 112);
+            PrepareLandmarks prepare = new PrepareLandmarks(new RAMDirectory(), carEncoder, weighting).
+                    setLandmarks(8).setGraph(g).doWork();
+            assertEquals(8, prepare.getLandmarkNodes().length);
+
+            int altVisited = 0, astarVisited = 0;
+            Random rand = new Random(0);
+            for (int i = 0; i < 200; i++)
+            {
+                int from = rand.nextInt(g.getNodes());
+                int to = rand.nextInt(g.getNodes());
+                Path expected = new Dijkstra(g, carEncoder, weighting).calcPath(from, to);
+                RoutingAlgorithm alt = prepare.createAlgo();
+                Path p = alt.calcPath(from, to);
+                String str = weighting + " " + from + "->" + to;
+                assertEquals(str, expected.isFound(), p.isFound());
+                assertEquals(str, expected.getDistance(), p.getDistance(), 1e-5);
+                altVisited += alt.getVisitedNodes();
+
+                AStar astar = new AStar(g, carEncoder, weighting);
+                astar.calcPath(from, to);
+                astarVisited += astar.getVisitedNodes();
+            }
+            assertTrue(weighting + " alt:" + altVisited + ", astar:" + astarVisited, altVisited * 2 < astarVisited);
+        }
+    }
+
+    @Test
+    public void testVirtualNodes()
+    {
+        Weighting weighting = new FastestWeighting(carEncoder);
+        Graph g = createGraph();
+        initRandomGrid(g, 20, 12, 112);
+        PrepareLandmarks prepare = new PrepareLandmarks(new RAMDirectory(), carEncoder, weighting).
+                setLandmarks(8).setGraph(g).doWork();
+
+        Random rand = new Random(1);
+        for (int i = 0; i < 50; i++)
+        {
+            EdgeIteratorState fromEdge = GHUtility.getEdge(g, 21, 22);
+            EdgeIteratorState toEdge = g.getEdgeProps(rand.nextInt(g.getAllEdges().getMaxId()), Integer.MIN_VALUE);
+            Path expected = new Dijkstra(g, carEncoder, weighting).
+                    calcPath(createQueryResult(g, fromEdge), createQueryResult(g, toEdge));
+            Path p = prepare.createAlgo().calcPath(createQueryResult(g, fromEdge), createQueryResult(g, toEdge));
+            assertEquals(toEdge.toString(), expected.isFound(), p.isFound());
+            assertEquals(toEdge.toString(), expected.getDistance(), p.getDistance(), 1e-5);
+        }
+    }
+
+    @Test
+    public void testSubnetworks()
+    {
+        Weighting weighting = new ShortestWeighting();
+        Graph g = createGraph();
+        initRandomGrid(g, 10, 12, 112);
+        // a second subnetwork which is not reachable from the grid
+        g.setNode(100, 0.01, 0.01);
+        g.setNode(101, 0.01, 0.0101);
+        g.setNode(102, 0.0101, 0.0101);
+        g.edge(100, 101, 20, true);
+        g.edge(101, 102, 20, true);
+        PrepareLandmarks prepare = new PrepareLandmarks(new RAMDirectory(), carEncoder, weighting).
+                setLandmarks(4).setGraph(g).doWork();
+        for (int lm : prepare.getLandmarkNodes())
+        {
+            assertTrue(lm >= 0 && lm < g.getNodes());
+        }
+
+        assertEquals(40, prepare.createAlgo().calcPath(100, 102).getDistance(), 1e-5);
+        assertFalse(prepare.createAlgo().calcPath(0, 102).isFound());
+        Path expected = new Dijkstra(g, carEncoder, weighting).calcPath(0, 99);
+        assertEquals(expected.getDistance(), prepare.createAlgo().calcPath(0, 99).getDistance(), 1e-5);
+    }
+
+    @Test
+    public void testLoadExisting()
+    {
+        Weighting weighting = new ShortestWeighting();
+        Graph g = createGraph();
+        initRandomGrid(g, 10, 12, 112);
+        RAMDirectory dir = new RAMDirectory(location, true);
+        PrepareLandmarks prepare = new PrepareLandmarks(dir, carEncoder, weighting).setLandmarks(4).setGraph(g);
+        assertFalse(prepare.loadExisting());
+        prepare.doWork();
+        prepare.flush();
+        Path expected = prepare.createAlgo().calcPath(0, 99);
+        prepare.close();
+
+        prepare = new PrepareLandmarks(new RAMDirectory(location, true), carEncoder, weighting).
+                setLandmarks(4).setGraph(g);
+        assertTrue(prepare.loadExisting());
+        Path p = prepare.createAlgo().calcPath(0, 99);
+        assertEquals(expected.getDistance(), p.getDistance(), 1e-5);
+        assertEquals(expected.calcNodes(), p.calcNodes());
+
+        try
+        {
+            new PrepareLandmarks(new RAMDirectory(location, true), carEncoder, weighting).
+                    setLandmarks(8).setGraph(g).loadExisting();
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+        prepare.close();
+    }
+
+    QueryResult createQueryResult( Graph g, EdgeIteratorState edge )
+    {
+        double lat = (g.getLatitude(edge.getBaseNode()) + g.getLatitude(edge.getAdjNode())) / 2;
+        double lon = (g.getLongitude(edge.getBaseNode()) + g.getLongitude(edge.getAdjNode())) / 2;
+        QueryResult res = new QueryResult(lat, lon);
+        res.setClosestEdge(edge);
+        res.setWayIndex(0);
+        res.setSnappedPosition(QueryResult.Position.EDGE);
+        res.calcSnappedPoint(new DistanceCalcEarth());
+        return res;
+    }
+}
@@ -199,6 +199,76 @@ public class GraphHopperStorageTest extends AbstractGraphStorageTester
         tmpGS.close();
     }
 
+    @Test
+    public void testFreeze() throws IOException
+    {
+        GraphStorage graph = createGraphStorage(new RAMDirectory(defaultGraph, true));
+        graph.setNode(0, 10, 10);
+        graph.setNode(1, 11, 20);
+        graph.setNode(2, 12, 12);
+
+        EdgeIteratorState iter2 = graph.edge(0, 1, 100, true);
+        iter2.setWayGeometry(Helper.createPointList(1.5, 1, 2, 3));
+        EdgeIteratorState iter1 = graph.edge(0, 2, 200, true);
+        iter1.setWayGeometry(Helper.createPointList(3.5, 4.5, 5, 6));
+        graph.edge(9, 10, 200, true);
+        graph.edge(9, 11, 200, true);
+        graph.edge(1, 2, 120, false);
+
+        assertFalse(graph.isFrozen());
+        graph.freeze();
+        assertTrue(graph.isFrozen());
+        checkGraph(graph);
+
+        EdgeIterator iter = graph.createEdgeExplorer(carOutFilter).setBaseNode(2);
+        assertTrue(iter.next());
+        assertEquals(0, iter.getAdjNode());
+        assertEquals(200, iter.getDistance(), 1e-4);
+        assertFalse(iter.next());
+
+        // a detached state can be detached again
+        iter = graph.createEdgeExplorer(carOutFilter).setBaseNode(2);
+        assertTrue(iter.next());
+        EdgeIteratorState detached = ((EdgeIterator) iter.detach()).detach();
+        assertEquals(0, detached.getAdjNode());
+        assertEquals(200, detached.getDistance(), 1e-4);
+
+        // the one-way 1->2 is only reachable via the incoming direction
+        iter = graph.createEdgeExplorer(carInFilter).setBaseNode(2);
+        assertEquals(GHUtility.asSet(0, 1), GHUtility.getNeighbors(iter));
+        assertEquals(GHUtility.asSet(10, 11), GHUtility.getNeighbors(graph.createEdgeExplorer().setBaseNode(9)));
+
+        try
+        {
+            graph.edge(3, 4, 10, true);
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+
+        try
+        {
+            iter = graph.createEdgeExplorer().setBaseNode(0);
+            iter.next();
+            iter.setDistance(10);
+            assertTrue(false);
+        } catch (IllegalStateException ex)
+        {
+        }
+
+        graph.flush();
+        graph.close();
+
+        graph = newGraph(new MMapDirectory(defaultGraph));
+        assertTrue(graph.loadExisting());
+        assertTrue(graph.isFrozen());
+        checkGraph(graph);
+        iter = graph.createEdgeExplorer().setBaseNode(0);
+        assertTrue(iter.next());
+        assertEquals(iter.getAdjNode(), ((EdgeIterator) iter.detach()).detach().getAdjNode());
+        graph.close();
+    }
+
     @Test
     public void testDetachEdge()
     {
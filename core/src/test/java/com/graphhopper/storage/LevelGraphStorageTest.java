@@ -157,4 +157,79 @@ public class LevelGraphStorageTest extends GraphHopperStorageTest
         g.disconnect(g.createEdgeExplorer(), iter);
         assertEquals(0, GHUtility.count(carOutExplorer.setBaseNode(2)));
     }
+
+    @Test
+    public void testRemoveShortcuts()
+    {
+        LevelGraphStorage g = createGraph();
+        g.edge(0, 1, 10, true);
+        g.edge(1, 2, 10, true);
+        g.edge(2, 3, 10, false);
+        EdgeSkipExplorer sc = g.shortcut(0, 2);
+        sc.setDistance(20).setFlags(carEncoder.setAccess(0, true, true));
+        sc.setSkippedEdges(0, 1);
+        g.setLevel(1, 1);
+        g.setLevel(0, 2);
+        EdgeIterator iter = g.createEdgeExplorer().setBaseNode(1);
+        while (iter.next())
+        {
+            g.disconnect(g.createEdgeExplorer(), iter);
+        }
+        assertEquals(GHUtility.asSet(2), GHUtility.getNeighbors(g.createEdgeExplorer().setBaseNode(0)));
+
+        g.removeShortcuts();
+        assertEquals(3, g.getAllEdges().getMaxId());
+        assertEquals(0, g.getLevel(0));
+        assertEquals(0, g.getLevel(1));
+        assertEquals(GHUtility.asSet(1), GHUtility.getNeighbors(g.createEdgeExplorer().setBaseNode(0)));
+        assertEquals(GHUtility.asSet(0, 2), GHUtility.getNeighbors(g.createEdgeExplorer().setBaseNode(1)));
+        assertEquals(GHUtility.asSet(1, 3), GHUtility.getNeighbors(g.createEdgeExplorer().setBaseNode(2)));
+        assertEquals(0, GHUtility.count(carOutExplorer.setBaseNode(3)));
+        assertEquals(2, GHUtility.count(carOutExplorer.setBaseNode(2)));
+
+        // new shortcuts can be added again
+        sc = g.shortcut(0, 2);
+        sc.setSkippedEdges(0, 1);
+        assertEquals(3, sc.getEdge());
+    }
+
+    @Test
+    public void testLevelGraphView()
+    {
+        LevelGraphStorage g = createGraphStorage(new RAMDirectory(defaultGraph, true));
+        g.edge(0, 1, 10, true);
+        g.edge(1, 2, 10, true);
+        g.setLevel(1, 5);
+
+        LevelGraphView view = new LevelGraphView(g, "FOOT").create(g.getNodes());
+        assertEquals(0, view.getLevel(1));
+        view.setLevel(1, 2);
+        // grows automatically
+        view.setLevel(1000, 3);
+        assertEquals(2, view.getLevel(1));
+        assertEquals(3, view.getLevel(1000));
+        assertEquals(5, g.getLevel(1));
+        assertEquals(2, GHUtility.count(view.createEdgeExplorer().setBaseNode(1)));
+
+        // the copy gets the levels of the view
+        LevelGraphStorage copy = createGraphStorage(new RAMDirectory());
+        view.copyTo(copy);
+        assertEquals(2, copy.getLevel(1));
+        assertEquals(0, copy.getLevel(2));
+        assertEquals(2, GHUtility.count(copy.createEdgeExplorer().setBaseNode(1)));
+
+        g.flush();
+        view.flush();
+        g.close();
+        view.close();
+
+        g = (LevelGraphStorage) newGraph(new RAMDirectory(defaultGraph, true));
+        assertTrue(g.loadExisting());
+        view = new LevelGraphView(g, "FOOT");
+        assertTrue(view.loadExisting());
+        assertEquals(2, view.getLevel(1));
+        assertEquals(5, g.getLevel(1));
+        g.close();
+        view.close();
+    }
 }
@@ -18,6 +18,7 @@
  */
 package com.graphhopper.storage.index;
 
+import com.graphhopper.routing.util.DefaultEdgeFilter;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.Directory;
@@ -25,9 +26,15 @@ import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.RAMDirectory;
 import com.graphhopper.util.BitUtil;
 import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPoint;
 import gnu.trove.set.hash.TIntHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -285,6 +292,169 @@ public class LocationIndexTreeTest extends AbstractLocation2IDIndexTester {
         }).getClosestNode());
     }
 
+    @Test
+    public void testRemoveEdge() {
+        Graph graph = createTestGraph();
+        LocationIndexTree index = internalCreateIndex(graph, 50000);
+        EdgeFilter carFilter = new DefaultEdgeFilter(encodingManager.getEncoder("CAR"));
+        assertEquals(0, index.findClosest(0.5, -0.5, carFilter).getClosestNode());
+
+        EdgeIteratorState edge = GHUtility.getEdge(graph, 0, 1);
+        try {
+            index.removeEdge(edge.getEdge());
+            assertTrue(false);
+        } catch (IllegalArgumentException ex) {
+        }
+
+        // remove all edges of node 0
+        for (int node : new int[]{1, 2, 4}) {
+            edge = GHUtility.getEdge(graph, 0, node);
+            edge.setFlags(0);
+            index.removeEdge(edge.getEdge());
+        }
+        assertFalse(index.findNetworkEntries(0.5, -0.5).contains(0));
+        assertFalse(index.findNetworkEntries(0, 0.5).contains(0));
+        // no other edge is close enough
+        assertFalse(index.findClosest(0.5, -0.5, carFilter).isValid());
+        // the other nodes are still found
+        assertEquals(1, index.findClosest(-0.5, -0.5, carFilter).getClosestNode());
+        assertEquals(2, index.findClosest(-1, -1, carFilter).getClosestNode());
+        assertEquals(3, index.findClosest(-0.4, 0.9, carFilter).getClosestNode());
+        assertEquals(4, index.findClosest(-0.6, 1.6, carFilter).getClosestNode());
+    }
+
+    @Test
+    public void testLookupStateVisit() {
+        LocationIndexTree.LookupState state = new LocationIndexTree.LookupState();
+        Random rand = new Random(0);
+        for (int lookup = 0; lookup < 10; lookup++) {
+            state.entries.resetQuick();
+            int entries = 1 + rand.nextInt(200);
+            for (int i = 0; i < entries; i++) {
+                // big node ids and duplicates, e.g. a node stored in neighbouring tiles
+                state.entries.add(rand.nextInt(Integer.MAX_VALUE / 2) * 2);
+                if (i % 10 == 0)
+                    state.entries.add(state.entries.get(i));
+            }
+            state.init();
+            TIntHashSet expected = new TIntHashSet();
+            for (int i = 0; i < state.entries.size(); i++) {
+                int node = state.entries.get(i);
+                assertEquals(expected.add(node), state.visit(node));
+            }
+            // nodes of other lookups are not visited
+            assertTrue(state.visit(1));
+        }
+    }
+
+    @Test
+    public void testAlternatingIndexesInOneThread() {
+        // the temporary data of findClosest is shared between all indexes of a thread
+        LocationIndexTree small = createIndex(createTestGraph(), 1000);
+        LocationIndexTree big = createIndex(createTestGraph2(), 1000);
+        int smallNode = small.findClosest(-.6, -.6, EdgeFilter.ALL_EDGES).getClosestNode();
+        int bigNode = big.findClosest(49.95, 11.57, EdgeFilter.ALL_EDGES).getClosestNode();
+        for (int i = 0; i < 3; i++) {
+            QueryResult res = small.findClosest(-.6, -.6, EdgeFilter.ALL_EDGES);
+            assertEquals(smallNode, res.getClosestNode());
+            assertTrue(res.isValid());
+            assertEquals(bigNode, big.findClosest(49.95, 11.57, EdgeFilter.ALL_EDGES).getClosestNode());
+        }
+    }
+
+    @Test
+    public void testBulkLookup() throws Exception {
+        Graph graph = createTestGraph2();
+        LocationIndexTree index = createIndex(graph, 1000).setBulkPartitionSize(7);
+        BBox bounds = graph.getBounds();
+        Random rand = new Random(1);
+        int size = 100;
+        double[] lats = new double[size];
+        double[] lons = new double[size];
+        for (int i = 0; i < size; i++) {
+            lats[i] = bounds.minLat + rand.nextDouble() * (bounds.maxLat - bounds.minLat);
+            lons[i] = bounds.minLon + rand.nextDouble() * (bounds.maxLon - bounds.minLon);
+        }
+
+        List<QueryResult> results = index.findClosest(lats, lons, EdgeFilter.ALL_EDGES, null);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        List<QueryResult> parallelResults;
+        try {
+            parallelResults = index.findClosest(lats, lons, EdgeFilter.ALL_EDGES, executor);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(size, results.size());
+        assertEquals(size, parallelResults.size());
+        for (int i = 0; i < size; i++) {
+            QueryResult res = index.findClosest(lats[i], lons[i], EdgeFilter.ALL_EDGES);
+            assertEquals(i + "", res.getClosestNode(), results.get(i).getClosestNode());
+            assertEquals(i + "", res.getQueryDistance(), results.get(i).getQueryDistance(), 1e-6);
+            assertEquals(i + "", res.getClosestNode(), parallelResults.get(i).getClosestNode());
+            assertEquals(i + "", res.getSnappedPoint(), parallelResults.get(i).getSnappedPoint());
+        }
+
+        try {
+            index.findClosest(new double[1], new double[2], EdgeFilter.ALL_EDGES, null);
+            assertTrue(false);
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+
+    @Test
+    public void testParallelPrepareIndex() {
+        // a grid with enough edges to be split into several parts
+        Graph graph = createGraph(new RAMDirectory(), encodingManager);
+        int size = 40;
+        for (int lat = 0; lat < size; lat++) {
+            for (int lon = 0; lon < size; lon++) {
+                int node = lat * size + lon;
+                graph.setNode(node, 50 + lat * 0.01, 9 + lon * 0.01);
+                if (lon > 0)
+                    graph.edge(node - 1, node, 1000, true);
+                if (lat > 0)
+                    graph.edge(node - size, node, 1000, true);
+            }
+        }
+
+        LocationIndexTree single = new LocationIndexTree(graph, new RAMDirectory());
+        single.setResolution(300).prepareIndex();
+        LocationIndexTree parallel = new LocationIndexTree(graph, new RAMDirectory());
+        parallel.setPrepareThreads(3).setResolution(300).prepareIndex();
+
+        assertEquals(single.dataAccess.getCapacity(), parallel.dataAccess.getCapacity());
+        for (long pointer = 0; pointer < single.dataAccess.getCapacity(); pointer += 4) {
+            assertEquals(pointer + "", single.dataAccess.getInt(pointer), parallel.dataAccess.getInt(pointer));
+        }
+        assertEquals(single.findID(50.105, 9.205), parallel.findID(50.105, 9.205));
+    }
+
+    @Test
+    public void testFindClosestEdges() {
+        Graph graph = createTestGraph();
+        LocationIndexTree index = createIndex(graph, 1000);
+        QueryResult closest = index.findClosest(-.6, -.6, EdgeFilter.ALL_EDGES);
+        List<QueryResult> list = index.findClosestEdges(-.6, -.6, EdgeFilter.ALL_EDGES, 10, 1e6);
+        assertTrue(list.size() > 2);
+        assertEquals(closest.getClosestEdge().getEdge(), list.get(0).getClosestEdge().getEdge());
+        assertEquals(closest.getQueryDistance(), list.get(0).getQueryDistance(), 1e-6);
+        TIntHashSet edges = new TIntHashSet();
+        for (int i = 0; i < list.size(); i++) {
+            assertTrue(list.get(i).isValid());
+            assertTrue(edges.add(list.get(i).getClosestEdge().getEdge()));
+            if (i > 0)
+                assertTrue(list.get(i - 1).getQueryDistance() <= list.get(i).getQueryDistance());
+        }
+
+        assertEquals(2, index.findClosestEdges(-.6, -.6, EdgeFilter.ALL_EDGES, 2, 1e6).size());
+        // a smaller radius excludes the edges further away
+        list = index.findClosestEdges(-.6, -.6, EdgeFilter.ALL_EDGES, 10, 20000);
+        for (QueryResult res : list) {
+            assertTrue(res.getQueryDistance() <= 20000);
+        }
+        assertTrue(list.size() < edges.size());
+    }
+
     // see testgraph2.jpg
     Graph createTestGraph2() {
         Graph graph = createGraph(new RAMDirectory(), encodingManager);
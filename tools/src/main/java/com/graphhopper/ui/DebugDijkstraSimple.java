@@ -21,7 +21,6 @@ import com.graphhopper.routing.Dijkstra;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.Weighting;
 import com.graphhopper.storage.Graph;
-import com.graphhopper.storage.EdgeEntry;
 import java.awt.Color;
 import java.awt.Graphics2D;
 
@@ -46,12 +45,12 @@ public class DebugDijkstraSimple extends Dijkstra implements DebugAlgo
     }
 
     @Override
-    public void updateShortest( EdgeEntry shortestDE, int currLoc )
+    public void updateShortest( int node, double weight )
     {
         if (g2 != null)
         {
-            mg.plotNode(g2, currLoc, Color.YELLOW);
+            mg.plotNode(g2, node, Color.YELLOW);
         }
-        super.updateShortest(shortestDE, currLoc);
+        super.updateShortest(node, weight);
     }
 }
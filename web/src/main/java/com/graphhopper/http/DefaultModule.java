@@ -53,6 +53,9 @@ public class DefaultModule extends AbstractModule
 
             long timeout = args.getLong("web.timeout", 3000);
             bind(Long.class).annotatedWith(Names.named("timeout")).toInstance(timeout);
+
+            int maxMatrixSize = args.getInt("web.maxMatrixSize", 10000);
+            bind(Integer.class).annotatedWith(Names.named("maxMatrixSize")).toInstance(maxMatrixSize);
             bind(Geocoding.class).toInstance(new NominatimGeocoder().
                     setTimeout((int) timeout).
                     setBounds(hopper.getGraph().getBounds()));
@@ -18,6 +18,9 @@
 package com.graphhopper.http;
 
 import com.graphhopper.search.Geocoding;
+import com.graphhopper.GHBatchResponse;
+import com.graphhopper.GHIsochroneResponse;
+import com.graphhopper.GHMatrixResponse;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GHResponse;
@@ -27,6 +30,7 @@ import com.graphhopper.util.TranslationMap.Translation;
 import com.graphhopper.util.shapes.BBox;
 import com.graphhopper.util.shapes.GHPlace;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.*;
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -34,7 +38,10 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import static javax.servlet.http.HttpServletResponse.*;
+import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
 
 /**
  * Servlet to use GraphHopper in a remote application (mobile or browser). Attention: If type is
@@ -56,6 +63,9 @@ public class GraphHopperServlet extends GHBaseServlet
     @Named("timeout")
     private Long timeOutInMillis;
     @Inject
+    @Named("maxMatrixSize")
+    private Integer maxMatrixSize;
+    @Inject
     private GHThreadPool threadPool;
     @Inject
     private TranslationMap trMap;
@@ -71,6 +81,12 @@ public class GraphHopperServlet extends GHBaseServlet
             } else if ("/route".equals(req.getPathInfo()))
             {
                 writePath(req, res);
+            } else if ("/matrix".equals(req.getPathInfo()))
+            {
+                writeMatrix(req, res);
+            } else if ("/isochrone".equals(req.getPathInfo()))
+            {
+                writeIsochrone(req, res);
             }
         } catch (Exception ex)
         {
@@ -79,6 +95,27 @@ public class GraphHopperServlet extends GHBaseServlet
         }
     }
 
+    @Override
+    public void doPost( HttpServletRequest req, HttpServletResponse res ) throws ServletException, IOException
+    {
+        try
+        {
+            if ("/batch".equals(req.getPathInfo()))
+            {
+                writeBatch(req, res);
+            } else
+            {
+                writeError(res, SC_NOT_FOUND, "POST is only supported for /batch");
+            }
+        } catch (Exception ex)
+        {
+            logger.error("Error while executing batch request: " + req.getQueryString(), ex);
+            // the status cannot be changed if routes were already streamed
+            if (!res.isCommitted())
+                writeError(res, SC_INTERNAL_SERVER_ERROR, "Problem occured:" + ex.getMessage());
+        }
+    }
+
     void writeInfos( HttpServletRequest req, HttpServletResponse res ) throws Exception
     {
         BBox bb = hopper.getGraph().getBounds();
@@ -101,7 +138,7 @@ public class GraphHopperServlet extends GHBaseServlet
         List<GHPlace> infoPoints = getPoints(req);
         float tookGeocoding = sw.stop().getSeconds();
         GHPlace start = infoPoints.get(0);
-        GHPlace end = infoPoints.get(1);
+        GHPlace end = infoPoints.get(infoPoints.size() - 1);
         try
         {
             // we can reduce the path length based on the maximum differences to the original coordinates
@@ -122,13 +159,14 @@ public class GraphHopperServlet extends GHBaseServlet
             if (hopper.getEncodingManager().supports(vehicleStr))
             {
                 FlagEncoder algoVehicle = hopper.getEncodingManager().getEncoder(vehicleStr);
-                rsp = hopper.route(new GHRequest(start, end).
+                rsp = hopper.route(new GHRequest(infoPoints).
                         setVehicle(algoVehicle.toString()).
                         setWeighting(weighting).
                         setAlgorithm(algoStr).
                         putHint("calcPoints", calcPoints).
                         putHint("instructions", enableInstructions).
-                        putHint("douglas.minprecision", minPathPrecision));
+                        putHint("douglas.minprecision", minPathPrecision).
+                        putHint("timeout", timeOutInMillis));
             } else
             {
                 rsp = new GHResponse().addError(new IllegalArgumentException("Vehicle not supported: " + vehicleStr));
@@ -137,7 +175,7 @@ public class GraphHopperServlet extends GHBaseServlet
             float took = sw.stop().getSeconds();
             String infoStr = req.getRemoteAddr() + " " + req.getLocale() + " " + req.getHeader("User-Agent");
             PointList points = rsp.getPoints();
-            String logStr = req.getQueryString() + " " + infoStr + " " + start + "->" + end
+            String logStr = req.getQueryString() + " " + infoStr + " " + infoPoints
                     + ", distance: " + rsp.getDistance() + ", time:" + Math.round(rsp.getMillis() / 60000f)
                     + "min, points:" + points.getSize() + ", took:" + took
                     + ", debug - " + rsp.getDebugInfo() + ", " + algoStr + ", "
@@ -155,11 +193,267 @@ public class GraphHopperServlet extends GHBaseServlet
 
         } catch (Exception ex)
         {
-            logger.error("Error while query:" + start + "->" + end, ex);
+            logger.error("Error while query:" + infoPoints, ex);
             writeError(res, SC_INTERNAL_SERVER_ERROR, "Problem occured:" + ex.getMessage());
         }
     }
 
+    /**
+     * Writes the distances and times from every from_point to every to_point. If they are not
+     * specified all point parameters are used as sources and targets. The number of sources times
+     * the number of targets must not exceed maxMatrixSize, see web.maxMatrixSize.
+     */
+    void writeMatrix( HttpServletRequest req, HttpServletResponse res ) throws Exception
+    {
+        List<GHPlace> sources = parsePlaces(getParams(req, "from_point"));
+        List<GHPlace> targets = parsePlaces(getParams(req, "to_point"));
+        if (sources.isEmpty() && targets.isEmpty())
+        {
+            sources = parsePlaces(getParams(req, "point"));
+            targets = sources;
+        }
+        if (sources.isEmpty() || targets.isEmpty())
+            throw new IllegalArgumentException("Did you specify from_point=<lat,lon>&to_point=<lat,lon> ? Use at least one source and one target");
+
+        if ((long) sources.size() * targets.size() > maxMatrixSize)
+        {
+            writeError(res, SC_BAD_REQUEST, "The matrix of " + sources.size() + "x" + targets.size()
+                    + " points is bigger than the maximum of " + maxMatrixSize + " entries");
+            return;
+        }
+
+        String vehicleStr = getParam(req, "vehicle", "CAR").toUpperCase();
+        StopWatch sw = new StopWatch().start();
+        GHMatrixResponse rsp = hopper.matrix(sources, targets, vehicleStr);
+        float took = sw.stop().getSeconds();
+        String logStr = req.getQueryString() + " " + req.getRemoteAddr() + " " + sources.size() + "x" + targets.size()
+                + ", took:" + took + ", debug - " + rsp.getDebugInfo() + ", " + vehicleStr;
+        JSONBuilder builder;
+        if (rsp.hasErrors())
+        {
+            logger.error(logStr + ", errors:" + rsp.getErrors());
+            builder = createErrors(rsp.getErrors());
+        } else
+        {
+            logger.info(logStr);
+            List<List<Double>> distances = new ArrayList<List<Double>>(sources.size());
+            List<List<Long>> times = new ArrayList<List<Long>>(sources.size());
+            for (int i = 0; i < sources.size(); i++)
+            {
+                List<Double> distanceRow = new ArrayList<Double>(targets.size());
+                List<Long> timeRow = new ArrayList<Long>(targets.size());
+                for (int j = 0; j < targets.size(); j++)
+                {
+                    distanceRow.add(rsp.getDistances()[i][j]);
+                    timeRow.add(rsp.getMillis()[i][j]);
+                }
+                distances.add(distanceRow);
+                times.add(timeRow);
+            }
+            builder = new JSONBuilder().
+                    startObject("info").
+                    object("took", took).
+                    endObject().
+                    startObject("matrix").
+                    object("distances", distances).
+                    object("times", times).
+                    endObject();
+        }
+        writeJson(req, res, builder.build());
+    }
+
+    /**
+     * Routes all requests of the posted JSON in parallel, e.g.
+     * {"requests":[{"points":["lat,lon","lat,lon"]}, ...]}. Every request can overwrite the
+     * vehicle, weighting and algorithm URL parameters. The routes are written in the order of the
+     * requests and streamed in chunks of batchSize, so the client gets results before the whole
+     * batch is finished. Points are only included with calcPoints=true.
+     * <p/>
+     * The whole body is parsed before the first route is written as an invalid body cannot be
+     * reported with an error status afterwards. For the same reason routing failures are written
+     * as error objects of the affected routes.
+     */
+    void writeBatch( HttpServletRequest req, HttpServletResponse res ) throws Exception
+    {
+        JSONObject json = new JSONObject(new JSONTokener(req.getReader()));
+        JSONArray jsonRequests = json.getJSONArray("requests");
+        String vehicleStr = getParam(req, "vehicle", "CAR").toUpperCase();
+        String weighting = getParam(req, "weighting", "fastest");
+        String algoStr = getParam(req, "algorithm", defaultAlgorithm);
+        boolean calcPoints = getBooleanParam(req, "calcPoints", false);
+        int batchSize = (int) getLongParam(req, "batchSize", 1000);
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batchSize has to be positive but was " + batchSize);
+
+        int size = jsonRequests.length();
+        List<GHRequest> requests = new ArrayList<GHRequest>(size);
+        for (int i = 0; i < size; i++)
+        {
+            JSONObject jsonRequest = jsonRequests.getJSONObject(i);
+            JSONArray jsonPoints = jsonRequest.getJSONArray("points");
+            String[] pointsAsStr = new String[jsonPoints.length()];
+            for (int j = 0; j < pointsAsStr.length; j++)
+            {
+                pointsAsStr[j] = jsonPoints.getString(j);
+            }
+            requests.add(new GHRequest(parsePlaces(pointsAsStr)).
+                    setVehicle(jsonRequest.optString("vehicle", vehicleStr).toUpperCase()).
+                    setWeighting(jsonRequest.optString("weighting", weighting)).
+                    setAlgorithm(jsonRequest.optString("algorithm", algoStr)).
+                    putHint("calcPoints", calcPoints).
+                    putHint("instructions", false).
+                    putHint("timeout", timeOutInMillis));
+        }
+
+        res.setCharacterEncoding("UTF-8");
+        res.setContentType("application/json");
+        res.setStatus(SC_OK);
+        PrintWriter writer = res.getWriter();
+        writer.append("{\"routes\":[");
+        StopWatch sw = new StopWatch().start();
+        int errors = 0, written = 0;
+        for (int start = 0; start < size; start += batchSize)
+        {
+            List<GHRequest> chunk = requests.subList(start, Math.min(size, start + batchSize));
+            List<GHResponse> responses;
+            try
+            {
+                GHBatchResponse batchRsp = hopper.routeBatch(chunk);
+                errors += batchRsp.getErrorCount();
+                responses = batchRsp.getResponses();
+            } catch (RuntimeException ex)
+            {
+                logger.error("Error while routing the batch requests " + start + " to "
+                        + (start + chunk.size() - 1), ex);
+                errors += chunk.size();
+                responses = new ArrayList<GHResponse>(chunk.size());
+                for (int i = 0; i < chunk.size(); i++)
+                {
+                    responses.add(new GHResponse().addError(ex));
+                }
+            }
+
+            for (GHResponse rsp : responses)
+            {
+                if (written++ > 0)
+                    writer.append(",");
+
+                JSONBuilder builder;
+                if (rsp.hasErrors())
+                {
+                    builder = createErrors(rsp.getErrors());
+                } else
+                {
+                    builder = new JSONBuilder().
+                            object("found", rsp.isFound()).
+                            object("distance", rsp.getDistance()).
+                            object("time", rsp.getMillis());
+                    if (calcPoints)
+                        builder.object("coordinates", WebHelper.encodePolyline(rsp.getPoints()));
+                }
+                writer.append(builder.build().toString());
+            }
+            writer.flush();
+        }
+        float took = sw.stop().getSeconds();
+        writer.append("],\"info\":").append(new JSONBuilder().
+                object("took", took).
+                object("routes", size).
+                object("errors", errors).build().toString()).append("}");
+        writer.flush();
+        logger.info(req.getQueryString() + " " + req.getRemoteAddr() + " batch of " + size
+                + ", errors:" + errors + ", took:" + took + ", " + algoStr + ", " + weighting + ", " + vehicleStr);
+    }
+
+    /**
+     * Writes the area reachable from the point within the specified time in milliseconds as GeoJson
+     * polygon. With points=true also every reachable point and its time is included. Not available
+     * if contraction hierarchies are enabled.
+     */
+    void writeIsochrone( HttpServletRequest req, HttpServletResponse res ) throws Exception
+    {
+        if (hopper.isCHEnabled())
+        {
+            writeError(res, SC_NOT_IMPLEMENTED, "The isochrone is not supported with contraction hierarchies,"
+                    + " disable them via prepare.chShortcuts=no");
+            return;
+        }
+
+        List<GHPlace> places = parsePlaces(getParams(req, "point"));
+        if (places.size() != 1)
+            throw new IllegalArgumentException("Specify exactly one point=<lat,lon>");
+
+        String vehicleStr = getParam(req, "vehicle", "CAR").toUpperCase();
+        long timeLimit = getLongParam(req, "time", 15 * 60 * 1000L);
+        boolean writePoints = getBooleanParam(req, "points", false);
+        StopWatch sw = new StopWatch().start();
+        GHIsochroneResponse rsp = hopper.isochrone(places.get(0), vehicleStr, timeLimit);
+        float took = sw.stop().getSeconds();
+        String logStr = req.getQueryString() + " " + req.getRemoteAddr() + " " + places.get(0)
+                + ", took:" + took + ", debug - " + rsp.getDebugInfo() + ", " + vehicleStr;
+        JSONBuilder builder;
+        if (rsp.hasErrors())
+        {
+            logger.error(logStr + ", errors:" + rsp.getErrors());
+            builder = createErrors(rsp.getErrors());
+        } else
+        {
+            logger.info(logStr);
+            List<List<Double[]>> rings = new ArrayList<List<Double[]>>(1);
+            rings.add(rsp.getPolygon().toGeoJson());
+            builder = new JSONBuilder().
+                    startObject("info").
+                    object("took", took).
+                    endObject().
+                    startObject("isochrone").
+                    object("time", timeLimit).
+                    object("pointCount", rsp.getPoints().getSize()).
+                    startObject("polygon").
+                    object("type", "Polygon").
+                    object("coordinates", rings).
+                    endObject();
+            if (writePoints)
+            {
+                List<Long> times = new ArrayList<Long>(rsp.getMillis().length);
+                for (long time : rsp.getMillis())
+                {
+                    times.add(time);
+                }
+                builder.object("points", rsp.getPoints().toGeoJson()).
+                        object("times", times);
+            }
+            builder = builder.endObject();
+        }
+        writeJson(req, res, builder.build());
+    }
+
+    private JSONBuilder createErrors( List<Throwable> errors )
+    {
+        List<Map<String, String>> list = new ArrayList<Map<String, String>>();
+        for (Throwable t : errors)
+        {
+            Map<String, String> map = new HashMap<String, String>();
+            map.put("message", t.getMessage());
+            map.put("details", t.getClass().getName());
+            list.add(map);
+        }
+        return new JSONBuilder().startObject("info").object("errors", list).endObject();
+    }
+
+    private List<GHPlace> parsePlaces( String[] pointsAsStr )
+    {
+        List<GHPlace> places = new ArrayList<GHPlace>(pointsAsStr.length);
+        for (String str : pointsAsStr)
+        {
+            GHPlace place = GHPlace.parse(str);
+            if (place == null)
+                throw new IllegalArgumentException("Cannot parse point " + str + ", use lat,lon");
+
+            places.add(place);
+        }
+        return places;
+    }
+
     private void writeGPX( HttpServletRequest req, HttpServletResponse res, GHResponse rsp )
     {
         res.setCharacterEncoding("UTF-8");
@@ -181,16 +475,7 @@ public class GraphHopperServlet extends GHBaseServlet
         JSONBuilder builder;
         if (rsp.hasErrors())
         {
-            builder = new JSONBuilder().startObject("info");
-            List<Map<String, String>> list = new ArrayList<Map<String, String>>();
-            for (Throwable t : rsp.getErrors())
-            {
-                Map<String, String> map = new HashMap<String, String>();
-                map.put("message", t.getMessage());
-                map.put("details", t.getClass().getName());
-                list.add(map);
-            }
-            builder = builder.object("errors", list).endObject();
+            builder = createErrors(rsp.getErrors());
         } else
         {
             builder = new JSONBuilder().
@@ -316,12 +601,6 @@ public class GraphHopperServlet extends GHBaseServlet
             throw new IllegalArgumentException("Did you specify point=<from>&point=<to> ? Use at least 2 points! " + infoPoints);
         }
 
-        // TODO execute algorithm multiple times!
-        if (infoPoints.size() != 2)
-        {
-            throw new IllegalArgumentException("TODO! At the moment only 2 points can be specified");
-        }
-
         return infoPoints;
     }
 }
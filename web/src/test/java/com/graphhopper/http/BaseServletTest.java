@@ -23,6 +23,11 @@ import com.google.inject.Module;
 import com.google.inject.servlet.GuiceFilter;
 import com.graphhopper.util.Constants;
 import com.graphhopper.util.Downloader;
+import com.graphhopper.util.Helper;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
 import java.util.EnumSet;
 import javax.servlet.DispatcherType;
 import org.eclipse.jetty.server.Connector;
@@ -68,6 +73,7 @@ public class BaseServletTest
         System.setProperty("graphhopper.config", "../config-example.properties");
         System.setProperty("graphhopper.osmreader.osm", "../core/files/andorra.osm.pbf");
         System.setProperty("graphhopper.graph.location", "./target/andorra-gh/");
+        System.setProperty("graphhopper.web.maxMatrixSize", "4");
 
         String webapp = "./target/graphhopper-web-" + Constants.VERSION;
         WebAppContext app = new WebAppContext(webapp, "/");
@@ -135,12 +141,22 @@ public class BaseServletTest
     }
 
     protected String getTestAPIUrl()
+    {
+        return getTestAPIUrl("route");
+    }
+
+    protected String getTestAPIUrl( String service )
     {
         String host = "localhost";
-        return "http://" + host + ":" + port + "/api/route";
+        return "http://" + host + ":" + port + "/api/" + service;
     }
 
     protected JSONObject query( String query ) throws Exception
+    {
+        return query("route", query);
+    }
+
+    protected JSONObject query( String service, String query ) throws Exception
     {
         String resQuery = "";
         for (String q : query.split("\\&"))
@@ -153,8 +169,25 @@ public class BaseServletTest
 
             resQuery += "&";
         }
-        String url = getTestAPIUrl() + "?" + resQuery;
+        String url = getTestAPIUrl(service) + "?" + resQuery;
         Downloader downloader = new Downloader("web integration tester");
         return new JSONObject(downloader.downloadAsString(url));
     }
+
+    protected JSONObject post( String service, String query, String body ) throws Exception
+    {
+        Downloader downloader = new Downloader("web integration tester");
+        HttpURLConnection conn = downloader.createConnection(getTestAPIUrl(service) + "?" + query);
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/json");
+        Writer writer = new OutputStreamWriter(conn.getOutputStream(), "UTF-8");
+        writer.write(body);
+        writer.close();
+        String str = "";
+        for (String line : Helper.readFile(new InputStreamReader(downloader.fetch(conn), "UTF-8")))
+        {
+            str += line;
+        }
+        return new JSONObject(str);
+    }
 }
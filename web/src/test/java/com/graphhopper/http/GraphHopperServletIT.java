@@ -20,6 +20,8 @@ package com.graphhopper.http;
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopperAPI;
+import java.io.IOException;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
@@ -47,6 +49,102 @@ public class GraphHopperServletIT extends BaseServletTest
         assertTrue("distance wasn't correct:" + distance, distance < 9500);
     }
 
+    @Test
+    public void testMatrixQuery() throws Exception
+    {
+        JSONObject json = query("matrix", "from_point=42.554851,1.536198&to_point=42.510071,1.548128&to_point=42.554851,1.536198");
+        JSONObject infoJson = json.getJSONObject("info");
+        assertFalse(infoJson.has("errors"));
+        JSONArray distances = json.getJSONObject("matrix").getJSONArray("distances");
+        assertEquals(1, distances.length());
+        assertEquals(2, distances.getJSONArray(0).length());
+        double distance = distances.getJSONArray(0).getDouble(0);
+        assertTrue("distance wasn't correct:" + distance, distance > 9000);
+        assertTrue("distance wasn't correct:" + distance, distance < 9500);
+        assertEquals(0, distances.getJSONArray(0).getDouble(1), 1e-3);
+        assertTrue(json.getJSONObject("matrix").getJSONArray("times").getJSONArray(0).getLong(0) > 0);
+    }
+
+    @Test
+    public void testMatrixOfPoints() throws Exception
+    {
+        JSONObject json = query("matrix", "point=42.554851,1.536198&point=42.510071,1.548128");
+        JSONArray distances = json.getJSONObject("matrix").getJSONArray("distances");
+        assertEquals(2, distances.length());
+        assertEquals(0, distances.getJSONArray(0).getDouble(0), 1e-3);
+        assertEquals(0, distances.getJSONArray(1).getDouble(1), 1e-3);
+        assertTrue(distances.getJSONArray(0).getDouble(1) > 9000);
+
+        // bigger than web.maxMatrixSize
+        try
+        {
+            query("matrix", "point=42.554851,1.536198&point=42.510071,1.548128&point=42.52,1.54");
+            assertTrue(false);
+        } catch (IOException ex)
+        {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("400"));
+        }
+    }
+
+    @Test
+    public void testBatchQuery() throws Exception
+    {
+        String body = "{\"requests\":["
+                + "{\"points\":[\"42.554851,1.536198\",\"42.510071,1.548128\"]},"
+                + "{\"points\":[\"42.510071,1.548128\",\"42.554851,1.536198\"]},"
+                + "{\"points\":[\"42.554851,1.536198\",\"42.554851,1.536198\"]},"
+                + "{\"points\":[\"42.554851,1.536198\",\"42.510071,1.548128\"],\"vehicle\":\"unknown\"}]}";
+        JSONObject json = post("batch", "batchSize=3&calcPoints=true", body);
+        assertEquals(1, json.getJSONObject("info").getInt("errors"));
+        JSONArray routes = json.getJSONArray("routes");
+        assertEquals(4, routes.length());
+        double distance = routes.getJSONObject(0).getDouble("distance");
+        assertTrue("distance wasn't correct:" + distance, distance > 9000);
+        assertTrue("distance wasn't correct:" + distance, distance < 9500);
+        assertTrue(routes.getJSONObject(0).getString("coordinates").length() > 0);
+        assertTrue(routes.getJSONObject(1).getDouble("distance") > 9000);
+        assertEquals(0, routes.getJSONObject(2).getDouble("distance"), 1e-3);
+        assertTrue(routes.getJSONObject(3).getJSONObject("info").has("errors"));
+    }
+
+    @Test
+    public void testInvalidBatchQuery() throws Exception
+    {
+        // the invalid request is not in the first chunk but must be reported before any route is written
+        String body = "{\"requests\":["
+                + "{\"points\":[\"42.554851,1.536198\",\"42.510071,1.548128\"]},"
+                + "{\"points\":[\"42.510071,1.548128\",\"42.554851,1.536198\"]},"
+                + "{\"vehicle\":\"car\"}]}";
+        try
+        {
+            post("batch", "batchSize=1", body);
+            assertTrue(false);
+        } catch (IOException ex)
+        {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("500"));
+        }
+
+        JSONObject json = post("batch", "batchSize=1", "{\"requests\":[{\"points\":[]},"
+                + "{\"points\":[\"42.510071,1.548128\",\"42.554851,1.536198\"]}]}");
+        assertEquals(1, json.getJSONObject("info").getInt("errors"));
+        JSONArray routes = json.getJSONArray("routes");
+        assertTrue(routes.getJSONObject(0).getJSONObject("info").has("errors"));
+        assertTrue(routes.getJSONObject(1).getDouble("distance") > 9000);
+    }
+
+    @Test
+    public void testIsochroneQueryWithCH() throws Exception
+    {
+        try
+        {
+            query("isochrone", "point=42.554851,1.536198&time=60000");
+            assertTrue(false);
+        } catch (IOException ex)
+        {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("501"));
+        }
+    }
+
     @Test
     public void testGraphHopperWeb() throws Exception
     {